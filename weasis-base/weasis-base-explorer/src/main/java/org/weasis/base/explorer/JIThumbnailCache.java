@@ -11,13 +11,19 @@
 package org.weasis.base.explorer;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.File;
 import java.net.URI;
-import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ExecutorService;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -29,98 +35,194 @@ import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.image.util.ImageFiler;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.MediaElement;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
 
+/**
+ * Builds the thumbnails of the file explorer with several workers.
+ * <p>
+ * The pending thumbnails are in a deque where the last request is taken first, so the icons of the visible part of
+ * the list are built before the ones requested while scrolling. A pending thumbnail is found by its image in O(1),
+ * cancelling only marks the task which is skipped by the workers. The tasks which are no longer visible when they are
+ * taken are dropped, they are requested again by the renderer when they become visible.
+ * <p>
+ * The icons are kept in a LRU cache bounded by the memory of the images.
+ */
 public final class JIThumbnailCache {
     private static final Logger LOGGER = LoggerFactory.getLogger(JIThumbnailCache.class);
 
-    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
-    // Set only one concurrent thread. The time consuming part is in loading image thread (see ImageElement)
-    private final ExecutorService qExecutor =
-        new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, ThreadUtil.getThreadFactory("Thumbnail Cache")); //$NON-NLS-1$
+    public static final String P_CACHE_MAX_MEMORY = "weasis.explorer.thumbnail.cache.max.memory"; //$NON-NLS-1$
+    // Memory of the icons in MB
+    private static final long MAX_MEMORY =
+        Math.max(1L, BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_CACHE_MAX_MEMORY, 32L)) * 1024L * 1024L;
 
-    private final Map<URI, ThumbnailIcon> cachedThumbnails;
+    private final int nbWorkers = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final ThreadPoolExecutor qExecutor = new ThreadPoolExecutor(nbWorkers, nbWorkers, 30L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), ThreadUtil.getThreadFactory("Thumbnail Cache")); //$NON-NLS-1$
 
-    public JIThumbnailCache() {
-        this.cachedThumbnails = Collections.synchronizedMap(new LinkedHashMap<URI, ThumbnailIcon>(80) {
+    // Guarded by the lock
+    private final Object lock = new Object();
+    private final Deque<ThumbnailRunnable> pending = new ArrayDeque<>();
+    private final Map<ImageElement, ThumbnailRunnable> pendingByImage = new HashMap<>();
+    // Images whose thumbnail is being built by a worker
+    private final Set<ImageElement> inFlight = new HashSet<>();
+    private final Map<ThumbnailList<?>, int[]> visibleRanges = new WeakHashMap<>();
+    private int activeWorkers = 0;
 
-            private static final long serialVersionUID = 5981678679620794224L;
-            private static final int MAX_ENTRIES = 100;
+    // Guarded by itself, access order
+    private final LinkedHashMap<URI, ThumbnailIcon> cachedThumbnails = new LinkedHashMap<>(128, 0.75f, true);
+    private long cacheMemory = 0;
 
-            @Override
-            @SuppressWarnings("rawtypes")
-            protected boolean removeEldestEntry(final Map.Entry eldest) {
-                return size() > MAX_ENTRIES;
-            }
-        });
+    public JIThumbnailCache() {
+        // Release the threads when the explorer is not used
+        qExecutor.allowCoreThreadTimeOut(true);
     }
 
-    public synchronized void invalidate() {
-        this.cachedThumbnails.clear();
+    public void invalidate() {
+        synchronized (cachedThumbnails) {
+            cachedThumbnails.clear();
+            cacheMemory = 0;
+        }
     }
 
     public void removeInQueue(ImageElement imgElement) {
-        Runnable r = null;
-        for (Runnable runnable : queue) {
-            if (Objects.equals(imgElement, ((ThumbnailRunnable) runnable).getDiskObject())) {
-                r = runnable;
+        synchronized (lock) {
+            ThumbnailRunnable r = pendingByImage.remove(imgElement);
+            if (r != null) {
+                // Skipped by the workers
+                r.cancelled = true;
             }
         }
-        if (r != null && !queue.remove(r)) {
-            LOGGER.error("Cannot remove thumbnail from the queue"); //$NON-NLS-1$
-        }
     }
 
     public ThumbnailIcon getThumbnailFor(final ImageElement diskObject,
         final ThumbnailList<? extends MediaElement> aThumbnailList, final int index) {
-        try {
-            final ThumbnailIcon jiIcon = this.cachedThumbnails.get(diskObject.getMediaURI());
+        synchronized (cachedThumbnails) {
+            ThumbnailIcon jiIcon = cachedThumbnails.get(diskObject.getMediaURI());
             if (jiIcon != null) {
                 return jiIcon;
             }
-
-        } catch (final Exception e) {
-            LOGGER.error("", e); //$NON-NLS-1$
         }
-        if (!diskObject.isLoading()) {
+        if (!diskObject.isLoading() && !isInFlight(diskObject)) {
             loadThumbnail(diskObject, aThumbnailList, index);
         }
         return null;
     }
 
+    private boolean isInFlight(ImageElement diskObject) {
+        synchronized (lock) {
+            return inFlight.contains(diskObject);
+        }
+    }
+
     private void loadThumbnail(final ImageElement diskObject, final ThumbnailList<? extends MediaElement> thumbnailList,
         final int index) {
-        if ((index > thumbnailList.getLastVisibleIndex()) || (index < thumbnailList.getFirstVisibleIndex())) {
+        // Called from the renderer in the EDT, the workers cannot read the list
+        int first = thumbnailList.getFirstVisibleIndex();
+        int last = thumbnailList.getLastVisibleIndex();
+        if (index > last || index < first) {
             return;
         }
-        for (Runnable runnable : queue) {
-            if (diskObject.equals(((ThumbnailRunnable) runnable).getDiskObject())) {
+        synchronized (lock) {
+            visibleRanges.put(thumbnailList, new int[] { first, last });
+            ThumbnailRunnable r = pendingByImage.get(diskObject);
+            if (r != null || inFlight.contains(diskObject)) {
                 return;
             }
+            r = new ThumbnailRunnable(diskObject, thumbnailList, index);
+            pendingByImage.put(diskObject, r);
+            pending.addFirst(r);
+            // Drop the oldest requests, they are no longer visible
+            int maxPending = Math.max(64, 4 * (last - first + 1));
+            while (pending.size() > maxPending) {
+                ThumbnailRunnable old = pending.pollLast();
+                if (!old.cancelled) {
+                    pendingByImage.remove(old.getDiskObject());
+                }
+            }
+            if (activeWorkers < nbWorkers) {
+                activeWorkers++;
+                qExecutor.execute(this::processPending);
+            }
+        }
+    }
+
+    private ThumbnailRunnable nextTask() {
+        synchronized (lock) {
+            ThumbnailRunnable r;
+            while ((r = pending.pollFirst()) != null) {
+                if (r.cancelled) {
+                    continue;
+                }
+                pendingByImage.remove(r.getDiskObject());
+                int[] range = visibleRanges.get(r.getThumbnailList());
+                if (range == null || (r.getIndex() >= range[0] && r.getIndex() <= range[1])) {
+                    inFlight.add(r.getDiskObject());
+                    return r;
+                }
+            }
+            activeWorkers--;
+            return null;
+        }
+    }
+
+    private void processPending() {
+        boolean exhausted = false;
+        try {
+            ThumbnailRunnable r;
+            while ((r = nextTask()) != null) {
+                try {
+                    r.run();
+                } catch (Exception e) {
+                    LOGGER.error("Cannot build the thumbnail of {}", r.getDiskObject(), e); //$NON-NLS-1$
+                } finally {
+                    synchronized (lock) {
+                        inFlight.remove(r.getDiskObject());
+                    }
+                }
+            }
+            // The worker has been released by nextTask()
+            exhausted = true;
+        } finally {
+            if (!exhausted) {
+                // Stopped by an Error, the next request starts a new worker
+                synchronized (lock) {
+                    activeWorkers--;
+                }
+            }
         }
-        cleanPending();
-        ThumbnailRunnable runnable = new ThumbnailRunnable(diskObject, thumbnailList, index);
-        qExecutor.execute(runnable);
     }
 
-    private void cleanPending() {
-        for (Runnable runnable : queue) {
-            ThumbnailRunnable r = (ThumbnailRunnable) runnable;
-            int index = r.getIndex();
-            if ((index > r.getThumbnailList().getLastVisibleIndex())
-                || (index < r.getThumbnailList().getFirstVisibleIndex())) {
-                removeInQueue(r.getDiskObject());
+    private void putInCache(URI uri, ThumbnailIcon icon) {
+        long size = getMemorySize(icon.getImage());
+        synchronized (cachedThumbnails) {
+            ThumbnailIcon old = cachedThumbnails.put(uri, icon);
+            cacheMemory += size - (old == null ? 0 : getMemorySize(old.getImage()));
+            Iterator<Entry<URI, ThumbnailIcon>> it = cachedThumbnails.entrySet().iterator();
+            while (cacheMemory > MAX_MEMORY && it.hasNext()) {
+                Entry<URI, ThumbnailIcon> e = it.next();
+                if (e.getValue() != icon) {
+                    cacheMemory -= getMemorySize(e.getValue().getImage());
+                    it.remove();
+                }
             }
         }
     }
 
+    private static long getMemorySize(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
     class ThumbnailRunnable implements Runnable {
         final ImageElement diskObject;
         final ThumbnailList<? extends MediaElement> thumbnailList;
         final int index;
+        // Guarded by the lock of the cache
+        boolean cancelled = false;
 
         public ThumbnailRunnable(ImageElement diskObject, ThumbnailList<? extends MediaElement> thumbnailList,
             int index) {
@@ -155,7 +257,8 @@ public final class JIThumbnailCache {
             }
 
             if (img == null) {
-                img = diskObject.getRenderedImage(diskObject.getImage(null));
+                int size = Math.max(ThumbnailRenderer.ICON_DIM.width, ThumbnailRenderer.ICON_DIM.height);
+                img = diskObject.getRenderedImage(diskObject.getPreviewImage(size));
             }
 
             if (img == null) {
@@ -168,12 +271,10 @@ public final class JIThumbnailCache {
             // Prevent to many files open on Linux (Ubuntu => 1024) and close image stream
             diskObject.removeImageFromCache();
 
-            GuiExecutor.instance().execute(() -> {
-                if (tIcon != null) {
-                    cachedThumbnails.put(diskObject.getMediaURI(), new ThumbnailIcon(tIcon));
-                }
-                thumbnailList.getThumbnailListModel().notifyAsUpdated(index);
-            });
+            if (tIcon != null) {
+                putInCache(diskObject.getMediaURI(), new ThumbnailIcon(tIcon));
+            }
+            GuiExecutor.instance().execute(() -> thumbnailList.getThumbnailListModel().notifyAsUpdated(index));
         }
 
     }
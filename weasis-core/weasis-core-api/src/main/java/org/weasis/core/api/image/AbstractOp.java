@@ -10,14 +10,29 @@
  *******************************************************************************/
 package org.weasis.core.api.image;
 
+import java.awt.geom.Dimension2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.RectangularShape;
+import java.lang.reflect.Array;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.weasis.core.api.util.LangUtil;
 
+/**
+ * Base class of the image operations which tracks the changes of the parameters.
+ * <p>
+ * The arrays and the geometric values (rectangles, points and dimensions) are copied when they are set, so changing
+ * them afterwards has no effect until they are set again. The other mutable values are not copied: a value changed in
+ * place must be set again to mark the operation as modified. The values returned by {@link #getParam(String)} must not
+ * be modified.
+ */
 public abstract class AbstractOp implements ImageOpNode {
 
     protected HashMap<String, Object> params;
+    private long modificationCount;
 
     public AbstractOp() {
         params = new HashMap<>();
@@ -28,15 +43,68 @@ public abstract class AbstractOp implements ImageOpNode {
         clearIOCache();
     }
 
+    @Override
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    private static boolean isIOParam(String key) {
+        return key.startsWith("op.input") || key.startsWith("op.output"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * A value is considered as unchanged when it is equal to the previous one (the content for the arrays), except when
+     * it is the same mutable instance (e.g. an object modified and set again).
+     */
+    private static boolean isUnchanged(Object oldValue, Object value) {
+        if (oldValue == value) {
+            return value == null || value instanceof Number || value instanceof Boolean || value instanceof String
+                || value instanceof Enum;
+        }
+        if (oldValue != null && oldValue.getClass().isArray()) {
+            return Arrays.deepEquals(new Object[] { oldValue }, new Object[] { value });
+        }
+        return oldValue != null && oldValue.equals(value);
+    }
+
+    private static Object copyMutable(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            if (value instanceof Object[]) {
+                for (int i = 0; i < length; i++) {
+                    Array.set(copy, i, copyMutable(Array.get(value, i)));
+                }
+            } else {
+                System.arraycopy(value, 0, copy, 0, length);
+            }
+            return copy;
+        }
+        if (value instanceof RectangularShape) {
+            return ((RectangularShape) value).clone();
+        }
+        if (value instanceof Point2D) {
+            return ((Point2D) value).clone();
+        }
+        if (value instanceof Dimension2D) {
+            return ((Dimension2D) value).clone();
+        }
+        return value;
+    }
+
     @Override
     public void clearParams() {
         params.clear();
+        modificationCount++;
     }
 
     @Override
     public void clearIOCache() {
         for (String key : params.keySet()) {
-            if (key.startsWith("op.input") || key.startsWith("op.output")) { //$NON-NLS-1$ //$NON-NLS-2$
+            if (isIOParam(key)) {
                 params.put(key, null);
             }
         }
@@ -53,21 +121,35 @@ public abstract class AbstractOp implements ImageOpNode {
     @Override
     public void setParam(String key, Object value) {
         if (key != null) {
-            params.put(key, value);
+            if (isIOParam(key)) {
+                params.put(key, value);
+            } else {
+                Object old = params.put(key, copyMutable(value));
+                if (!isUnchanged(old, value)) {
+                    modificationCount++;
+                }
+            }
         }
     }
 
     @Override
     public void setAllParameters(Map<String, Object> map) {
         if (map != null) {
-            params.putAll(map);
+            for (Entry<String, Object> entry : map.entrySet()) {
+                String key = entry.getKey();
+                params.put(key, key == null || isIOParam(key) ? entry.getValue() : copyMutable(entry.getValue()));
+            }
+            modificationCount++;
         }
     }
 
     @Override
     public void removeParam(String key) {
-        if (key != null) {
+        if (key != null && params.containsKey(key)) {
             params.remove(key);
+            if (!isIOParam(key)) {
+                modificationCount++;
+            }
         }
     }
 
@@ -78,7 +160,7 @@ public abstract class AbstractOp implements ImageOpNode {
 
     @Override
     public void setEnabled(boolean enabled) {
-        params.put(Param.ENABLE, enabled);
+        setParam(Param.ENABLE, enabled);
     }
 
     @Override
@@ -89,7 +171,7 @@ public abstract class AbstractOp implements ImageOpNode {
     @Override
     public void setName(String name) {
         if (name != null) {
-            params.put(Param.NAME, name);
+            setParam(Param.NAME, name);
         }
     }
 
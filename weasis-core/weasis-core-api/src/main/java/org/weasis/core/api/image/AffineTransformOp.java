@@ -10,20 +10,32 @@
  *******************************************************************************/
 package org.weasis.core.api.image;
 
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
 import java.util.Arrays;
 
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 import org.weasis.core.api.Messages;
+import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.PlanarImage;
+import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
 
 public class AffineTransformOp extends AbstractOp {
 
     public static final String OP_NAME = Messages.getString("AffineTransformOp.affine_op"); //$NON-NLS-1$
 
+    /**
+     * Name of the optional node placed at the beginning of the display operations, which resamples the source image to
+     * the visible part of the view. The following operations are then applied on the image at the screen resolution.
+     */
+    public static final String VIEWPORT_OP_NAME = Messages.getString("AffineTransformOp.viewport_op"); //$NON-NLS-1$
+
     public static final String[] INTERPOLATIONS =
         { Messages.getString("ZoomOperation.nearest"), Messages.getString("ZoomOperation.bilinear"), //$NON-NLS-1$ //$NON-NLS-2$
             Messages.getString("ZoomOperation.bicubic"), Messages.getString("ZoomOperation.lanczos") }; //$NON-NLS-1$ //$NON-NLS-2$
@@ -45,6 +57,14 @@ public class AffineTransformOp extends AbstractOp {
 
     public static final String P_DST_BOUNDS = "dest.bounds"; //$NON-NLS-1$
 
+    /**
+     * Set the affine transformation already applied to the input image by the viewport resampling (Optional
+     * parameter). The operations using the image coordinates (shapes, overlays) must apply it.
+     *
+     * Double array (length of 6), null when the input image has the coordinates of the source image.
+     */
+    public static final String P_INPUT_MATRIX = "input.affine.matrix"; //$NON-NLS-1$
+
     public AffineTransformOp() {
         setName(OP_NAME);
     }
@@ -83,4 +103,51 @@ public class AffineTransformOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    /**
+     * @param matrix
+     *            the OpenCV affine matrix (length of 6)
+     * @return the equivalent Java2D transformation
+     */
+    public static AffineTransform getAffineTransform(double[] matrix) {
+        return new AffineTransform(matrix[0], matrix[3], matrix[1], matrix[4], matrix[2], matrix[5]);
+    }
+
+    /**
+     * Transforms a shape in the coordinates of the source image into the coordinates of the input image.
+     *
+     * @param shape
+     *            the shape in the coordinates of the source image
+     * @param inputMatrix
+     *            the value of {@link #P_INPUT_MATRIX}, can be null
+     * @return the shape to apply on the input image
+     */
+    public static Shape transformShape(Shape shape, double[] inputMatrix) {
+        if (shape == null || inputMatrix == null) {
+            return shape;
+        }
+        return getAffineTransform(inputMatrix).createTransformedShape(shape);
+    }
+
+    /**
+     * Transforms a mask (e.g. an overlay) built with the size of the source image into the coordinates of the input
+     * image. The nearest neighbor interpolation keeps the binary values.
+     *
+     * @param mask
+     *            the mask with the size of the source image
+     * @param inputMatrix
+     *            the value of {@link #P_INPUT_MATRIX}, can be null
+     * @param input
+     *            the input image
+     * @return the mask to apply on the input image
+     */
+    public static RenderedImage transformMask(RenderedImage mask, double[] inputMatrix, PlanarImage input) {
+        if (mask == null || inputMatrix == null) {
+            return mask;
+        }
+        Mat mat = new Mat(2, 3, CvType.CV_64FC1);
+        mat.put(0, 0, inputMatrix);
+        ImageCV dst = ImageProcessor.warpAffine(ImageConversion.toMat(mask), mat,
+            new Size(input.width(), input.height()), Imgproc.INTER_NEAREST);
+        return ImageConversion.toBufferedImage(dst);
+    }
 }
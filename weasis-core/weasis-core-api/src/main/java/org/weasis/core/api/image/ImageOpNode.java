@@ -55,4 +55,14 @@ public interface ImageOpNode extends Copyable<ImageOpNode> {
 
     void handleImageOpEvent(ImageOpEvent event);
 
+    /**
+     * Returns a counter incremented when a parameter (other than the input and output images) has changed. It allows
+     * the operation manager to reuse the output of this node when nothing has changed.
+     *
+     * @return the modification counter, or -1 when the changes are not tracked (the node is always processed)
+     */
+    default long getModificationCount() {
+        return -1;
+    }
+
 }
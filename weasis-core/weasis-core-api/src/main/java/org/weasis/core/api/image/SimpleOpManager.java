@@ -11,21 +11,38 @@
 package org.weasis.core.api.image;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.Messages;
 import org.weasis.core.api.image.ImageOpNode.Param;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.opencv.data.PlanarImage;
 
+/**
+ * Processes a chain of image operations.
+ * <p>
+ * The output of each node is kept: when processing again, only the nodes from the first one whose parameters or input
+ * have changed are executed (e.g. a zoom or a pan executes only the affine transformation). The intermediate outputs
+ * are kept within a memory budget, the evicted ones are computed again from the closest available input when
+ * required.
+ */
 public class SimpleOpManager implements OpManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleOpManager.class);
 
     public static final String IMAGE_OP_NAME = Messages.getString("SimpleOpManager.img_op"); //$NON-NLS-1$
+    public static final String P_CACHE_MAX_MEMORY = "weasis.image.op.cache.max.memory"; //$NON-NLS-1$
+    // Budget in bytes of the intermediate outputs of a manager, by default 64 MB
+    private static final long MAX_CACHED_BYTES =
+        BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_CACHE_MAX_MEMORY, 64L) * 1024L * 1024L;
 
     public enum Position {
         BEFORE, AFTER
@@ -33,6 +50,7 @@ public class SimpleOpManager implements OpManager {
 
     private final HashMap<String, ImageOpNode> nodes;
     private final List<ImageOpNode> operations;
+    private final Map<ImageOpNode, NodeState> states;
     private String name;
 
     public SimpleOpManager() {
@@ -42,12 +60,14 @@ public class SimpleOpManager implements OpManager {
     public SimpleOpManager(String name) {
         this.operations = new ArrayList<>();
         this.nodes = new HashMap<>();
+        this.states = new IdentityHashMap<>();
         setName(name);
     }
 
     public SimpleOpManager(SimpleOpManager som) {
         this.operations = new ArrayList<>();
         this.nodes = new HashMap<>();
+        this.states = new IdentityHashMap<>();
         setName(som.name);
 
         som.nodes.entrySet().forEach(el -> {
@@ -112,6 +132,7 @@ public class SimpleOpManager implements OpManager {
 
     public void removeImageOperationAction(ImageOpNode action) {
         if (action != null) {
+            states.remove(action);
             boolean remove = operations.remove(action);
             if (nodes.remove(action.getName()) == null && remove) {
                 for (Entry<String, ImageOpNode> entry : nodes.entrySet()) {
@@ -129,6 +150,7 @@ public class SimpleOpManager implements OpManager {
         clearNodeParams();
         operations.clear();
         nodes.clear();
+        states.clear();
     }
 
     @Override
@@ -213,8 +235,17 @@ public class SimpleOpManager implements OpManager {
     public PlanarImage process() {
         PlanarImage source = getFirstNodeInputImage();
         if (source != null && source.width() > 0) {
-            for (int i = 0; i < operations.size(); i++) {
+            int size = operations.size();
+            int first = getFirstChangedNode();
+            // The input of an evicted node must be computed again
+            while (first > 0 && first < size && operations.get(first).getParam(Param.INPUT_IMG) == null) {
+                first--;
+            }
+            boolean debug = LOGGER.isDebugEnabled();
+            StringBuilder buf = debug ? new StringBuilder() : null;
+            for (int i = first; i < size; i++) {
                 ImageOpNode op = operations.get(i);
+                long start = System.nanoTime();
                 try {
                     if (i > 0) {
                         op.setParam(Param.INPUT_IMG, operations.get(i - 1).getParam(Param.OUTPUT_IMG));
@@ -229,13 +260,108 @@ public class SimpleOpManager implements OpManager {
                     LOGGER.error("Image {} failed: {}", op.getParam(Param.NAME), e); //$NON-NLS-1$
                     op.setParam(Param.OUTPUT_IMG, op.getParam(Param.INPUT_IMG));
                 }
+                NodeState state = states.computeIfAbsent(op, k -> new NodeState());
+                state.update(op, System.nanoTime() - start);
+                if (debug) {
+                    buf.append(" "); //$NON-NLS-1$
+                    buf.append(op.getName());
+                    buf.append(String.format(": %.3f ms", state.lastTime / 1_000_000.0)); //$NON-NLS-1$
+                }
+            }
+            if (debug) {
+                LOGGER.debug("{} processed from node {}:{}", name, first, buf); //$NON-NLS-1$
             }
+            evictIntermediateOutputs(source);
         } else {
             clearNodeIOCache();
         }
         return getLastNodeOutputImage();
     }
 
+    /**
+     * @return the index of the first node that must be processed, or the size of the list when the last output can be
+     *         reused
+     */
+    private int getFirstChangedNode() {
+        for (int i = 0; i < operations.size(); i++) {
+            ImageOpNode op = operations.get(i);
+            NodeState state = states.get(op);
+            long modCount = op.getModificationCount();
+            if (state == null || modCount < 0 || modCount != state.modificationCount
+                || op.getParam(Param.INPUT_IMG) != state.input
+                || (op.getParam(Param.OUTPUT_IMG) == null && !state.evicted)) {
+                return i;
+            }
+        }
+        return operations.size();
+    }
+
+    /**
+     * Removes the outputs of the nodes from the beginning of the chain when the intermediate outputs exceed the
+     * budget. The outputs closest to the end of the chain are the most useful for the interactive changes.
+     */
+    private void evictIntermediateOutputs(PlanarImage source) {
+        int size = operations.size();
+        Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        counted.add(source);
+        long bytes = 0;
+        boolean evict = false;
+        for (int i = size - 2; i >= 0; i--) {
+            ImageOpNode op = operations.get(i);
+            Object out = op.getParam(Param.OUTPUT_IMG);
+            if (out == null) {
+                continue;
+            }
+            if (!evict && counted.add(out) && out instanceof PlanarImage) {
+                bytes += ((PlanarImage) out).physicalBytes();
+                evict = bytes > MAX_CACHED_BYTES;
+            }
+            if (evict) {
+                op.setParam(Param.OUTPUT_IMG, null);
+                operations.get(i + 1).setParam(Param.INPUT_IMG, null);
+                NodeState next = states.get(operations.get(i + 1));
+                if (next != null) {
+                    next.input = null;
+                }
+                NodeState state = states.get(op);
+                if (state != null) {
+                    state.evicted = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param node
+     *            a node of this manager
+     * @return the execution time in nanoseconds of the last processing of this node, or -1 if it has not been
+     *         processed
+     */
+    public long getLastProcessingTime(ImageOpNode node) {
+        NodeState state = states.get(node);
+        return state == null ? -1 : state.lastTime;
+    }
+
+    /**
+     * @param node
+     *            a node of this manager
+     * @return the number of executions of this node
+     */
+    public long getProcessingCount(ImageOpNode node) {
+        NodeState state = states.get(node);
+        return state == null ? 0 : state.count;
+    }
+
+    /**
+     * @param node
+     *            a node of this manager
+     * @return the total execution time in nanoseconds of this node
+     */
+    public long getTotalProcessingTime(ImageOpNode node) {
+        NodeState state = states.get(node);
+        return state == null ? 0 : state.totalTime;
+    }
+
     @Override
     public Object getParamValue(String opName, String param) {
         if (opName != null && param != null) {
@@ -281,4 +407,21 @@ public class SimpleOpManager implements OpManager {
         return new SimpleOpManager(this);
     }
 
+    private static final class NodeState {
+        long modificationCount;
+        Object input;
+        boolean evicted;
+        long lastTime;
+        long totalTime;
+        long count;
+
+        void update(ImageOpNode op, long time) {
+            this.modificationCount = op.getModificationCount();
+            this.input = op.getParam(Param.INPUT_IMG);
+            this.evicted = false;
+            this.lastTime = time;
+            this.totalTime += time;
+            this.count++;
+        }
+    }
 }
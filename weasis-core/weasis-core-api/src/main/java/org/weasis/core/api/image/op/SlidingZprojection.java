@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.op;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.weasis.core.api.gui.task.TaskInterruptionException;
+import org.weasis.core.api.gui.task.TaskMonitor;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+/**
+ * Computes the projections (min, max or mean) of a window sliding along a stack of images, where each source image is
+ * read only once.
+ * <p>
+ * The projection of the window starting at the index <i>n</i> is returned by the <i>n</i>th call of {@link #next()}.
+ * The window contains <code>window</code> images and is truncated at the end of the stack.
+ * <p>
+ * The mean is a running sum (add the image entering the window, subtract the image leaving it). The min and max use
+ * the van Herk/Gil-Werman decomposition: the stack is split into blocks of the window size, and a window is the
+ * combination of a suffix of one block and a prefix of the next one. This requires at most three operations per
+ * window whatever its size. The operations are applied in parallel on horizontal bands of the images.
+ */
+public class SlidingZprojection {
+
+    public enum Projection {
+        MIN, MAX, MEAN
+    }
+
+    private static final int PARALLEL_MIN_PIXELS = 512 * 512;
+    private static final int BAND_MIN_ROWS = 64;
+
+    private final List<? extends ImageElement> sources;
+    private final int window;
+    private final Projection projection;
+    private final TaskMonitor taskMonitor;
+
+    private int width = -1;
+    private int height = -1;
+    private int type;
+
+    private int start = 0;
+    // Next source to read
+    private int readIndex = 0;
+
+    // Min/Max: suffixes of the current block and prefix of the next block
+    private int blockStart = -1;
+    private Mat[] suffixes;
+    private Mat[] nextBlock;
+    private Mat prefix;
+
+    // Mean: images of the window and their sum
+    private final Deque<Mat> windowImages = new ArrayDeque<>();
+    private Mat sum;
+
+    public SlidingZprojection(List<? extends ImageElement> sources, int window, Projection projection,
+        TaskMonitor taskMonitor) {
+        if (sources == null || projection == null) {
+            throw new IllegalArgumentException("Sources and projection cannot be null!"); //$NON-NLS-1$
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must contain at least one image!"); //$NON-NLS-1$
+        }
+        this.sources = sources;
+        this.window = window;
+        this.projection = projection;
+        this.taskMonitor = taskMonitor;
+    }
+
+    public boolean hasNext() {
+        return start < sources.size();
+    }
+
+    /**
+     * @return the projection of the next window, or null when no image of the window can be read.
+     */
+    public PlanarImage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        checkAborting();
+        PlanarImage result = projection == Projection.MEAN ? nextMean() : nextMinMax();
+        start++;
+        return result;
+    }
+
+    public void dispose() {
+        release(suffixes);
+        release(nextBlock);
+        release(prefix);
+        suffixes = null;
+        nextBlock = null;
+        prefix = null;
+        for (Mat m : windowImages) {
+            release(m);
+        }
+        windowImages.clear();
+        release(sum);
+        sum = null;
+    }
+
+    private int lastIndex() {
+        return Math.min(start + window, sources.size()) - 1;
+    }
+
+    private PlanarImage nextMean() {
+        int end = lastIndex();
+        while (readIndex <= end) {
+            Mat img = readSource(readIndex++);
+            Mat val = null;
+            if (img != null) {
+                // Accumulate in float, also required for 16-bit signed images
+                val = new Mat();
+                img.convertTo(val, CvType.CV_32F);
+                if (sum == null) {
+                    sum = Mat.zeros(height, width, val.type());
+                }
+                apply(sum, val, sum, Core::add);
+            }
+            windowImages.addLast(val == null ? new Mat() : val);
+        }
+        while (windowImages.size() > end - start + 1) {
+            Mat old = windowImages.pollFirst();
+            if (!old.empty()) {
+                apply(sum, old, sum, Core::subtract);
+            }
+            old.release();
+        }
+
+        int nb = 0;
+        for (Mat m : windowImages) {
+            if (!m.empty()) {
+                nb++;
+            }
+        }
+        if (nb == 0) {
+            return null;
+        }
+        Mat mean = new Mat();
+        Core.divide(sum, new Scalar(nb), mean);
+        ImageCV dstImg = new ImageCV();
+        mean.convertTo(dstImg, type);
+        mean.release();
+        return dstImg;
+    }
+
+    private PlanarImage nextMinMax() {
+        if (blockStart < 0 || start >= blockStart + window) {
+            // Enter a new block: read the remaining images of the block and build the suffixes in place
+            blockStart = start;
+            int blockEnd = Math.min(blockStart + window, sources.size()) - 1;
+            readBlock(blockEnd);
+            release(suffixes);
+            suffixes = nextBlock;
+            nextBlock = new Mat[window];
+            release(prefix);
+            prefix = null;
+            for (int i = blockEnd - blockStart - 1; i >= 0; i--) {
+                suffixes[i] = combine(suffixes[i], suffixes[i + 1]);
+            }
+        }
+
+        Mat suffix = suffixes[start - blockStart];
+        int end = lastIndex();
+        if (end >= blockStart + window) {
+            // The window overlaps the next block
+            while (readIndex <= end) {
+                int k = readIndex - blockStart - window;
+                Mat img = readSource(readIndex++);
+                nextBlock[k] = img == null ? null : img.clone();
+                prefix = combine(prefix, nextBlock[k]);
+            }
+        }
+        Mat next = end < blockStart + window ? null : prefix;
+        if (suffix == null && next == null) {
+            return null;
+        }
+
+        ImageCV dstImg = new ImageCV(height, width, type);
+        if (suffix == null || next == null) {
+            (suffix == null ? next : suffix).copyTo(dstImg);
+        } else {
+            apply(suffix, next, dstImg, projection == Projection.MIN ? Core::min : Core::max);
+        }
+        return dstImg;
+    }
+
+    private void readBlock(int blockEnd) {
+        if (nextBlock == null) {
+            nextBlock = new Mat[window];
+        }
+        while (readIndex <= blockEnd) {
+            Mat img = readSource(readIndex);
+            nextBlock[readIndex - blockStart] = img == null ? null : img.clone();
+            readIndex++;
+        }
+    }
+
+    /**
+     * Combines two partial results, the first one is overwritten. A null value is an empty partial result.
+     */
+    private Mat combine(Mat acc, Mat val) {
+        if (val == null) {
+            return acc;
+        }
+        if (acc == null) {
+            return val.clone();
+        }
+        apply(acc, val, acc, projection == Projection.MIN ? Core::min : Core::max);
+        return acc;
+    }
+
+    /**
+     * @return the image at the index, or null when it cannot be read or has not the size of the first image.
+     */
+    private Mat readSource(int index) {
+        checkAborting();
+        PlanarImage image = sources.get(index).getImage(null, false);
+        if (image == null) {
+            return null;
+        }
+        if (width < 0) {
+            width = image.width();
+            height = image.height();
+            type = image.type();
+        }
+        if (image.width() != width || image.height() != height || image.type() != type) {
+            return null;
+        }
+        return image.toMat();
+    }
+
+    private void checkAborting() {
+        if (taskMonitor != null && taskMonitor.isAborting()) {
+            throw new TaskInterruptionException("Operation from " + this.getClass().getName() + " has been canceled"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    @FunctionalInterface
+    private interface BinaryOp {
+        void apply(Mat src1, Mat src2, Mat dst);
+    }
+
+    private static void apply(Mat src1, Mat src2, Mat dst, BinaryOp op) {
+        int rows = dst.rows();
+        int cols = dst.cols();
+        int nbBands = Math.min(Runtime.getRuntime().availableProcessors(), rows / BAND_MIN_ROWS);
+        if ((long) rows * cols < PARALLEL_MIN_PIXELS || nbBands < 2) {
+            op.apply(src1, src2, dst);
+            return;
+        }
+        int bandHeight = (rows + nbBands - 1) / nbBands;
+        IntStream.range(0, nbBands).parallel().forEach(b -> {
+            int y0 = b * bandHeight;
+            int y1 = Math.min(rows, y0 + bandHeight);
+            if (y0 < y1) {
+                Mat s1 = src1.submat(y0, y1, 0, cols);
+                Mat s2 = src2.submat(y0, y1, 0, cols);
+                Mat d = dst.submat(y0, y1, 0, cols);
+                op.apply(s1, s2, d);
+                s1.release();
+                s2.release();
+                d.release();
+            }
+        });
+    }
+
+    private static void release(Mat[] mats) {
+        if (mats != null) {
+            for (Mat m : mats) {
+                release(m);
+            }
+        }
+    }
+
+    private static void release(Mat mat) {
+        if (mat != null) {
+            mat.release();
+        }
+    }
+}
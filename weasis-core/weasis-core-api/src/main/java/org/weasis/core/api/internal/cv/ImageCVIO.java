@@ -11,6 +11,7 @@
 package org.weasis.core.api.internal.cv;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -22,7 +23,9 @@ import java.util.Objects;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
+import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.ObservableEvent;
@@ -111,6 +114,46 @@ public class ImageCVIO implements MediaReader {
         return null;
     }
 
+    /**
+     * Decodes the JPEG files with the DCT scaling of the native decoder (1/2, 1/4 or 1/8 of the size).
+     */
+    @Override
+    public PlanarImage getReducedImageFragment(MediaElement media, int size) throws Exception {
+        FileCache cache = Objects.requireNonNull(media).getFileCache();
+        if ("image/jpeg".equals(mimeType) && cache.getTransformedFile() == null) { //$NON-NLS-1$
+            File file = cache.getOriginalFile().orElse(null);
+            int factor = file == null ? 1 : getReductionFactor(file, size);
+            if (factor > 1) {
+                int flag;
+                if (factor == 8) {
+                    flag = Imgcodecs.IMREAD_REDUCED_COLOR_8;
+                } else if (factor == 4) {
+                    flag = Imgcodecs.IMREAD_REDUCED_COLOR_4;
+                } else {
+                    flag = Imgcodecs.IMREAD_REDUCED_COLOR_2;
+                }
+                return ImageProcessor.readImageWithCvException(file, flag);
+            }
+        }
+        return getImageFragment(media);
+    }
+
+    private int getReductionFactor(File file, int size) {
+        ImageReader reader = getDefaultReader(mimeType);
+        if (reader != null) {
+            // Read only the header for getting the size of the image
+            try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+                reader.setInput(in, true, true);
+                return ImageElement.getReductionFactor(reader.getWidth(0), reader.getHeight(0), size, 8);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read the size of {}", file, e); //$NON-NLS-1$
+            } finally {
+                reader.dispose();
+            }
+        }
+        return 1;
+    }
+
     private PlanarImage readImage(File file, boolean createTiledLayout) throws Exception {
         PlanarImage img = null;
         if (file.getPath().endsWith(".wcv")) { //$NON-NLS-1$
@@ -13,8 +13,6 @@ package org.weasis.core.api.internal.mime;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -41,6 +39,15 @@ public class MagicMimeEntry {
 
     boolean isBetween;
 
+    // Compiled rule
+    private int readLength;
+    private byte[] pattern;
+    private long value;
+    private long mask;
+    private boolean needMask;
+    // Maximum offset read by the entry and its sub-entries
+    private int endOffset;
+
     public MagicMimeEntry(List<String> entries) throws InvalidMagicMimeEntryException {
         this(0, null, entries);
     }
@@ -69,6 +76,11 @@ public class MagicMimeEntry {
                 break;
             }
         }
+
+        endOffset = type == UNKNOWN_TYPE ? 0 : checkBytesFrom + readLength;
+        for (MagicMimeEntry sub : subEntries) {
+            endOffset = Math.max(endOffset, sub.endOffset);
+        }
     }
 
     @Override
@@ -138,6 +150,71 @@ public class MagicMimeEntry {
         if (tokens.length > 4) {
             mimeEnc = tokens[4].trim();
         }
+        compile();
+    }
+
+    /**
+     * Converts the type and the content of the entry to the values used for matching.
+     */
+    private void compile() {
+        try {
+            if (STRING_TYPE == type) {
+                // Lets check if its a between test
+                int index = typeStr.indexOf(">"); //$NON-NLS-1$
+                pattern = new byte[content.length()];
+                for (int i = 0; i < pattern.length; i++) {
+                    char c = content.charAt(i);
+                    if (c > 0xFF) {
+                        throw new IllegalArgumentException("Not a byte value: " + c); //$NON-NLS-1$
+                    }
+                    pattern[i] = (byte) c;
+                }
+                if (index != -1) {
+                    readLength = Integer.parseInt(typeStr.substring(index + 1, typeStr.length() - 1));
+                    isBetween = true;
+                } else {
+                    readLength = pattern.length;
+                }
+            } else if (SHORT_TYPE == type || LESHORT_TYPE == type || BESHORT_TYPE == type) {
+                readLength = 2;
+                value = (short) parseValue();
+                if (SHORT_TYPE != type) {
+                    compileMask();
+                    mask = (short) mask;
+                }
+            } else if (LELONG_TYPE == type || BELONG_TYPE == type) {
+                readLength = 4;
+                value = parseValue();
+                compileMask();
+            } else if (BYTE_TYPE == type) {
+                readLength = 1;
+                // Compared to the signed byte value
+                value = content.charAt(0);
+            }
+        } catch (RuntimeException e) {
+            // Invalid rule, never matches
+            type = UNKNOWN_TYPE;
+        }
+    }
+
+    private long parseValue() {
+        if (content.startsWith("0x")) { //$NON-NLS-1$
+            return Long.parseLong(content.substring(2), 16);
+        } else if (content.startsWith("&")) { //$NON-NLS-1$
+            return Long.parseLong(content.substring(3), 16);
+        }
+        return Long.parseLong(content);
+    }
+
+    private void compileMask() {
+        int indx = typeStr.indexOf('&');
+        if (indx >= 0) {
+            mask = Long.parseLong(typeStr.substring(indx + 3), 16);
+            needMask = true;
+        } else if (content.startsWith("&")) { //$NON-NLS-1$
+            mask = Long.parseLong(content.substring(3), 16);
+            needMask = true;
+        }
     }
 
     private String ltrim(String s) {
@@ -185,248 +262,111 @@ public class MagicMimeEntry {
         return mimeType;
     }
 
+    /**
+     * @return the offset after the last byte read by the entry and its sub-entries
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
     public String getMatch(byte[] content) throws IOException {
-        ByteBuffer buf = readBuffer(content);
-        if (buf == null) {
-            return null;
-        }
-        buf.position(0);
-        boolean matches = match(buf);
-        if (matches) {
-            int subLen = subEntries.size();
-            String myMimeType = getMimeType();
-            if (subLen > 0) {
-                String mtype;
-                for (int k = 0; k < subLen; k++) {
-                    MagicMimeEntry me = subEntries.get(k);
-                    mtype = me.getMatch(content);
-                    if (mtype != null) {
-                        return mtype;
-                    }
-                }
-                if (myMimeType != null) {
-                    return myMimeType;
-                }
-            } else {
-                return myMimeType;
-            }
-        }
-        return null;
+        return content == null ? null : getMatch(content, content.length, null);
     }
 
     public String getMatch(RandomAccessFile raf) throws IOException {
-        ByteBuffer buf = readBuffer(raf);
-        if (buf == null) {
-            return null;
-        }
-        boolean matches = match(buf);
-        if (matches) {
-            String myMimeType = getMimeType();
-            if (!subEntries.isEmpty()) {
-                String mtype;
-                for (int i = 0; i < subEntries.size(); i++) {
-                    MagicMimeEntry me = subEntries.get(i);
-                    mtype = me.getMatch(raf);
-                    if (mtype != null) {
-                        return mtype;
-                    }
-                }
-                if (myMimeType != null) {
-                    return myMimeType;
-                }
-            } else {
-                return myMimeType;
-            }
-        }
-        return null;
+        return getMatch(new byte[0], 0, raf);
     }
 
-    /*
-     * private methods for reading to local buffer
+    /**
+     * @param data
+     *            the first bytes of the file
+     * @param length
+     *            the number of bytes of data
+     * @param raf
+     *            the file for reading the bytes beyond the data, can be null
+     * @return the mime type or null if not matching
+     * @throws IOException
      */
-    private ByteBuffer readBuffer(byte[] content) throws IOException {
-        int startPos = getCheckBytesFrom();
-        if (startPos > content.length) {
+    public String getMatch(byte[] data, int length, RandomAccessFile raf) throws IOException {
+        if (!matches(data, length, raf)) {
             return null;
         }
-
-        ByteBuffer buf;
-
-        if (STRING_TYPE == type) {
-            int len = getContent().length();
-            buf = ByteBuffer.allocate(len + 1);
-            buf.put(content, startPos, len);
-        } else if (SHORT_TYPE == type || LESHORT_TYPE == type || BESHORT_TYPE == type) {
-            buf = ByteBuffer.allocate(2);
-            buf.put(content, startPos, 2);
-        } else if (LELONG_TYPE == type || BELONG_TYPE == type) {
-            buf = ByteBuffer.allocate(4);
-            buf.put(content, startPos, 4);
-        } else if (BYTE_TYPE == type) {
-            buf = ByteBuffer.allocate(1);
-            buf.put(buf.array(), startPos, 1);
-        } else {
-            buf = null;
+        for (int i = 0; i < subEntries.size(); i++) {
+            String mtype = subEntries.get(i).getMatch(data, length, raf);
+            if (mtype != null) {
+                return mtype;
+            }
         }
-        return buf;
+        return getMimeType();
     }
 
-    private ByteBuffer readBuffer(RandomAccessFile raf) throws IOException {
-        int startPos = getCheckBytesFrom();
-        if (startPos > raf.length()) {
-            return null;
+    private boolean matches(byte[] data, int length, RandomAccessFile raf) throws IOException {
+        if (UNKNOWN_TYPE == type || type == 0) {
+            return false;
         }
-        raf.seek(startPos);
-
-        ByteBuffer buf;
-        if (STRING_TYPE == type) {
-            int len;
-            // Lets check if its a between test
-            int index = typeStr.indexOf(">"); //$NON-NLS-1$
-            if (index != -1) {
-                len = Integer.parseInt(typeStr.substring(index + 1, typeStr.length() - 1));
-                isBetween = true;
-            } else {
-                len = getContent().length();
-            }
-            buf = ByteBuffer.allocate(len + 1);
-            raf.read(buf.array(), 0, len);
-        } else if (SHORT_TYPE == type || LESHORT_TYPE == type || BESHORT_TYPE == type) {
-            buf = ByteBuffer.allocate(2);
-            raf.read(buf.array(), 0, 2);
-        } else if (LELONG_TYPE == type || BELONG_TYPE == type) {
-            buf = ByteBuffer.allocate(4);
-            raf.read(buf.array(), 0, 4);
-        } else if (BYTE_TYPE == type) {
-            buf = ByteBuffer.allocate(1);
-            raf.read(buf.array(), 0, 1);
-        } else {
-            buf = null;
+        int start = checkBytesFrom;
+        if (start + readLength <= length) {
+            return match(data, start);
         }
-        return buf;
-    }
 
-    /*
-     * private methods used for matching different types
-     */
-    private boolean match(ByteBuffer buf) throws IOException {
-        boolean matches;
-
-        if (STRING_TYPE == type) {
-            matches = matchString(buf);
-        } else if (SHORT_TYPE == type) {
-            matches = matchShort(buf, ByteOrder.BIG_ENDIAN, false, (short) 0xFF);
-        } else if (LESHORT_TYPE == type || BESHORT_TYPE == type) {
-            ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
-            if (getType() == MagicMimeEntry.LESHORT_TYPE) {
-                byteOrder = ByteOrder.LITTLE_ENDIAN;
-            }
-            boolean needMask = false;
-            short sMask = 0xFF;
-            int indx = typeStr.indexOf('&');
-            if (indx >= 0) {
-                sMask = (short) Integer.parseInt(typeStr.substring(indx + 3), 16);
-                needMask = true;
-            } else if (getContent().startsWith("&")) { //$NON-NLS-1$
-                sMask = (short) Integer.parseInt(getContent().substring(3), 16);
-                needMask = true;
-            }
-            matches = matchShort(buf, byteOrder, needMask, sMask);
-        } else if (LELONG_TYPE == type || BELONG_TYPE == type) {
-            ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
-            if (getType() == MagicMimeEntry.LELONG_TYPE) {
-                byteOrder = ByteOrder.LITTLE_ENDIAN;
-            }
-            boolean needMask = false;
-            long lMask = 0xFFFFFFFF;
-            int indx = typeStr.indexOf('&');
-            if (indx >= 0) {
-                lMask = Long.parseLong(typeStr.substring(indx + 3), 16);
-                needMask = true;
-            } else if (getContent().startsWith("&")) { //$NON-NLS-1$
-                lMask = Long.parseLong(getContent().substring(3), 16);
-                needMask = true;
-            }
-            matches = matchLong(buf, byteOrder, needMask, lMask);
-        } else if (BYTE_TYPE == type) {
-            matches = matchByte(buf);
-        } else {
-            matches = false;
+        // Beyond the buffer: the missing bytes are read from the file or are zero like at the end of the file
+        long fileLength = raf == null ? length : raf.length();
+        if (start > fileLength) {
+            return false;
         }
-
-        return matches;
+        byte[] buf = new byte[readLength];
+        if (raf != null && fileLength > length) {
+            raf.seek(start);
+            raf.read(buf, 0, readLength);
+        } else if (start < length) {
+            System.arraycopy(data, start, buf, 0, length - start);
+        }
+        return match(buf, 0);
     }
 
-    private boolean matchString(ByteBuffer bbuf) throws IOException {
-        if (isBetween) {
-            String buffer = new String(bbuf.array());
-            if (buffer.contains(getContent())) {
-                return true;
-            }
-            return false;
-        }
-        int read = getContent().length();
-        for (int j = 0; j < read; j++) {
-            if ((bbuf.get(j) & 0xFF) != getContent().charAt(j)) {
+    private boolean match(byte[] buf, int offset) {
+        switch (type) {
+            case STRING_TYPE:
+                return isBetween ? indexOf(buf, offset, readLength, pattern) >= 0 : startsWith(buf, offset, pattern);
+            case SHORT_TYPE:
+            case BESHORT_TYPE:
+                return matchValue((short) (((buf[offset] & 0xFF) << 8) | (buf[offset + 1] & 0xFF)));
+            case LESHORT_TYPE:
+                return matchValue((short) ((buf[offset] & 0xFF) | ((buf[offset + 1] & 0xFF) << 8)));
+            case BELONG_TYPE:
+                return matchValue(((buf[offset] & 0xFFL) << 24) | ((buf[offset + 1] & 0xFFL) << 16)
+                    | ((buf[offset + 2] & 0xFFL) << 8) | (buf[offset + 3] & 0xFFL));
+            case LELONG_TYPE:
+                return matchValue((buf[offset] & 0xFFL) | ((buf[offset + 1] & 0xFFL) << 8)
+                    | ((buf[offset + 2] & 0xFFL) << 16) | ((buf[offset + 3] & 0xFFL) << 24));
+            case BYTE_TYPE:
+                return buf[offset] == value;
+            default:
                 return false;
-            }
         }
-        return true;
     }
 
-    private boolean matchByte(ByteBuffer bbuf) throws IOException {
-        byte b = bbuf.get(0);
-        return b == getContent().charAt(0);
+    private boolean matchValue(long found) {
+        return value == (needMask ? found & mask : found);
     }
 
-    private boolean matchShort(ByteBuffer bbuf, ByteOrder bo, boolean needMask, short sMask) throws IOException {
-        bbuf.order(bo);
-        short got;
-        String testContent = getContent();
-        if (testContent.startsWith("0x")) { //$NON-NLS-1$
-            got = (short) Integer.parseInt(testContent.substring(2), 16);
-        } else if (testContent.startsWith("&")) { //$NON-NLS-1$
-            got = (short) Integer.parseInt(testContent.substring(3), 16);
-        } else {
-            got = (short) Integer.parseInt(testContent);
-        }
-
-        short found = bbuf.getShort();
-
-        if (needMask) {
-            found = (short) (found & sMask);
-        }
-
-        if (got != found) {
-            return false;
+    private static boolean startsWith(byte[] buf, int offset, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (buf[offset + j] != pattern[j]) {
+                return false;
+            }
         }
-
         return true;
     }
 
-    private boolean matchLong(ByteBuffer bbuf, ByteOrder bo, boolean needMask, long lMask) throws IOException {
-        bbuf.order(bo);
-        long got;
-        String testContent = getContent();
-        if (testContent.startsWith("0x")) { //$NON-NLS-1$
-            got = Long.parseLong(testContent.substring(2), 16);
-        } else if (testContent.startsWith("&")) { //$NON-NLS-1$
-            got = Long.parseLong(testContent.substring(3), 16);
-        } else {
-            got = Long.parseLong(testContent);
-        }
-
-        long found = Integer.toUnsignedLong(bbuf.getInt());
-
-        if (needMask) {
-            found = found & lMask;
-        }
-
-        if (got != found) {
-            return false;
+    private static int indexOf(byte[] buf, int offset, int length, byte[] pattern) {
+        int last = offset + length - pattern.length;
+        for (int i = offset; i <= last; i++) {
+            if (startsWith(buf, i, pattern)) {
+                return i;
+            }
         }
-
-        return true;
+        return -1;
     }
 
     /*
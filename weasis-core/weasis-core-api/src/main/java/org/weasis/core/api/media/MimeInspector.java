@@ -20,7 +20,9 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Properties;
@@ -58,6 +60,14 @@ public class MimeInspector {
 
     private static final Properties mimeTypes = new Properties();
     private static final ArrayList<MagicMimeEntry> mMagicMimeEntries = new ArrayList<>();
+    // First entry of each mime type
+    private static final Map<String, MagicMimeEntry> mMagicMimeTypes = new HashMap<>();
+
+    private static final String DICOM_MIME_TYPE = "application/dicom"; //$NON-NLS-1$
+    private static final int DICOM_PREAMBLE_LENGTH = 128;
+    private static final int MAX_PREFIX_LENGTH = 4096;
+    // Number of bytes read at the beginning of the file, the entries beyond are read from the file
+    private static final int PREFIX_LENGTH;
 
     // Initialize the class in preparation for mime type detection
     static {
@@ -81,6 +91,12 @@ public class MimeInspector {
                 LOGGER.error("Parse magic mime-types", e); //$NON-NLS-1$
             }
         }
+
+        int length = DICOM_PREAMBLE_LENGTH + 4;
+        for (MagicMimeEntry me : mMagicMimeEntries) {
+            length = Math.max(length, me.getEndOffset());
+        }
+        PREFIX_LENGTH = Math.min(MAX_PREFIX_LENGTH, length);
     }
 
     private MimeInspector() {
@@ -96,7 +112,9 @@ public class MimeInspector {
         if (me != null) {
             // Otherwise find Mime Type from the magic number in file
             try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {//$NON-NLS-1$
-                if (mimeType.equals(me.getMatch(raf))) {
+                // Read only the bytes of the entry
+                byte[] prefix = readPrefix(raf, me.getEndOffset());
+                if (mimeType.equals(me.getMatch(prefix, prefix.length, raf))) {
                     return true;
                 }
             } catch (IOException e) {
@@ -211,15 +229,24 @@ public class MimeInspector {
         try {
             MagicMimeEntry magicEntry = new MagicMimeEntry(aStringArray);
             mMagicMimeEntries.add(magicEntry);
+            if (magicEntry.getMimeType() != null) {
+                mMagicMimeTypes.putIfAbsent(magicEntry.getMimeType(), magicEntry);
+            }
         } catch (InvalidMagicMimeEntryException e) {
             LOGGER.error("Error when adding mime {}", aStringArray, e); //$NON-NLS-1$
         }
     }
 
-    private static String getMagicMimeType(RandomAccessFile raf) throws IOException {
+    // Package-private for testing the number of reads
+    static String getMagicMimeType(RandomAccessFile raf) throws IOException {
+        // One read for all the entries
+        byte[] prefix = readPrefix(raf, PREFIX_LENGTH);
+        if (isDicomPreamble(prefix)) {
+            return DICOM_MIME_TYPE;
+        }
         for (int i = 0; i < mMagicMimeEntries.size(); i++) {
             MagicMimeEntry me = mMagicMimeEntries.get(i);
-            String mtype = me.getMatch(raf);
+            String mtype = me.getMatch(prefix, prefix.length, raf);
             if (mtype != null) {
                 return mtype;
             }
@@ -227,15 +254,29 @@ public class MimeInspector {
         return null;
     }
 
-    private static MagicMimeEntry getMagicMimeEntry(String mimeType) {
-        if (mimeType != null) {
-            for (MagicMimeEntry m : mMagicMimeEntries) {
-                if (mimeType.equals(m.getMimeType())) {
-                    return m;
-                }
+    private static byte[] readPrefix(RandomAccessFile raf, int maxLength) throws IOException {
+        int length = (int) Math.min(maxLength, raf.length());
+        byte[] prefix = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = raf.read(prefix, offset, length - offset);
+            if (n < 0) {
+                return Arrays.copyOf(prefix, offset);
             }
+            offset += n;
         }
-        return null;
+        return prefix;
+    }
+
+    // "DICM" after the preamble, the first entry of the magic numbers
+    private static boolean isDicomPreamble(byte[] prefix) {
+        int i = DICOM_PREAMBLE_LENGTH;
+        return prefix.length >= i + 4 && prefix[i] == 'D' && prefix[i + 1] == 'I' && prefix[i + 2] == 'C'
+            && prefix[i + 3] == 'M';
+    }
+
+    private static MagicMimeEntry getMagicMimeEntry(String mimeType) {
+        return mimeType == null ? null : mMagicMimeTypes.get(mimeType);
     }
 
     // Utility method to get the major part of a mime type
@@ -10,17 +10,27 @@
  *******************************************************************************/
 package org.weasis.core.api.media.data;
 
+import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
+import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.opencv.imgproc.Imgproc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.ActionW;
@@ -31,7 +41,7 @@ import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.ZoomOp;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.Unit;
-import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
@@ -39,10 +49,15 @@ import org.weasis.opencv.op.ImageProcessor;
 public class ImageElement extends MediaElement {
     private static final Logger LOGGER = LoggerFactory.getLogger(ImageElement.class);
 
-    public static final ExecutorService IMAGE_LOADER = ThreadUtil.buildNewSingleThreadExecutor("Image Loader"); //$NON-NLS-1$
+    public static final ImageLoader IMAGE_LOADER = new ImageLoader("Image Loader"); //$NON-NLS-1$
+
+    /**
+     * Maximum size in MB of the images kept in native memory. By default, half of the maximum heap size.
+     */
+    public static final String P_CACHE_MAX_MEMORY = "weasis.image.cache.max.memory"; //$NON-NLS-1$
 
     private static final NativeCache<ImageElement, PlanarImage> mCache =
-        new NativeCache<ImageElement, PlanarImage>(Runtime.getRuntime().maxMemory() / 2) {
+        new NativeCache<ImageElement, PlanarImage>(getCacheMaxMemory()) {
 
             @Override
             protected void afterEntryRemove(ImageElement key, PlanarImage img) {
@@ -60,6 +75,26 @@ public class ImageElement extends MediaElement {
             }
         };
  
+    /**
+     * Maximum size in MB of the reduced images of the pyramids kept in native memory. By default, a quarter of the
+     * image cache.
+     */
+    public static final String P_PYRAMID_MAX_MEMORY = "weasis.image.pyramid.max.memory"; //$NON-NLS-1$
+
+    private static final NativeCache<PyramidKey, PlanarImage> pyramidCache =
+        new NativeCache<PyramidKey, PlanarImage>(getPyramidMaxMemory()) {
+
+            @Override
+            protected void afterEntryRemove(PyramidKey key, PlanarImage img) {
+                if (img != null) {
+                    img.release();
+                }
+            }
+        };
+
+    // Series displayed by each owner of pinned images, guarded by itself
+    private static final Map<Object, MediaSeries<?>> PINNED_SERIES = new ConcurrentHashMap<>();
+
     protected boolean readable = true;
 
     protected double pixelSizeX = 1.0;
@@ -70,6 +105,10 @@ public class ImageElement extends MediaElement {
 
     protected Double minPixelValue;
     protected Double maxPixelValue;
+    // Min and max computed from a preview at a reduced resolution
+    private boolean previewMinMax = false;
+    // Decoding shared by all the threads asking for this image, null when the image is not being loaded
+    private final AtomicReference<FutureTask<PlanarImage>> loadingTask = new AtomicReference<>();
 
     public ImageElement(MediaReader mediaIO, Object key) {
         super(mediaIO, key);
@@ -79,6 +118,82 @@ public class ImageElement extends MediaElement {
         return mCache.size();
     }
 
+    private static long getCacheMaxMemory() {
+        long size = BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_CACHE_MAX_MEMORY, 0L);
+        return size > 0 ? size * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    private static long getPyramidMaxMemory() {
+        long size = BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_PYRAMID_MAX_MEMORY, 0L);
+        return size > 0 ? size * 1024L * 1024L : getCacheMaxMemory() / 4;
+    }
+
+    /**
+     * @return the hit, miss, eviction and memory counters of the image cache
+     */
+    public static String getCacheStatistics() {
+        return mCache.toString();
+    }
+
+    /**
+     * Protects the images of a series from being removed from the cache by images loaded elsewhere (e.g. the preloading
+     * of another series). The images are removed only when there is nothing else to free. The images added later to
+     * the series (e.g. while downloading) are also protected.
+     *
+     * @param owner
+     *            the owner of the pinned images (e.g. a view), replaces the images previously pinned by this owner
+     * @param series
+     *            the series of the images to protect
+     */
+    public static void pinInCache(Object owner, MediaSeries<? extends MediaElement> series) {
+        if (owner == null) {
+            return;
+        }
+        if (series == null) {
+            unpinInCache(owner);
+            return;
+        }
+        synchronized (PINNED_SERIES) {
+            PINNED_SERIES.put(owner, series);
+            mCache.pin(owner, getImages(series.copyOfMedias(null, null)));
+        }
+    }
+
+    public static void unpinInCache(Object owner) {
+        if (owner != null) {
+            synchronized (PINNED_SERIES) {
+                PINNED_SERIES.remove(owner);
+                mCache.unpin(owner);
+            }
+        }
+    }
+
+    /**
+     * Pins the images added to a series displayed by an owner.
+     */
+    static void pinAddedMedias(MediaSeries<?> series, Collection<? extends MediaElement> medias) {
+        if (PINNED_SERIES.isEmpty() || medias.isEmpty()) {
+            return;
+        }
+        synchronized (PINNED_SERIES) {
+            for (Map.Entry<Object, MediaSeries<?>> e : PINNED_SERIES.entrySet()) {
+                if (e.getValue() == series) {
+                    mCache.addPinned(e.getKey(), getImages(medias));
+                }
+            }
+        }
+    }
+
+    private static List<ImageElement> getImages(Collection<? extends MediaElement> medias) {
+        List<ImageElement> images = new ArrayList<>(medias.size());
+        for (MediaElement m : medias) {
+            if (m instanceof ImageElement) {
+                images.add((ImageElement) m);
+            }
+        }
+        return images;
+    }
+
     protected void findMinMaxValues(PlanarImage img, boolean exclude8bitImage) throws OutOfMemoryError {
         // This function can be called several times from the inner class Load.
         // Do not compute min and max it has already be done
@@ -108,6 +223,30 @@ public class ImageElement extends MediaElement {
         return maxPixelValue != null && minPixelValue != null;
     }
 
+    /**
+     * Clears the min and max values to compute them again from the next image.
+     */
+    protected void resetMinMaxValues() {
+        this.minPixelValue = null;
+        this.maxPixelValue = null;
+    }
+
+    /**
+     * Returns the key identifying the default rendering of this image across sessions (e.g. for the persistent
+     * thumbnails). The default key is based on the local file, its size and its modification date.
+     *
+     * @return the key or null when the image cannot be identified across sessions
+     */
+    public String getThumbnailKey() {
+        if (getFileCache().isLocalFile()) {
+            File file = getFileCache().getOriginalFile().orElse(null);
+            if (file != null && file.canRead()) {
+                return file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified() + '|' + getKey();
+            }
+        }
+        return null;
+    }
+
     protected boolean isGrayImage(RenderedImage source) {
         // Binary images have indexColorModel
         if (source.getSampleModel().getNumBands() > 1 || source.getColorModel() instanceof IndexColorModel) {
@@ -230,13 +369,53 @@ public class ImageElement extends MediaElement {
     }
 
     public boolean isImageInCache() {
-        return mCache.get(this) != null;
+        return mCache.containsKey(this);
     }
 
     public void removeImageFromCache() {
         mCache.remove(this);
     }
 
+    /**
+     * Returns a level of the multi-resolution pyramid of an image of this element. The level <i>n</i> has the size of
+     * the source divided by 2<sup>n</sup> (rounded down) and is built lazily from the level <i>n-1</i>. The reduced
+     * levels are kept in a native cache as long as the source is the same instance (e.g. the output of the
+     * preprocessing).
+     * <p>
+     * The pixel (x, y) of the level <i>n</i> is centered on the pixel (f * x + (f - 1) / 2, f * y + (f - 1) / 2) of
+     * the source, where f = 2<sup>n</sup>.
+     *
+     * @param source
+     *            the image at full resolution of this element
+     * @param level
+     *            the level of the pyramid, 0 is the source
+     * @return the image of the level, or the source when the level is 0 or cannot be built
+     */
+    public PlanarImage getPyramidImage(PlanarImage source, int level) {
+        if (source == null || level <= 0) {
+            return source;
+        }
+        PyramidKey key = new PyramidKey(this, source, level);
+        PlanarImage img = pyramidCache.get(key);
+        if (img == null) {
+            synchronized (this) {
+                img = pyramidCache.get(key);
+                if (img == null) {
+                    PlanarImage previous = getPyramidImage(source, level - 1);
+                    int width = previous.width() / 2;
+                    int height = previous.height() / 2;
+                    if (width < 1 || height < 1) {
+                        return previous;
+                    }
+                    // Area interpolation: each pixel is the mean of 2x2 pixels, in the same data type
+                    img = ImageProcessor.scale(previous.toMat(), new Dimension(width, height), Imgproc.INTER_AREA);
+                    pyramidCache.put(key, img);
+                }
+            }
+        }
+        return img;
+    }
+
     public boolean hasSameSize(ImageElement image) {
         if (image != null) {
             PlanarImage img = getImage();
@@ -349,22 +528,65 @@ public class ImageElement extends MediaElement {
         return getMediaURI().toString();
     }
 
-    public synchronized PlanarImage getImage(OpManager manager, boolean findMinMax) {
+    public PlanarImage getImage(OpManager manager, boolean findMinMax) {
+        // When the image is already queued (e.g. by the preloading), decode it before the other pending tasks
+        IMAGE_LOADER.setPriority(this, ImageLoader.getContextPriority());
+        return getImageSync(manager, findMinMax);
+    }
+
+    private PlanarImage getImageSync(OpManager manager, boolean findMinMax) {
+        // The monitor must not be held while waiting for the decoding, the decoding threads can require it
+        PlanarImage cacheImage;
         try {
-            return getCacheImage(startImageLoading(), manager, findMinMax);
+            cacheImage = startImageLoading();
         } catch (OutOfMemoryError e1) {
             LOGGER.warn("Out of MemoryError: {}", this, e1); //$NON-NLS-1$
-            
+
             mCache.expungeStaleEntries();
             CvUtil.runGarbageCollectorAndWait(100);
 
-            return getCacheImage(startImageLoading(), manager, findMinMax);
+            cacheImage = startImageLoading();
+        }
+        synchronized (this) {
+            return getCacheImage(cacheImage, manager, findMinMax);
         }
     }
 
+    /**
+     * Loads the image in the cache from the current thread, unless it is already in the cache or being loaded by
+     * another thread.
+     *
+     * @return true if the image has been loaded by this call
+     * @throws OutOfMemoryError
+     *             when there is not enough memory for decoding the image
+     */
+    public boolean preloadImage() throws OutOfMemoryError {
+        if (!readable || mCache.containsKey(this)) {
+            return false;
+        }
+        FutureTask<PlanarImage> task = claimLoading();
+        if (task == null) {
+            return false;
+        }
+        task.run();
+        PlanarImage img = getLoadingResult(task);
+        if (img == null) {
+            return false;
+        }
+        synchronized (this) {
+            getCacheImage(img, null, true);
+        }
+        return true;
+    }
+
     private PlanarImage getCacheImage(PlanarImage cacheImage, OpManager manager, boolean findMinMax) {
         if (findMinMax) {
             try {
+                if (previewMinMax && cacheImage != null) {
+                    // The values of the preview can miss the extrema of the full resolution
+                    previewMinMax = false;
+                    resetMinMaxValues();
+                }
                 findMinMaxValues(cacheImage, true);
             } catch (Exception e) {
                 mCache.remove(this);
@@ -390,39 +612,132 @@ public class ImageElement extends MediaElement {
         return getImage(null);
     }
 
+    /**
+     * Returns an image for building a preview (e.g. a thumbnail). When the image is not in the cache, the reader can
+     * decode it at a reduced resolution and the image is not put in the cache.
+     *
+     * @param size
+     *            the minimal size of the largest side of the image
+     * @return the image or null if it cannot be read
+     */
+    public PlanarImage getPreviewImage(int size) {
+        if (mCache.containsKey(this) || !readable) {
+            return getImage(null);
+        }
+        Callable<PlanarImage> task = () -> mediaIO.getReducedImageFragment(this, size);
+        PlanarImage img = null;
+        try {
+            if (IMAGE_LOADER.isLoaderThread()) {
+                img = task.call();
+            } else {
+                img = IMAGE_LOADER.submit(task, ImageLoader.getContextPriority(), null, null).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("Cannot read the preview of {}", this, e); //$NON-NLS-1$
+        }
+        if (img == null || img.width() <= 0) {
+            return null;
+        }
+        synchronized (this) {
+            if (!isImageAvailable()) {
+                findMinMaxValues(img, true);
+                // Computed again when the image at full resolution is loaded
+                previewMinMax = true;
+            }
+        }
+        return img;
+    }
+
+    /**
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @param size
+     *            the minimal size of the largest side of the reduced image
+     * @param maxFactor
+     *            the maximal reduction factor supported by the codec
+     * @return the largest power of 2 lower or equal to maxFactor which keeps the largest side above size, 1 when the
+     *         image cannot be reduced
+     */
+    public static int getReductionFactor(int width, int height, int size, int maxFactor) {
+        int max = Math.max(width, height);
+        int factor = 1;
+        while (factor * 2 <= maxFactor && max / (factor * 2) >= size) {
+            factor *= 2;
+        }
+        return factor;
+    }
+
     private PlanarImage startImageLoading() throws OutOfMemoryError {
-        PlanarImage cacheImage;
-        if ((cacheImage = mCache.get(this)) == null && readable && setAsLoading()) {
-            LOGGER.debug("Asking for reading image: {}", this); //$NON-NLS-1$
-            Load ref = new Load();
-            Future<PlanarImage> future = IMAGE_LOADER.submit(ref);
-            PlanarImage img = null;
-            try {
-                img = future.get();
-
-            } catch (InterruptedException e) {
-                // Re-assert the thread's interrupted status
-                Thread.currentThread().interrupt();
-                // We don't need the result, so cancel the task too
-                future.cancel(true);
-            } catch (ExecutionException e) {
-                if (e.getCause() instanceof OutOfMemoryError) {
-                    setAsLoaded();
-                    throw (OutOfMemoryError) e.getCause();
-                } else {
-                    readable = false;
-                    LOGGER.error("Cannot read pixel data!: {}", this, e); //$NON-NLS-1$
-                }
+        FutureTask<PlanarImage> task;
+        while ((task = loadingTask.get()) == null) {
+            PlanarImage cacheImage = mCache.get(this);
+            if (cacheImage != null || !readable) {
+                return cacheImage;
             }
-            if (img != null) {
-                readable = img.width() > 0;
-                if (readable) {
-                    mCache.put(this, img);
-                    cacheImage = img;
-                    this.setTag(TagW.ImageCache, true);
+            task = claimLoading();
+            if (task != null) {
+                LOGGER.debug("Asking for reading image: {}", this); //$NON-NLS-1$
+                if (!IMAGE_LOADER.isLoaderThread()) {
+                    FutureTask<PlanarImage> decoding = task;
+                    IMAGE_LOADER.submit(() -> {
+                        decoding.run();
+                        return null;
+                    }, ImageLoader.getContextPriority(), this, null);
                 }
+                break;
+            }
+        }
+        if (IMAGE_LOADER.isLoaderThread()) {
+            // Already in a decoding thread, waiting for a pending task of the pool could lead to a deadlock. Runs the
+            // decoding here, or waits for its end when it is already running in another thread.
+            task.run();
+        }
+        return getLoadingResult(task);
+    }
+
+    /**
+     * Claims atomically the loading of this image. Only one thread can claim it until the end of the decoding, the
+     * other threads must wait for the result of the returned task.
+     *
+     * @return the decoding task to run, or null when the image is already being loaded
+     */
+    private FutureTask<PlanarImage> claimLoading() {
+        FutureTask<PlanarImage> task = new FutureTask<>(new Load());
+        if (loadingTask.compareAndSet(null, task)) {
+            setAsLoading();
+            return task;
+        }
+        return null;
+    }
+
+    private PlanarImage getLoadingResult(Future<PlanarImage> task) throws OutOfMemoryError {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            // Re-assert the thread's interrupted status, the decoding goes on for the other threads
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OutOfMemoryError) {
+                throw (OutOfMemoryError) e.getCause();
+            }
+            LOGGER.error("Cannot read pixel data!: {}", this, e); //$NON-NLS-1$
+        }
+        return null;
+    }
+
+    private PlanarImage putInCache(PlanarImage img) {
+        PlanarImage cacheImage = null;
+        if (img != null) {
+            readable = img.width() > 0;
+            if (readable) {
+                mCache.put(this, img);
+                cacheImage = img;
+                this.setTag(TagW.ImageCache, true);
             }
-            setAsLoaded();
         }
         return cacheImage;
     }
@@ -441,8 +756,55 @@ public class ImageElement extends MediaElement {
 
         @Override
         public PlanarImage call() throws Exception {
-            return loadImage();
+            try {
+                return putInCache(loadImage());
+            } catch (Exception e) {
+                // An OutOfMemoryError is not caught, the image can be loaded again after freeing memory
+                readable = false;
+                LOGGER.error("Cannot read pixel data!: {}", ImageElement.this, e); //$NON-NLS-1$
+                return null;
+            } finally {
+                // The image is in the cache before another thread can claim the loading
+                loadingTask.set(null);
+                setAsLoaded();
+            }
         }
     }
 
+    /**
+     * Key of a reduced image. The source is only weakly referenced and compared by identity, so that a cached level
+     * does not keep the full resolution image in memory.
+     */
+    private static final class PyramidKey {
+        private final ImageElement element;
+        private final WeakReference<PlanarImage> source;
+        private final int sourceHash;
+        private final int level;
+
+        PyramidKey(ImageElement element, PlanarImage source, int level) {
+            this.element = element;
+            this.source = new WeakReference<>(source);
+            this.sourceHash = System.identityHashCode(source);
+            this.level = level;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(element, sourceHash, level);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PyramidKey)) {
+                return false;
+            }
+            PyramidKey other = (PyramidKey) obj;
+            PlanarImage img = source.get();
+            return level == other.level && img != null && img == other.source.get()
+                && Objects.equals(element, other.element);
+        }
+    }
 }
@@ -0,0 +1,351 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+
+/**
+ * Multi-threaded executor for decoding pixel data. The pending tasks are ordered by {@link Priority} (the image
+ * displayed is always decoded before the neighbouring frames and the background preloading or thumbnails) and then by
+ * submission order.
+ * <p>
+ * A task can be submitted with a key (usually the media to decode) and a group (usually the series). The key allows
+ * changing the priority of a pending task, the group allows cancelling all the pending tasks which are not required
+ * anymore (e.g. when the user scrolls away or closes a series).
+ * <p>
+ * The number of threads can be set with the preference "weasis.image.loader.threads" (by default, the number of
+ * available processors minus one).
+ */
+public class ImageLoader extends ThreadPoolExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageLoader.class);
+
+    public static final String P_LOADER_THREADS = "weasis.image.loader.threads"; //$NON-NLS-1$
+
+    public enum Priority {
+        VISIBLE, NEIGHBOR, BACKGROUND
+    }
+
+    private static final ThreadLocal<Priority> CONTEXT_PRIORITY = new ThreadLocal<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Object, PriorityTask<?>> pendingTasks = new ConcurrentHashMap<>();
+    private final Statistics[] statistics;
+    private final ThreadGroup loaderThreads;
+
+    public ImageLoader(String name) {
+        this(name, getDefaultThreadNumber());
+    }
+
+    public ImageLoader(String name, int nThreads) {
+        super(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>());
+        this.loaderThreads = new ThreadGroup(name);
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        setThreadFactory(r -> {
+            Thread t = new Thread(loaderThreads, r, name + "-" + threadNumber.getAndIncrement()); //$NON-NLS-1$
+            t.setDaemon(true);
+            return t;
+        });
+        Priority[] priorities = Priority.values();
+        this.statistics = new Statistics[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            statistics[i] = new Statistics(priorities[i]);
+        }
+    }
+
+    public static int getDefaultThreadNumber() {
+        int defaultVal = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int val = BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_LOADER_THREADS, defaultVal);
+        return val < 1 ? defaultVal : val;
+    }
+
+    /**
+     * Set the priority of the tasks submitted by the current thread without explicit priority.
+     *
+     * @param priority
+     *            the priority or null to restore the default behavior
+     */
+    public static void setContextPriority(Priority priority) {
+        if (priority == null) {
+            CONTEXT_PRIORITY.remove();
+        } else {
+            CONTEXT_PRIORITY.set(priority);
+        }
+    }
+
+    /**
+     * @return the priority set by {@link #setContextPriority(Priority)}. Otherwise, VISIBLE for the Event Dispatch
+     *         Thread and NEIGHBOR for the other threads.
+     */
+    public static Priority getContextPriority() {
+        Priority p = CONTEXT_PRIORITY.get();
+        if (p == null) {
+            return SwingUtilities.isEventDispatchThread() ? Priority.VISIBLE : Priority.NEIGHBOR;
+        }
+        return p;
+    }
+
+    /**
+     * @return true if the current thread belongs to this executor. A loader thread must not wait for another task of
+     *         the same executor, it must run the task directly.
+     */
+    public boolean isLoaderThread() {
+        return Thread.currentThread().getThreadGroup() == loaderThreads;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PriorityTask<>(callable, getContextPriority(), null, null, sequence.getAndIncrement());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return newTaskFor(() -> {
+            runnable.run();
+            return value;
+        });
+    }
+
+    public <T> Future<T> submit(Callable<T> task, Priority priority, Object key, Object group) {
+        if (task == null || priority == null) {
+            throw new NullPointerException();
+        }
+        PriorityTask<T> ftask = new PriorityTask<>(task, priority, key, group, sequence.getAndIncrement());
+        if (key != null) {
+            PriorityTask<?> old = pendingTasks.put(key, ftask);
+            if (old != null && old != ftask) {
+                LOGGER.debug("Replace a pending decoding task: {}", key); //$NON-NLS-1$
+            }
+        }
+        execute(ftask);
+        return ftask;
+    }
+
+    /**
+     * Change the priority of a pending task. Has no effect when the task is already running or completed.
+     *
+     * @param key
+     *            the key of the task
+     * @param priority
+     *            the new priority
+     * @return true if the task has been rescheduled
+     */
+    public boolean setPriority(Object key, Priority priority) {
+        if (key == null || priority == null) {
+            return false;
+        }
+        PriorityTask<?> task = pendingTasks.get(key);
+        if (task != null && task.priority != priority && getQueue().remove(task)) {
+            task.getStatistics().queued.decrementAndGet();
+            task.priority = priority;
+            task.getStatistics().queued.incrementAndGet();
+            getQueue().offer(task);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cancel all the pending tasks of a group. The running tasks are not interrupted.
+     *
+     * @param group
+     *            the group of the tasks
+     * @return the number of cancelled tasks
+     */
+    public int cancel(Object group) {
+        if (group == null) {
+            return 0;
+        }
+        List<PriorityTask<?>> tasks = new ArrayList<>();
+        for (Runnable r : getQueue()) {
+            if (r instanceof PriorityTask && group.equals(((PriorityTask<?>) r).group)) {
+                tasks.add((PriorityTask<?>) r);
+            }
+        }
+        int nb = 0;
+        for (PriorityTask<?> t : tasks) {
+            if (t.cancel(false)) {
+                nb++;
+            }
+        }
+        if (nb > 0) {
+            LOGGER.debug("Cancel {} pending decoding tasks of {}", nb, group); //$NON-NLS-1$
+        }
+        return nb;
+    }
+
+    public Statistics getStatistics(Priority priority) {
+        return statistics[priority.ordinal()];
+    }
+
+    public void logStatistics() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Image loader with {} threads", getMaximumPoolSize()); //$NON-NLS-1$
+            for (Statistics s : statistics) {
+                LOGGER.debug("{}", s); //$NON-NLS-1$
+            }
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        if (r instanceof PriorityTask) {
+            PriorityTask<?> task = (PriorityTask<?>) r;
+            task.getStatistics().queued.decrementAndGet();
+            task.startTime = System.nanoTime();
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (r instanceof PriorityTask) {
+            PriorityTask<?> task = (PriorityTask<?>) r;
+            if (task.key != null) {
+                pendingTasks.remove(task.key, task);
+            }
+            if (task.startTime != 0L && !task.isCancelled()) {
+                task.getStatistics().addDecodingTime(System.nanoTime() - task.startTime);
+            }
+        }
+    }
+
+    public static class Statistics {
+        private final Priority priority;
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong cancelled = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+        private final AtomicLong maxTime = new AtomicLong();
+
+        Statistics(Priority priority) {
+            this.priority = priority;
+        }
+
+        void addDecodingTime(long nanos) {
+            completed.incrementAndGet();
+            totalTime.addAndGet(nanos);
+            long max;
+            while ((max = maxTime.get()) < nanos) {
+                if (maxTime.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public long getSubmitted() {
+            return submitted.get();
+        }
+
+        public long getQueueDepth() {
+            return queued.get();
+        }
+
+        public long getCompleted() {
+            return completed.get();
+        }
+
+        public long getCancelled() {
+            return cancelled.get();
+        }
+
+        /**
+         * @return the average decoding time in milliseconds
+         */
+        public double getMeanDecodingTime() {
+            long nb = completed.get();
+            return nb == 0 ? 0.0 : totalTime.get() / (nb * 1_000_000.0);
+        }
+
+        /**
+         * @return the maximum decoding time in milliseconds
+         */
+        public double getMaxDecodingTime() {
+            return maxTime.get() / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: submitted=%d queued=%d completed=%d cancelled=%d mean=%.1f ms max=%.1f ms", //$NON-NLS-1$
+                priority, getSubmitted(), getQueueDepth(), getCompleted(), getCancelled(), getMeanDecodingTime(),
+                getMaxDecodingTime());
+        }
+    }
+
+    class PriorityTask<V> extends FutureTask<V> implements Comparable<PriorityTask<?>> {
+        private final Object key;
+        private final Object group;
+        private final long seq;
+        private volatile Priority priority;
+        private volatile long startTime;
+
+        PriorityTask(Callable<V> callable, Priority priority, Object key, Object group, long seq) {
+            super(callable);
+            this.priority = priority;
+            this.key = key;
+            this.group = group;
+            this.seq = seq;
+            Statistics s = getStatistics();
+            s.submitted.incrementAndGet();
+            s.queued.incrementAndGet();
+        }
+
+        Statistics getStatistics() {
+            return statistics[priority.ordinal()];
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean notStarted = startTime == 0L;
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                Statistics s = getStatistics();
+                s.cancelled.incrementAndGet();
+                if (notStarted && getQueue().remove(this)) {
+                    s.queued.decrementAndGet();
+                }
+                if (key != null) {
+                    pendingTasks.remove(key, this);
+                }
+            }
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(PriorityTask<?> o) {
+            int c = Integer.compare(priority.ordinal(), o.priority.ordinal());
+            return c == 0 ? Long.compare(seq, o.seq) : c;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Map of tags made of a base map shared by several elements (e.g. the frames of a multi-frame instance) and of the
+ * values specific to one element.
+ * <p>
+ * The base map is never modified: a new value, a removed tag or a cleared map is only recorded in this map. A value
+ * equal to the value of the base map is not stored, and a value equal to the last value put for the same tag in a map
+ * sharing the same pool is replaced by the pooled instance, so the strings and the arrays repeated in the elements are
+ * stored once. Reading a tag is a lookup in the small map of the element followed by a lookup in the base map.
+ */
+public final class LayeredTagMap extends AbstractMap<TagW, Object> {
+    // Marks a tag of the base map removed from this map
+    private static final Object REMOVED = new Object();
+    // Marks a null value
+    private static final Object NULL = new Object();
+
+    private final Map<TagW, Object> base;
+    private final Map<TagW, Object> pool;
+    private final Map<TagW, Object> values = new HashMap<>(8);
+    private boolean baseCleared = false;
+
+    public LayeredTagMap(Map<TagW, Object> base) {
+        this(base, null);
+    }
+
+    /**
+     * @param base
+     *            the shared tags, must not be modified while they are used by this map
+     * @param pool
+     *            the last values of the maps sharing the same base, can be null
+     */
+    public LayeredTagMap(Map<TagW, Object> base, Map<TagW, Object> pool) {
+        this.base = Objects.requireNonNull(base);
+        this.pool = pool;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object val = values.get(key);
+        if (val == null) {
+            return baseCleared ? null : base.get(key);
+        }
+        return val == REMOVED || val == NULL ? null : val;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Object val = values.get(key);
+        if (val == null) {
+            return !baseCleared && base.containsKey(key);
+        }
+        return val != REMOVED;
+    }
+
+    @Override
+    public Object put(TagW key, Object value) {
+        Object old = get(key);
+        if (isInBase(key) && isSharable(value) && Objects.deepEquals(base.get(key), value)) {
+            values.remove(key);
+        } else {
+            values.put(key, value == null ? NULL : getPooledValue(key, value));
+        }
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object old = get(key);
+        if (isInBase(key)) {
+            values.put((TagW) key, REMOVED);
+        } else {
+            values.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        values.clear();
+        baseCleared = true;
+    }
+
+    @Override
+    public int size() {
+        int size = baseCleared ? 0 : base.size();
+        for (Entry<TagW, Object> entry : values.entrySet()) {
+            boolean inBase = isInBase(entry.getKey());
+            if (entry.getValue() == REMOVED) {
+                if (inBase) {
+                    size--;
+                }
+            } else if (!inBase) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<TagW, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+    private boolean isInBase(Object key) {
+        return !baseCleared && base.containsKey(key);
+    }
+
+    private Object getPooledValue(TagW key, Object value) {
+        if (pool == null || !isSharable(value)) {
+            return value;
+        }
+        Object last = pool.get(key);
+        if (last != null && Objects.deepEquals(last, value)) {
+            return last;
+        }
+        pool.put(key, value);
+        return value;
+    }
+
+    private static boolean isSharable(Object value) {
+        if (value == null) {
+            return false;
+        }
+        Class<?> clazz = value.getClass();
+        if (clazz.isArray()) {
+            Class<?> type = clazz.getComponentType();
+            return type.isPrimitive() || type == String.class;
+        }
+        return value instanceof String || value instanceof Number;
+    }
+
+    private Map<TagW, Object> merge() {
+        Map<TagW, Object> map = new HashMap<>(baseCleared ? values : base);
+        if (!baseCleared) {
+            for (Entry<TagW, Object> entry : values.entrySet()) {
+                Object val = entry.getValue();
+                if (val == REMOVED) {
+                    map.remove(entry.getKey());
+                } else {
+                    map.put(entry.getKey(), val);
+                }
+            }
+        }
+        map.replaceAll((k, v) -> v == NULL ? null : v);
+        return map;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<TagW, Object>> {
+
+        @Override
+        public Iterator<Entry<TagW, Object>> iterator() {
+            // Iterates on a copy, the changes are written in the map
+            final Iterator<Entry<TagW, Object>> iter = merge().entrySet().iterator();
+            return new Iterator<Entry<TagW, Object>>() {
+                private Entry<TagW, Object> last;
+
+                @Override
+                public boolean hasNext() {
+                    return iter.hasNext();
+                }
+
+                @Override
+                public Entry<TagW, Object> next() {
+                    Entry<TagW, Object> entry = iter.next();
+                    last = new SimpleEntry<TagW, Object>(entry) {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        public Object setValue(Object value) {
+                            LayeredTagMap.this.put(getKey(), value);
+                            return super.setValue(value);
+                        }
+                    };
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    LayeredTagMap.this.remove(last.getKey());
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return LayeredTagMap.this.size();
+        }
+    }
+}
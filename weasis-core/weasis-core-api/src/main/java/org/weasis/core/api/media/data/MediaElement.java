@@ -11,7 +11,10 @@
 package org.weasis.core.api.media.data;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -19,10 +22,15 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.util.FileUtil;
 
 public class MediaElement implements Tagable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MediaElement.class);
 
     // Metadata of the media
     protected final Map<TagW, Object> tags;
@@ -31,7 +39,8 @@ public class MediaElement implements Tagable {
     // Key to identify the media (the URI passed to the Reader can contain several media elements)
     protected final Object key;
 
-    private volatile boolean loading = false;
+    // Not guarded by the monitor of the media, which can be held while waiting for the loading
+    private final AtomicBoolean loading = new AtomicBoolean(false);
 
     public <E> MediaElement(MediaReader mediaIO, Object key) {
         this.mediaIO = Objects.requireNonNull(mediaIO);
@@ -125,6 +134,44 @@ public class MediaElement implements Tagable {
         return FileUtil.nioCopyFile(mediaIO.getFileCache().getFinalFile(), output);
     }
 
+    /**
+     * Writes the content of the file in a stream (e.g. an entry of a ZIP file) without copying the file. The stream is
+     * not closed.
+     *
+     * @param output
+     *            the stream
+     * @return true if the content has been written
+     */
+    public boolean saveToStream(OutputStream output) {
+        if (mediaIO.getFileCache().isElementInMemory()) {
+            // The reader can only build a file
+            File file = null;
+            try {
+                file = File.createTempFile("media_", null, AppProperties.FILE_CACHE_DIR); //$NON-NLS-1$
+                return saveToFile(file) && copyFile(file, output);
+            } catch (IOException e) {
+                LOGGER.error("Cannot write {}", getName(), e); //$NON-NLS-1$
+                return false;
+            } finally {
+                FileUtil.delete(file);
+            }
+        }
+        return copyFile(mediaIO.getFileCache().getFinalFile(), output);
+    }
+
+    protected static boolean copyFile(File source, OutputStream output) {
+        if (source == null || output == null) {
+            return false;
+        }
+        try {
+            Files.copy(source.toPath(), output);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Copy file", e); //$NON-NLS-1$
+            return false;
+        }
+    }
+
     public long getLength() {
         return mediaIO.getFileCache().getLength();
     }
@@ -137,20 +184,16 @@ public class MediaElement implements Tagable {
         return mediaIO.getMediaFragmentMimeType();
     }
 
-    protected final synchronized boolean setAsLoading() {
-        if (!loading) {
-            loading = true;
-            return loading;
-        }
-        return false;
+    protected final boolean setAsLoading() {
+        return loading.compareAndSet(false, true);
     }
 
-    protected final synchronized void setAsLoaded() {
-        loading = false;
+    protected final void setAsLoaded() {
+        loading.set(false);
     }
 
-    public final synchronized boolean isLoading() {
-        return loading;
+    public final boolean isLoading() {
+        return loading.get();
     }
 
 }
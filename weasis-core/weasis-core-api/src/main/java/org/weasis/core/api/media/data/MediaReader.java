@@ -35,6 +35,22 @@ public interface MediaReader extends Tagable {
 
     PlanarImage getImageFragment(MediaElement media) throws Exception;
 
+    /**
+     * Decodes the image at a reduced resolution when the codec can skip a part of the data (e.g. the DCT scaling of
+     * JPEG, a resolution level of JPEG 2000 or a sub-sampling of raw pixel data). The default implementation decodes
+     * the image at full resolution.
+     *
+     * @param media
+     *            the media
+     * @param size
+     *            the minimal size of the largest side of the image, a smaller image is never upscaled
+     * @return the image (at full resolution when the codec cannot reduce it)
+     * @throws Exception
+     */
+    default PlanarImage getReducedImageFragment(MediaElement media, int size) throws Exception {
+        return getImageFragment(media);
+    }
+
     int getMediaElementNumber();
 
     String getMediaFragmentMimeType();
@@ -11,59 +11,269 @@
 package org.weasis.core.api.media.data;
 
 import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.weasis.opencv.data.PlanarImage;
 
+/**
+ * Cache of images stored in native memory (OpenCV), bounded by the number of bytes of the images.
+ * <p>
+ * The eviction follows a segmented LRU: a new entry is probationary and becomes protected when it is requested again.
+ * The protected segment is bounded to 80% of the memory, its least recently used entries go back to the probationary
+ * segment. When the budget is exceeded, the least recently used probationary entries are removed first, then the
+ * protected ones. The entries pinned by an owner (e.g. the images of the series displayed in a view) are removed only
+ * when nothing else can be freed.
+ * <p>
+ * The lookups in the map do not lock, the segments are ordered linked maps updated in constant time under a lock. A
+ * put waits for the eviction in progress, so the budget cannot be exceeded by concurrent puts.
+ */
 public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
 
-    protected final Map<K, V> hash;
+    // Part of the memory for the entries requested several times
+    private static final double PROTECTED_RATIO = 0.8;
+
+    protected final Map<K, Node<V>> hash;
     private final long maxNativeMemory;
-    private volatile long useNativeMemory;
+    private final long maxProtectedMemory;
+    private final AtomicLong useNativeMemory = new AtomicLong();
+    // Segments from the least to the most recently used entry, modified only when holding the lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<V>> protectedSegment = new LinkedHashMap<>();
+    private long protectedMemory = 0;
+    // Keys pinned by each owner and number of owners of each pinned key, modified only when holding pinnedKeys
+    private final Map<Object, Set<K>> pinnedKeys = new HashMap<>();
+    private final Map<K, Integer> pinCounts = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
 
     public NativeCache(long maxNativeMemory) {
         this.maxNativeMemory = maxNativeMemory;
-        this.useNativeMemory = 0;
-        this.hash = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true));
+        this.maxProtectedMemory = (long) (maxNativeMemory * PROTECTED_RATIO);
+        this.hash = new ConcurrentHashMap<>(64, 0.75f, Runtime.getRuntime().availableProcessors());
     }
 
     @Override
     public V get(Object key) {
-        return hash.get(key);
+        if (key == null) {
+            return null;
+        }
+        Node<V> node = hash.get(key);
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        lock.lock();
+        try {
+            touch((K) key, node);
+        } finally {
+            lock.unlock();
+        }
+        return node.value;
+    }
+
+    private void touch(K key, Node<V> node) {
+        if (node.segment == Node.PROTECTED) {
+            protectedSegment.remove(key);
+            protectedSegment.put(key, node);
+        } else if (node.segment == Node.PROBATION) {
+            // Second access: move to the protected segment
+            probation.remove(key);
+            protectedSegment.put(key, node);
+            node.segment = Node.PROTECTED;
+            protectedMemory += node.bytes;
+            Iterator<Map.Entry<K, Node<V>>> it = protectedSegment.entrySet().iterator();
+            while (protectedMemory > maxProtectedMemory && it.hasNext()) {
+                Map.Entry<K, Node<V>> e = it.next();
+                Node<V> n = e.getValue();
+                if (n == node) {
+                    break;
+                }
+                // Back to the most recently used side of the probationary segment
+                it.remove();
+                protectedMemory -= n.bytes;
+                n.segment = Node.PROBATION;
+                probation.put(e.getKey(), n);
+            }
+        }
+        // Otherwise the entry has been removed in the meantime
+    }
+
+    private void unlink(K key, Node<V> node) {
+        if (node.segment == Node.PROTECTED) {
+            protectedSegment.remove(key);
+            protectedMemory -= node.bytes;
+        } else if (node.segment == Node.PROBATION) {
+            probation.remove(key);
+        }
+        node.segment = Node.REMOVED;
     }
 
     public boolean isMemoryAvailable() {
-        return useNativeMemory < maxNativeMemory;
+        return useNativeMemory.get() < maxNativeMemory;
     }
 
-    public void expungeStaleEntries() {
-        if (!isMemoryAvailable()) {
-            synchronized (hash) {
-                List<K> remKeys = new ArrayList<>();
-                // 5% of max memory + diff
-                long maxfreeSize = maxNativeMemory / 20 + (useNativeMemory - maxNativeMemory);
-                long freeSize = 0;
-                
-                for (Map.Entry<K, V> e : hash.entrySet()) {
-                    freeSize += physicalBytes(e.getValue());
-                    if (freeSize > maxfreeSize) {
-                        break;
+    public long getMaxNativeMemory() {
+        return maxNativeMemory;
+    }
+
+    public long getUsedNativeMemory() {
+        return useNativeMemory.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getEvictedBytes() {
+        return evictedBytes.get();
+    }
+
+    /**
+     * Protects the entries of these keys from the eviction while other entries can be removed.
+     *
+     * @param owner
+     *            the owner of the pinned keys, replaces the keys previously pinned by the same owner
+     * @param keys
+     *            the keys to protect
+     */
+    public void pin(Object owner, Collection<? extends K> keys) {
+        if (owner != null) {
+            synchronized (pinnedKeys) {
+                unpin(owner);
+                if (keys != null && !keys.isEmpty()) {
+                    addPinnedKeys(owner, keys);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds keys to the ones already pinned by an owner (e.g. the images added to the displayed series). Does nothing
+     * when the owner has no pinned keys.
+     *
+     * @param owner
+     *            the owner of the pinned keys
+     * @param keys
+     *            the keys to protect
+     */
+    public void addPinned(Object owner, Collection<? extends K> keys) {
+        if (owner != null && keys != null) {
+            synchronized (pinnedKeys) {
+                if (pinnedKeys.containsKey(owner)) {
+                    addPinnedKeys(owner, keys);
+                }
+            }
+        }
+    }
+
+    private void addPinnedKeys(Object owner, Collection<? extends K> keys) {
+        Set<K> set = pinnedKeys.computeIfAbsent(owner, o -> new HashSet<>());
+        for (K key : keys) {
+            if (key != null && set.add(key)) {
+                pinCounts.merge(key, 1, Integer::sum);
+            }
+        }
+    }
+
+    public void unpin(Object owner) {
+        if (owner != null) {
+            synchronized (pinnedKeys) {
+                Set<K> keys = pinnedKeys.remove(owner);
+                if (keys != null) {
+                    for (K key : keys) {
+                        pinCounts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
                     }
-                    remKeys.add(e.getKey());
                 }
+            }
+        }
+    }
+
+    public boolean isPinned(K key) {
+        return key != null && pinCounts.containsKey(key);
+    }
+
+    public void expungeStaleEntries() {
+        List<Entry<K, V>> removed;
+        lock.lock();
+        try {
+            removed = evict(null);
+        } finally {
+            lock.unlock();
+        }
+        notifyRemoved(removed);
+    }
 
-                for (K key : remKeys) {
-                    V val = hash.remove(key);
-                    useNativeMemory -= physicalBytes(val);
-                    afterEntryRemove(key, val);
+    /**
+     * Removes the least recently used entries when the budget is exceeded: the probationary entries, then the
+     * protected ones, and the pinned entries only when nothing else can be freed. Must be called when holding the
+     * lock.
+     *
+     * @param keep
+     *            the entry which cannot be removed, can be null
+     * @return the removed entries
+     */
+    private List<Entry<K, V>> evict(Node<V> keep) {
+        if (isMemoryAvailable()) {
+            return Collections.emptyList();
+        }
+        // Free 5% of max memory more, not to evict at each put
+        long target = maxNativeMemory - maxNativeMemory / 20;
+        List<Entry<K, V>> removed = new ArrayList<>();
+        for (int pass = 0; pass < 4 && useNativeMemory.get() > target; pass++) {
+            boolean pinned = pass >= 2;
+            Iterator<Map.Entry<K, Node<V>>> it =
+                (pass % 2 == 0 ? probation : protectedSegment).entrySet().iterator();
+            while (useNativeMemory.get() > target && it.hasNext()) {
+                Map.Entry<K, Node<V>> e = it.next();
+                Node<V> n = e.getValue();
+                if (n != keep && isPinned(e.getKey()) == pinned) {
+                    it.remove();
+                    if (n.segment == Node.PROTECTED) {
+                        protectedMemory -= n.bytes;
+                    }
+                    n.segment = Node.REMOVED;
+                    hash.remove(e.getKey(), n);
+                    useNativeMemory.addAndGet(-n.bytes);
+                    evictionCount.incrementAndGet();
+                    evictedBytes.addAndGet(n.bytes);
+                    removed.add(new SimpleImmutableEntry<>(e.getKey(), n.value));
                 }
             }
         }
+        return removed;
+    }
+
+    private void notifyRemoved(List<Entry<K, V>> removed) {
+        // Outside the lock, releasing the images can take time
+        for (Entry<K, V> e : removed) {
+            afterEntryRemove(e.getKey(), e.getValue());
+        }
     }
 
     private long physicalBytes(V val) {
@@ -78,25 +288,61 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
 
     @Override
     public V put(K key, V value) {
-        expungeStaleEntries();
-        V result = hash.put(key, value);
-        useNativeMemory += physicalBytes(value);
-        useNativeMemory -= physicalBytes(result);
-        return result;
+        Node<V> node = new Node<>(value, physicalBytes(value));
+        Node<V> result;
+        List<Entry<K, V>> removed;
+        lock.lock();
+        try {
+            result = hash.put(key, node);
+            if (result != null) {
+                unlink(key, result);
+            }
+            node.segment = Node.PROBATION;
+            probation.put(key, node);
+            useNativeMemory.addAndGet(node.bytes - (result == null ? 0 : result.bytes));
+            removed = evict(node);
+        } finally {
+            lock.unlock();
+        }
+        notifyRemoved(removed);
+        return result == null ? null : result.value;
     }
 
     @Override
     public V remove(Object key) {
-        V val = hash.remove(key);
-        useNativeMemory -= physicalBytes(val);
+        Node<V> node = null;
+        if (key != null) {
+            lock.lock();
+            try {
+                node = hash.remove(key);
+                if (node != null) {
+                    unlink((K) key, node);
+                    useNativeMemory.addAndGet(-node.bytes);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        V val = node == null ? null : node.value;
         afterEntryRemove((K) key, val);
         return val;
     }
 
     @Override
     public void clear() {
-        hash.clear();
-        useNativeMemory = 0;
+        lock.lock();
+        try {
+            for (Node<V> node : hash.values()) {
+                node.segment = Node.REMOVED;
+            }
+            hash.clear();
+            probation.clear();
+            protectedSegment.clear();
+            protectedMemory = 0;
+            useNativeMemory.set(0);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -106,17 +352,68 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
 
     @Override
     public Set<Entry<K, V>> entrySet() {
-        return hash.entrySet();
+        return new AbstractSet<Entry<K, V>>() {
+
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                Iterator<Entry<K, Node<V>>> it = hash.entrySet().iterator();
+                return new Iterator<Entry<K, V>>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        Entry<K, Node<V>> e = it.next();
+                        return new SimpleImmutableEntry<>(e.getKey(), e.getValue().value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return hash.size();
+            }
+        };
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return hash.containsKey(key);
+        return key != null && hash.containsKey(key);
     }
 
     @Override
     public boolean containsValue(Object value) {
-        return hash.containsValue(value);
+        for (Node<V> node : hash.values()) {
+            if (node.value == value || (value != null && value.equals(node.value))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache: entries=%d bytes=%d/%d hits=%d misses=%d evictions=%d evicted bytes=%d", //$NON-NLS-1$
+            size(), getUsedNativeMemory(), maxNativeMemory, getHitCount(), getMissCount(), getEvictionCount(),
+            getEvictedBytes());
     }
 
+    protected static final class Node<V> {
+        static final int REMOVED = 0;
+        static final int PROBATION = 1;
+        static final int PROTECTED = 2;
+
+        final V value;
+        final long bytes;
+        // Guarded by the lock of the cache
+        int segment = REMOVED;
+
+        Node(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
 }
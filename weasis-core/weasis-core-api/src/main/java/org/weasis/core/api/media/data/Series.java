@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Random;
 
@@ -50,6 +51,8 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     private PropertyChangeSupport propertyChange = null;
     protected final List<E> medias;
     protected final Map<Comparator<E>, List<E>> sortedMedias = new HashMap<>(6);
+    // Lists sorted with a SortKeyComparator, updated in place and guarded by sortedMedias
+    private final Map<Comparator<E>, SortedMedias<E>> sortedKeys = new HashMap<>(6);
     protected final Comparator<E> mediaOrder;
     protected SeriesImporter seriesLoader;
     private double fileSize;
@@ -89,8 +92,31 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     }
 
     protected void resetSortedMediasMap() {
-        if (!sortedMedias.isEmpty()) {
+        synchronized (sortedMedias) {
             sortedMedias.clear();
+            sortedKeys.clear();
+        }
+    }
+
+    /**
+     * Inserts a new media in the sorted lists built with a {@link SortKeyComparator}. The other sorted lists are
+     * removed and sorted again when requested.
+     *
+     * @param media
+     *            the new media
+     * @param index
+     *            the index of the new media in the list of the series
+     */
+    protected void insertInSortedMedias(E media, int index) {
+        synchronized (sortedMedias) {
+            sortedMedias.clear();
+            Iterator<Entry<Comparator<E>, SortedMedias<E>>> iter = sortedKeys.entrySet().iterator();
+            while (iter.hasNext()) {
+                Entry<Comparator<E>, SortedMedias<E>> entry = iter.next();
+                if (!entry.getValue().insert(media, index, medias.size(), (SortKeyComparator<E>) entry.getKey())) {
+                    iter.remove();
+                }
+            }
         }
     }
 
@@ -98,39 +124,65 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     public List<E> getSortedMedias(Comparator<E> comparator) {
         // Do not sort when it is the default order.
         if (comparator != null && !comparator.equals(mediaOrder)) {
-            List<E> sorted = sortedMedias.get(comparator);
-            if (sorted == null) {
-                sorted = new ArrayList<>(medias);
-                Collections.sort(sorted, comparator);
-                sortedMedias.put(comparator, sorted);
+            synchronized (sortedMedias) {
+                if (comparator instanceof SortKeyComparator) {
+                    SortedMedias<E> sortedList = sortedKeys.get(comparator);
+                    if (sortedList == null) {
+                        // Extract the keys once instead of reading the tags at each comparison
+                        sortedList = SortedMedias.sort(new ArrayList<>(medias), (SortKeyComparator<E>) comparator);
+                        sortedKeys.put(comparator, sortedList);
+                    }
+                    return sortedList.getList();
+                }
+                List<E> sorted = sortedMedias.get(comparator);
+                if (sorted == null) {
+                    sorted = new ArrayList<>(medias);
+                    Collections.sort(sorted, comparator);
+                    sortedMedias.put(comparator, sorted);
+                }
+                return sorted;
             }
-            return sorted;
         }
         return medias;
     }
 
+    // The media and the sorted lists are modified under the lock of the sorted lists, so a sorted list cannot be
+    // built between the two modifications
+
     @Override
     public void add(E media) {
-        medias.add(media);
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.add(media);
+            insertInSortedMedias(media, medias.size() - 1);
+        }
+        ImageElement.pinAddedMedias(this, Collections.singletonList(media));
     }
 
     @Override
     public void add(int index, E media) {
-        medias.add(index, media);
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.add(index, media);
+            insertInSortedMedias(media, index);
+        }
+        ImageElement.pinAddedMedias(this, Collections.singletonList(media));
     }
 
     @Override
     public void addAll(Collection<? extends E> c) {
-        medias.addAll(c);
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.addAll(c);
+            resetSortedMediasMap();
+        }
+        ImageElement.pinAddedMedias(this, c);
     }
 
     @Override
     public void addAll(int index, Collection<? extends E> c) {
-        medias.addAll(index, c);
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.addAll(index, c);
+            resetSortedMediasMap();
+        }
+        ImageElement.pinAddedMedias(this, c);
     }
 
     @Override
@@ -248,8 +300,10 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
             m.dispose();
         });
 
-        medias.clear();
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.clear();
+            resetSortedMediasMap();
+        }
 
         Optional.ofNullable((Thumbnail) getTagValue(TagW.Thumbnail)).ifPresent(t -> t.dispose());
         if (propertyChange != null) {
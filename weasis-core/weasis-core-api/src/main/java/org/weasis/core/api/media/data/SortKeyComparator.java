@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.Comparator;
+
+/**
+ * Comparator of media by a primitive key. The series extracts the key of each media once for sorting and keeps the
+ * keys of the sorted list for inserting the new media by binary search.
+ * <p>
+ * As the other comparators of the series, the media without key are equal to all the other media.
+ */
+public abstract class SortKeyComparator<T> extends SeriesComparator<T> {
+
+    /**
+     * @param media
+     *            the media
+     * @return the key of the media or NaN when the media has no key
+     */
+    public abstract double getSortKey(T media);
+
+    /**
+     * Compares the keys of two media as the comparator compares the media.
+     */
+    public int compareKeys(double key1, double key2) {
+        if (Double.isNaN(key1) || Double.isNaN(key2)) {
+            return 0;
+        }
+        return Double.compare(key1, key2);
+    }
+
+    @Override
+    public final int compare(T m1, T m2) {
+        return compareKeys(getSortKey(m1), getSortKey(m2));
+    }
+
+    @Override
+    protected Comparator<T> buildReverseOrderComparator() {
+        return new ReverseSortKeyComparator<>(this);
+    }
+
+    private static final class ReverseSortKeyComparator<T> extends SortKeyComparator<T> {
+        private final SortKeyComparator<T> comparator;
+
+        ReverseSortKeyComparator(SortKeyComparator<T> comparator) {
+            this.comparator = comparator;
+        }
+
+        @Override
+        public double getSortKey(T media) {
+            return comparator.getSortKey(media);
+        }
+
+        @Override
+        public int compareKeys(double key1, double key2) {
+            return comparator.compareKeys(key2, key1);
+        }
+
+        @Override
+        protected Comparator<T> buildReverseOrderComparator() {
+            return comparator;
+        }
+
+        @Override
+        public String toString() {
+            return comparator.toString();
+        }
+    }
+}
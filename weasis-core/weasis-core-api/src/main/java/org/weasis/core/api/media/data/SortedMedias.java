@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * List of media sorted by a {@link SortKeyComparator} with the keys of the media and their index in the series in the
+ * same order.
+ * <p>
+ * A new media is inserted in place by binary search on the keys, at the position it would have with a stable sort of
+ * the media of the series. The lists returned to the readers are copies built only when requested after a
+ * modification, so they can be read while adding media. The instance must be used under the lock of the series.
+ */
+final class SortedMedias<E> {
+
+    private final List<E> list;
+    // Null when a media has no key
+    private double[] keys;
+    // Index of each media in the series, increasing for the media with the same key
+    private int[] seriesIndexes;
+    // Copy of the list returned to the readers, null when the list has been modified
+    private List<E> snapshot;
+
+    private SortedMedias(List<E> list, double[] keys, int[] seriesIndexes) {
+        this.list = list;
+        this.keys = keys;
+        this.seriesIndexes = seriesIndexes;
+    }
+
+    List<E> getList() {
+        if (snapshot == null) {
+            snapshot = new ArrayList<>(list);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Sorts the media with their keys extracted once.
+     *
+     * @param medias
+     *            the media in the order of the series
+     * @param comparator
+     *            the comparator of the keys
+     */
+    static <E> SortedMedias<E> sort(List<E> medias, SortKeyComparator<E> comparator) {
+        int size = medias.size();
+        double[] keys = new double[size];
+        Integer[] order = new Integer[size];
+        boolean missingKey = false;
+        for (int i = 0; i < size; i++) {
+            keys[i] = comparator.getSortKey(medias.get(i));
+            order[i] = i;
+            missingKey |= Double.isNaN(keys[i]);
+        }
+        // Stable sort like Collections.sort()
+        Arrays.sort(order, (i1, i2) -> comparator.compareKeys(keys[i1], keys[i2]));
+
+        List<E> sorted = new ArrayList<>(size + 1);
+        double[] sortedKeys = new double[size + 1];
+        int[] seriesIndexes = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            sorted.add(medias.get(order[i]));
+            sortedKeys[i] = keys[order[i]];
+            seriesIndexes[i] = order[i];
+        }
+        return new SortedMedias<>(sorted, missingKey ? null : sortedKeys, seriesIndexes);
+    }
+
+    /**
+     * @param media
+     *            the new media
+     * @param index
+     *            the index of the new media in the media of the series
+     * @param seriesSize
+     *            the number of media of the series including the new media
+     * @param comparator
+     *            the comparator of the keys
+     * @return false when the list must be sorted again
+     */
+    boolean insert(E media, int index, int seriesSize, SortKeyComparator<E> comparator) {
+        double key = comparator.getSortKey(media);
+        int size = list.size();
+        if (keys == null || Double.isNaN(key) || size + 1 != seriesSize) {
+            return false;
+        }
+        int pos = bound(key, comparator, true);
+        if (index < size) {
+            // The next media of the series are shifted
+            for (int i = 0; i < size; i++) {
+                if (seriesIndexes[i] >= index) {
+                    seriesIndexes[i]++;
+                }
+            }
+            // Media with the same key are in the order of the series
+            pos = firstAfter(bound(key, comparator, false), pos, index);
+        }
+
+        if (keys.length == size) {
+            int capacity = size + (size >> 1) + 1;
+            keys = Arrays.copyOf(keys, capacity);
+            seriesIndexes = Arrays.copyOf(seriesIndexes, capacity);
+        }
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(seriesIndexes, pos, seriesIndexes, pos + 1, size - pos);
+        keys[pos] = key;
+        seriesIndexes[pos] = index;
+        list.add(pos, media);
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * @return the index of the first key greater than or equal to the key (strict is false) or greater than the key
+     *         (strict is true)
+     */
+    private int bound(double key, SortKeyComparator<E> comparator, boolean strict) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = comparator.compareKeys(keys[mid], key);
+            if (c < 0 || (strict && c == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first media between low and high which is after the index in the series
+     */
+    private int firstAfter(int low, int high, int index) {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seriesIndexes[mid] < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
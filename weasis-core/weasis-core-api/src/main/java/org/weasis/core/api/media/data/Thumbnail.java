@@ -43,6 +43,7 @@ import org.weasis.core.api.Messages;
 import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.media.MimeInspector;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.FileUtil;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.api.util.ThreadUtil;
@@ -65,8 +66,22 @@ public class Thumbnail extends JLabel implements Thumbnailable {
     public static final int DEFAULT_SIZE = 112;
     public static final int MAX_SIZE = 256;
 
+    /**
+     * Maximum size in MB of the persistent thumbnails, 0 disables the persistent store.
+     */
+    public static final String P_THUMBNAIL_STORE_MAX_SIZE = "weasis.thumbnail.store.max.size"; //$NON-NLS-1$
+    /**
+     * Maximum memory in MB of the thumbnails displayed.
+     */
+    public static final String P_THUMBNAIL_CACHE_MAX_MEMORY = "weasis.thumbnail.cache.max.memory"; //$NON-NLS-1$
+
+    public static final ThumbnailStore THUMBNAIL_STORE =
+        new ThumbnailStore(new File(AppProperties.WEASIS_PATH, "cache" + File.separator + "thumb"), //$NON-NLS-1$ //$NON-NLS-2$
+            BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_THUMBNAIL_STORE_MAX_SIZE, 256L) * 1024L * 1024L);
+
     private static final NativeCache<Thumbnail, PlanarImage> mCache =
-        new NativeCache<Thumbnail, PlanarImage>(30_000_000) {
+        new NativeCache<Thumbnail, PlanarImage>(
+            BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_THUMBNAIL_CACHE_MAX_MEMORY, 30L) * 1024L * 1024L) {
 
             @Override
             protected void afterEntryRemove(Thumbnail key, PlanarImage img) {
@@ -234,6 +249,8 @@ public class Thumbnail extends JLabel implements Thumbnailable {
 
     private void loadThumbnail(final MediaElement media, final boolean keepMediaCache, final OpManager opManager)
         throws Exception {
+        // Thumbnails must not delay the decoding of the displayed images
+        ImageLoader.setContextPriority(ImageLoader.Priority.BACKGROUND);
         try {
             File file = thumbnailPath;
             boolean noPath = file == null || !file.canRead();
@@ -247,21 +264,42 @@ public class Thumbnail extends JLabel implements Thumbnailable {
                     }
                 }
             }
+            // The operations of opManager are not part of the key
+            String storeKey = media instanceof ImageElement && opManager == null
+                ? getStoreKey((ImageElement) media) : null;
+            if (noPath && storeKey != null) {
+                // Thumbnail built in a previous session
+                file = THUMBNAIL_STORE.get(storeKey);
+                if (file != null) {
+                    noPath = false;
+                    thumbnailPath = file;
+                    media.setTag(TagW.ThumbnailPath, file.getPath());
+                }
+            }
             if (noPath) {
                 if (media instanceof ImageElement) {
                     final ImageElement image = (ImageElement) media;
-                    PlanarImage imgPl = image.getImage(opManager);
+                    // Decode at a reduced resolution when the image is not kept in the cache
+                    PlanarImage imgPl = opManager == null && !keepMediaCache ? image.getPreviewImage(MAX_SIZE)
+                        : image.getImage(opManager);
                     if (imgPl != null) {
                         PlanarImage img = image.getRenderedImage(imgPl);
                         final PlanarImage thumb = createThumbnail(img);
-                        if (thumb != null) {
-                            try {
-                                file = File.createTempFile("tumb_", ".jpg", Thumbnail.THUMBNAIL_CACHE_DIR); //$NON-NLS-1$ //$NON-NLS-2$
-                            } catch (IOException e) {
-                                LOGGER.error("Cannot create file for thumbnail!", e);//$NON-NLS-1$
-                            }
-                        }
                         try {
+                            // Write the thumbnail in the persistent store when the image can be identified
+                            file = THUMBNAIL_STORE.put(storeKey, thumb);
+                            if (file != null) {
+                                image.setTag(TagW.ThumbnailPath, file.getPath());
+                                thumbnailPath = file;
+                                return;
+                            }
+                            if (thumb != null) {
+                                try {
+                                    file = File.createTempFile("tumb_", ".jpg", Thumbnail.THUMBNAIL_CACHE_DIR); //$NON-NLS-1$ //$NON-NLS-2$
+                                } catch (IOException e) {
+                                    LOGGER.error("Cannot create file for thumbnail!", e);//$NON-NLS-1$
+                                }
+                            }
                             if (thumb != null && file != null) {
                                 MatOfInt map = new MatOfInt(Imgcodecs.CV_IMWRITE_JPEG_QUALITY, 80);
                                 if (ImageProcessor.writeImage(thumb.toMat(), file, map)) {
@@ -296,8 +334,8 @@ public class Thumbnail extends JLabel implements Thumbnailable {
                 }
             } else {
                 Load ref = new Load(file);
-                // loading images sequentially, only one thread pool
-                Future<PlanarImage> future = ImageElement.IMAGE_LOADER.submit(ref);
+                Future<PlanarImage> future =
+                    ImageElement.IMAGE_LOADER.submit(ref, ImageLoader.Priority.BACKGROUND, null, null);
                 PlanarImage thumb = null;
                 try {
                     PlanarImage img = future.get();
@@ -329,10 +367,19 @@ public class Thumbnail extends JLabel implements Thumbnailable {
                 }
             }
         } finally {
+            ImageLoader.setContextPriority(null);
             loading.set(false);
         }
     }
 
+    /**
+     * @return the key of the thumbnail in the persistent store or null if the image cannot be identified
+     */
+    protected static String getStoreKey(ImageElement image) {
+        String key = image.getThumbnailKey();
+        return key == null ? null : key + '|' + MAX_SIZE;
+    }
+
     protected void removeImageFromCache() {
         // Unload image from memory
         mCache.remove(this);
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.opencv.data.PlanarImage;
+import org.weasis.opencv.op.ImageProcessor;
+
+/**
+ * Persistent store of thumbnails shared across sessions.
+ * <p>
+ * A thumbnail is addressed by the SHA-1 of a key describing its content (e.g. the SOP Instance UID, the frame and the
+ * rendering parameters) and is written as a JPEG file. The store is bounded by the size of the files, the least
+ * recently used thumbnails are deleted first. The order and the size of the files are kept in a compact index file
+ * (24 bytes by thumbnail) which is read once and written after some changes.
+ */
+public class ThumbnailStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailStore.class);
+
+    private static final String INDEX_NAME = "index.bin"; //$NON-NLS-1$
+    private static final int INDEX_MAGIC = 0x57544853; // WTHS
+    private static final int INDEX_VERSION = 1;
+    private static final int DIGEST_LENGTH = 20;
+    // Number of changes before writing the index
+    private static final int SAVE_INTERVAL = 64;
+
+    private final File directory;
+    private final long maxSize;
+    // Access order: the first entry is the least recently used
+    private final LinkedHashMap<String, Integer> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long size = 0;
+    private boolean loaded = false;
+    private int changes = 0;
+
+    /**
+     * @param directory
+     *            the directory of the thumbnails
+     * @param maxSize
+     *            the maximum size of the thumbnails in bytes, no thumbnail is stored when the value is not positive
+     */
+    public ThumbnailStore(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return directory != null && maxSize > 0;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        load();
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        load();
+        return entries.size();
+    }
+
+    /**
+     * @param key
+     *            the key of the thumbnail
+     * @return the file of the thumbnail or null if it is not in the store
+     */
+    public synchronized File get(String key) {
+        if (key == null || !isEnabled()) {
+            return null;
+        }
+        load();
+        String name = digest(key);
+        if (entries.get(name) == null) {
+            return null;
+        }
+        File file = getFile(name);
+        if (!file.canRead()) {
+            // Deleted outside the application
+            removeEntry(name);
+            return null;
+        }
+        changed();
+        return file;
+    }
+
+    /**
+     * Writes a thumbnail in the store.
+     *
+     * @param key
+     *            the key of the thumbnail
+     * @param thumbnail
+     *            the image of the thumbnail
+     * @return the file of the thumbnail or null if it cannot be written
+     */
+    public synchronized File put(String key, PlanarImage thumbnail) {
+        if (key == null || thumbnail == null || !isEnabled()) {
+            return null;
+        }
+        load();
+        String name = digest(key);
+        File file = getFile(name);
+        File tmp = new File(file.getParentFile(), name + ".tmp"); //$NON-NLS-1$
+        try {
+            file.getParentFile().mkdirs();
+            // Write in a temporary file to never expose a partial file
+            if (!writeImage(thumbnail, tmp)) {
+                return null;
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.error("Cannot write thumbnail {}", file, e); //$NON-NLS-1$
+            FileUtil.delete(tmp);
+            return null;
+        }
+
+        int length = (int) file.length();
+        Integer old = entries.put(name, length);
+        size += length - (old == null ? 0 : old);
+        evict();
+        changed();
+        return file;
+    }
+
+    public synchronized void remove(String key) {
+        if (key != null && isEnabled()) {
+            load();
+            String name = digest(key);
+            if (entries.containsKey(name)) {
+                FileUtil.delete(getFile(name));
+                removeEntry(name);
+            }
+        }
+    }
+
+    /**
+     * Writes the index file when it has been modified.
+     */
+    public synchronized void flush() {
+        if (loaded && changes > 0) {
+            writeIndex();
+        }
+    }
+
+    boolean writeImage(PlanarImage thumbnail, File file) {
+        MatOfInt map = new MatOfInt(Imgcodecs.CV_IMWRITE_JPEG_QUALITY, 80);
+        return ImageProcessor.writeImage(thumbnail.toMat(), file, map);
+    }
+
+    private void removeEntry(String name) {
+        Integer length = entries.remove(name);
+        if (length != null) {
+            size -= length;
+            changed();
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry<String, Integer>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Entry<String, Integer> e = it.next();
+            FileUtil.delete(getFile(e.getKey()));
+            size -= e.getValue();
+            it.remove();
+        }
+    }
+
+    private void changed() {
+        changes++;
+        if (changes >= SAVE_INTERVAL) {
+            writeIndex();
+        }
+    }
+
+    private File getFile(String name) {
+        // Sub-folders named by the first byte of the digest to limit the number of files by folder
+        return new File(new File(directory, name.substring(0, 2)), name + ".jpg"); //$NON-NLS-1$
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File index = new File(directory, INDEX_NAME);
+        if (!index.canRead()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                LOGGER.warn("Unsupported thumbnail index: {}", index); //$NON-NLS-1$
+                return;
+            }
+            int nb = in.readInt();
+            byte[] digest = new byte[DIGEST_LENGTH];
+            for (int i = 0; i < nb; i++) {
+                in.readFully(digest);
+                int length = in.readInt();
+                entries.put(toHex(digest), length);
+                size += length;
+            }
+        } catch (IOException e) {
+            LOGGER.error("Cannot read thumbnail index {}", index, e); //$NON-NLS-1$
+        }
+        // The maximum size can be lower than in the previous session
+        evict();
+    }
+
+    private void writeIndex() {
+        changes = 0;
+        File index = new File(directory, INDEX_NAME);
+        File tmp = new File(directory, INDEX_NAME + ".tmp"); //$NON-NLS-1$
+        directory.mkdirs();
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Integer> e : entries.entrySet()) {
+                    out.write(fromHex(e.getKey()));
+                    out.writeInt(e.getValue());
+                }
+            }
+            Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.error("Cannot write thumbnail index {}", index, e); //$NON-NLS-1$
+            FileUtil.delete(tmp);
+        }
+    }
+
+    private static String digest(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            return toHex(md.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
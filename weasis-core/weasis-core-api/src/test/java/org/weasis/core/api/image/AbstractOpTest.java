@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image;
+
+import java.awt.Rectangle;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.weasis.core.api.image.ImageOpNode.Param;
+import org.weasis.opencv.data.PlanarImage;
+
+public class AbstractOpTest {
+    private static final String P_MATRIX = "matrix"; //$NON-NLS-1$
+    private static final String P_AREA = "area"; //$NON-NLS-1$
+    private static final String P_LIST = "list"; //$NON-NLS-1$
+
+    static class CopyOp extends AbstractOp {
+
+        CopyOp(String name) {
+            setName(name);
+        }
+
+        CopyOp(CopyOp op) {
+            super(op);
+        }
+
+        @Override
+        public CopyOp copy() {
+            return new CopyOp(this);
+        }
+
+        @Override
+        public void process() throws Exception {
+            params.put(Param.OUTPUT_IMG, params.get(Param.INPUT_IMG));
+        }
+    }
+
+    private static PlanarImage image() {
+        // Only the size of the image is required by the manager
+        return (PlanarImage) Proxy.newProxyInstance(AbstractOpTest.class.getClassLoader(),
+            new Class<?>[] { PlanarImage.class }, (proxy, method, args) -> {
+                Class<?> type = method.getReturnType();
+                if (type == int.class) {
+                    return 16;
+                }
+                if (type == long.class) {
+                    return 256L;
+                }
+                return type == boolean.class ? Boolean.FALSE : null;
+            });
+    }
+
+    @Test
+    public void testArrayChangedInPlace() {
+        CopyOp op = new CopyOp("op"); //$NON-NLS-1$
+        double[] matrix = { 1.0, 0.0, 0.0, 0.0, 1.0, 0.0 };
+        op.setParam(P_MATRIX, matrix);
+        long count = op.getModificationCount();
+
+        // The parameter is a copy, changing the array has no effect until it is set again
+        matrix[0] = 2.0;
+        Assert.assertEquals(1.0, ((double[]) op.getParam(P_MATRIX))[0], 0.0);
+        Assert.assertEquals(count, op.getModificationCount());
+
+        op.setParam(P_MATRIX, matrix);
+        Assert.assertEquals(count + 1, op.getModificationCount());
+        Assert.assertEquals(2.0, ((double[]) op.getParam(P_MATRIX))[0], 0.0);
+
+        // Same values in a new array
+        op.setParam(P_MATRIX, matrix.clone());
+        Assert.assertEquals(count + 1, op.getModificationCount());
+
+        byte[][] lut = { { 0, 1 }, { 2, 3 } };
+        op.setParam(P_MATRIX, lut);
+        Assert.assertEquals(count + 2, op.getModificationCount());
+        lut[1][0] = 5;
+        op.setParam(P_MATRIX, lut);
+        Assert.assertEquals(count + 3, op.getModificationCount());
+        op.setParam(P_MATRIX, new byte[][] { { 0, 1 }, { 5, 3 } });
+        Assert.assertEquals(count + 3, op.getModificationCount());
+    }
+
+    @Test
+    public void testMutableValues() {
+        CopyOp op = new CopyOp("op"); //$NON-NLS-1$
+        Rectangle area = new Rectangle(0, 0, 10, 10);
+        op.setParam(P_AREA, area);
+        long count = op.getModificationCount();
+        area.width = 20;
+        Assert.assertEquals(10, ((Rectangle) op.getParam(P_AREA)).width);
+        op.setParam(P_AREA, area);
+        Assert.assertEquals(count + 1, op.getModificationCount());
+        op.setParam(P_AREA, new Rectangle(0, 0, 20, 10));
+        Assert.assertEquals(count + 1, op.getModificationCount());
+
+        // A value which is not copied must be set again when changed in place
+        List<Integer> list = new ArrayList<>();
+        op.setParam(P_LIST, list);
+        count = op.getModificationCount();
+        list.add(1);
+        op.setParam(P_LIST, list);
+        Assert.assertEquals(count + 1, op.getModificationCount());
+        op.setParam(P_LIST, new ArrayList<>(list));
+        Assert.assertEquals(count + 1, op.getModificationCount());
+
+        // Immutable values
+        op.setParam(Param.ENABLE, Boolean.TRUE);
+        count = op.getModificationCount();
+        op.setEnabled(true);
+        Assert.assertEquals(count, op.getModificationCount());
+        op.setEnabled(false);
+        Assert.assertEquals(count + 1, op.getModificationCount());
+
+        // The images are not tracked
+        op.setParam(Param.INPUT_IMG, image());
+        op.setParam(Param.OUTPUT_IMG, image());
+        Assert.assertEquals(count + 1, op.getModificationCount());
+    }
+
+    @Test
+    public void testUnchangedNodesReused() {
+        SimpleOpManager manager = new SimpleOpManager();
+        CopyOp first = new CopyOp("first"); //$NON-NLS-1$
+        CopyOp last = new CopyOp("last"); //$NON-NLS-1$
+        manager.addImageOperationAction(first);
+        manager.addImageOperationAction(last);
+        double[] matrix = { 1.0, 0.0, 0.0, 0.0, 1.0, 0.0 };
+        first.setParam(P_MATRIX, matrix);
+        PlanarImage source = image();
+        manager.setFirstNode(source);
+
+        Assert.assertSame(source, manager.process());
+        Assert.assertEquals(1, manager.getProcessingCount(first));
+        Assert.assertEquals(1, manager.getProcessingCount(last));
+
+        // Nothing has changed
+        manager.process();
+        Assert.assertEquals(1, manager.getProcessingCount(first));
+        Assert.assertEquals(1, manager.getProcessingCount(last));
+
+        // Only the changed node and the following ones are processed
+        last.setParam(P_MATRIX, matrix);
+        manager.process();
+        Assert.assertEquals(1, manager.getProcessingCount(first));
+        Assert.assertEquals(2, manager.getProcessingCount(last));
+
+        // Changed in place, the parameter of the node is unchanged
+        matrix[2] = 5.0;
+        manager.process();
+        Assert.assertEquals(1, manager.getProcessingCount(first));
+        Assert.assertEquals(2, manager.getProcessingCount(last));
+
+        first.setParam(P_MATRIX, matrix);
+        manager.process();
+        Assert.assertEquals(2, manager.getProcessingCount(first));
+        Assert.assertEquals(3, manager.getProcessingCount(last));
+
+        // A new input image invalidates the chain
+        manager.setFirstNode(image());
+        manager.process();
+        Assert.assertEquals(3, manager.getProcessingCount(first));
+        Assert.assertEquals(4, manager.getProcessingCount(last));
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MimeInspectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newFile(String name, byte[] header, int length) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(Arrays.copyOf(header, Math.max(length, header.length)));
+        }
+        return file;
+    }
+
+    @Test
+    public void testMimeTypeFromMagicNumber() throws IOException {
+        byte[] dicom = new byte[132];
+        dicom[128] = 'D';
+        dicom[129] = 'I';
+        dicom[130] = 'C';
+        dicom[131] = 'M';
+        Assert.assertEquals("application/dicom", //$NON-NLS-1$
+            MimeInspector.getMimeTypeFromMagicNumber(newFile("image", dicom, 1000))); //$NON-NLS-1$
+        Assert.assertEquals("image/jpeg", MimeInspector.getMimeTypeFromMagicNumber( //$NON-NLS-1$
+            newFile("jpeg", new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0 }, 100))); //$NON-NLS-1$
+        Assert.assertEquals("image/jpeg-ls", MimeInspector.getMimeTypeFromMagicNumber( //$NON-NLS-1$
+            newFile("jpeg-ls", new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xF7 }, 100))); //$NON-NLS-1$
+        Assert.assertEquals("application/pdf", MimeInspector //$NON-NLS-1$
+            .getMimeTypeFromMagicNumber(newFile("pdf", "%PDF-1.4".getBytes("US-ASCII"), 10))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        Assert.assertNull(MimeInspector.getMimeTypeFromMagicNumber(newFile("tiny", new byte[] { 1, 2 }, 2))); //$NON-NLS-1$
+        Assert.assertEquals("application/directory", MimeInspector.getMimeTypeFromMagicNumber(folder.getRoot())); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testSingleHeaderRead() throws IOException {
+        byte[] dicom = new byte[132];
+        dicom[128] = 'D';
+        dicom[129] = 'I';
+        dicom[130] = 'C';
+        dicom[131] = 'M';
+        byte[] random = new byte[3000];
+        new Random(11).nextBytes(random);
+        // No magic number at the beginning, all the entries are tested
+        random[0] = 0;
+        random[1] = 0;
+
+        assertSingleRead(newFile("image", dicom, 1000), "application/dicom"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertSingleRead(newFile("jpeg", new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0 }, 100), //$NON-NLS-1$
+            "image/jpeg"); //$NON-NLS-1$
+        assertSingleRead(newFile("archive", new byte[] { 0x1F, (byte) 0x8B, 0x08 }, 100), "application/x-gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertSingleRead(newFile("random", random, random.length), null); //$NON-NLS-1$
+    }
+
+    private static void assertSingleRead(File file, String mimeType) throws IOException {
+        try (CountingFile raf = new CountingFile(file)) {
+            Assert.assertEquals(mimeType, MimeInspector.getMagicMimeType(raf));
+            Assert.assertEquals(1, raf.reads);
+            Assert.assertEquals(0, raf.seeks);
+        }
+    }
+
+    private static class CountingFile extends RandomAccessFile {
+        int reads = 0;
+        int seeks = 0;
+
+        CountingFile(File file) throws FileNotFoundException {
+            super(file, "r"); //$NON-NLS-1$
+        }
+
+        @Override
+        public int read() throws IOException {
+            reads++;
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            reads++;
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            seeks++;
+            super.seek(pos);
+        }
+    }
+
+    @Test
+    public void testMatchingMimeType() throws IOException {
+        byte[] gzip = { 0x1F, (byte) 0x8B, 0x08 };
+        File file = newFile("archive", gzip, 100); //$NON-NLS-1$
+        Assert.assertTrue(MimeInspector.isMatchingMimeTypeFromMagicNumber(file, "application/x-gzip")); //$NON-NLS-1$
+        Assert.assertFalse(MimeInspector.isMatchingMimeTypeFromMagicNumber(file, "application/dicom")); //$NON-NLS-1$
+        Assert.assertTrue(MimeInspector.isMatchingMimeTypeFromMagicNumber(gzip, "application/x-gzip")); //$NON-NLS-1$
+        // Shorter than the magic number
+        Assert.assertFalse(
+            MimeInspector.isMatchingMimeTypeFromMagicNumber(new byte[] { 0x1F }, "application/x-gzip")); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.api.media.data.ImageLoader.Priority;
+
+public class ImageLoaderTest {
+    private static final String GROUP = "series"; //$NON-NLS-1$
+
+    private ImageLoader loader;
+    private CountDownLatch blocker;
+
+    @Before
+    public void setUp() throws Exception {
+        loader = new ImageLoader("Test Loader", 1); //$NON-NLS-1$
+        blocker = new CountDownLatch(1);
+        // Keep the single thread busy to accumulate the next tasks in the queue
+        loader.submit(() -> blocker.await(5, TimeUnit.SECONDS), Priority.VISIBLE, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        blocker.countDown();
+        loader.shutdownNow();
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        loader.submit(() -> order.add("background"), Priority.BACKGROUND, null, null); //$NON-NLS-1$
+        loader.submit(() -> order.add("neighbor"), Priority.NEIGHBOR, null, null); //$NON-NLS-1$
+        Future<Boolean> last = loader.submit(() -> order.add("visible"), Priority.VISIBLE, null, null); //$NON-NLS-1$
+        Assert.assertEquals(1, loader.getStatistics(Priority.BACKGROUND).getQueueDepth());
+
+        blocker.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        loader.shutdown();
+        loader.awaitTermination(5, TimeUnit.SECONDS);
+        Assert.assertArrayEquals(new String[] { "visible", "neighbor", "background" }, order.toArray()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        Assert.assertEquals(0, loader.getStatistics(Priority.BACKGROUND).getQueueDepth());
+        Assert.assertEquals(1, loader.getStatistics(Priority.BACKGROUND).getCompleted());
+    }
+
+    @Test
+    public void testSetPriority() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        Object key = new Object();
+        loader.submit(() -> order.add("neighbor"), Priority.NEIGHBOR, null, null); //$NON-NLS-1$
+        loader.submit(() -> order.add("promoted"), Priority.BACKGROUND, key, null); //$NON-NLS-1$
+        Assert.assertTrue(loader.setPriority(key, Priority.VISIBLE));
+
+        blocker.countDown();
+        loader.shutdown();
+        loader.awaitTermination(5, TimeUnit.SECONDS);
+        Assert.assertArrayEquals(new String[] { "promoted", "neighbor" }, order.toArray()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @Test
+    public void testCancelGroup() throws Exception {
+        Future<Boolean> f1 = loader.submit(() -> Boolean.TRUE, Priority.BACKGROUND, null, GROUP);
+        Future<Boolean> f2 = loader.submit(() -> Boolean.TRUE, Priority.NEIGHBOR, null, GROUP);
+        Future<Boolean> f3 = loader.submit(() -> Boolean.TRUE, Priority.NEIGHBOR, null, null);
+
+        Assert.assertEquals(2, loader.cancel(GROUP));
+        Assert.assertTrue(f1.isCancelled());
+        Assert.assertTrue(f2.isCancelled());
+        Assert.assertEquals(1, loader.getQueue().size());
+        Assert.assertEquals(1, loader.getStatistics(Priority.NEIGHBOR).getCancelled());
+
+        blocker.countDown();
+        Assert.assertTrue(f3.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.weasis.core.api.media.data.TagW.TagType;
+
+public class LayeredTagMapTest {
+
+    private static final TagW TAG_1 = new TagW("LayeredTag1", TagType.STRING); //$NON-NLS-1$
+    private static final TagW TAG_2 = new TagW("LayeredTag2", TagType.DOUBLE, 3, 3); //$NON-NLS-1$
+    private static final TagW TAG_3 = new TagW("LayeredTag3", TagType.INTEGER); //$NON-NLS-1$
+
+    private static Map<TagW, Object> buildBase() {
+        Map<TagW, Object> base = new HashMap<>();
+        base.put(TAG_1, "value"); //$NON-NLS-1$
+        base.put(TAG_2, new double[] { 1.0, 2.0, 3.0 });
+        return Collections.unmodifiableMap(base);
+    }
+
+    @Test
+    public void testLayers() {
+        Map<TagW, Object> base = buildBase();
+        LayeredTagMap map = new LayeredTagMap(base);
+        Assert.assertEquals(base, map);
+
+        map.put(TAG_3, 5);
+        map.put(TAG_1, "frame"); //$NON-NLS-1$
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("frame", map.get(TAG_1)); //$NON-NLS-1$
+        Assert.assertEquals("value", base.get(TAG_1)); //$NON-NLS-1$
+
+        map.remove(TAG_2);
+        Assert.assertFalse(map.containsKey(TAG_2));
+        Assert.assertNull(map.get(TAG_2));
+        Assert.assertEquals(2, map.size());
+
+        map.put(TAG_2, null);
+        Assert.assertTrue(map.containsKey(TAG_2));
+        Assert.assertNull(map.get(TAG_2));
+
+        Map<TagW, Object> expected = new HashMap<>();
+        expected.put(TAG_1, "frame"); //$NON-NLS-1$
+        expected.put(TAG_2, null);
+        expected.put(TAG_3, 5);
+        Assert.assertEquals(expected, new HashMap<>(map));
+
+        for (Iterator<Entry<TagW, Object>> it = map.entrySet().iterator(); it.hasNext();) {
+            if (it.next().getKey() == TAG_3) {
+                it.remove();
+            }
+        }
+        Assert.assertFalse(map.containsKey(TAG_3));
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get(TAG_1));
+        Assert.assertEquals(2, base.size());
+    }
+
+    @Test
+    public void testSharedValues() {
+        Map<TagW, Object> base = buildBase();
+        Map<TagW, Object> pool = new HashMap<>();
+        LayeredTagMap frame1 = new LayeredTagMap(base, pool);
+        LayeredTagMap frame2 = new LayeredTagMap(base, pool);
+
+        // Equal to the base value
+        frame1.put(TAG_2, new double[] { 1.0, 2.0, 3.0 });
+        Assert.assertSame(base.get(TAG_2), frame1.get(TAG_2));
+
+        // Equal to the value of another frame
+        double[] position = { 4.0, 5.0, 6.0 };
+        frame1.put(TAG_2, position);
+        frame2.put(TAG_2, new double[] { 4.0, 5.0, 6.0 });
+        Assert.assertSame(position, frame2.get(TAG_2));
+    }
+}
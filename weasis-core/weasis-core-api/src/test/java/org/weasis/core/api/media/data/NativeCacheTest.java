@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.weasis.opencv.data.PlanarImage;
+
+public class NativeCacheTest {
+    private static final String VIEW1 = "view1"; //$NON-NLS-1$
+    private static final String VIEW2 = "view2"; //$NON-NLS-1$
+
+    private static PlanarImage image(long bytes) {
+        // Only the size of the image is required by the cache
+        return (PlanarImage) Proxy.newProxyInstance(NativeCacheTest.class.getClassLoader(),
+            new Class<?>[] { PlanarImage.class }, (proxy, method, args) -> bytes);
+    }
+
+    private static NativeCache<String, PlanarImage> buildCache(long maxMemory, List<String> evicted) {
+        return new NativeCache<String, PlanarImage>(maxMemory) {
+
+            @Override
+            protected void afterEntryRemove(String key, PlanarImage img) {
+                evicted.add(key);
+            }
+        };
+    }
+
+    @Test
+    public void testProbationaryEvictedFirst() {
+        List<String> evicted = new ArrayList<>();
+        NativeCache<String, PlanarImage> cache = buildCache(1000, evicted);
+        cache.put("a", image(300)); //$NON-NLS-1$
+        cache.put("b", image(300)); //$NON-NLS-1$
+        cache.put("c", image(300)); //$NON-NLS-1$
+        // Second access, "a" becomes protected
+        Assert.assertNotNull(cache.get("a")); //$NON-NLS-1$
+
+        cache.put("d", image(300)); //$NON-NLS-1$
+        // Only the least recently used probationary entry is removed
+        Assert.assertEquals(Collections.singletonList("b"), evicted); //$NON-NLS-1$
+        Assert.assertTrue(cache.containsKey("a")); //$NON-NLS-1$
+        Assert.assertEquals(900, cache.getUsedNativeMemory());
+        Assert.assertEquals(1, cache.getEvictionCount());
+
+        cache.put("e", image(300)); //$NON-NLS-1$
+        Assert.assertEquals(Arrays.asList("b", "c"), evicted); //$NON-NLS-1$ //$NON-NLS-2$
+        Assert.assertTrue(cache.containsKey("a")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testProtectedSegmentBounded() {
+        List<String> evicted = new ArrayList<>();
+        NativeCache<String, PlanarImage> cache = buildCache(1000, evicted);
+        cache.put("a", image(300)); //$NON-NLS-1$
+        cache.put("b", image(300)); //$NON-NLS-1$
+        cache.put("c", image(300)); //$NON-NLS-1$
+        cache.get("a"); //$NON-NLS-1$
+        cache.get("b"); //$NON-NLS-1$
+        // The protected segment is limited to 800 bytes, "a" goes back to the probationary segment as most recent
+        cache.get("c"); //$NON-NLS-1$
+
+        cache.put("d", image(300)); //$NON-NLS-1$
+        Assert.assertEquals(Collections.singletonList("a"), evicted); //$NON-NLS-1$
+        Assert.assertTrue(cache.containsKey("b")); //$NON-NLS-1$
+        Assert.assertTrue(cache.containsKey("c")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testPinnedEvictedLast() {
+        List<String> evicted = new ArrayList<>();
+        NativeCache<String, PlanarImage> cache = buildCache(1000, evicted);
+        cache.pin(VIEW1, Arrays.asList("a", "b")); //$NON-NLS-1$ //$NON-NLS-2$
+        cache.put("a", image(400)); //$NON-NLS-1$
+        cache.put("b", image(400)); //$NON-NLS-1$
+        cache.put("c", image(100)); //$NON-NLS-1$
+        cache.get("c"); //$NON-NLS-1$
+
+        cache.put("d", image(400)); //$NON-NLS-1$
+        // The protected entry is removed before the pinned ones, then the oldest pinned one
+        Assert.assertEquals(Arrays.asList("c", "a"), evicted); //$NON-NLS-1$ //$NON-NLS-2$
+        Assert.assertTrue(cache.containsKey("b")); //$NON-NLS-1$
+        Assert.assertTrue(cache.containsKey("d")); //$NON-NLS-1$
+
+        cache.remove("d"); //$NON-NLS-1$
+        Assert.assertEquals(400, cache.getUsedNativeMemory());
+        cache.clear();
+        Assert.assertEquals(0, cache.getUsedNativeMemory());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPinnedByOwners() {
+        NativeCache<String, PlanarImage> cache = new NativeCache<>(1024);
+        cache.pin(VIEW1, Arrays.asList("a", "b")); //$NON-NLS-1$ //$NON-NLS-2$
+        cache.pin(VIEW2, Arrays.asList("b", "c")); //$NON-NLS-1$ //$NON-NLS-2$
+        Assert.assertTrue(cache.isPinned("a")); //$NON-NLS-1$
+        Assert.assertTrue(cache.isPinned("b")); //$NON-NLS-1$
+        Assert.assertTrue(cache.isPinned("c")); //$NON-NLS-1$
+        Assert.assertFalse(cache.isPinned("d")); //$NON-NLS-1$
+
+        // The images added later to the displayed series
+        cache.addPinned(VIEW1, Collections.singletonList("d")); //$NON-NLS-1$
+        Assert.assertTrue(cache.isPinned("d")); //$NON-NLS-1$
+        // Not for an owner without pinned keys
+        cache.addPinned("view3", Collections.singletonList("e")); //$NON-NLS-1$ //$NON-NLS-2$
+        Assert.assertFalse(cache.isPinned("e")); //$NON-NLS-1$
+
+        // Replaces the keys of the owner
+        cache.pin(VIEW1, Collections.singletonList("c")); //$NON-NLS-1$
+        Assert.assertFalse(cache.isPinned("a")); //$NON-NLS-1$
+        Assert.assertFalse(cache.isPinned("d")); //$NON-NLS-1$
+        Assert.assertTrue(cache.isPinned("b")); //$NON-NLS-1$
+
+        cache.unpin(VIEW2);
+        Assert.assertFalse(cache.isPinned("b")); //$NON-NLS-1$
+        Assert.assertTrue(cache.isPinned("c")); //$NON-NLS-1$
+        cache.pin(VIEW1, null);
+        Assert.assertFalse(cache.isPinned("c")); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SortedMediasTest {
+
+    // Key in the first character, no key when it is not a digit
+    private static final SortKeyComparator<String> FIRST_DIGIT = new SortKeyComparator<String>() {
+
+        @Override
+        public double getSortKey(String media) {
+            char c = media.charAt(0);
+            return Character.isDigit(c) ? c - '0' : Double.NaN;
+        }
+    };
+
+    private static List<String> sort(List<String> medias, SortKeyComparator<String> comparator) {
+        List<String> sorted = new ArrayList<>(medias);
+        Collections.sort(sorted, comparator);
+        return sorted;
+    }
+
+    @Test
+    public void testSort() {
+        List<String> medias = Arrays.asList("3a", "1a", "2a", "1b", "3b", "0a"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+        Assert.assertEquals(sort(medias, FIRST_DIGIT), SortedMedias.sort(medias, FIRST_DIGIT).getList());
+        SortKeyComparator<String> reverse = (SortKeyComparator<String>) FIRST_DIGIT.getReversOrderComparator();
+        Assert.assertEquals(sort(medias, reverse), SortedMedias.sort(medias, reverse).getList());
+        Assert.assertSame(FIRST_DIGIT, reverse.getReversOrderComparator());
+    }
+
+    @Test
+    public void testInsert() {
+        Random random = new Random(7);
+        for (SortKeyComparator<String> comparator : Arrays.asList(FIRST_DIGIT,
+            (SortKeyComparator<String>) FIRST_DIGIT.getReversOrderComparator())) {
+            List<String> medias = new ArrayList<>();
+            SortedMedias<String> sorted = SortedMedias.sort(medias, comparator);
+            for (int i = 0; i < 200; i++) {
+                String media = random.nextInt(5) + "_" + i; //$NON-NLS-1$
+                // Append or insert at a random position
+                int index = random.nextBoolean() ? medias.size() : random.nextInt(medias.size() + 1);
+                medias.add(index, media);
+                Assert.assertTrue(sorted.insert(media, index, medias.size(), comparator));
+                Assert.assertEquals(sort(medias, comparator), sorted.getList());
+            }
+        }
+    }
+
+    @Test
+    public void testInsertWithoutKey() {
+        List<String> medias = new ArrayList<>(Arrays.asList("2", "1")); //$NON-NLS-1$ //$NON-NLS-2$
+        SortedMedias<String> sorted = SortedMedias.sort(medias, FIRST_DIGIT);
+        medias.add("x"); //$NON-NLS-1$
+        Assert.assertFalse(sorted.insert("x", 2, medias.size(), FIRST_DIGIT)); //$NON-NLS-1$
+
+        medias.add(0, "3"); //$NON-NLS-1$
+        sorted = SortedMedias.sort(medias, FIRST_DIGIT);
+        Assert.assertEquals(sort(medias, FIRST_DIGIT), sorted.getList());
+        medias.add("0"); //$NON-NLS-1$
+        // Cannot insert in a list containing media without key
+        Assert.assertFalse(sorted.insert("0", medias.size() - 1, medias.size(), FIRST_DIGIT)); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testListNotModifiedByInsert() {
+        List<String> medias = new ArrayList<>(Arrays.asList("3", "1")); //$NON-NLS-1$ //$NON-NLS-2$
+        SortedMedias<String> sorted = SortedMedias.sort(medias, FIRST_DIGIT);
+        List<String> list = sorted.getList();
+        Assert.assertSame(list, sorted.getList());
+
+        medias.add(0, "2"); //$NON-NLS-1$
+        Assert.assertTrue(sorted.insert("2", 0, medias.size(), FIRST_DIGIT)); //$NON-NLS-1$
+        // The list returned before is not modified
+        Assert.assertEquals(Arrays.asList("1", "3"), list); //$NON-NLS-1$ //$NON-NLS-2$
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), sorted.getList()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        // Not in sync with the series
+        Assert.assertFalse(sorted.insert("4", 3, medias.size(), FIRST_DIGIT)); //$NON-NLS-1$
+    }
+}
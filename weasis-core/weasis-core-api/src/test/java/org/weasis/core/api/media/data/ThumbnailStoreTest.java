@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.opencv.data.PlanarImage;
+
+public class ThumbnailStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PlanarImage image(int bytes) {
+        // The width is the size of the written file
+        return (PlanarImage) Proxy.newProxyInstance(ThumbnailStoreTest.class.getClassLoader(),
+            new Class<?>[] { PlanarImage.class }, (proxy, method, args) -> bytes);
+    }
+
+    private static ThumbnailStore buildStore(File directory, long maxSize) {
+        return new ThumbnailStore(directory, maxSize) {
+
+            @Override
+            boolean writeImage(PlanarImage thumbnail, File file) {
+                try {
+                    Files.write(file.toPath(), new byte[thumbnail.width()]);
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testBudgetedEviction() throws IOException {
+        ThumbnailStore store = buildStore(folder.newFolder("thumbnails"), 1000); //$NON-NLS-1$
+        File a = store.put("a", image(400)); //$NON-NLS-1$
+        File b = store.put("b", image(400)); //$NON-NLS-1$
+        Assert.assertNotNull(a);
+        Assert.assertNotNull(b);
+        Assert.assertEquals(800, store.getSize());
+
+        // "a" becomes the most recently used
+        Assert.assertEquals(a, store.get("a")); //$NON-NLS-1$
+        File c = store.put("c", image(400)); //$NON-NLS-1$
+        Assert.assertNotNull(c);
+        Assert.assertEquals(2, store.getEntryCount());
+        Assert.assertEquals(800, store.getSize());
+        Assert.assertNull(store.get("b")); //$NON-NLS-1$
+        Assert.assertFalse(b.exists());
+        Assert.assertTrue(a.exists());
+
+        // Replacing a thumbnail updates the size
+        store.put("c", image(100)); //$NON-NLS-1$
+        Assert.assertEquals(500, store.getSize());
+
+        store.remove("a"); //$NON-NLS-1$
+        Assert.assertFalse(a.exists());
+        Assert.assertEquals(1, store.getEntryCount());
+        Assert.assertEquals(100, store.getSize());
+
+        // Deleted outside the store
+        Assert.assertTrue(c.delete());
+        Assert.assertNull(store.get("c")); //$NON-NLS-1$
+        Assert.assertEquals(0, store.getEntryCount());
+        Assert.assertEquals(0, store.getSize());
+    }
+
+    @Test
+    public void testIndexRoundTrip() throws IOException {
+        File dir = folder.newFolder("thumbnails"); //$NON-NLS-1$
+        ThumbnailStore store = buildStore(dir, 1000);
+        store.put("a", image(300)); //$NON-NLS-1$
+        store.put("b", image(200)); //$NON-NLS-1$
+        store.put("c", image(100)); //$NON-NLS-1$
+        // Least recently used order: b, c, a
+        store.get("a"); //$NON-NLS-1$
+        store.flush();
+
+        ThumbnailStore reopened = buildStore(dir, 1000);
+        Assert.assertEquals(3, reopened.getEntryCount());
+        Assert.assertEquals(600, reopened.getSize());
+        Assert.assertEquals(store.get("a"), reopened.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+        Assert.assertNotNull(reopened.get("b")); //$NON-NLS-1$
+        Assert.assertNotNull(reopened.get("c")); //$NON-NLS-1$
+        reopened.flush();
+
+        // Least recently used order: a, b, c. A lower budget removes "a" when reading the index
+        ThumbnailStore smaller = buildStore(dir, 300);
+        Assert.assertEquals(2, smaller.getEntryCount());
+        Assert.assertEquals(300, smaller.getSize());
+        Assert.assertNull(smaller.get("a")); //$NON-NLS-1$
+        Assert.assertNotNull(smaller.get("b")); //$NON-NLS-1$
+        Assert.assertNotNull(smaller.get("c")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        ThumbnailStore store = buildStore(folder.newFolder("thumbnails"), 0); //$NON-NLS-1$
+        Assert.assertFalse(store.isEnabled());
+        Assert.assertNull(store.put("a", image(10))); //$NON-NLS-1$
+        Assert.assertNull(store.get("a")); //$NON-NLS-1$
+    }
+}
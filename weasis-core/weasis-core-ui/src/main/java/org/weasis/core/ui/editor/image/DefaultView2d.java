@@ -96,6 +96,7 @@ import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesComparator;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.AuditLog;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.api.util.LangUtil;
 import org.weasis.core.api.util.StringUtil;
@@ -149,6 +150,13 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
 
     public static final String PROP_LAYER_OFFSET = "layer.offset"; //$NON-NLS-1$
 
+    /**
+     * Display the large images zoomed out from a reduced level of their pyramid (1/2, 1/4...).
+     */
+    public static final String P_IMAGE_PYRAMID = "weasis.image.pyramid"; //$NON-NLS-1$
+    private static final int PYRAMID_MIN_SIZE = 1024;
+    private static final int PYRAMID_MAX_LEVEL = 6;
+
     public static final GraphicClipboard GRAPHIC_CLIPBOARD = new GraphicClipboard();
 
     public static final Object antialiasingOff = RenderingHints.VALUE_ANTIALIAS_OFF;
@@ -459,6 +467,8 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
         if (newSeries != null) {
             newSeries.setOpen(true);
         }
+        // Keep the images of the displayed series in memory as long as possible
+        ImageElement.pinInCache(this, newSeries);
     }
 
     protected void closingSeries(MediaSeries<E> mediaSeries) {
@@ -913,6 +923,63 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
         }
     }
 
+    /**
+     * Allows to resample the source image to the visible part of the view before applying the other display
+     * operations, when the display operations contain the node {@link AffineTransformOp#VIEWPORT_OP_NAME}. This path
+     * is used only when the displayed image is smaller than the source image and not with the lens, which requires the
+     * full resolution image.
+     *
+     * @return true if the viewport resampling can be applied first
+     */
+    protected boolean isViewportFirstRendering() {
+        return false;
+    }
+
+    /**
+     * @return true if the large images can be displayed from a reduced level of their pyramid
+     */
+    protected boolean isPyramidRendering() {
+        return BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_IMAGE_PYRAMID, true);
+    }
+
+    /**
+     * Returns the smallest level of the pyramid with a resolution higher or equal to the view scale.
+     *
+     * @return the level of the pyramid, 0 for the source image
+     */
+    protected int getPyramidLevel(double viewScale, double width, double height) {
+        if (viewScale <= 0.0 || lens != null || Math.max(width, height) < PYRAMID_MIN_SIZE || !isPyramidRendering()) {
+            return 0;
+        }
+        int level = 0;
+        while (level < PYRAMID_MAX_LEVEL && viewScale * (1 << (level + 1)) <= 1.0) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @param matrix
+     *            the OpenCV affine matrix from the source image to the view, or null to get the transformation from
+     *            the source image to the level
+     * @param level
+     *            the level of the pyramid
+     * @return the affine matrix from the level of the pyramid to the view
+     */
+    private static double[] getPyramidMatrix(double[] matrix, int level) {
+        double f = 1 << level;
+        // Position of the center of the pixel (0,0) of the level in the source image
+        double c = (f - 1.0) / 2.0;
+        if (matrix == null) {
+            return new double[] { 1.0 / f, 0.0, -c / f, 0.0, 1.0 / f, -c / f };
+        }
+        if (level == 0) {
+            return matrix;
+        }
+        return new double[] { matrix[0] * f, matrix[1] * f, matrix[2] + (matrix[0] + matrix[1]) * c, matrix[3] * f,
+            matrix[4] * f, matrix[5] + (matrix[3] + matrix[4]) * c };
+    }
+
     protected void updateAffineTransform() {
         Rectangle2D modelArea = getViewModel().getModelArea();
         double viewScale = getViewModel().getViewScale();
@@ -964,7 +1031,35 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
 
             // Convert to openCV affine matrix
             double[] m = new double[] { fmx[0], fmx[2], fmx[4], fmx[1], fmx[3], fmx[5] };
-            node.setParam(AffineTransformOp.P_AFFINE_MATRIX, m);
+            int level = getPyramidLevel(viewScale, rWidth, rHeight);
+            imageLayer.setPyramidLevel(level);
+            // Transformation from the pixels of the pyramid level to the view
+            double[] ml = getPyramidMatrix(m, level);
+
+            ImageOpNode viewport = dispOp.getNode(AffineTransformOp.VIEWPORT_OP_NAME);
+            boolean viewportFirst = viewport != null && lens == null && isViewportFirstRendering()
+                && dstBounds.getWidth() * dstBounds.getHeight() < rWidth * rHeight;
+            // Transformation from the source image to the input of the operations before the last node
+            double[] inputMatrix = viewportFirst ? m : level > 0 ? getPyramidMatrix(null, level) : null;
+            if (viewport != null) {
+                viewport.setEnabled(viewportFirst);
+                viewport.setParam(AffineTransformOp.P_AFFINE_MATRIX, viewportFirst ? ml : null);
+                viewport.setParam(AffineTransformOp.P_DST_BOUNDS, viewportFirst ? dstBounds : null);
+                viewport.setParam(AffineTransformOp.P_INTERPOLATION, node.getParam(AffineTransformOp.P_INTERPOLATION));
+            }
+            // The operations using the image coordinates must know the transformation of their input
+            boolean afterViewport = viewport == null;
+            for (ImageOpNode op : dispOp.getOperations()) {
+                if (op == node) {
+                    break;
+                }
+                if (afterViewport) {
+                    op.setParam(AffineTransformOp.P_INPUT_MATRIX, inputMatrix);
+                }
+                afterViewport |= op == viewport;
+            }
+            node.setParam(AffineTransformOp.P_AFFINE_MATRIX,
+                viewportFirst ? AffineTransformOp.identityMatrix.clone() : ml);
 
             node.setParam(AffineTransformOp.P_DST_BOUNDS, dstBounds);
             imageLayer.updateDisplayOperations();
@@ -1154,6 +1249,8 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
                 if (showLens) {
                     if (lens == null) {
                         lens = new ZoomWin<>(this);
+                        // The lens requires the image at full resolution
+                        updateAffineTransform();
                     }
                     // resize if to big
                     int maxWidth = getWidth() / 3;
@@ -1165,6 +1262,7 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
 
                 } else {
                     closeLens();
+                    updateAffineTransform();
                 }
 
             } else if (command.equals(ActionW.PAN.cmd())) {
@@ -1222,6 +1320,7 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
             closingSeries(series);
             series = null;
         }
+        ImageElement.unpinInCache(this);
         super.disposeView();
     }
 
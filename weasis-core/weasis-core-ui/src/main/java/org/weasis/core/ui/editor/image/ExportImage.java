@@ -83,6 +83,12 @@ public class ExportImage<E extends ImageElement> extends DefaultView2d<E> {
         this.imagePrintingResolution = imagePrintingResolution;
     }
 
+    @Override
+    protected boolean isPyramidRendering() {
+        // Export and print at full resolution
+        return false;
+    }
+
     @Override
     public void disposeView() {
         disableMouseAndKeyListener();
@@ -12,6 +12,7 @@ package org.weasis.core.ui.editor.image;
 
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
+import java.util.Optional;
 
 import javax.swing.JComponent;
 import javax.swing.TransferHandler;
@@ -50,9 +51,11 @@ public class ImageTransferHandler extends TransferHandler implements Transferabl
         // anonymize and other default remove annotations
         if (comp instanceof Image2DViewer) {
             Image2DViewer<?> view2DPane = (Image2DViewer<?>) comp;
-            PlanarImage src = view2DPane.getSourceImage();
+            SimpleOpManager dispOp = view2DPane.getImageLayer().getDisplayOpManager();
+            // The input of the display operations can be a reduced level of the pyramid
+            PlanarImage src = Optional.ofNullable(dispOp.getFirstNodeInputImage()).orElse(view2DPane.getSourceImage());
             if (src != null) {
-                SimpleOpManager opManager = view2DPane.getImageLayer().getDisplayOpManager().copy();
+                SimpleOpManager opManager = dispOp.copy();
                 opManager.removeImageOperationAction(opManager.getNode(ZoomOp.OP_NAME));
                 opManager.setFirstNode(src);
                 disOp = opManager;
@@ -15,6 +15,7 @@ import java.awt.Point;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -60,9 +61,13 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     private OpManager preprocessing;
     private E sourceImage;
     private PlanarImage displayImage;
+    // Java2D copy of displayImage, only rebuilt when the display operations produce a new image
+    private transient PlanarImage bufferSource;
+    private transient BufferedImage displayBuffer;
     private Boolean visible = true;
     private boolean enableDispOperations = true;
     private Point offset;
+    private int pyramidLevel = 0;
 
     public RenderedImageLayer() {
         this(null);
@@ -88,6 +93,35 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         return null;
     }
 
+    /**
+     * @return the input image of the display operations: the source image or a reduced level of its pyramid
+     */
+    public PlanarImage getDisplaySourceImage() {
+        PlanarImage img = getSourceRenderedImage();
+        return pyramidLevel > 0 && img != null ? sourceImage.getPyramidImage(img, pyramidLevel) : img;
+    }
+
+    public int getPyramidLevel() {
+        return pyramidLevel;
+    }
+
+    /**
+     * Sets the level of the pyramid used as input of the display operations. The display operations are not processed
+     * by this method, the affine transformation must be adapted to the size of the level.
+     *
+     * @param level
+     *            the level of the pyramid, 0 for the source image
+     */
+    public void setPyramidLevel(int level) {
+        int val = Math.max(0, level);
+        if (val != pyramidLevel) {
+            this.pyramidLevel = val;
+            if (sourceImage != null) {
+                disOpManager.setFirstNode(getDisplaySourceImage());
+            }
+        }
+    }
+
     @Override
     public PlanarImage getDisplayImage() {
         return displayImage;
@@ -202,7 +236,7 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         }
 
         if (preprocessing != null || init) {
-            disOpManager.setFirstNode(getSourceRenderedImage());
+            disOpManager.setFirstNode(getDisplaySourceImage());
             updateDisplayOperations();
         }
     }
@@ -226,8 +260,7 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         }
 
         try {
-            g2d.drawRenderedImage(ImageConversion.toBufferedImage(displayImage),
-                AffineTransform.getTranslateInstance(0.0, 0.0));
+            g2d.drawRenderedImage(getDisplayBuffer(), AffineTransform.getTranslateInstance(0.0, 0.0));
         } catch (Exception e) {
             LOGGER.error("Cannot draw the image", e);//$NON-NLS-1$
             if ("java.io.IOException: closed".equals(e.getMessage())) { //$NON-NLS-1$
@@ -236,7 +269,7 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
                 if (sourceImage.isImageInCache()) {
                     sourceImage.removeImageFromCache();
                 }
-                disOpManager.setFirstNode(getSourceRenderedImage());
+                disOpManager.setFirstNode(getDisplaySourceImage());
                 updateDisplayOperations();
             }
         }
@@ -330,8 +363,9 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
 //        }
 
 
-        double[] matrix =
-            (double[]) disOpManager.getParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_AFFINE_MATRIX);
+        // The parameter must not be changed in place
+        double[] matrix = ((double[]) disOpManager.getParamValue(AffineTransformOp.OP_NAME,
+            AffineTransformOp.P_AFFINE_MATRIX)).clone();
         Rectangle2D bound =
             (Rectangle2D) disOpManager.getParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_DST_BOUNDS);
         double ratioX = matrix[0];
@@ -370,9 +404,26 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         g2d.setClip(clip);
     }
 
+    /**
+     * Returns the display image converted for Java2D. The conversion is done only when the display image has changed
+     * (not when repainting for a graphic) and recycles the previous buffer when it has the same size and type.
+     *
+     * @return the display image as BufferedImage
+     */
+    private BufferedImage getDisplayBuffer() {
+        PlanarImage img = displayImage;
+        if (img != bufferSource || displayBuffer == null) {
+            displayBuffer = ImageConversion.toBufferedImage(img, displayBuffer);
+            bufferSource = img;
+        }
+        return displayBuffer;
+    }
+
     public void dispose() {
         sourceImage = null;
         displayImage = null;
+        bufferSource = null;
+        displayBuffer = null;
         listenerList.clear();
         opListeners.clear();
     }
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+/**
+ * Error status (not 2xx) returned by an HTTP server.
+ */
+public class HttpResponseException extends StreamIOException {
+    private static final long serialVersionUID = 3290151376125620435L;
+
+    private final int responseCode;
+
+    public HttpResponseException(int responseCode, String message) {
+        super(message);
+        this.responseCode = responseCode;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @return true if the request has been rejected by the server (4xx), e.g. an unknown resource
+     */
+    public boolean isClientError() {
+        return responseCode >= 400 && responseCode < 500;
+    }
+}
@@ -44,8 +44,11 @@ public class NetworkUtil {
                     // Following is only intended LOG more info about Http Server Error
                     if (LOGGER.isTraceEnabled()) {
                         writeErrorResponse(httpURLConnection);
+                    } else {
+                        // Read the response until the end for reusing the connection (keep-alive)
+                        closeErrorResponse(httpURLConnection);
                     }
-                    throw new StreamIOException(httpURLConnection.getResponseMessage());
+                    throw new HttpResponseException(responseCode, httpURLConnection.getResponseMessage());
                 }
             } catch (StreamIOException e) {
                 throw e;
@@ -61,6 +64,19 @@ public class NetworkUtil {
         }
     }
 
+    private static void closeErrorResponse(HttpURLConnection httpURLConnection) {
+        try (InputStream errorStream = httpURLConnection.getErrorStream()) {
+            if (errorStream != null) {
+                byte[] buf = new byte[4096];
+                while (errorStream.read(buf) > 0) {
+                    // Ignore the content
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Cannot read the error response: {}", e.getMessage()); //$NON-NLS-1$
+        }
+    }
+
     private static void writeErrorResponse(HttpURLConnection httpURLConnection) throws IOException {
         InputStream errorStream = httpURLConnection.getErrorStream();
         if (errorStream != null) {
@@ -194,6 +194,8 @@ public class DicomCodec implements Codec {
         LOGGER.info("Deactivate DicomCodec"); //$NON-NLS-1$
         // ImageioUtil.deregisterServiceProvider(rleImageReaderSpi);
         ImageioUtil.deregisterServiceProvider(DicomMediaIO.dicomImageReaderSpi);
+        DicomMediaIO.HEADER_INDEX.removeExpired();
+        DicomMediaIO.removeExpiredFragmentIndexes();
     }
 
     @Reference(service = DicomSpecialElementFactory.class, cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC, unbind = "removeDicomSpecialElementFactory")
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.BulkData;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.imageio.plugins.dcm.DicomMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.util.FileUtil;
+
+/**
+ * Persistent index of the DICOM headers of local files.
+ * <p>
+ * The header (file meta information and dataset without the pixel data) is written in a compact binary form, deflated,
+ * in a file named by the SHA-1 of the path of the DICOM file. The bulk data (pixel data, overlay data, large private
+ * values...) are not copied: only their offset and their length in the DICOM file are kept, and the fragments of the
+ * encapsulated pixel data are kept as a list of offsets. The entry is valid as long as the path, the size and the
+ * modification date of the DICOM file are unchanged, so the file is not opened before reading its pixels.
+ * <p>
+ * The entries which have not been used for some days are deleted by {@link #removeExpired()}.
+ */
+public class DicomHeaderIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DicomHeaderIndex.class);
+
+    private static final int MAGIC = 0x57444849; // WDHI
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".hdr"; //$NON-NLS-1$
+
+    // Value types
+    private static final byte NULL = 0;
+    private static final byte BYTES = 1;
+    private static final byte SEQUENCE = 2;
+    private static final byte FRAGMENTS = 3;
+    private static final byte BULK_DATA = 4;
+
+    private final File directory;
+    private final long maxAge;
+
+    /**
+     * @param directory
+     *            the directory of the index
+     * @param maxAgeDays
+     *            the number of days before deleting an entry which has not been used, the index is disabled when the
+     *            value is not positive
+     */
+    public DicomHeaderIndex(File directory, int maxAgeDays) {
+        this.directory = directory;
+        this.maxAge = TimeUnit.DAYS.toMillis(Math.max(0, maxAgeDays));
+    }
+
+    public boolean isEnabled() {
+        return directory != null && maxAge > 0;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param file
+     *            the DICOM file
+     * @param uri
+     *            the URI of the bulk data
+     * @return the header of the file or null when it is not in the index or when the file has changed
+     */
+    public DicomMetaData read(File file, String uri) {
+        if (!isEnabled() || file == null) {
+            return null;
+        }
+        File entry = getEntry(file);
+        if (entry == null || !entry.canRead()) {
+            return null;
+        }
+        try (DataInputStream in =
+            new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(entry))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !file.getAbsolutePath().equals(in.readUTF())
+                || in.readLong() != file.length() || in.readLong() != file.lastModified()) {
+                return null;
+            }
+            Attributes fmi = in.readBoolean() ? readAttributes(in, uri) : null;
+            Attributes ds = readAttributes(in, uri);
+            touch(entry);
+            return new DicomMetaData(fmi, ds);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot read the header index of {}", file, e); //$NON-NLS-1$
+            FileUtil.delete(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the header of the DICOM file in the index.
+     *
+     * @param file
+     *            the DICOM file
+     * @param metadata
+     *            the header of the file
+     */
+    public void write(File file, DicomMetaData metadata) {
+        if (!isEnabled() || file == null || metadata == null) {
+            return;
+        }
+        File entry = getEntry(file);
+        if (entry == null) {
+            return;
+        }
+        File tmp = null;
+        try {
+            directory.mkdirs();
+            // The same file can be read by several readers
+            tmp = File.createTempFile(entry.getName(), ".tmp", directory); //$NON-NLS-1$
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(tmp), deflater)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(file.getAbsolutePath());
+                out.writeLong(file.length());
+                out.writeLong(file.lastModified());
+                Attributes fmi = metadata.getFileMetaInformation();
+                out.writeBoolean(fmi != null);
+                if (fmi != null) {
+                    writeAttributes(out, fmi);
+                }
+                writeAttributes(out, metadata.getAttributes());
+            } finally {
+                deflater.end();
+            }
+            Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot write the header index of {}", file, e); //$NON-NLS-1$
+            if (tmp != null) {
+                FileUtil.delete(tmp);
+            }
+        }
+    }
+
+    /**
+     * Deletes the entries which have not been used since the maximum age.
+     */
+    public void removeExpired() {
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - maxAge;
+        for (File f : files) {
+            if (!isEnabled() || f.lastModified() < limit) {
+                FileUtil.delete(f);
+            }
+        }
+    }
+
+    private void touch(File entry) {
+        // Limit the writing of the date to once a day
+        long now = System.currentTimeMillis();
+        if (now - entry.lastModified() > TimeUnit.DAYS.toMillis(1)) {
+            entry.setLastModified(now);
+        }
+    }
+
+    private File getEntry(File file) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            byte[] digest = md.digest(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder buf = new StringBuilder(digest.length * 2 + EXTENSION.length());
+            for (byte b : digest) {
+                buf.append(Character.forDigit((b >> 4) & 0xF, 16));
+                buf.append(Character.forDigit(b & 0xF, 16));
+            }
+            buf.append(EXTENSION);
+            return new File(directory, buf.toString());
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.error("Cannot build the header index name", e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    static void writeAttributes(DataOutput out, Attributes attrs) throws IOException {
+        out.writeBoolean(attrs.bigEndian());
+        int[] tags = attrs.tags();
+        out.writeInt(tags.length);
+        VR.Holder vr = new VR.Holder();
+        for (int tag : tags) {
+            Object value = attrs.getValue(tag, vr);
+            out.writeInt(tag);
+            out.writeInt(vr.vr.code());
+            if (value instanceof Sequence) {
+                Sequence seq = (Sequence) value;
+                out.writeByte(SEQUENCE);
+                out.writeInt(seq.size());
+                for (Attributes item : seq) {
+                    writeAttributes(out, item);
+                }
+            } else if (value instanceof Fragments) {
+                Fragments frags = (Fragments) value;
+                out.writeByte(FRAGMENTS);
+                out.writeBoolean(frags.bigEndian());
+                out.writeInt(frags.size());
+                for (Object frag : frags) {
+                    writeFragment(out, frag);
+                }
+            } else if (value instanceof BulkData) {
+                out.writeByte(BULK_DATA);
+                writeBulkData(out, (BulkData) value);
+            } else {
+                byte[] b = value == null ? null : attrs.getBytes(tag);
+                if (b == null || b.length == 0) {
+                    out.writeByte(NULL);
+                } else {
+                    out.writeByte(BYTES);
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+            }
+        }
+    }
+
+    private static void writeFragment(DataOutput out, Object frag) throws IOException {
+        if (frag instanceof BulkData) {
+            out.writeByte(BULK_DATA);
+            writeBulkData(out, (BulkData) frag);
+        } else if (frag instanceof byte[] && ((byte[]) frag).length > 0) {
+            byte[] b = (byte[]) frag;
+            out.writeByte(BYTES);
+            out.writeInt(b.length);
+            out.write(b);
+        } else {
+            out.writeByte(NULL);
+        }
+    }
+
+    private static void writeBulkData(DataOutput out, BulkData bulkData) throws IOException {
+        out.writeLong(bulkData.offset());
+        out.writeInt(bulkData.length());
+        out.writeBoolean(bulkData.bigEndian());
+    }
+
+    static Attributes readAttributes(DataInput in, String uri) throws IOException {
+        boolean bigEndian = in.readBoolean();
+        int size = in.readInt();
+        Attributes attrs = new Attributes(bigEndian, size);
+        for (int i = 0; i < size; i++) {
+            int tag = in.readInt();
+            VR vr = VR.valueOf(in.readInt());
+            byte type = in.readByte();
+            switch (type) {
+                case SEQUENCE:
+                    int nbItems = in.readInt();
+                    Sequence seq = attrs.newSequence(tag, nbItems);
+                    for (int k = 0; k < nbItems; k++) {
+                        seq.add(readAttributes(in, uri));
+                    }
+                    break;
+                case FRAGMENTS:
+                    // The byte order of the fragments is the one of the dataset
+                    in.readBoolean();
+                    int nbFrags = in.readInt();
+                    Fragments frags = attrs.newFragments(tag, vr, nbFrags);
+                    for (int k = 0; k < nbFrags; k++) {
+                        frags.add(readFragment(in, uri));
+                    }
+                    break;
+                case BULK_DATA:
+                    attrs.setValue(tag, vr, readBulkData(in, uri));
+                    break;
+                case BYTES:
+                    attrs.setBytes(tag, vr, readBytes(in));
+                    break;
+                default:
+                    attrs.setNull(tag, vr);
+                    break;
+            }
+        }
+        return attrs;
+    }
+
+    private static Object readFragment(DataInput in, String uri) throws IOException {
+        byte type = in.readByte();
+        if (type == BULK_DATA) {
+            return readBulkData(in, uri);
+        } else if (type == BYTES) {
+            return readBytes(in);
+        }
+        return new byte[0];
+    }
+
+    private static BulkData readBulkData(DataInput in, String uri) throws IOException {
+        long offset = in.readLong();
+        int length = in.readInt();
+        return new BulkData(uri, offset, length, in.readBoolean());
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return b;
+    }
+}
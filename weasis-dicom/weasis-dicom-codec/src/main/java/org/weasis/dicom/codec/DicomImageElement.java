@@ -14,10 +14,13 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.dcm4che3.data.Tag;
 import org.opencv.core.Mat;
@@ -50,6 +53,16 @@ public class DicomImageElement extends ImageElement {
     private static final Logger LOGGER = LoggerFactory.getLogger(DicomImageElement.class);
 
     private static final SoftHashMap<LutParameters, LookupTableCV> LUT_Cache = new SoftHashMap<>();
+    // Most recently used composed tables, one per series and window/level in use. Guarded by itself.
+    private static final Map<ComposedLutKey, LookupTableCV> COMPOSED_LUT_CACHE =
+        new LinkedHashMap<ComposedLutKey, LookupTableCV>(32, 0.75f, true) {
+            private static final long serialVersionUID = 4671396839245727521L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ComposedLutKey, LookupTableCV> eldest) {
+                return size() > 32;
+            }
+        };
 
     private volatile List<PresetWindowLevel> windowingPresetCollection = null;
     private volatile Collection<LutShape> lutShapeCollection = null;
@@ -381,7 +394,10 @@ public class DicomImageElement extends ImageElement {
         if (lutparams == null) {
             return null;
         }
-        LookupTableCV modalityLookup = LUT_Cache.get(lutparams);
+        LookupTableCV modalityLookup;
+        synchronized (LUT_Cache) {
+            modalityLookup = LUT_Cache.get(lutparams);
+        }
 
         if (modalityLookup != null) {
             return modalityLookup;
@@ -412,7 +428,9 @@ public class DicomImageElement extends ImageElement {
         if (isPhotometricInterpretationMonochrome()) {
             DicomImageUtils.applyPixelPaddingToModalityLUT(modalityLookup, lutparams);
         }
-        LUT_Cache.put(lutparams, modalityLookup);
+        synchronized (LUT_Cache) {
+            LUT_Cache.put(lutparams, modalityLookup);
+        }
         return modalityLookup;
     }
 
@@ -433,22 +451,51 @@ public class DicomImageElement extends ImageElement {
             return null;
         }
 
-        int minValue;
-        int maxValue;
+        int[] range = getVOIRange(tagable, minLevel, maxLevel, fillLutOutside, pixelPadding);
+        return DicomImageUtils.createWindowLevelLut(shape, window, level, range[0], range[1], 8, false,
+            isPhotometricInterpretationInverse(tagable));
+    }
+
+    private int[] getVOIRange(TagReadable tagable, double minLevel, double maxLevel, boolean fillLutOutside,
+        boolean pixelPadding) {
         /*
          * When pixel padding is activated, VOI LUT must extend to the min bit stored value when MONOCHROME2 and to the
          * max bit stored value when MONOCHROME1. See C.7.5.1.1.2
          */
         if (fillLutOutside || (getPaddingValue() != null && isPhotometricInterpretationMonochrome())) {
-            minValue = getMinAllocatedValue(tagable, pixelPadding);
-            maxValue = getMaxAllocatedValue(tagable, pixelPadding);
-        } else {
-            minValue = minLevel.intValue();
-            maxValue = maxLevel.intValue();
+            return new int[] { getMinAllocatedValue(tagable, pixelPadding), getMaxAllocatedValue(tagable, pixelPadding) };
         }
+        return new int[] { (int) minLevel, (int) maxLevel };
+    }
 
-        return DicomImageUtils.createWindowLevelLut(shape, window, level, minValue, maxValue, 8, false,
-            isPhotometricInterpretationInverse(tagable));
+    /**
+     * Returns a single table combining the modality LUT, the VOI LUT and the presentation LUT. The table is cached as
+     * it depends only on the tables and the window/level parameters, so it can be shared by all the images of a
+     * series.
+     *
+     * @return the composed table or null if the tables cannot be combined
+     */
+    private LookupTableCV getComposedLookup(TagReadable tagable, LookupTableCV modalityLookup,
+        LookupTableCV prLutData, boolean applyVoi, double window, double level, double minLevel, double maxLevel,
+        LutShape shape, boolean fillLutOutside, boolean pixelPadding) {
+        int[] range = applyVoi ? getVOIRange(tagable, minLevel, maxLevel, fillLutOutside, pixelPadding) : null;
+        ComposedLutKey key = new ComposedLutKey(modalityLookup, prLutData, applyVoi ? shape : null, window, level,
+            range, isPhotometricInterpretationInverse(tagable));
+        LookupTableCV lookup;
+        synchronized (COMPOSED_LUT_CACHE) {
+            lookup = COMPOSED_LUT_CACHE.get(key);
+        }
+        if (lookup == null) {
+            LookupTableCV voiLookup = applyVoi
+                ? getVOILookup(tagable, window, level, minLevel, maxLevel, shape, fillLutOutside, pixelPadding) : null;
+            lookup = LookupTableCV.compose(modalityLookup, voiLookup, prLutData);
+            if (lookup != null) {
+                synchronized (COMPOSED_LUT_CACHE) {
+                    COMPOSED_LUT_CACHE.put(key, lookup);
+                }
+            }
+        }
+        return lookup;
     }
 
     /**
@@ -460,6 +507,26 @@ public class DicomImageElement extends ImageElement {
         return (presetList != null && !presetList.isEmpty()) ? presetList.get(0) : null;
     }
 
+    @Override
+    public String getThumbnailKey() {
+        String uid = TagD.getTagValue(this, Tag.SOPInstanceUID, String.class);
+        if (uid == null) {
+            return super.getThumbnailKey();
+        }
+        /*
+         * The content of a SOP Instance never changes (local or remote), the default rendering depends only on the
+         * frame and on the attributes of the VOI LUT module.
+         */
+        StringBuilder buf = new StringBuilder(uid);
+        buf.append('|');
+        buf.append(getKey());
+        buf.append('|');
+        buf.append(Arrays.toString(TagD.getTagValue(this, Tag.WindowWidth, double[].class)));
+        buf.append(Arrays.toString(TagD.getTagValue(this, Tag.WindowCenter, double[].class)));
+        buf.append(TagD.getTagValue(this, Tag.VOILUTFunction, String.class));
+        return buf.toString();
+    }
+
     public List<PresetWindowLevel> getPresetList(boolean pixelPadding) {
         if (windowingPresetCollection == null && isImageAvailable()) {
             String type = Messages.getString("PresetWindowLevel.dcm_preset"); //$NON-NLS-1$
@@ -495,6 +562,14 @@ public class DicomImageElement extends ImageElement {
         return lutShapeCollection;
     }
 
+    @Override
+    protected void resetMinMaxValues() {
+        super.resetMinMaxValues();
+        // The presets depend on the min and max values
+        windowingPresetCollection = null;
+        lutShapeCollection = null;
+    }
+
     @Override
     protected void findMinMaxValues(PlanarImage img, boolean exclude8bitImage) {
         /*
@@ -678,8 +753,6 @@ public class DicomImageElement extends ImageElement {
 
         if (datatype >= DataBuffer.TYPE_BYTE && datatype < DataBuffer.TYPE_INT) {
             LookupTableCV modalityLookup = getModalityLookup(prTags, pixPadding, invLUT);
-            ImageCV imageModalityTransformed =
-                modalityLookup == null ? imageSource.toImageCV() : modalityLookup.lookup(imageSource.toMat());
 
             /*
              * C.11.2.1.2 Window center and window width
@@ -692,11 +765,23 @@ public class DicomImageElement extends ImageElement {
                  * If photometric interpretation is not monochrome do not apply VOILUT. It is necessary for
                  * PALETTE_COLOR.
                  */
-                return imageModalityTransformed;
+                return modalityLookup == null ? imageSource.toImageCV() : modalityLookup.lookup(imageSource.toMat());
             }
 
+            boolean applyVoi = prLutData == null || lut.getLookup() != null;
+            if (imageSource.channels() == 1) {
+                // Apply modality, VOI and presentation LUTs in a single pass
+                LookupTableCV lookup = getComposedLookup(prTags, modalityLookup, prLutData, applyVoi, windowValue,
+                    levelValue, minLevel, maxLevel, lut, LangUtil.getNULLtoFalse(fillLutOutside), pixPadding);
+                if (lookup != null) {
+                    return lookup.lookup(imageSource.toMat());
+                }
+            }
+
+            ImageCV imageModalityTransformed =
+                modalityLookup == null ? imageSource.toImageCV() : modalityLookup.lookup(imageSource.toMat());
             LookupTableCV voiLookup = null;
-            if (prLutData == null || lut.getLookup() != null) {
+            if (applyVoi) {
                 voiLookup = getVOILookup(prTags, windowValue, levelValue, minLevel, maxLevel, lut,
                     LangUtil.getNULLtoFalse(fillLutOutside), pixPadding);
             }
@@ -773,4 +858,53 @@ public class DicomImageElement extends ImageElement {
         return null;
     }
 
+
+    private static final class ComposedLutKey {
+        private final LookupTableCV modality;
+        private final LookupTableCV pr;
+        private final LutShape shape;
+        private final double window;
+        private final double level;
+        private final int[] range;
+        private final boolean inverse;
+
+        ComposedLutKey(LookupTableCV modality, LookupTableCV pr, LutShape shape, double window, double level,
+            int[] range, boolean inverse) {
+            this.modality = modality;
+            this.pr = pr;
+            this.shape = shape;
+            this.window = shape == null ? 0.0 : window;
+            this.level = shape == null ? 0.0 : level;
+            this.range = range;
+            this.inverse = inverse;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            ComposedLutKey other = (ComposedLutKey) obj;
+            // The tables come from caches, compare the instances
+            return modality == other.modality && pr == other.pr && inverse == other.inverse
+                && Double.doubleToLongBits(window) == Double.doubleToLongBits(other.window)
+                && Double.doubleToLongBits(level) == Double.doubleToLongBits(other.level)
+                && Arrays.equals(range, other.range) && Objects.equals(shape, other.shape);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(modality);
+            result = 31 * result + System.identityHashCode(pr);
+            result = 31 * result + Objects.hashCode(shape);
+            result = 31 * result + Double.hashCode(window);
+            result = 31 * result + Double.hashCode(level);
+            result = 31 * result + Arrays.hashCode(range);
+            result = 31 * result + (inverse ? 1231 : 1237);
+            return result;
+        }
+    }
 }
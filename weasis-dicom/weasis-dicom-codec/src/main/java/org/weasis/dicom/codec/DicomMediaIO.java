@@ -16,7 +16,12 @@ import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutput;
@@ -25,17 +30,25 @@ import java.io.RandomAccessFile;
 import java.lang.ref.Reference;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
@@ -73,6 +86,8 @@ import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.image.util.ImageFiler;
 import org.weasis.core.api.media.data.Codec;
 import org.weasis.core.api.media.data.FileCache;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.LayeredTagMap;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
@@ -118,6 +133,34 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     public static final String SERIES_XDSI = "xds-i/dicom"; //$NON-NLS-1$
 
     private static final AtomicInteger instanceID = new AtomicInteger(1);
+
+    // Extended Offset Table (7FE0,0001), not defined in all the dcm4che versions
+    private static final int EXTENDED_OFFSET_TABLE = 0x7FE00001;
+    private static final int FRAGMENT_INDEX_VERSION = 1;
+    private static final File FRAGMENT_INDEX_DIR =
+        new File(AppProperties.WEASIS_PATH, "cache" + File.separator + "fragments"); //$NON-NLS-1$ //$NON-NLS-2$
+    /**
+     * Number of days before deleting the unused entries of the persistent fragment index, 0 disables the index.
+     */
+    public static final String P_FRAGMENT_INDEX_MAX_AGE = "weasis.dicom.fragment.index.max.age"; //$NON-NLS-1$
+    private static final long FRAGMENT_INDEX_MAX_AGE = TimeUnit.DAYS
+        .toMillis(Math.max(0, BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_FRAGMENT_INDEX_MAX_AGE, 30)));
+
+    /**
+     * Number of days before deleting the unused entries of the persistent header index, 0 disables the index.
+     */
+    public static final String P_HEADER_INDEX_MAX_AGE = "weasis.dicom.header.index.max.age"; //$NON-NLS-1$
+    public static final DicomHeaderIndex HEADER_INDEX =
+        new DicomHeaderIndex(new File(AppProperties.WEASIS_PATH, "cache" + File.separator + "header"), //$NON-NLS-1$ //$NON-NLS-2$
+            BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_HEADER_INDEX_MAX_AGE, 30));
+
+    /**
+     * Read the uncompressed pixel data through a memory mapping of the file. Disabled by default on Windows as a mapped
+     * file cannot be deleted until the mapping is garbage collected.
+     */
+    public static final String P_MAPPED_RAW_READ = "weasis.dicom.raw.mmap"; //$NON-NLS-1$
+    private static final boolean MAPPED_RAW_READ = BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_MAPPED_RAW_READ,
+        !AppProperties.OPERATING_SYSTEM.startsWith("win")); //$NON-NLS-1$
     public static final TagManager tagManager = new TagManager();
 
     static {
@@ -260,6 +303,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     static final DicomImageReaderSpi dicomImageReaderSpi = new DicomImageReaderSpi();
 
+    // Not thread-safe, always synchronized on the map (headers can be read by several threads when importing)
     private static final SoftHashMap<DicomMediaIO, DicomMetaData> HEADER_CACHE =
         new SoftHashMap<DicomMediaIO, DicomMetaData>() {
 
@@ -286,9 +330,15 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     private URI uri;
     private int numberOfFrame;
     private final Map<TagW, Object> tags;
+    // Copy of the tags shared by the frames, only the values of each frame are stored in the frame
+    private volatile Map<TagW, Object> frameTags;
+    // Last values of the frames, for sharing the identical values between frames
+    private final Map<TagW, Object> frameValues = new ConcurrentHashMap<>();
     private volatile MediaElement[] image = null;
     private volatile String mimeType;
     private final ArrayList<Integer> fragmentsPositions = new ArrayList<>();
+    // Mapping of the uncompressed pixel data shared by all the frames, released when closing the reader
+    private volatile MappedByteBuffer mappedPixelData;
 
     private volatile ImageInputStream iis;
     private DicomInputStream dis;
@@ -453,6 +503,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     @Override
     public void setTag(TagW tag, Object value) {
         DicomMediaUtils.setTag(tags, tag, value);
+        frameTags = null;
     }
 
     @Override
@@ -752,6 +803,38 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         return null;
     }
 
+    /**
+     * Samples the uncompressed pixel data directly from the file when the image is large enough. The compressed
+     * syntaxes are decoded at full resolution because the native codecs do not expose a reduced decoding.
+     */
+    @Override
+    public PlanarImage getReducedImageFragment(MediaElement media, int size) throws Exception {
+        Object key = Objects.requireNonNull(media).getKey();
+        if (key instanceof Integer && isReadableDicom() && hasPixel && MAPPED_RAW_READ) {
+            int frame = (Integer) key;
+            Optional<File> orinigal = media.getFileCache().getOriginalFile();
+            if (frame >= 0 && frame < numberOfFrame && orinigal.isPresent()) {
+                readMetaData();
+                Integer width = TagD.getTagValue(this, Tag.Columns, Integer.class);
+                Integer height = TagD.getTagValue(this, Tag.Rows, Integer.class);
+                if (!compressedData && pmi != PhotometricInterpretation.PALETTE_COLOR && width != null
+                    && height != null) {
+                    int step = ImageElement.getReductionFactor(width, height, size, 8);
+                    PlanarImage img = step > 1 ? readMappedFrame(orinigal.get(), frame, step) : null;
+                    if (img != null) {
+                        Integer overlayBitMask = (Integer) getTagValue(TagW.OverlayBitMask);
+                        if (overlayBitMask != null) {
+                            // Set to 0 all bits outside bitStored, the overlay is extracted with the full image
+                            img = ImageProcessor.bitwiseAnd(img.toMat(), overlayBitMask);
+                        }
+                        return img;
+                    }
+                }
+            }
+        }
+        return getImageFragment(media);
+    }
+
     private static Mat getMatBuffer(ExtendSegmentedInputImageStream extParams) throws IOException {
         try (RandomAccessFile raf = new RandomAccessFile(extParams.getFile(), "r")) { //$NON-NLS-1$
 
@@ -778,6 +861,12 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             readMetaData();
             String syntax = tsuid;
             boolean rawData = !compressedData || isRLELossless();
+            if (!compressedData && MAPPED_RAW_READ) {
+                PlanarImage img = readMappedFrame(orinigal.get(), frame, 1);
+                if (img != null) {
+                    return img;
+                }
+            }
             ExtendSegmentedInputImageStream extParams = buildSegmentedImageInputStream(frame);
 
             if (extParams.getSegmentPositions() != null) {
@@ -834,6 +923,121 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         return null;
     }
 
+    /**
+     * Reads a frame of uncompressed pixel data from the mapping of the pixel data element. Only the little endian
+     * single sample images of 8 or 16 bits are handled, otherwise returns null.
+     *
+     * @param step
+     *            the sub-sampling step of the rows and the columns, 1 reads all the pixels
+     */
+    private PlanarImage readMappedFrame(File file, int frame, int step) throws IOException {
+        Integer samples = TagD.getTagValue(this, Tag.SamplesPerPixel, Integer.class);
+        if (pixeldata == null || bigendian || banded || samples == null || samples != 1
+            || (bitsAllocated != 8 && bitsAllocated != 16) || dataType > DataBuffer.TYPE_SHORT) {
+            return null;
+        }
+        int width = TagD.getTagValue(this, Tag.Columns, Integer.class);
+        int height = TagD.getTagValue(this, Tag.Rows, Integer.class);
+        int frameLength = width * height * (bitsAllocated / 8);
+        long start = (long) frame * frameLength;
+        ByteBuffer mapped;
+        if ((long) Math.max(1, numberOfFrame) * frameLength > Integer.MAX_VALUE) {
+            // A buffer cannot map more than 2 GB, map only the frame
+            mapped = mapFrame(file, start, frameLength);
+            start = 0;
+        } else {
+            mapped = getMappedPixelData(file);
+        }
+        if (mapped == null || start + frameLength > mapped.capacity()) {
+            return null;
+        }
+
+        // Each reader gets its own position on the shared mapping
+        ByteBuffer buf = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (step > 1) {
+            return readMappedFrame(buf, (int) start, width, height, step);
+        }
+        buf.position((int) start);
+        buf.limit((int) start + frameLength);
+        if (bitsAllocated == 8) {
+            byte[] data = new byte[frameLength];
+            buf.get(data);
+            return buildByteImage(data, width, height);
+        }
+
+        short[] data = new short[width * height];
+        buf.asShortBuffer().get(data);
+        return buildShortImage(data, width, height);
+    }
+
+    /**
+     * Reads one pixel every step of rows and columns. Only the sampled pixels are read from the mapping.
+     */
+    private PlanarImage readMappedFrame(ByteBuffer buf, int start, int width, int height, int step) {
+        int dstWidth = (width - 1) / step + 1;
+        int dstHeight = (height - 1) / step + 1;
+        if (bitsAllocated == 8) {
+            byte[] data = new byte[dstWidth * dstHeight];
+            for (int y = 0; y < dstHeight; y++) {
+                int line = start + y * step * width;
+                for (int x = 0; x < dstWidth; x++) {
+                    data[y * dstWidth + x] = buf.get(line + x * step);
+                }
+            }
+            return buildByteImage(data, dstWidth, dstHeight);
+        }
+
+        short[] data = new short[dstWidth * dstHeight];
+        for (int y = 0; y < dstHeight; y++) {
+            int line = start + y * step * width * 2;
+            for (int x = 0; x < dstWidth; x++) {
+                data[y * dstWidth + x] = buf.getShort(line + x * step * 2);
+            }
+        }
+        return buildShortImage(data, dstWidth, dstHeight);
+    }
+
+    private PlanarImage buildByteImage(byte[] data, int width, int height) {
+        // The bits above the bits stored are cleared by the overlay bit mask
+        ImageCV img = new ImageCV(height, width, CvType.CV_8UC1);
+        img.put(0, 0, data);
+        return img;
+    }
+
+    private PlanarImage buildShortImage(short[] data, int width, int height) {
+        boolean signed = dataType == DataBuffer.TYPE_SHORT;
+        // Only the sign is extended, the overlay bits of unsigned values are cleared by the overlay bit mask
+        DicomMediaUtils.extendSignedBits(data, bitsStored, signed);
+        ImageCV img = new ImageCV(height, width, signed ? CvType.CV_16SC1 : CvType.CV_16UC1);
+        img.put(0, 0, data);
+        return img;
+    }
+
+    private synchronized ByteBuffer getMappedPixelData(File file) {
+        if (mappedPixelData == null && pixeldata.length() > 0) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                mappedPixelData = channel.map(MapMode.READ_ONLY, pixeldata.offset(), pixeldata.length());
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("Cannot map the pixel data of {}", file, e); //$NON-NLS-1$
+                return null;
+            }
+        }
+        return mappedPixelData;
+    }
+
+    private ByteBuffer mapFrame(File file, long start, int length) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = pixeldata.offset() + start;
+            if (position + length > channel.size()) {
+                return null;
+            }
+            return channel.map(MapMode.READ_ONLY, position, length);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Cannot map the frame of {}", file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
     private PlanarImage getValidImage(RenderedImage buffer, MediaElement media) {
         PlanarImage img = null;
         if (buffer != null) {
@@ -986,8 +1190,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     public Map<TagW, Object> getMediaFragmentTags(Object key) {
         if (key instanceof Integer) {
             if ((Integer) key > 0) {
-                // Clone the shared tag
-                Map<TagW, Object> tagList = new HashMap<>(tags);
+                Map<TagW, Object> tagList = new LayeredTagMap(getFrameTags(), frameValues);
                 SimpleTagable tagable = new SimpleTagable(tagList);
                 if (DicomMediaUtils.writePerFrameFunctionalGroupsSequence(tagable, getDicomObject(), (Integer) key)) {
                     DicomMediaUtils.computeSlicePositionVector(tagable);
@@ -998,6 +1201,15 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         return tags;
     }
 
+    private Map<TagW, Object> getFrameTags() {
+        Map<TagW, Object> shared = frameTags;
+        if (shared == null) {
+            shared = Collections.unmodifiableMap(new HashMap<>(tags));
+            frameTags = shared;
+        }
+        return shared;
+    }
+
     @Override
     public void close() {
         dispose();
@@ -1068,7 +1280,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     private boolean isRLELossless() {
-        return dis == null ? false : dis.getTransferSyntax().equals(UID.RLELossless);
+        return UID.RLELossless.equals(tsuid);
     }
 
     private ExtendSegmentedInputImageStream iisOfFrame(int frameIndex) throws IOException {
@@ -1120,17 +1332,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
                 } else {
                     // Multi-frames where each frames can have multiple fragments.
                     if (fragmentsPositions.isEmpty()) {
-                        boolean jpeg2000 = tsuid.startsWith("1.2.840.10008.1.2.4.9"); //$NON-NLS-1$
-                        try (ImageInputStream srcStream = ImageIO.createImageInputStream(new File(uri))) {
-                            for (int i = 1; i < nbFragments; i++) {
-                                BulkData bulkData = (BulkData) pixeldataFragments.get(i);
-                                ImageInputStream stream = new org.dcm4che3.imageio.stream.SegmentedInputImageStream(
-                                    srcStream, bulkData.offset(), bulkData.length(), false);
-                                if (jpeg2000 ? decodeJpeg2000(stream) : decodeJpeg(stream)) {
-                                    fragmentsPositions.add(i);
-                                }
-                            }
-                        }
+                        buildFragmentsPositions(nbFragments);
                     }
 
                     if (fragmentsPositions.size() == numberOfFrame) {
@@ -1154,6 +1356,158 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         return new ExtendSegmentedInputImageStream(fileCache.getOriginalFile().orElse(null), offsets, length);
     }
 
+    private synchronized void buildFragmentsPositions(int nbFragments) throws IOException {
+        if (!fragmentsPositions.isEmpty()) {
+            return;
+        }
+        if (readOffsetTable(nbFragments)) {
+            return;
+        }
+
+        File file = new File(uri);
+        String sopUID = TagD.getTagValue(this, Tag.SOPInstanceUID, String.class);
+        File indexFile = sopUID == null || FRAGMENT_INDEX_MAX_AGE <= 0 ? null
+            : new File(FRAGMENT_INDEX_DIR, sopUID + ".idx"); //$NON-NLS-1$
+        if (readFragmentIndex(indexFile, file)) {
+            return;
+        }
+
+        boolean jpeg2000 = tsuid.startsWith("1.2.840.10008.1.2.4.9"); //$NON-NLS-1$
+        try (ImageInputStream srcStream = ImageIO.createImageInputStream(file)) {
+            for (int i = 1; i < nbFragments; i++) {
+                BulkData bulkData = (BulkData) pixeldataFragments.get(i);
+                ImageInputStream stream = new org.dcm4che3.imageio.stream.SegmentedInputImageStream(srcStream,
+                    bulkData.offset(), bulkData.length(), false);
+                if (jpeg2000 ? decodeJpeg2000(stream) : decodeJpeg(stream)) {
+                    fragmentsPositions.add(i);
+                }
+            }
+        }
+        if (fragmentsPositions.size() == numberOfFrame) {
+            writeFragmentIndex(indexFile, file);
+        }
+    }
+
+    /**
+     * Gets the first fragment of each frame from the Extended Offset Table or from the Basic Offset Table. The offsets
+     * are relative to the first byte of the item tag of the first fragment.
+     */
+    private boolean readOffsetTable(int nbFragments) {
+        long[] offsets = null;
+        try {
+            Attributes dcm = getDicomObject();
+            byte[] extTable = dcm == null ? null : dcm.getBytes(EXTENDED_OFFSET_TABLE);
+            if (extTable != null && extTable.length == numberOfFrame * 8) {
+                ByteBuffer buf = ByteBuffer.wrap(extTable).order(ByteOrder.LITTLE_ENDIAN);
+                offsets = new long[numberOfFrame];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = buf.getLong();
+                }
+            } else {
+                Object item = pixeldataFragments.get(0);
+                byte[] basicTable =
+                    item instanceof BulkData ? ((BulkData) item).toBytes(VR.OB, false) : (byte[]) item;
+                if (basicTable != null && basicTable.length == numberOfFrame * 4) {
+                    ByteBuffer buf = ByteBuffer.wrap(basicTable).order(ByteOrder.LITTLE_ENDIAN);
+                    offsets = new long[numberOfFrame];
+                    for (int i = 0; i < offsets.length; i++) {
+                        offsets[i] = buf.getInt() & 0xFFFFFFFFL;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Cannot read the offset table of {}", uri, e); //$NON-NLS-1$
+            return false;
+        }
+        if (offsets == null) {
+            return false;
+        }
+
+        // The item tag and length (8 bytes) precede the fragment data
+        long base = ((BulkData) pixeldataFragments.get(1)).offset() - 8;
+        List<Integer> positions = new ArrayList<>(offsets.length);
+        int index = 1;
+        for (long offset : offsets) {
+            while (index < nbFragments && ((BulkData) pixeldataFragments.get(index)).offset() - 8 - base < offset) {
+                index++;
+            }
+            if (index >= nbFragments || ((BulkData) pixeldataFragments.get(index)).offset() - 8 - base != offset) {
+                LOGGER.debug("The offset table does not match the fragments of {}", uri); //$NON-NLS-1$
+                return false;
+            }
+            positions.add(index);
+        }
+        fragmentsPositions.addAll(positions);
+        return true;
+    }
+
+    private boolean readFragmentIndex(File indexFile, File file) {
+        if (indexFile == null || !indexFile.canRead()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != FRAGMENT_INDEX_VERSION || in.readLong() != file.length()
+                || in.readLong() != file.lastModified() || in.readInt() != numberOfFrame) {
+                return false;
+            }
+            List<Integer> positions = new ArrayList<>(numberOfFrame);
+            for (int i = 0; i < numberOfFrame; i++) {
+                positions.add(in.readInt());
+            }
+            fragmentsPositions.addAll(positions);
+            // Limit the writing of the date to once a day
+            long now = System.currentTimeMillis();
+            if (now - indexFile.lastModified() > TimeUnit.DAYS.toMillis(1)) {
+                indexFile.setLastModified(now);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read the fragment index {}", indexFile, e); //$NON-NLS-1$
+            FileUtil.delete(indexFile);
+            return false;
+        }
+    }
+
+    private void writeFragmentIndex(File indexFile, File file) {
+        if (indexFile == null) {
+            return;
+        }
+        try {
+            FileUtil.prepareToWriteFile(indexFile);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot create the fragment index {}", indexFile, e); //$NON-NLS-1$
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(FRAGMENT_INDEX_VERSION);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(fragmentsPositions.size());
+            for (Integer pos : fragmentsPositions) {
+                out.writeInt(pos);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write the fragment index {}", indexFile, e); //$NON-NLS-1$
+            FileUtil.delete(indexFile);
+        }
+    }
+
+    /**
+     * Deletes the entries of the fragment index which have not been used since the maximum age.
+     */
+    public static void removeExpiredFragmentIndexes() {
+        File[] files = FRAGMENT_INDEX_DIR.listFiles();
+        if (files == null) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - FRAGMENT_INDEX_MAX_AGE;
+        for (File f : files) {
+            if (FRAGMENT_INDEX_MAX_AGE <= 0 || f.lastModified() < limit) {
+                FileUtil.delete(f);
+            }
+        }
+    }
+
     @Override
     public boolean canReadRaster() {
         return true;
@@ -1238,7 +1592,12 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     @Override
     public void dispose() {
-        HEADER_CACHE.remove(this);
+        synchronized (HEADER_CACHE) {
+            HEADER_CACHE.remove(this);
+        }
+        mappedPixelData = null;
+        frameTags = null;
+        frameValues.clear();
         readingHeader = false;
         readingImage = false;
         reset();
@@ -1313,7 +1672,10 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
      * @throws Exception
      */
     private synchronized DicomMetaData readMetaData() throws IOException {
-        DicomMetaData header = HEADER_CACHE.get(this);
+        DicomMetaData header;
+        synchronized (HEADER_CACHE) {
+            header = HEADER_CACHE.get(this);
+        }
         if (header != null) {
             return header;
         } else if (dcmMetadata != null) {
@@ -1322,78 +1684,111 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
         try {
             readingHeader = true;
-            if (iis == null) {
-                Optional<File> file = fileCache.getOriginalFile();
-                if (file.isPresent()) {
-                    setInput(ImageIO.createImageInputStream(new File(uri)), false, false);
-                }
+            File indexedFile = getIndexedFile();
+            // Header of a local file already read in a previous session, the file is not opened
+            DicomMetaData metadata = HEADER_INDEX.read(indexedFile, uri.toString());
+            if (metadata == null) {
+                metadata = readHeader();
+                HEADER_INDEX.write(indexedFile, metadata);
             }
+            Attributes fmi = metadata.getFileMetaInformation();
+            setPixelData(metadata.getAttributes(), fmi == null ? null : fmi.getString(Tag.TransferSyntaxUID));
 
-            if (iis == null) {
-                throw new IllegalStateException("Input not set!"); //$NON-NLS-1$
+            synchronized (HEADER_CACHE) {
+                HEADER_CACHE.put(this, metadata);
             }
+            return metadata;
+        } finally {
+            readingHeader = false;
+            FileUtil.safeClose(iis);
+            iis = null;
 
-            iis.seek(0L);
-            dis = new DicomInputStream(new ImageInputStreamAdapter(iis));
-            dis.setIncludeBulkData(IncludeBulkData.URI);
-            dis.setBulkDataDescriptor(DicomCodec.BULKDATA_DESCRIPTOR);
-            // avoid a copy of pixeldata into temporary file
-            dis.setURI(uri.toString());
-            Attributes fmi = dis.readFileMetaInformation();
-            Attributes ds = dis.readDataset(-1, -1);
-            if (fmi == null) {
-                fmi = ds.createFileMetaInformation(dis.getTransferSyntax());
-            }
-            DicomMetaData metadata = new DicomMetaData(fmi, ds);
-            Object pixdata = ds.getValue(Tag.PixelData, pixeldataVR);
-            if (pixdata == null) {
-                pixdata = ds.getValue(Tag.FloatPixelData, pixeldataVR);
-            }
-            if (pixdata == null) {
-                pixdata = ds.getValue(Tag.DoubleFloatPixelData, pixeldataVR);
+        }
+    }
+
+    /**
+     * @return the local file of the header index or null when the file is temporary (e.g. downloaded)
+     */
+    private File getIndexedFile() {
+        if (!HEADER_INDEX.isEnabled() || !"file".equals(uri.getScheme())) { //$NON-NLS-1$
+            return null;
+        }
+        File file = new File(uri);
+        if (file.getPath().startsWith(AppProperties.APP_TEMP_DIR.getPath())) {
+            return null;
+        }
+        return file;
+    }
+
+    private DicomMetaData readHeader() throws IOException {
+        if (iis == null) {
+            Optional<File> file = fileCache.getOriginalFile();
+            if (file.isPresent()) {
+                setInput(ImageIO.createImageInputStream(new File(uri)), false, false);
             }
+        }
 
-            if (pixdata != null) {
-                tsuid = dis.getTransferSyntax();
-                numberOfFrame = ds.getInt(Tag.NumberOfFrames, 1);
-                hasPixel = ds.getInt(Tag.BitsStored, ds.getInt(Tag.BitsAllocated, 0)) > 0;
+        if (iis == null) {
+            throw new IllegalStateException("Input not set!"); //$NON-NLS-1$
+        }
 
-                if (!tsuid.startsWith("1.2.840.10008.1.2.4.10") && hasPixel) { //$NON-NLS-1$
+        iis.seek(0L);
+        dis = new DicomInputStream(new ImageInputStreamAdapter(iis));
+        dis.setIncludeBulkData(IncludeBulkData.URI);
+        dis.setBulkDataDescriptor(DicomCodec.BULKDATA_DESCRIPTOR);
+        // avoid a copy of pixeldata into temporary file
+        dis.setURI(uri.toString());
+        Attributes fmi = dis.readFileMetaInformation();
+        Attributes ds = dis.readDataset(-1, -1);
+        if (fmi == null) {
+            fmi = ds.createFileMetaInformation(dis.getTransferSyntax());
+        }
+        return new DicomMetaData(fmi, ds);
+    }
 
-                    if (pixdata instanceof BulkData) {
-                        bigendian = ds.bigEndian();
+    private void setPixelData(Attributes ds, String transferSyntax) {
+        Object pixdata = ds.getValue(Tag.PixelData, pixeldataVR);
+        if (pixdata == null) {
+            pixdata = ds.getValue(Tag.FloatPixelData, pixeldataVR);
+        }
+        if (pixdata == null) {
+            pixdata = ds.getValue(Tag.DoubleFloatPixelData, pixeldataVR);
+        }
+
+        if (pixdata != null) {
+            tsuid = transferSyntax == null ? UID.ImplicitVRLittleEndian : transferSyntax;
+            numberOfFrame = ds.getInt(Tag.NumberOfFrames, 1);
+            hasPixel = ds.getInt(Tag.BitsStored, ds.getInt(Tag.BitsAllocated, 0)) > 0;
+
+            if (!tsuid.startsWith("1.2.840.10008.1.2.4.10") && hasPixel) { //$NON-NLS-1$
+
+                if (pixdata instanceof BulkData) {
+                    bigendian = ds.bigEndian();
+                    if (iis != null) {
                         iis.setByteOrder(ds.bigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
-                        this.pixeldata = (BulkData) pixdata;
-                        // Handle JPIP
-                    } else if (ds.getString(Tag.PixelDataProviderURL) != null) {
-                        // always little endian:
-                        // http://dicom.nema.org/medical/dicom/2017b/output/chtml/part05/sect_A.6.html
-                        if (numberOfFrame == 0) {
-                            numberOfFrame = 1;
-                            // compressed = true;
-                        }
-                    } else if (pixdata instanceof Fragments) {
-                        // ImageReaderFactory.ImageReaderItem readerItem = ImageReaderFactory.getImageReader(tsuid);
-                        // if (readerItem == null) {
-                        // throw new IOException("Unsupported Transfer Syntax: " + tsuid); //$NON-NLS-1$
-                        // }
-                        this.compressedData = true;
-                        this.pixeldataFragments = (Fragments) pixdata;
-                        bigendian = pixeldataFragments.bigEndian();
-                        if (bigendian) {
-                            LOGGER.error("Big endian fragments?"); //$NON-NLS-1$
-                        }
+                    }
+                    this.pixeldata = (BulkData) pixdata;
+                    // Handle JPIP
+                } else if (ds.getString(Tag.PixelDataProviderURL) != null) {
+                    // always little endian:
+                    // http://dicom.nema.org/medical/dicom/2017b/output/chtml/part05/sect_A.6.html
+                    if (numberOfFrame == 0) {
+                        numberOfFrame = 1;
+                        // compressed = true;
+                    }
+                } else if (pixdata instanceof Fragments) {
+                    // ImageReaderFactory.ImageReaderItem readerItem = ImageReaderFactory.getImageReader(tsuid);
+                    // if (readerItem == null) {
+                    // throw new IOException("Unsupported Transfer Syntax: " + tsuid); //$NON-NLS-1$
+                    // }
+                    this.compressedData = true;
+                    this.pixeldataFragments = (Fragments) pixdata;
+                    bigendian = pixeldataFragments.bigEndian();
+                    if (bigendian) {
+                        LOGGER.error("Big endian fragments?"); //$NON-NLS-1$
                     }
                 }
             }
-
-            HEADER_CACHE.put(this, metadata);
-            return metadata;
-        } finally {
-            readingHeader = false;
-            FileUtil.safeClose(iis);
-            iis = null;
-
         }
     }
 
@@ -11,10 +11,17 @@
 package org.weasis.dicom.codec;
 
 import java.awt.image.RenderedImage;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.dcm4che3.data.Tag;
 import org.slf4j.Logger;
@@ -22,8 +29,9 @@ import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.ObservableEvent;
 import org.weasis.core.api.explorer.model.DataExplorerModel;
 import org.weasis.core.api.gui.util.Filter;
-import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.CvUtil;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageLoader.Priority;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesEvent;
 import org.weasis.core.api.media.data.TagView;
@@ -40,6 +48,19 @@ public class DicomSeries extends Series<DicomImageElement> {
 
     private static volatile PreloadingTask preloadingTask;
 
+    // Slice position indexes by filter and comparator, cleared when the list of images changes
+    private final Map<List<Object>, SlicePositionIndex<DicomImageElement>> sliceIndexes =
+        new LinkedHashMap<List<Object>, SlicePositionIndex<DicomImageElement>>(8, 0.75f, true) {
+            private static final long serialVersionUID = -2236094146211958651L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<List<Object>, SlicePositionIndex<DicomImageElement>> eldest) {
+                return size() > 8;
+            }
+        };
+    private int sliceIndexesVersion = 0;
+
     public DicomSeries(String subseriesInstanceUID) {
         this(subseriesInstanceUID, null, defaultTagView);
     }
@@ -132,64 +153,107 @@ public class DicomSeries extends Series<DicomImageElement> {
         super.dispose();
     }
 
+    @Override
+    protected void resetSortedMediasMap() {
+        super.resetSortedMediasMap();
+        resetSliceIndexes();
+    }
+
+    @Override
+    protected void insertInSortedMedias(DicomImageElement media, int index) {
+        super.insertInSortedMedias(media, index);
+        resetSliceIndexes();
+    }
+
+    private void resetSliceIndexes() {
+        synchronized (sliceIndexes) {
+            sliceIndexes.clear();
+            sliceIndexesVersion++;
+        }
+    }
+
     @Override
     public DicomImageElement getNearestImage(double location, int offset, Filter<DicomImageElement> filter,
         Comparator<DicomImageElement> sort) {
-        Iterable<DicomImageElement> mediaList = getMedias(filter, sort);
-        DicomImageElement nearest = null;
-        int index = 0;
-        int bestIndex = -1;
-        synchronized (this) {
-            double bestDiff = Double.MAX_VALUE;
-            for (Iterator<DicomImageElement> iter = mediaList.iterator(); iter.hasNext();) {
-                DicomImageElement dcm = iter.next();
-                double[] val = (double[]) dcm.getTagValue(TagW.SlicePosition);
-                if (val != null) {
-                    double diff = Math.abs(location - (val[0] + val[1] + val[2]));
-                    if (diff < bestDiff) {
-                        bestDiff = diff;
-                        nearest = dcm;
-                        bestIndex = index;
-                        if (MathUtil.isEqualToZero(diff)) {
-                            break;
-                        }
-                    }
-                }
-                index++;
-            }
-        }
-        if (offset > 0) {
-            return getMedia(bestIndex + offset, filter, sort);
-        }
-        return nearest;
+        SlicePositionIndex<DicomImageElement> index = getSliceIndex(filter, sort);
+        int bestIndex = index.getNearestIndex(location);
+        return bestIndex < 0 ? null : index.getImage(bestIndex + Math.max(0, offset));
+    }
+
+    /**
+     * Returns the image at the nearest slice position and, among the images at this position (e.g. the phases of a 4D
+     * series), the image with the nearest acquisition time.
+     *
+     * @param location
+     *            the slice position
+     * @param time
+     *            the time of the image (see {@link #getImageTime(DicomImageElement)}), null for ignoring the time
+     * @param filter
+     *            the filter of the images
+     * @param sort
+     *            the order of the images
+     * @return the nearest image or null
+     */
+    public DicomImageElement getNearestImage(double location, LocalTime time, Filter<DicomImageElement> filter,
+        Comparator<DicomImageElement> sort) {
+        SlicePositionIndex<DicomImageElement> index = getSliceIndex(filter, sort);
+        return index.getImage(index.getNearestIndex(location, toMillis(time)));
     }
 
     @Override
     public int getNearestImageIndex(double location, int offset, Filter<DicomImageElement> filter,
         Comparator<DicomImageElement> sort) {
-        Iterable<DicomImageElement> mediaList = getMedias(filter, sort);
-        int index = 0;
-        int bestIndex = -1;
+        int bestIndex = getSliceIndex(filter, sort).getNearestIndex(location);
+        return (offset > 0) ? (bestIndex + offset) : bestIndex;
+    }
+
+    private SlicePositionIndex<DicomImageElement> getSliceIndex(Filter<DicomImageElement> filter,
+        Comparator<DicomImageElement> sort) {
+        List<Object> key = Arrays.asList(filter, sort);
+        int version;
+        synchronized (sliceIndexes) {
+            SlicePositionIndex<DicomImageElement> index = sliceIndexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            version = sliceIndexesVersion;
+        }
+        // Built out of the lock of the indexes, an index built concurrently is identical
+        List<DicomImageElement> list;
         synchronized (this) {
-            double bestDiff = Double.MAX_VALUE;
-            for (Iterator<DicomImageElement> iter = mediaList.iterator(); iter.hasNext();) {
-                DicomImageElement dcm = iter.next();
-                double[] val = (double[]) dcm.getTagValue(TagW.SlicePosition);
-                if (val != null) {
-                    double diff = Math.abs(location - (val[0] + val[1] + val[2]));
-                    if (diff < bestDiff) {
-                        bestDiff = diff;
-                        bestIndex = index;
-                        if (MathUtil.isEqualToZero(diff)) {
-                            break;
-                        }
-                    }
-                }
-                index++;
+            list = Filter.makeList(getMedias(filter, sort));
+        }
+        double[] positions = new double[list.size()];
+        double[] times = new double[list.size()];
+        for (int i = 0; i < positions.length; i++) {
+            DicomImageElement dcm = list.get(i);
+            double[] val = (double[]) dcm.getTagValue(TagW.SlicePosition);
+            positions[i] = val == null ? Double.NaN : val[0] + val[1] + val[2];
+            times[i] = toMillis(getImageTime(dcm));
+        }
+        SlicePositionIndex<DicomImageElement> index = new SlicePositionIndex<>(list, positions, times);
+        synchronized (sliceIndexes) {
+            // Not kept when the images have changed during the build
+            if (version == sliceIndexesVersion) {
+                sliceIndexes.put(key, index);
             }
         }
+        return index;
+    }
 
-        return (offset > 0) ? (bestIndex + offset) : bestIndex;
+    /**
+     * @return the acquisition time or the content time of the image, or null
+     */
+    public static LocalTime getImageTime(DicomImageElement dcm) {
+        LocalTime time = TagD.getTagValue(dcm, Tag.AcquisitionTime, LocalTime.class);
+        if (time == null) {
+            time = TagD.getTagValue(dcm, Tag.ContentTime, LocalTime.class);
+        }
+        return time;
+    }
+
+    private static double toMillis(LocalTime time) {
+        return time == null ? Double.NaN : time.toNanoOfDay() / 1.0E6;
     }
 
     public static synchronized void startPreloading(DicomSeries series, List<DicomImageElement> imageList,
@@ -197,6 +261,7 @@ public class DicomSeries extends Series<DicomImageElement> {
         if (series != null && imageList != null) {
             if (preloadingTask != null) {
                 if (preloadingTask.getSeries() == series) {
+                    preloadingTask.setIndex(currentIndex);
                     return;
                 }
                 stopPreloading(preloadingTask.getSeries());
@@ -206,6 +271,24 @@ public class DicomSeries extends Series<DicomImageElement> {
         }
     }
 
+    /**
+     * Update the priority of the images waiting to be preloaded according to the image displayed.
+     *
+     * @param series
+     *            the series being preloaded
+     * @param image
+     *            the image displayed
+     */
+    public static void updatePreloading(DicomSeries series, DicomImageElement image) {
+        PreloadingTask task = preloadingTask;
+        if (task != null && image != null && task.getSeries() == series) {
+            int index = task.getImageList().indexOf(image);
+            if (index >= 0) {
+                task.setIndex(index);
+            }
+        }
+    }
+
     public static synchronized void stopPreloading(DicomSeries series) {
         if (preloadingTask != null && preloadingTask.getSeries() == series) {
             PreloadingTask moribund = preloadingTask;
@@ -213,17 +296,22 @@ public class DicomSeries extends Series<DicomImageElement> {
             if (moribund != null) {
                 moribund.setPreloading(false);
                 moribund.interrupt();
+                ImageElement.IMAGE_LOADER.cancel(series);
             }
         }
     }
 
     static class PreloadingTask extends Thread {
+        // Number of images on each side of the current image preloaded with a higher priority
+        private static final int NEIGHBOR_RANGE = 5;
+
         private volatile boolean preloading = true;
-        private final int index;
+        private volatile int index;
         private final List<DicomImageElement> imageList;
         private final DicomSeries series;
 
         public PreloadingTask(DicomSeries series, List<DicomImageElement> imageList, int currentIndex) {
+            super("Preloading " + series); //$NON-NLS-1$
             this.series = series;
             this.imageList = imageList;
             this.index = currentIndex;
@@ -245,7 +333,24 @@ public class DicomSeries extends Series<DicomImageElement> {
             this.preloading = preloading;
         }
 
-
+        public void setIndex(int currentIndex) {
+            int oldIndex = index;
+            if (oldIndex == currentIndex || currentIndex < 0 || currentIndex >= imageList.size()) {
+                return;
+            }
+            this.index = currentIndex;
+            // Only the images entering or leaving the neighborhood can change of priority
+            for (int i = oldIndex - NEIGHBOR_RANGE; i <= oldIndex + NEIGHBOR_RANGE; i++) {
+                if (i >= 0 && i < imageList.size() && Math.abs(i - currentIndex) > NEIGHBOR_RANGE) {
+                    ImageElement.IMAGE_LOADER.setPriority(imageList.get(i), Priority.BACKGROUND);
+                }
+            }
+            for (int i = currentIndex - NEIGHBOR_RANGE; i <= currentIndex + NEIGHBOR_RANGE; i++) {
+                if (i >= 0 && i < imageList.size()) {
+                    ImageElement.IMAGE_LOADER.setPriority(imageList.get(i), Priority.NEIGHBOR);
+                }
+            }
+        }
 
         private static long evaluateImageSize(DicomImageElement image) {
             Integer allocated = TagD.getTagValue(image, Tag.BitsAllocated, Integer.class);
@@ -258,26 +363,76 @@ public class DicomSeries extends Series<DicomImageElement> {
             return 0L;
         }
 
-        private void loadArrays(DicomImageElement img, DataExplorerModel model) {
+        private static boolean isInCache(DicomImageElement img) {
+            Boolean cache = (Boolean) img.getTagValue(TagW.ImageCache);
+            return cache != null && cache;
+        }
+
+        private Boolean loadArrays(DicomImageElement img, DataExplorerModel model) {
             // Do not load an image if another process already loading it
-            if (preloading && !img.isLoading()) {
-                Boolean cache = (Boolean) img.getTagValue(TagW.ImageCache);
-                if (cache == null || !cache) {
-                    long start = System.currentTimeMillis();
-                    try {
-                        img.getImage();
-                    } catch (OutOfMemoryError e) {
-                        LOGGER.error("Out of memory when loading image: {}", img, e); //$NON-NLS-1$
-                        CvUtil.runGarbageCollectorAndWait(50);
-                        return;
+            if (preloading && !img.isLoading() && !isInCache(img)) {
+                long start = System.currentTimeMillis();
+                try {
+                    // Skip the image when its loading has been claimed in the meantime (e.g. by the view)
+                    if (!img.preloadImage()) {
+                        return Boolean.FALSE;
                     }
-                    long stop = System.currentTimeMillis();
-                    LOGGER.debug("Reading time: {} ms of image: {}", stop - start, img); //$NON-NLS-1$
-                    if (model != null) {
-                        model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
-                            new SeriesEvent(SeriesEvent.Action.PRELOADING, series, img)));
+                } catch (OutOfMemoryError e) {
+                    LOGGER.error("Out of memory when loading image: {}", img, e); //$NON-NLS-1$
+                    CvUtil.runGarbageCollectorAndWait(50);
+                    return Boolean.FALSE;
+                }
+                long stop = System.currentTimeMillis();
+                LOGGER.debug("Reading time: {} ms of image: {}", stop - start, img); //$NON-NLS-1$
+                if (model != null) {
+                    model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
+                        new SeriesEvent(SeriesEvent.Action.PRELOADING, series, img)));
+                }
+                return Boolean.TRUE;
+            }
+            return Boolean.FALSE;
+        }
+
+        private void submit(int i, int start, int end, int current, DataExplorerModel model,
+            List<Future<Boolean>> tasks) {
+            if (i >= start && i < end) {
+                DicomImageElement img = imageList.get(i);
+                if (!img.isLoading() && !isInCache(img)) {
+                    Priority p = Math.abs(i - current) > NEIGHBOR_RANGE ? Priority.BACKGROUND : Priority.NEIGHBOR;
+                    tasks.add(ImageElement.IMAGE_LOADER.submit(() -> loadArrays(img, model), p, img, series));
+                }
+            }
+        }
+
+        private void preload(int start, int end, DataExplorerModel model) {
+            List<Future<Boolean>> tasks = new ArrayList<>(end - start);
+            int current = index;
+            // Submit the images by increasing distance from the current image
+            int maxOffset = Math.max(current - start, end - 1 - current);
+            for (int offset = 0; offset <= maxOffset; offset++) {
+                submit(current - offset, start, end, current, model, tasks);
+                if (offset > 0) {
+                    submit(current + offset, start, end, current, model, tasks);
+                }
+            }
+
+            try {
+                for (Future<Boolean> f : tasks) {
+                    if (!preloading) {
+                        break;
+                    }
+                    try {
+                        f.get();
+                    } catch (CancellationException | ExecutionException e) {
+                        LOGGER.debug("Preloading task not completed", e); //$NON-NLS-1$
                     }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                ImageElement.IMAGE_LOADER.cancel(series);
+                ImageElement.IMAGE_LOADER.logStatistics();
+                LOGGER.debug("Image {}", ImageElement.getCacheStatistics()); //$NON-NLS-1$
             }
         }
 
@@ -299,24 +454,14 @@ public class DicomSeries extends Series<DicomImageElement> {
                     }
                     double val = (double) heapFreeSize / imgSize;
                     int ajustSize = (int) (size * val) / 2;
-                    int start = index - ajustSize;
-                    if (start < 0) {
-                        ajustSize -= start;
-                        start = 0;
-                    }
-                    if (ajustSize > size) {
-                        ajustSize = size;
-                    }
-                    for (int i = start; i < ajustSize; i++) {
-                        loadArrays(imageList.get(i), model);
-                    }
+                    int start = Math.max(0, index - ajustSize);
+                    int end = Math.min(size, index + ajustSize + 1);
+                    preload(start, end, model);
                 } else {
                     if (imgSize > heapFreeSize) {
                         CvUtil.runGarbageCollectorAndWait(50);
                     }
-                    for (DicomImageElement img : imageList) {
-                        loadArrays(img, model);
-                    }
+                    preload(0, size, model);
                 }
             }
         }
@@ -12,6 +12,7 @@ package org.weasis.dicom.codec;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -159,6 +160,25 @@ public class DicomSpecialElement extends MediaElement {
         return super.saveToFile(output);
     }
 
+    @Override
+    public boolean saveToStream(OutputStream output) {
+        if (getMediaReader().isEditableDicom()) {
+            Attributes dcm = getMediaReader().getDicomObject();
+            if (dcm != null) {
+                try {
+                    // Do not close the stream
+                    DicomOutputStream out = new DicomOutputStream(output, UID.ExplicitVRLittleEndian);
+                    out.writeDataset(dcm.createFileMetaInformation(UID.ImplicitVRLittleEndian), dcm);
+                    out.flush();
+                    return true;
+                } catch (IOException e) {
+                    LOGGER.error("Cannot write dicom ({}): {}", getLabel(), e); //$NON-NLS-1$
+                }
+            }
+        }
+        return super.saveToStream(output);
+    }
+
     public static final List<DicomSpecialElement> getPRfromSopUID(String seriesUID, String sopUID, Integer frameNumber,
         List<DicomSpecialElement> studyElements) {
         List<DicomSpecialElement> filteredList = new ArrayList<>();
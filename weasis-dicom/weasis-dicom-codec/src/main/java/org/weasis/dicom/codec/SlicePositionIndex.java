@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the slice positions of a sorted and filtered list of images, for finding the nearest image by binary
+ * search.
+ * <p>
+ * The positions are sorted with the index of the image in the list as a secondary key. When several images are at the
+ * same distance, the lowest index in the list is returned. The images at the same position (e.g. the phases of a 4D
+ * series) can be selected by their time.
+ */
+final class SlicePositionIndex<E> {
+
+    private final List<E> images;
+    private final double[] positions;
+    private final int[] indexes;
+    private final double[] times;
+
+    /**
+     * @param images
+     *            the sorted and filtered list of images
+     * @param positions
+     *            the slice position of each image of the list, NaN when the image has no position
+     * @param times
+     *            the time of each image of the list, NaN when the image has no time. Can be null.
+     */
+    SlicePositionIndex(List<E> images, double[] positions, double[] times) {
+        this.images = images;
+        int nb = 0;
+        for (double p : positions) {
+            if (!Double.isNaN(p)) {
+                nb++;
+            }
+        }
+        Integer[] order = new Integer[nb];
+        int k = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (!Double.isNaN(positions[i])) {
+                order[k++] = i;
+            }
+        }
+        Arrays.sort(order, (i1, i2) -> {
+            int c = Double.compare(positions[i1], positions[i2]);
+            return c == 0 ? Integer.compare(i1, i2) : c;
+        });
+
+        this.positions = new double[nb];
+        this.indexes = new int[nb];
+        this.times = new double[nb];
+        for (int i = 0; i < nb; i++) {
+            int index = order[i];
+            this.positions[i] = positions[index];
+            this.indexes[i] = index;
+            this.times[i] = times == null ? Double.NaN : times[index];
+        }
+    }
+
+    int size() {
+        return positions.length;
+    }
+
+    /**
+     * @return the image at the index of the list, or null if the index is out of the list
+     */
+    E getImage(int index) {
+        return index < 0 || index >= images.size() ? null : images.get(index);
+    }
+
+    /**
+     * @param location
+     *            the slice position
+     * @return the index in the list of the nearest image, or -1 when no image has a position
+     */
+    int getNearestIndex(double location) {
+        int k = getNearest(location);
+        return k < 0 ? -1 : indexes[k];
+    }
+
+    /**
+     * @param location
+     *            the slice position
+     * @param time
+     *            the time of the image, NaN for ignoring the time
+     * @return the index in the list of the image at the nearest position with the nearest time, or -1 when no image
+     *         has a position
+     */
+    int getNearestIndex(double location, double time) {
+        int k = getNearest(location);
+        if (k < 0 || Double.isNaN(time)) {
+            return k < 0 ? -1 : indexes[k];
+        }
+        int best = k;
+        double bestDiff = Double.MAX_VALUE;
+        // Images at the same position, from the lowest index of the list
+        for (int i = k; i < positions.length && positions[i] == positions[k]; i++) {
+            if (!Double.isNaN(times[i])) {
+                double diff = Math.abs(time - times[i]);
+                if (diff < bestDiff) {
+                    bestDiff = diff;
+                    best = i;
+                }
+            }
+        }
+        return indexes[best];
+    }
+
+    /**
+     * @return the position in the sorted arrays of the first image of the nearest position, or -1
+     */
+    private int getNearest(double location) {
+        int nb = positions.length;
+        if (nb == 0) {
+            return -1;
+        }
+        // The first image at the position higher or equal to the location
+        int high = lowerBound(location);
+        if (high == 0) {
+            return 0;
+        }
+        // The first image at the position lower than the location
+        int low = lowerBound(positions[high - 1]);
+        if (high == nb) {
+            return low;
+        }
+        int c = Double.compare(location - positions[low], positions[high] - location);
+        if (c == 0) {
+            return indexes[low] < indexes[high] ? low : high;
+        }
+        return c < 0 ? low : high;
+    }
+
+    private int lowerBound(double value) {
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -22,6 +22,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.ActionW;
 import org.weasis.core.api.image.AbstractOp;
+import org.weasis.core.api.image.AffineTransformOp;
 import org.weasis.core.api.image.ImageOpEvent;
 import org.weasis.core.api.image.ImageOpEvent.OpEvent;
 import org.weasis.core.api.media.data.ImageElement;
@@ -96,6 +97,9 @@ public class OverlayOp extends AbstractOp {
                             if (height != null && width != null) {
                                 imgOverlay = OverlayUtils.getBinaryOverlays(image, reader.getDicomObject(), frame,
                                     width, height, params);
+                                // The input can be resampled to the view
+                                imgOverlay = AffineTransformOp.transformMask(imgOverlay,
+                                    (double[]) params.get(AffineTransformOp.P_INPUT_MATRIX), source);
                             }
                         }
                     } catch (IOException e) {
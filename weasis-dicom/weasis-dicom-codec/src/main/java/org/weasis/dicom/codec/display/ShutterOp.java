@@ -23,6 +23,7 @@ import org.dcm4che3.data.Tag;
 import org.opencv.core.Mat;
 import org.weasis.core.api.gui.util.ActionW;
 import org.weasis.core.api.image.AbstractOp;
+import org.weasis.core.api.image.AffineTransformOp;
 import org.weasis.core.api.image.ImageOpEvent;
 import org.weasis.core.api.image.ImageOpEvent.OpEvent;
 import org.weasis.core.api.media.data.ImageElement;
@@ -110,9 +111,12 @@ public class ShutterOp extends AbstractOp {
         boolean shutter = LangUtil.getNULLtoFalse((Boolean) params.get(P_SHOW));
         Area area = (Area) params.get(P_SHAPE);
         Object pr = params.get(P_PR_ELEMENT);
+        // The input can be resampled to the view (the shutter is defined in the coordinates of the source image)
+        double[] inputMatrix = (double[]) params.get(AffineTransformOp.P_INPUT_MATRIX);
 
         if (shutter && area != null) {
-            result = ImageProcessor.applyShutter(source.toMat(), area, getShutterColor());
+            result = ImageProcessor.applyShutter(source.toMat(), AffineTransformOp.transformShape(area, inputMatrix),
+                getShutterColor());
         }
 
         // Potentially override the shutter in the original dicom
@@ -131,8 +135,9 @@ public class ShutterOp extends AbstractOp {
                     Integer shuttOverlayGroup =
                         DicomMediaUtils.getIntegerFromDicomElement(attributes, Tag.ShutterOverlayGroup, null);
                     if (shuttOverlayGroup != null) {
-                        RenderedImage overlayImg =
-                            OverlayUtils.getShutterOverlay(attributes, frame, width, height, shuttOverlayGroup);
+                        RenderedImage overlayImg = AffineTransformOp.transformMask(
+                            OverlayUtils.getShutterOverlay(attributes, frame, width, height, shuttOverlayGroup),
+                            inputMatrix, result);
                         imgOverlay = ImageProcessor.applyShutter(result.toMat(), overlayImg, getShutterColor());
                     }
                 }
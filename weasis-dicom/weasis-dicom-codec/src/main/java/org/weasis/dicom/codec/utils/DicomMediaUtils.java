@@ -520,6 +520,27 @@ public class DicomMediaUtils {
         return false;
     }
 
+    /**
+     * Extends the sign of the bits stored of signed pixel values read as raw shorts. The unsigned values are left
+     * unchanged so that the overlay bits above the bits stored can still be extracted from the pixel data.
+     *
+     * @param data
+     *            the raw pixel values, modified in place
+     * @param bitsStored
+     *            the number of bits stored
+     * @param signed
+     *            true when the pixel representation is signed
+     */
+    public static void extendSignedBits(short[] data, int bitsStored, boolean signed) {
+        if (signed && bitsStored > 0 && bitsStored < 16) {
+            // The value is promoted to int before shifting
+            int shift = 32 - bitsStored;
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (short) ((data[i] << shift) >> shift);
+            }
+        }
+    }
+
     public static Integer getIntPixelValue(Attributes ds, int tag, boolean signed, int stored) {
         VR vr = ds.getVR(tag);
         if (vr == null) {
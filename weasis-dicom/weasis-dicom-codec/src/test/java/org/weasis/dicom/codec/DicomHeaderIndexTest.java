@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.BulkData;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.imageio.plugins.dcm.DicomMetaData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DicomHeaderIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Attributes buildDataset(String uri) {
+        Attributes ds = new Attributes();
+        ds.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4"); //$NON-NLS-1$
+        ds.setString(Tag.PatientName, VR.PN, "Doe^John"); //$NON-NLS-1$
+        ds.setInt(Tag.Rows, VR.US, 512);
+        ds.setDouble(Tag.PixelSpacing, VR.DS, 0.5, 0.5);
+        ds.setNull(Tag.AccessionNumber, VR.SH);
+        Sequence seq = ds.newSequence(Tag.ReferencedImageSequence, 1);
+        Attributes item = new Attributes();
+        item.setString(Tag.ReferencedSOPInstanceUID, VR.UI, "1.2.3.5"); //$NON-NLS-1$
+        seq.add(item);
+        ds.setValue(Tag.OverlayData, VR.OW, new BulkData(uri, 1024L, 2048, false));
+        Fragments frags = ds.newFragments(Tag.PixelData, VR.OB, 3);
+        frags.add(new byte[0]);
+        frags.add(new BulkData(uri, 4096L, 100, false));
+        frags.add(new BulkData(uri, 4204L, 200, false));
+        return ds;
+    }
+
+    private static void assertDataset(Attributes ds) {
+        assertEquals("1.2.3.4", ds.getString(Tag.SOPInstanceUID)); //$NON-NLS-1$
+        assertEquals("Doe^John", ds.getString(Tag.PatientName)); //$NON-NLS-1$
+        assertEquals(512, ds.getInt(Tag.Rows, 0));
+        assertArrayEquals(new double[] { 0.5, 0.5 }, ds.getDoubles(Tag.PixelSpacing), 0.0);
+        assertTrue(ds.contains(Tag.AccessionNumber));
+        assertNull(ds.getString(Tag.AccessionNumber));
+        assertEquals("1.2.3.5", //$NON-NLS-1$
+            ds.getNestedDataset(Tag.ReferencedImageSequence).getString(Tag.ReferencedSOPInstanceUID));
+
+        BulkData overlay = (BulkData) ds.getValue(Tag.OverlayData);
+        assertEquals(1024L, overlay.offset());
+        assertEquals(2048, overlay.length());
+
+        Fragments frags = (Fragments) ds.getValue(Tag.PixelData);
+        assertEquals(3, frags.size());
+        assertEquals(0, ((byte[]) frags.get(0)).length);
+        assertEquals(4204L, ((BulkData) frags.get(2)).offset());
+        assertEquals(200, ((BulkData) frags.get(2)).length());
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        File file = folder.newFile("image.dcm"); //$NON-NLS-1$
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[5000]);
+        }
+        String uri = file.toURI().toString();
+        Attributes fmi = new Attributes();
+        fmi.setString(Tag.TransferSyntaxUID, VR.UI, UID.JPEGLossless);
+
+        DicomHeaderIndex index = new DicomHeaderIndex(folder.newFolder("index"), 30); //$NON-NLS-1$
+        assertNull(index.read(file, uri));
+        index.write(file, new DicomMetaData(fmi, buildDataset(uri)));
+
+        DicomMetaData metadata = index.read(file, uri);
+        assertNotNull(metadata);
+        assertEquals(UID.JPEGLossless, metadata.getFileMetaInformation().getString(Tag.TransferSyntaxUID));
+        assertDataset(metadata.getAttributes());
+
+        // The entry is no longer valid when the file has changed
+        assertTrue(file.setLastModified(file.lastModified() - 10000L));
+        assertNull(index.read(file, uri));
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        File file = folder.newFile("image.dcm"); //$NON-NLS-1$
+        String uri = file.toURI().toString();
+        DicomHeaderIndex index = new DicomHeaderIndex(folder.newFolder("index"), 0); //$NON-NLS-1$
+        index.write(file, new DicomMetaData(null, buildDataset(uri)));
+        assertNull(index.read(file, uri));
+    }
+}
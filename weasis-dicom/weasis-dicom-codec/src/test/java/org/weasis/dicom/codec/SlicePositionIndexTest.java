@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class SlicePositionIndexTest {
+
+    @Test
+    public void testNearestIndex() {
+        // List in descending order with an image without position
+        double[] positions = { 40.0, 30.0, Double.NaN, 20.0, 10.0 };
+        SlicePositionIndex<String> index =
+            new SlicePositionIndex<>(Arrays.asList("a", "b", "c", "d", "e"), positions, null);
+
+        assertEquals(4, index.size());
+        assertEquals(4, index.getNearestIndex(-100.0));
+        assertEquals(4, index.getNearestIndex(10.0));
+        assertEquals(3, index.getNearestIndex(19.0));
+        assertEquals(1, index.getNearestIndex(33.0));
+        assertEquals(0, index.getNearestIndex(1000.0));
+        // Same distance: the lowest index of the list
+        assertEquals(0, index.getNearestIndex(35.0));
+        assertEquals("d", index.getImage(index.getNearestIndex(21.0)));
+        assertNull(index.getImage(5));
+    }
+
+    @Test
+    public void testNearestTime() {
+        // Two positions with three phases
+        double[] positions = { 0.0, 0.0, 0.0, 5.0, 5.0, 5.0 };
+        double[] times = { 100.0, 200.0, 300.0, 100.0, 200.0, 300.0 };
+        SlicePositionIndex<Integer> index =
+            new SlicePositionIndex<>(Arrays.asList(0, 1, 2, 3, 4, 5), positions, times);
+
+        assertEquals(3, index.getNearestIndex(4.0));
+        assertEquals(4, index.getNearestIndex(4.0, 190.0));
+        assertEquals(2, index.getNearestIndex(-1.0, 1000.0));
+        assertEquals(0, index.getNearestIndex(-1.0, Double.NaN));
+    }
+
+    @Test
+    public void testEmpty() {
+        SlicePositionIndex<String> index =
+            new SlicePositionIndex<>(Collections.singletonList("a"), new double[] { Double.NaN }, null);
+        assertEquals(-1, index.getNearestIndex(0.0));
+        assertEquals(-1, index.getNearestIndex(0.0, 0.0));
+        assertNull(index.getImage(-1));
+    }
+}
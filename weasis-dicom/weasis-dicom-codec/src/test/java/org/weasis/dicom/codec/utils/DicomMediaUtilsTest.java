@@ -72,4 +72,23 @@ public class DicomMediaUtilsTest {
             DicomMediaUtils.getStringArrayFromDicomElement(attributes, Tag.ShutterPresentationValue));
     }
 
+    @Test
+    public void testExtendSignedBitsKeepsOverlayBits() {
+        // 12 bits stored with an overlay in the bit 15 (0x8000) and the bit 12 (0x1000)
+        short[] unsigned = { (short) 0x8FFF, (short) 0x1001, 0x0800, 0x0000 };
+        DicomMediaUtils.extendSignedBits(unsigned, 12, false);
+        assertArrayEquals(new short[] { (short) 0x8FFF, (short) 0x1001, 0x0800, 0x0000 }, unsigned);
+        // The overlay bit mask clears only the bits above the bits stored
+        assertEquals(0x0FFF, unsigned[0] & 0x0FFF);
+        assertEquals(0x0001, unsigned[1] & 0x0FFF);
+
+        short[] signed = { 0x07FF, 0x0800, 0x0FFF, 0x0001 };
+        DicomMediaUtils.extendSignedBits(signed, 12, true);
+        assertArrayEquals(new short[] { 2047, -2048, -1, 1 }, signed);
+
+        short[] full = { (short) 0x8000, 0x7FFF };
+        DicomMediaUtils.extendSignedBits(full, 16, true);
+        assertArrayEquals(new short[] { Short.MIN_VALUE, Short.MAX_VALUE }, full);
+    }
+
 }
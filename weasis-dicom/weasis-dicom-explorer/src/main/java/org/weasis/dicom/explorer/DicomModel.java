@@ -106,6 +106,7 @@ public class DicomModel implements TreeModel, DataExplorerModel {
     private final Tree<MediaSeriesGroup> model;
     private PropertyChangeSupport propertyChange = null;
     private final SplittingRules splittingRules;
+    private final SopInstanceIndex sopInstances = new SopInstanceIndex();
 
     public DicomModel() {
         model = new Tree<>(MediaSeriesGroupNode.rootNode);
@@ -175,6 +176,43 @@ public class DicomModel implements TreeModel, DataExplorerModel {
         }
     }
 
+    /**
+     * @param studyUID
+     *            the Study Instance UID
+     * @param sopUID
+     *            the SOP Instance UID
+     * @return true when a frame of the instance is already in the study
+     */
+    public boolean hasSopInstance(String studyUID, String sopUID) {
+        return sopInstances.contains(studyUID, sopUID);
+    }
+
+    /**
+     * @param studyUID
+     *            the Study Instance UID
+     * @param sopUID
+     *            the SOP Instance UID
+     * @param frame
+     *            the frame index (0 for a single frame instance)
+     * @return the media of the instance or null when it is not in the study
+     */
+    public MediaElement getSopInstance(String studyUID, String sopUID, int frame) {
+        return sopInstances.get(studyUID, sopUID, frame);
+    }
+
+    private void removeSopInstances(MediaSeriesGroup group) {
+        if (group instanceof Series) {
+            for (Object media : ((Series<?>) group).copyOfMedias(null, null)) {
+                sopInstances.remove((MediaElement) media);
+            }
+            List<DicomSpecialElement> specialElementList =
+                (List<DicomSpecialElement>) group.getTagValue(TagW.DicomSpecialElementList);
+            if (specialElementList != null) {
+                specialElementList.forEach(sopInstances::remove);
+            }
+        }
+    }
+
     public MediaSeriesGroup getStudyNode(String studyUID) {
         Objects.requireNonNull(studyUID);
         synchronized (model) {
@@ -258,6 +296,7 @@ public class DicomModel implements TreeModel, DataExplorerModel {
             }
         }
         model.clear();
+        sopInstances.clear();
     }
 
     @Override
@@ -336,6 +375,10 @@ public class DicomModel implements TreeModel, DataExplorerModel {
                         removeSeriesWithoutDisposingMedias(s);
                     }
                 }
+                // The media are still in the study
+                for (MediaElement media : base.copyOfMedias(null, null)) {
+                    sopInstances.add(media);
+                }
                 // Force to sort the new merged media list
                 List sortedMedias = base.getSortedMedias(null);
                 Collections.sort(sortedMedias, SortSeriesStack.instanceNumber);
@@ -382,6 +425,7 @@ public class DicomModel implements TreeModel, DataExplorerModel {
             }
 
             specialElementList.remove(dicomSpecialElement);
+            sopInstances.remove(dicomSpecialElement);
 
             if (patientSpecialElementList.remove(dicomSpecialElement)) {
                 firePropertyChange(
@@ -402,6 +446,7 @@ public class DicomModel implements TreeModel, DataExplorerModel {
             // remove in the data model
             MediaSeriesGroup studyGroup = getParent(dicomSeries, DicomModel.study);
             removeHierarchyNode(studyGroup, dicomSeries);
+            removeSopInstances(dicomSeries);
             LOGGER.info("Remove Series (no dispose): {}", dicomSeries); //$NON-NLS-1$
         }
     }
@@ -417,6 +462,7 @@ public class DicomModel implements TreeModel, DataExplorerModel {
             // remove in the data model
             MediaSeriesGroup studyGroup = getParent(dicomSeries, DicomModel.study);
             removeHierarchyNode(studyGroup, dicomSeries);
+            removeSopInstances(dicomSeries);
             dicomSeries.dispose();
             LOGGER.info("Remove Series: {}", dicomSeries); //$NON-NLS-1$
         }
@@ -434,6 +480,7 @@ public class DicomModel implements TreeModel, DataExplorerModel {
             firePropertyChange(
                 new ObservableEvent(ObservableEvent.BasicAction.REMOVE, DicomModel.this, null, studyGroup));
             for (MediaSeriesGroup group : getChildren(studyGroup)) {
+                removeSopInstances(group);
                 group.dispose();
             }
             MediaSeriesGroup patientGroup = getParent(studyGroup, DicomModel.patient);
@@ -457,6 +504,7 @@ public class DicomModel implements TreeModel, DataExplorerModel {
                 new ObservableEvent(ObservableEvent.BasicAction.REMOVE, DicomModel.this, null, patientGroup));
             for (MediaSeriesGroup studyGroup : getChildren(patientGroup)) {
                 for (MediaSeriesGroup group : getChildren(studyGroup)) {
+                    removeSopInstances(group);
                     group.dispose();
                 }
             }
@@ -780,6 +828,14 @@ public class DicomModel implements TreeModel, DataExplorerModel {
 
     @Override
     public boolean applySplittingRules(Series original, MediaElement media) {
+        boolean split = addToSeries(original, media);
+        if (media != null && media.getMediaReader() instanceof DicomMediaIO) {
+            sopInstances.add(media);
+        }
+        return split;
+    }
+
+    private boolean addToSeries(Series original, MediaElement media) {
         if (media != null && media.getMediaReader() instanceof DicomMediaIO) {
             DicomMediaIO dicomReader = (DicomMediaIO) media.getMediaReader();
             String seriesUID = TagD.getTagValue(original, Tag.SeriesInstanceUID, String.class);
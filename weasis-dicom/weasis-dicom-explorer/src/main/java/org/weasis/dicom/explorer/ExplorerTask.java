@@ -20,6 +20,8 @@ import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.dicom.param.CancelListener;
 
 public abstract class ExplorerTask<T, V> extends SwingWorker<T, V> {
+    public static final String PROPERTY_MESSAGE = "message"; //$NON-NLS-1$
+
     private final String message;
     private final boolean globalLoadingManager;
     private final CircularProgressBar bar;
@@ -55,6 +57,13 @@ public abstract class ExplorerTask<T, V> extends SwingWorker<T, V> {
         return message;
     }
 
+    /**
+     * Notifies the listeners (in the EDT) that the message of the task has changed, e.g. the progression.
+     */
+    protected void updateMessage(String msg) {
+        firePropertyChange(PROPERTY_MESSAGE, null, msg);
+    }
+
     public CircularProgressBar getBar() {
         return bar;
     }
@@ -189,7 +189,7 @@ public class LoadDicomObjects extends ExplorerTask<Boolean, String> {
                 }
             } else {
                 // Test if SOPInstanceUID already exists
-                if (isSOPInstanceUIDExist(study, dicomSeries, seriesUID,
+                if (isSOPInstanceUIDExist(study, dicomSeries,
                     TagD.getTagValue(dicomReader, Tag.SOPInstanceUID, String.class))) {
                     return null;
                 }
@@ -232,27 +232,12 @@ public class LoadDicomObjects extends ExplorerTask<Boolean, String> {
         return thumb;
     }
 
-    private boolean isSOPInstanceUIDExist(MediaSeriesGroup study, Series dicomSeries, String seriesUID, Object sopUID) {
-        TagW sopTag = TagD.getUID(Level.INSTANCE);
-        if (dicomSeries.hasMediaContains(sopTag, sopUID)) {
-            return true;
+    private boolean isSOPInstanceUIDExist(MediaSeriesGroup study, Series dicomSeries, Object sopUID) {
+        if (sopUID == null) {
+            return false;
         }
-        Object splitNb = dicomSeries.getTagValue(TagW.SplitSeriesNumber);
-        if (splitNb != null && study != null) {
-            String uid = TagD.getTagValue(dicomSeries, Tag.SeriesInstanceUID, String.class);
-            if (uid != null) {
-                for (MediaSeriesGroup group : dicomModel.getChildren(study)) {
-                    if (dicomSeries != group && group instanceof Series) {
-                        Series s = (Series) group;
-                        if (uid.equals(TagD.getTagValue(group, Tag.SeriesInstanceUID))) {
-                            if (s.hasMediaContains(sopTag, sopUID)) {
-                                return true;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return false;
+        // The model indexes the instances of the split series by study
+        String studyUID = TagD.getTagValue(study == null ? dicomSeries : study, Tag.StudyInstanceUID, String.class);
+        return dicomModel.hasSopInstance(studyUID, sopUID.toString());
     }
 }
@@ -11,11 +11,29 @@
 package org.weasis.dicom.explorer;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import org.dcm4che3.data.Tag;
 import org.slf4j.LoggerFactory;
@@ -32,6 +50,7 @@ import org.weasis.core.api.media.data.SeriesThumbnail;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.media.data.Thumbnail;
 import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.SeriesViewerFactory;
 import org.weasis.core.ui.editor.ViewerPluginBuilder;
@@ -46,10 +65,16 @@ import org.weasis.dicom.codec.TagD.Level;
 public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
 
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(LoadLocalDicom.class);
+    private static final int PARSING_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int MAX_PENDING_FILES = 64 * PARSING_THREADS;
+    private static final int BATCH_SIZE = 200;
+    private static final long REPORT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+
     private final File[] files;
     private final DicomModel dicomModel;
     private final boolean recursive;
-    private boolean openPlugin;
+    private final List<ObservableEvent> pendingEvents = new ArrayList<>();
+    private volatile boolean openPlugin;
 
     public LoadLocalDicom(File[] files, boolean recursive, DataExplorerModel explorerModel) {
         super(Messages.getString("DicomExplorer.loading"), false); //$NON-NLS-1$
@@ -77,46 +102,106 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
         LOGGER.info("End of loading DICOM locally"); //$NON-NLS-1$
     }
 
+    /**
+     * Imports the files and the content of the directories. The import is a pipeline: the directories are walked in a
+     * thread, the headers are parsed in parallel (with a bounded number of pending files) and the model is updated in
+     * the current thread by batches. The thumbnails of the series are rebuilt at the end of the import.
+     *
+     * @param file
+     *            the files or directories to import
+     * @param firstLevel
+     *            true if the directories of this level are always read (otherwise only when recursive is true)
+     */
     public void addSelectionAndnotify(File[] file, boolean firstLevel) {
         if (file == null || file.length < 1) {
             return;
         }
-        final ArrayList<SeriesThumbnail> thumbs = new ArrayList<>();
-        final ArrayList<File> folders = new ArrayList<>();
-
-        for (int i = 0; i < file.length; i++) {
-            if (isCancelled()) {
-                return;
+        final Set<SeriesThumbnail> thumbs = new LinkedHashSet<>();
+        final BlockingQueue<DicomMediaIO> parsed = new LinkedBlockingQueue<>();
+        final AtomicInteger pending = new AtomicInteger();
+        final Semaphore permits = new Semaphore(MAX_PENDING_FILES);
+        final AtomicBoolean walkDone = new AtomicBoolean(false);
+        ExecutorService parser = ThreadUtil.buildNewFixedThreadExecutor(PARSING_THREADS, "Dicom Import"); //$NON-NLS-1$
+        Thread walker = new Thread(() -> {
+            try {
+                walk(file, firstLevel, f -> {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    pending.incrementAndGet();
+                    try {
+                        parser.execute(() -> {
+                            try {
+                                DicomMediaIO loader = isCancelled() ? null : parse(f);
+                                if (loader != null) {
+                                    parsed.add(loader);
+                                    return;
+                                }
+                            } catch (Exception e) {
+                                LOGGER.error("Cannot read {}", f, e); //$NON-NLS-1$
+                            }
+                            // Nothing to insert
+                            permits.release();
+                            pending.decrementAndGet();
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // The import has been stopped
+                        return false;
+                    }
+                    return !isCancelled();
+                });
+            } finally {
+                walkDone.set(true);
             }
+        }, "Dicom Import Walker"); //$NON-NLS-1$
+        walker.start();
 
-            if (file[i] == null) {
-                continue;
-            } else if (file[i].isDirectory()) {
-                if (firstLevel || recursive) {
-                    folders.add(file[i]);
+        long start = System.nanoTime();
+        long lastReport = start;
+        int nbFiles = 0;
+        List<DicomMediaIO> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (!isCancelled() && !(walkDone.get() && pending.get() == 0 && parsed.isEmpty())) {
+                DicomMediaIO first = parsed.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
                 }
-            } else {
-                if (file[i].canRead()) {
-                    if (FileUtil.isFileExtensionMatching(file[i], DicomCodec.FILE_EXTENSIONS)
-                        || MimeInspector.isMatchingMimeTypeFromMagicNumber(file[i], DicomMediaIO.MIMETYPE)) {
-                        DicomMediaIO loader = new DicomMediaIO(file[i]);
-                        if (loader.isReadableDicom()) {
-                            // Issue: must handle adding image to viewer and building thumbnail (middle image)
-                            SeriesThumbnail t = buildDicomStructure(loader, openPlugin);
-                            if (t != null) {
-                                thumbs.add(t);
-                            }
-
-                            File gpxFile = new File(file[i].getPath() + ".xml"); //$NON-NLS-1$
-                            GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
-                            if (graphicModel != null) {
-                                loader.setTag(TagW.PresentationModel, graphicModel);
-                            }
-                        }
+                batch.add(first);
+                parsed.drainTo(batch, BATCH_SIZE - 1);
+                for (DicomMediaIO loader : batch) {
+                    // Issue: must handle adding image to viewer and building thumbnail (middle image)
+                    SeriesThumbnail t = buildDicomStructure(loader, openPlugin);
+                    if (t != null) {
+                        thumbs.add(t);
                     }
                 }
+                firePendingEvents();
+                nbFiles += batch.size();
+                permits.release(batch.size());
+                pending.addAndGet(-batch.size());
+                batch.clear();
+
+                long now = System.nanoTime();
+                if (now - lastReport > REPORT_INTERVAL) {
+                    lastReport = now;
+                    updateMessage(getProgressMessage(nbFiles, now - start));
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            firePendingEvents();
+            parser.shutdownNow();
+            walker.interrupt();
         }
+        long elapsed = System.nanoTime() - start;
+        updateMessage(getProgressMessage(nbFiles, elapsed));
+        LOGGER.info("Import of {} DICOM files in {} ms", nbFiles, TimeUnit.NANOSECONDS.toMillis(elapsed)); //$NON-NLS-1$
+
+        // Deferred thumbnail generation, when the series are complete
         for (final SeriesThumbnail t : thumbs) {
             MediaSeries<MediaElement> series = t.getSeries();
             // Avoid to rebuild most of CR series thumbnail
@@ -124,9 +209,103 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
                 GuiExecutor.instance().execute(t::reBuildThumbnail);
             }
         }
-        for (int i = 0; i < folders.size(); i++) {
-            addSelectionAndnotify(folders.get(i).listFiles(), false);
+    }
+
+    private static String getProgressMessage(int nbFiles, long nanos) {
+        double seconds = nanos / 1_000_000_000.0;
+        long rate = seconds > 0 ? Math.round(nbFiles / seconds) : 0;
+        StringBuilder buf = new StringBuilder(Messages.getString("DicomExplorer.loading")); //$NON-NLS-1$
+        buf.append(" "); //$NON-NLS-1$
+        buf.append(nbFiles);
+        buf.append(" "); //$NON-NLS-1$
+        buf.append(Messages.getString("LoadLocalDicom.files")); //$NON-NLS-1$
+        buf.append(" ("); //$NON-NLS-1$
+        buf.append(rate);
+        buf.append(" "); //$NON-NLS-1$
+        buf.append(Messages.getString("LoadLocalDicom.files_sec")); //$NON-NLS-1$
+        buf.append(")"); //$NON-NLS-1$
+        return buf.toString();
+    }
+
+    private void walk(File[] file, boolean firstLevel, Predicate<File> consumer) {
+        for (File f : file) {
+            if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (f == null) {
+                continue;
+            }
+            if (f.isDirectory()) {
+                if (firstLevel || recursive) {
+                    walkDirectory(f.toPath(), consumer);
+                }
+            } else if (!consumer.test(f)) {
+                return;
+            }
+        }
+    }
+
+    private void walkDirectory(Path dir, Predicate<File> consumer) {
+        try {
+            Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), recursive ? Integer.MAX_VALUE : 1,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && !consumer.test(file.toFile())) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        LOGGER.warn("Cannot read {}", file); //$NON-NLS-1$
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        } catch (IOException e) {
+            LOGGER.error("Cannot read the directory {}", dir, e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads the header of the file.
+     *
+     * @return the reader or null if the file is not a DICOM file
+     */
+    private static DicomMediaIO parse(File file) {
+        if (file.canRead() && (FileUtil.isFileExtensionMatching(file, DicomCodec.FILE_EXTENSIONS)
+            || MimeInspector.isMatchingMimeTypeFromMagicNumber(file, DicomMediaIO.MIMETYPE))) {
+            DicomMediaIO loader = new DicomMediaIO(file);
+            if (loader.isReadableDicom()) {
+                File gpxFile = new File(file.getPath() + ".xml"); //$NON-NLS-1$
+                GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
+                if (graphicModel != null) {
+                    loader.setTag(TagW.PresentationModel, graphicModel);
+                }
+                return loader;
+            }
         }
+        return null;
+    }
+
+    /**
+     * The events are sent once by batch of files, the same event is sent only once.
+     */
+    private void fireLater(ObservableEvent event) {
+        for (ObservableEvent e : pendingEvents) {
+            if (e.getActionCommand() == event.getActionCommand() && e.getNewValue() == event.getNewValue()) {
+                return;
+            }
+        }
+        pendingEvents.add(event);
+    }
+
+    private void firePendingEvents() {
+        for (ObservableEvent e : pendingEvents) {
+            dicomModel.firePropertyChange(e);
+        }
+        pendingEvents.clear();
     }
 
     private SeriesThumbnail buildDicomStructure(DicomMediaIO dicomReader, boolean open) {
@@ -184,11 +363,10 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
                 if (DicomModel.isSpecialModality(dicomSeries)) {
                     dicomModel.addSpecialModality(dicomSeries);
                     Arrays.stream(medias).filter(DicomSpecialElement.class::isInstance)
-                        .map(DicomSpecialElement.class::cast).findFirst().ifPresent(d -> dicomModel.firePropertyChange(
+                        .map(DicomSpecialElement.class::cast).findFirst().ifPresent(d -> fireLater(
                             new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, d)));
                 } else {
-                    dicomModel.firePropertyChange(
-                        new ObservableEvent(ObservableEvent.BasicAction.ADD, dicomModel, null, dicomSeries));
+                    fireLater(new ObservableEvent(ObservableEvent.BasicAction.ADD, dicomModel, null, dicomSeries));
                 }
 
                 // After the thumbnail is sent to interface, it will be return to be rebuilt later
@@ -196,24 +374,25 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
 
                 Integer splitNb = (Integer) dicomSeries.getTagValue(TagW.SplitSeriesNumber);
                 if (splitNb != null) {
-                    dicomModel.firePropertyChange(
-                        new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, dicomSeries));
+                    fireLater(new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, dicomSeries));
                 }
 
                 if (open) {
+                    // The series must be in the explorer before opening the viewer
+                    firePendingEvents();
                     SeriesViewerFactory plugin = UIManager.getViewerFactory(dicomSeries.getMimeType());
                     if (plugin != null && !(plugin instanceof MimeSystemAppFactory)) {
                         openPlugin = false;
                         ViewerPluginBuilder.openSequenceInPlugin(plugin, dicomSeries, dicomModel, true, true);
                     } else if (plugin != null) {
                         // Send event to select the related patient in Dicom Explorer.
-                        dicomModel.firePropertyChange(
+                        fireLater(
                             new ObservableEvent(ObservableEvent.BasicAction.SELECT, dicomModel, null, dicomSeries));
                     }
                 }
             } else {
                 // Test if SOPInstanceUID already exists
-                if (isSOPInstanceUIDExist(study, dicomSeries, seriesUID,
+                if (isSOPInstanceUIDExist(study, dicomSeries,
                     TagD.getTagValue(dicomReader, Tag.SOPInstanceUID, String.class))) {
                     return null;
                 }
@@ -235,14 +414,14 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
                         dicomModel.addSpecialModality(dicomSeries);
                         Arrays.stream(medias).filter(DicomSpecialElement.class::isInstance)
                             .map(DicomSpecialElement.class::cast).findFirst()
-                            .ifPresent(d -> dicomModel.firePropertyChange(
+                            .ifPresent(d -> fireLater(
                                 new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, d)));
                     }
 
                     // If Split series or special DICOM element update the explorer view and View2DContainer
                     Integer splitNb = (Integer) dicomSeries.getTagValue(TagW.SplitSeriesNumber);
                     if (splitNb != null) {
-                        dicomModel.firePropertyChange(
+                        fireLater(
                             new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, dicomSeries));
                     }
                 }
@@ -255,29 +434,12 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
         return thumb;
     }
 
-    private boolean isSOPInstanceUIDExist(MediaSeriesGroup study, Series dicomSeries, String seriesUID, Object sopUID) {
-        TagW sopTag = TagD.getUID(Level.INSTANCE);
-        if (dicomSeries.hasMediaContains(sopTag, sopUID)) {
-            return true;
-        }
-        Object splitNb = dicomSeries.getTagValue(TagW.SplitSeriesNumber);
-        if (splitNb != null && study != null) {
-            String uid = TagD.getTagValue(dicomSeries, Tag.SeriesInstanceUID, String.class);
-            if (uid != null) {
-                Collection<MediaSeriesGroup> seriesList = dicomModel.getChildren(study);
-                for (Iterator<MediaSeriesGroup> it = seriesList.iterator(); it.hasNext();) {
-                    MediaSeriesGroup group = it.next();
-                    if (dicomSeries != group && group instanceof Series) {
-                        Series s = (Series) group;
-                        if (uid.equals(TagD.getTagValue(group, Tag.SeriesInstanceUID))) {
-                            if (s.hasMediaContains(sopTag, sopUID)) {
-                                return true;
-                            }
-                        }
-                    }
-                }
-            }
+    private boolean isSOPInstanceUIDExist(MediaSeriesGroup study, Series dicomSeries, Object sopUID) {
+        if (sopUID == null) {
+            return false;
         }
-        return false;
+        // The model indexes the instances of the split series by study
+        String studyUID = TagD.getTagValue(study == null ? dicomSeries : study, Tag.StudyInstanceUID, String.class);
+        return dicomModel.hasSopInstance(studyUID, sopUID.toString());
     }
 }
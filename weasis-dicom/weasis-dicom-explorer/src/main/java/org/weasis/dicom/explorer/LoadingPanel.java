@@ -61,6 +61,7 @@ public class LoadingPanel extends JPanel {
                 for (Component c : getComponents()) {
                     if (c instanceof LoadingTaskPanel && task.equals(((LoadingTaskPanel) c).getTask())) {
                         remove(c);
+                        ((LoadingTaskPanel) c).dispose();
                         task.stopProgress();
                         update = true;
                     }
@@ -14,6 +14,7 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.beans.PropertyChangeListener;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
@@ -31,6 +32,12 @@ public class LoadingTaskPanel extends JPanel {
     private final ExplorerTask<?, ?> task;
     private final boolean globalLoadingManager;
     private final JLabel message = new JLabel();
+    private final PropertyChangeListener messageListener = evt -> {
+        if (ExplorerTask.PROPERTY_MESSAGE.equals(evt.getPropertyName()) && evt.getNewValue() != null
+            && !isTaskCancelled()) {
+            message.setText(evt.getNewValue().toString());
+        }
+    };
 
     public LoadingTaskPanel(ExplorerTask<?, ?> task) {
         this.task = task;
@@ -117,6 +124,8 @@ public class LoadingTaskPanel extends JPanel {
         }
         if (task != null) {
             message.setText(task.getMessage());
+            // Registered once by panel and removed with the panel
+            task.addPropertyChangeListener(messageListener);
         }
         this.add(message);
         this.revalidate();
@@ -130,4 +139,14 @@ public class LoadingTaskPanel extends JPanel {
     public ExplorerTask getTask() {
         return task;
     }
+
+    private boolean isTaskCancelled() {
+        return task != null && task.isCancelled();
+    }
+
+    public void dispose() {
+        if (task != null) {
+            task.removePropertyChangeListener(messageListener);
+        }
+    }
 }
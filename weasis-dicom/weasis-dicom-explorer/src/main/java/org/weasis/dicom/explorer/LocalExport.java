@@ -16,10 +16,28 @@ import java.awt.FlowLayout;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.swing.BoxLayout;
 import javax.swing.DefaultComboBoxModel;
@@ -41,6 +59,7 @@ import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.media.DicomDirWriter;
 import org.dcm4che3.media.RecordType;
 import org.dcm4che3.util.UIDUtils;
@@ -61,6 +80,7 @@ import org.weasis.core.api.util.FileUtil;
 import org.weasis.core.api.util.LangUtil;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.api.util.StringUtil.Suffix;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.model.GraphicModel;
 import org.weasis.core.ui.serialize.XmlSerializer;
 import org.weasis.dicom.codec.DcmMediaReader;
@@ -87,6 +107,12 @@ public class LocalExport extends AbstractItemDialogPage implements ExportDicom {
 
     public static final String[] EXPORT_FORMAT = { "DICOM", "DICOM ZIP", "JPEG", "PNG" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 
+    // Number of threads reading the files to export
+    private static final int EXPORT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_PENDING_ENTRIES = 4 * EXPORT_THREADS;
+    // Maximum size of a file read in memory by the readers
+    private static final long MAX_PREFETCH_SIZE = 4 * 1024 * 1024L;
+
     private final DicomModel dicomModel;
     private JLabel lblImportAFolder;
     private File outputFolder;
@@ -430,6 +456,7 @@ public class LocalExport extends AbstractItemDialogPage implements ExportDicom {
             keepNames = false;
             writeDicomdir = true;
             cdCompatible = true;
+            // Only the DICOMDIR is written in this folder, the files are written directly in the ZIP file
             writeDir = FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "zip")); //$NON-NLS-1$ //$NON-NLS-2$
         } else {
             Properties pref = Activator.IMPORT_EXPORT_PERSISTENCE;
@@ -439,102 +466,217 @@ public class LocalExport extends AbstractItemDialogPage implements ExportDicom {
             writeDir = exportDir;
         }
 
-        DicomDirWriter writer = null;
-        try {
+        List<ExportEntry> entries = new ArrayList<>();
+        synchronized (exportTree) {
+            Set<String> uids = new HashSet<>();
+            TreePath[] paths = model.getCheckingPaths();
+            for (TreePath treePath : paths) {
+                if (task.isCancelled()) {
+                    return;
+                }
 
-            if (writeDicomdir) {
-                File dcmdirFile = new File(writeDir, "DICOMDIR"); //$NON-NLS-1$
-                writer = DicomDirLoader.open(dcmdirFile);
-            }
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode) treePath.getLastPathComponent();
 
-            synchronized (exportTree) {
-                ArrayList<String> uids = new ArrayList<>();
-                TreePath[] paths = model.getCheckingPaths();
-                for (TreePath treePath : paths) {
-                    if (task.isCancelled()) {
-                        return;
+                if (node.getUserObject() instanceof DicomImageElement) {
+                    DicomImageElement img = (DicomImageElement) node.getUserObject();
+                    String iuid = TagD.getTagValue(img, Tag.SOPInstanceUID, String.class);
+                    if (!uids.add(iuid)) {
+                        // Write only once the file for multiframe
+                        continue;
                     }
-
-                    DefaultMutableTreeNode node = (DefaultMutableTreeNode) treePath.getLastPathComponent();
-
-                    if (node.getUserObject() instanceof DicomImageElement) {
-                        DicomImageElement img = (DicomImageElement) node.getUserObject();
-                        String iuid = TagD.getTagValue(img, Tag.SOPInstanceUID, String.class);
-                        int index = uids.indexOf(iuid);
-                        if (index == -1) {
-                            uids.add(iuid);
-                        } else {
-                            // Write only once the file for multiframe
-                            continue;
-                        }
-                        if (!keepNames) {
-                            iuid = makeFileIDs(iuid);
-                        }
-
-                        String path = buildPath(img, keepNames, writeDicomdir, cdCompatible, node);
-                        File destinationDir = new File(writeDir, path);
-                        destinationDir.mkdirs();
-
-                        File destinationFile = new File(destinationDir, iuid);
-                        if (img.saveToFile(destinationFile)) {
-                            writeInDicomDir(writer, img, node, iuid, destinationFile);
-                        } else {
-                            LOGGER.error("Cannot export DICOM file: {}", img.getFileCache().getOriginalFile().orElse(null)); //$NON-NLS-1$
-                        }
-                    } else if (node.getUserObject() instanceof MediaElement) {
-                        MediaElement dcm = (MediaElement) node.getUserObject();
-                        String iuid = TagD.getTagValue(dcm, Tag.SOPInstanceUID, String.class);
-                        if (!keepNames) {
-                            iuid = makeFileIDs(iuid);
-                        }
-
-                        String path = buildPath(dcm, keepNames, writeDicomdir, cdCompatible, node);
-                        File destinationDir = new File(writeDir, path);
-                        destinationDir.mkdirs();
-
-                        File destinationFile = new File(destinationDir, iuid);
-                        if (dcm.saveToFile(destinationFile)) {
-                            writeInDicomDir(writer, dcm, node, iuid, destinationFile);
-                        }
-                    } else if (node.getUserObject() instanceof Series) {
-                        MediaSeries<?> s = (MediaSeries<?>) node.getUserObject();
-                        if (LangUtil.getNULLtoFalse((Boolean) s.getTagValue(TagW.ObjectToSave))) {
-                            Series<?> series = (Series<?>) s.getTagValue(CheckTreeModel.SourceSeriesForPR);
-                            if (series != null) {
-                                String seriesInstanceUID = UIDUtils.createUID();
-                                for (MediaElement dcm : series.getMedias(null, null)) {
-                                    GraphicModel grModel = (GraphicModel) dcm.getTagValue(TagW.PresentationModel);
-                                    if (grModel != null && grModel.hasSerializableGraphics()) {
-                                        String path = buildPath(dcm, keepNames, writeDicomdir, cdCompatible, node);
-                                        buildAndWritePR(dcm, keepNames, new File(writeDir, path), writer, node,
-                                            seriesInstanceUID);
-                                    }
+                    entries.add(new ExportEntry(img, buildPath(img, keepNames, writeDicomdir, cdCompatible, node),
+                        keepNames ? iuid : makeFileIDs(iuid), getSeries(node)));
+                } else if (node.getUserObject() instanceof MediaElement) {
+                    MediaElement dcm = (MediaElement) node.getUserObject();
+                    String iuid = TagD.getTagValue(dcm, Tag.SOPInstanceUID, String.class);
+                    entries.add(new ExportEntry(dcm, buildPath(dcm, keepNames, writeDicomdir, cdCompatible, node),
+                        keepNames ? iuid : makeFileIDs(iuid), getSeries(node)));
+                } else if (node.getUserObject() instanceof Series) {
+                    MediaSeries<?> s = (MediaSeries<?>) node.getUserObject();
+                    if (LangUtil.getNULLtoFalse((Boolean) s.getTagValue(TagW.ObjectToSave))) {
+                        Series<?> series = (Series<?>) s.getTagValue(CheckTreeModel.SourceSeriesForPR);
+                        if (series != null) {
+                            String seriesInstanceUID = UIDUtils.createUID();
+                            for (MediaElement dcm : series.getMedias(null, null)) {
+                                GraphicModel grModel = (GraphicModel) dcm.getTagValue(TagW.PresentationModel);
+                                if (grModel != null && grModel.hasSerializableGraphics()) {
+                                    String prUid = UIDUtils.createUID();
+                                    ExportEntry pr = new ExportEntry(dcm,
+                                        buildPath(dcm, keepNames, writeDicomdir, cdCompatible, node),
+                                        keepNames ? prUid : makeFileIDs(prUid), null);
+                                    pr.presentation = grModel;
+                                    pr.seriesInstanceUID = seriesInstanceUID;
+                                    pr.sopInstanceUID = prUid;
+                                    entries.add(pr);
                                 }
                             }
                         }
                     }
                 }
             }
+        }
+
+        DicomDirWriter writer = null;
+        File dcmdirFile = new File(writeDir, "DICOMDIR"); //$NON-NLS-1$
+        ExecutorService readers = ThreadUtil.buildNewFixedThreadExecutor(EXPORT_THREADS, "Dicom Export"); //$NON-NLS-1$
+        boolean completed = false;
+        // The resources will be closed in reverse order: the zip stream is closed before the file stream
+        try (OutputStream out = zipFile ? new FileOutputStream(exportDir) : null;
+                        ZipOutputStream zout = zipFile ? new ZipOutputStream(new BufferedOutputStream(out)) : null) {
+            if (writeDicomdir) {
+                writer = DicomDirLoader.open(dcmdirFile);
+            }
+
+            /*
+             * The readers prepare the entries in parallel (reading the attributes, building the icon of the series and
+             * writing the file in the folder or reading a small file in memory). The current thread is the single
+             * writer of the ZIP file and of the DICOMDIR.
+             */
+            CompletionService<ExportEntry> service = new ExecutorCompletionService<>(readers);
+            Map<MediaSeries<?>, Optional<Attributes>> icons = new ConcurrentHashMap<>();
+            boolean icon = writer != null;
+            Set<String> entryNames = new HashSet<>();
+            Iterator<ExportEntry> iter = entries.iterator();
+            int pending = 0;
+            while (iter.hasNext() || pending > 0) {
+                while (iter.hasNext() && pending < MAX_PENDING_ENTRIES) {
+                    ExportEntry entry = iter.next();
+                    service.submit(() -> prepare(entry, zipFile ? null : writeDir, icon ? icons : null));
+                    pending++;
+                }
+                ExportEntry entry = service.take().get();
+                pending--;
+                if (task.isCancelled()) {
+                    return;
+                }
+                if (entry.dataset == null && entry.presentation != null) {
+                    continue;
+                }
+                if (zout != null && !entryNames.add(entry.getRelativePath('/'))) {
+                    // Already written, the ZIP format does not allow duplicate entries
+                    continue;
+                }
+                boolean written = zout == null ? entry.written : writeEntry(zout, entry);
+                if (!written) {
+                    LOGGER.error("Cannot export DICOM file: {}", entry.getSourceFile()); //$NON-NLS-1$
+                    continue;
+                }
+                if (writer != null) {
+                    if (entry.dataset == null) {
+                        LOGGER.error("Cannot export DICOM file: {}", entry.getSourceFile()); //$NON-NLS-1$
+                    } else {
+                        writeInDicomDir(writer, entry.dataset, () -> entry.iconItem, entry.fileName,
+                            new File(writeDir, entry.getRelativePath(File.separatorChar)));
+                    }
+                }
+            }
+
+            if (writer != null) {
+                // Commit DICOMDIR changes and close the file
+                writer.close();
+                writer = null;
+                if (zout != null) {
+                    zout.putNextEntry(new ZipEntry(dcmdirFile.getName()));
+                    Files.copy(dcmdirFile.toPath(), zout);
+                    zout.closeEntry();
+                }
+            }
+            completed = true;
         } catch (IOException e) {
             throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             LOGGER.error("Cannot export DICOM", e); //$NON-NLS-1$
         } finally {
+            readers.shutdownNow();
             if (writer != null) {
-                // Commit DICOMDIR changes and close the file
                 writer.close();
             }
+            if (zipFile) {
+                FileUtil.recursiveDelete(writeDir);
+                if (!completed) {
+                    FileUtil.delete(exportDir);
+                }
+            }
         }
+    }
 
-        if (zipFile) {
-            try {
-                FileUtil.zip(writeDir, exportDir);
-            } catch (Exception e) {
-                LOGGER.error("Cannot export DICOM ZIP file: {}", exportDir, e); //$NON-NLS-1$
-            } finally {
-                FileUtil.recursiveDelete(writeDir);
+    private static MediaSeries<?> getSeries(DefaultMutableTreeNode node) {
+        if (node.getParent() instanceof DefaultMutableTreeNode) {
+            Object userObject = ((DefaultMutableTreeNode) node.getParent()).getUserObject();
+            if (userObject instanceof MediaSeries) {
+                return (MediaSeries<?>) userObject;
             }
         }
+        return null;
+    }
+
+    private static ExportEntry prepare(ExportEntry entry, File writeDir,
+        Map<MediaSeries<?>, Optional<Attributes>> icons) {
+        MediaElement media = entry.media;
+        Attributes imgAttributes = media.getMediaReader() instanceof DcmMediaReader
+            ? ((DcmMediaReader) media.getMediaReader()).getDicomObject() : null;
+        if (entry.presentation != null) {
+            entry.dataset = imgAttributes == null ? null : DicomPrSerializer.buildPresentation(entry.presentation,
+                imgAttributes, entry.seriesInstanceUID, entry.sopInstanceUID, null);
+            if (entry.dataset == null) {
+                return entry;
+            }
+        } else {
+            entry.dataset = imgAttributes;
+            if (icons != null && entry.series instanceof DicomSeries) {
+                // The icon is built only once by series
+                entry.iconItem = icons.computeIfAbsent(entry.series, s -> Optional
+                    .ofNullable(mkIconItem(((DicomSeries) s).getMedia(MediaSeries.MEDIA_POSITION.MIDDLE, null, null))))
+                    .orElse(null);
+            }
+        }
+
+        if (writeDir != null) {
+            File destinationFile = new File(writeDir, entry.getRelativePath(File.separatorChar));
+            destinationFile.getParentFile().mkdirs();
+            entry.written = writeEntry(entry, destinationFile);
+        } else if (entry.presentation == null && media.getLength() <= MAX_PREFETCH_SIZE) {
+            // Read small files in parallel, the writer has only to compress the data
+            ByteArrayOutputStream buf = new ByteArrayOutputStream((int) media.getLength());
+            if (media.saveToStream(buf)) {
+                entry.data = buf.toByteArray();
+            }
+        }
+        return entry;
+    }
+
+    private static boolean writeEntry(ExportEntry entry, File destinationFile) {
+        if (entry.presentation == null) {
+            return entry.media.saveToFile(destinationFile);
+        }
+        try (DicomOutputStream out = new DicomOutputStream(destinationFile)) {
+            out.writeDataset(entry.dataset.createFileMetaInformation(UID.ImplicitVRLittleEndian), entry.dataset);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Cannot write dicom PR: {}", destinationFile, e); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    private static boolean writeEntry(ZipOutputStream zout, ExportEntry entry) throws IOException {
+        zout.putNextEntry(new ZipEntry(entry.getRelativePath('/')));
+        try {
+            if (entry.data != null) {
+                zout.write(entry.data);
+                return true;
+            } else if (entry.presentation != null) {
+                // Do not close the zip stream
+                DicomOutputStream out = new DicomOutputStream(zout, UID.ExplicitVRLittleEndian);
+                out.writeDataset(entry.dataset.createFileMetaInformation(UID.ImplicitVRLittleEndian), entry.dataset);
+                out.flush();
+                return true;
+            }
+            return entry.media.saveToStream(zout);
+        } finally {
+            zout.closeEntry();
+        }
     }
 
     public static Attributes buildAndWritePR(MediaElement img, boolean keepNames, File destinationDir,
@@ -616,21 +758,18 @@ public class LocalExport extends AbstractItemDialogPage implements ExportDicom {
         return StringUtil.getTruncatedString(value, length, Suffix.NO);
     }
 
-    private static boolean writeInDicomDir(DicomDirWriter writer, MediaElement img, DefaultMutableTreeNode node,
+    private static boolean writeInDicomDir(DicomDirWriter writer, Attributes dataset, DefaultMutableTreeNode node,
         String iuid, File destinationFile) throws IOException {
-        if (writer != null) {
-            if (!(img.getMediaReader() instanceof DcmMediaReader)
-                || ((DcmMediaReader) img.getMediaReader()).getDicomObject() == null) {
-                LOGGER.error("Cannot export DICOM file: ", img.getFileCache().getOriginalFile().orElse(null)); //$NON-NLS-1$
-                return false;
+        return writeInDicomDir(writer, dataset, () -> {
+            MediaSeries<?> series = getSeries(node);
+            if (series instanceof DicomSeries) {
+                return mkIconItem(((DicomSeries) series).getMedia(MediaSeries.MEDIA_POSITION.MIDDLE, null, null));
             }
-            return writeInDicomDir(writer, ((DcmMediaReader) img.getMediaReader()).getDicomObject(), node, iuid,
-                destinationFile);
-        }
-        return false;
+            return null;
+        }, iuid, destinationFile);
     }
 
-    private static boolean writeInDicomDir(DicomDirWriter writer, Attributes dataset, DefaultMutableTreeNode node,
+    private static boolean writeInDicomDir(DicomDirWriter writer, Attributes dataset, Supplier<Attributes> icon,
         String iuid, File destinationFile) throws IOException {
         if (writer != null && dataset != null) {
             Attributes fmi = dataset.createFileMetaInformation(UID.ImplicitVRLittleEndian);
@@ -663,15 +802,10 @@ public class LocalExport extends AbstractItemDialogPage implements ExportDicom {
                      * Icon Image Sequence (0088,0200).This Icon Image is representative of the Series. It may or may
                      * not correspond to one of the images of the Series.
                      */
-                    if (seriesRec != null && node.getParent() instanceof DefaultMutableTreeNode) {
-                        Object userObject = ((DefaultMutableTreeNode) node.getParent()).getUserObject();
-                        if (userObject instanceof DicomSeries) {
-                            DicomImageElement midImage =
-                                ((DicomSeries) userObject).getMedia(MediaSeries.MEDIA_POSITION.MIDDLE, null, null);
-                            Attributes iconItem = mkIconItem(midImage);
-                            if (iconItem != null) {
-                                seriesRec.newSequence(Tag.IconImageSequence, 1).add(iconItem);
-                            }
+                    if (seriesRec != null && icon != null) {
+                        Attributes iconItem = icon.get();
+                        if (iconItem != null) {
+                            seriesRec.newSequence(Tag.IconImageSequence, 1).add(iconItem);
                         }
                     }
                     writer.addLowerDirectoryRecord(studyRec, seriesRec);
@@ -767,4 +901,36 @@ public class LocalExport extends AbstractItemDialogPage implements ExportDicom {
         return iconItem;
     }
 
+    private static class ExportEntry {
+        final MediaElement media;
+        final String path;
+        final String fileName;
+        final MediaSeries<?> series;
+
+        // Presentation State built from the graphics of the media
+        GraphicModel presentation;
+        String seriesInstanceUID;
+        String sopInstanceUID;
+
+        Attributes dataset;
+        Attributes iconItem;
+        byte[] data;
+        boolean written;
+
+        ExportEntry(MediaElement media, String path, String fileName, MediaSeries<?> series) {
+            this.media = media;
+            this.path = path;
+            this.fileName = fileName;
+            this.series = series;
+        }
+
+        String getRelativePath(char separator) {
+            String p = path.isEmpty() ? fileName : path + File.separator + fileName;
+            return File.separatorChar == separator ? p : p.replace(File.separatorChar, separator);
+        }
+
+        Object getSourceFile() {
+            return media.getFileCache().getOriginalFile().orElse(null);
+        }
+    }
 }
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dcm4che3.data.Tag;
+import org.weasis.core.api.media.data.MediaElement;
+import org.weasis.dicom.codec.TagD;
+
+/**
+ * Index of the DICOM instances of the model by Study Instance UID, SOP Instance UID and frame number. It replaces the
+ * scan of the media of all the series (including the split series) for finding whether an instance is already
+ * loaded.
+ */
+final class SopInstanceIndex {
+
+    // Study Instance UID -> SOP Instance UID -> frame -> media
+    private final Map<String, Map<String, Map<Integer, MediaElement>>> studies = new ConcurrentHashMap<>();
+
+    void add(MediaElement media) {
+        String studyUID = TagD.getTagValue(media, Tag.StudyInstanceUID, String.class);
+        String sopUID = TagD.getTagValue(media, Tag.SOPInstanceUID, String.class);
+        if (studyUID != null && sopUID != null) {
+            studies.computeIfAbsent(studyUID, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(sopUID, k -> new ConcurrentHashMap<>(2)).put(getFrame(media), media);
+        }
+    }
+
+    void remove(MediaElement media) {
+        String studyUID = TagD.getTagValue(media, Tag.StudyInstanceUID, String.class);
+        String sopUID = TagD.getTagValue(media, Tag.SOPInstanceUID, String.class);
+        if (studyUID != null && sopUID != null) {
+            Map<String, Map<Integer, MediaElement>> instances = studies.get(studyUID);
+            if (instances != null) {
+                // Remove the frame only when it is the same media and the instance when it has no more frame
+                instances.computeIfPresent(sopUID, (k, frames) -> {
+                    frames.remove(getFrame(media), media);
+                    return frames.isEmpty() ? null : frames;
+                });
+            }
+        }
+    }
+
+    void clear() {
+        studies.clear();
+    }
+
+    /**
+     * @return true when a frame of the instance is in the study
+     */
+    boolean contains(String studyUID, String sopUID) {
+        if (studyUID == null || sopUID == null) {
+            return false;
+        }
+        Map<String, Map<Integer, MediaElement>> instances = studies.get(studyUID);
+        return instances != null && instances.containsKey(sopUID);
+    }
+
+    MediaElement get(String studyUID, String sopUID, int frame) {
+        if (studyUID == null || sopUID == null) {
+            return null;
+        }
+        Map<String, Map<Integer, MediaElement>> instances = studies.get(studyUID);
+        Map<Integer, MediaElement> frames = instances == null ? null : instances.get(sopUID);
+        return frames == null ? null : frames.get(frame);
+    }
+
+    private static Integer getFrame(MediaElement media) {
+        Object key = media.getKey();
+        return key instanceof Integer ? (Integer) key : 0;
+    }
+}
@@ -78,8 +78,22 @@ public class DicomPrSerializer {
 
     public static Attributes writePresentation(GraphicModel model, Attributes parentAttributes, File outputFile,
         String seriesInstanceUID, String sopInstanceUID, Point2D offset) {
-        Objects.requireNonNull(model);
         Objects.requireNonNull(outputFile);
+        Attributes attributes = buildPresentation(model, parentAttributes, seriesInstanceUID, sopInstanceUID, offset);
+        if (attributes != null) {
+            saveToFile(outputFile, attributes);
+        }
+        return attributes;
+    }
+
+    /**
+     * Builds the Presentation State without writing it (e.g. for writing it directly in a stream).
+     *
+     * @return the attributes of the Presentation State or null if it cannot be built
+     */
+    public static Attributes buildPresentation(GraphicModel model, Attributes parentAttributes,
+        String seriesInstanceUID, String sopInstanceUID, Point2D offset) {
+        Objects.requireNonNull(model);
 
         if (parentAttributes != null) {
             try {
@@ -91,8 +105,6 @@ public class DicomPrSerializer {
                 writeReferences(attributes, m, parentAttributes.getString(Tag.SOPClassUID));
                 writeGraphics(m, attributes);
                 writePrivateTags(m, attributes);
-
-                saveToFile(outputFile, attributes);
                 return attributes;
             } catch (Exception e) {
                 LOGGER.error("Cannot write Presentation State : ", e); //$NON-NLS-1$
@@ -29,6 +29,7 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -102,6 +103,7 @@ public class DownloadManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(DownloadManager.class);
 
     public static final String CONCURRENT_SERIES = "download.concurrent.series"; //$NON-NLS-1$
+    public static final String CONCURRENT_IMAGES = "download.concurrent.images"; //$NON-NLS-1$
     public static final List<LoadSeries> TASKS = new ArrayList<>();
 
     // Executor without concurrency (only one task is executed at the same time)
@@ -118,6 +120,19 @@ public class DownloadManager {
             BundleTools.SYSTEM_PREFERENCES.getIntProperty(CONCURRENT_SERIES, 3), 0L, TimeUnit.MILLISECONDS,
             PRIORITY_QUEUE, ThreadUtil.getThreadFactory("Series Downloader")); //$NON-NLS-1$
 
+    // Executor of the images shared by all the series, the downloads by server are limited by ServerConcurrency
+    public static final ThreadPoolExecutor IMAGE_EXECUTOR = new ThreadPoolExecutor(getConcurrentImages(),
+        getConcurrentImages(), 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        ThreadUtil.getThreadFactory("Image Downloader")); //$NON-NLS-1$
+
+    static {
+        IMAGE_EXECUTOR.allowCoreThreadTimeOut(true);
+        // Keep enough idle HTTP connections for reusing them (default is 5 by destination)
+        if (System.getProperty("http.maxConnections") == null) { //$NON-NLS-1$
+            System.setProperty("http.maxConnections", Integer.toString(getConcurrentImages())); //$NON-NLS-1$
+        }
+    }
+
     public static class PriorityTaskComparator implements Comparator<Runnable>, Serializable {
 
         private static final long serialVersionUID = 513213203958362767L;
@@ -153,6 +168,13 @@ public class DownloadManager {
     private DownloadManager() {
     }
 
+    /**
+     * @return the maximum number of images downloaded simultaneously by all the series
+     */
+    public static int getConcurrentImages() {
+        return Math.max(1, BundleTools.SYSTEM_PREFERENCES.getIntProperty(CONCURRENT_IMAGES, 16));
+    }
+
     public static boolean removeSeriesInQueue(final LoadSeries series) {
         return series.getPriority().hasConcurrentDownload() ? DownloadManager.PRIORITY_QUEUE.remove(series)
             : DownloadManager.UNIQUE_QUEUE.remove(series);
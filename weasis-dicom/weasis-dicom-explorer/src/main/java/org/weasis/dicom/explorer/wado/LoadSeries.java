@@ -28,7 +28,9 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JProgressBar;
 
@@ -55,10 +57,10 @@ import org.weasis.core.api.media.data.TagW.TagType;
 import org.weasis.core.api.media.data.Thumbnail;
 import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.HttpResponseException;
 import org.weasis.core.api.util.NetworkUtil;
 import org.weasis.core.api.util.StreamIOException;
 import org.weasis.core.api.util.StringUtil;
-import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.SeriesViewerFactory;
 import org.weasis.core.ui.editor.ViewerPluginBuilder;
@@ -71,7 +73,6 @@ import org.weasis.core.ui.model.ReferencedSeries;
 import org.weasis.dicom.codec.DicomMediaIO;
 import org.weasis.dicom.codec.DicomSpecialElement;
 import org.weasis.dicom.codec.TagD;
-import org.weasis.dicom.codec.TagD.Level;
 import org.weasis.dicom.codec.TransferSyntax;
 import org.weasis.dicom.codec.utils.DicomMediaUtils;
 import org.weasis.dicom.explorer.DicomModel;
@@ -277,26 +278,13 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
     }
 
     private boolean isSOPInstanceUIDExist(MediaSeriesGroup study, Series<?> dicomSeries, String sopUID) {
-        TagW sopTag = TagD.getUID(Level.INSTANCE);
-        if (dicomSeries.hasMediaContains(sopTag, sopUID)) {
-            return true;
-        }
-        // Search in split Series, cannot use "has this series a SplitNumber" because splitting can be executed later
-        // for Dicom Video and other special Dicom
-        String uid = TagD.getTagValue(dicomSeries, Tag.SeriesInstanceUID, String.class);
-        if (study != null && uid != null) {
-            for (MediaSeriesGroup group : dicomModel.getChildren(study)) {
-                if (dicomSeries != group && group instanceof Series) {
-                    Series s = (Series) group;
-                    if (uid.equals(TagD.getTagValue(group, Tag.SeriesInstanceUID))
-                        && s.hasMediaContains(sopTag, sopUID)) {
-                        return true;
-                    }
-                }
-            }
+        if (sopUID == null) {
+            return false;
         }
-
-        return false;
+        // Look in all the series of the study (the split series included), cannot use "has this series a
+        // SplitNumber" because splitting can be executed later for Dicom Video and other special Dicom
+        String studyUID = TagD.getTagValue(study == null ? dicomSeries : study, Tag.StudyInstanceUID, String.class);
+        return dicomModel.hasSopInstance(studyUID, sopUID);
     }
 
     private void incrementProgressBarValue() {
@@ -316,9 +304,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
         List<SopInstance> sopList = seriesInstanceList.getSortedList();
 
-        ExecutorService imageDownloader =
-            ThreadUtil.buildNewFixedThreadExecutor(concurrentDownloads, "Image Downloader"); //$NON-NLS-1$
-        ArrayList<Callable<Boolean>> tasks = new ArrayList<>(sopList.size());
+        ArrayList<Download> tasks = new ArrayList<>(sopList.size());
         int[] dindex = generateDownladOrder(sopList.size());
         GuiExecutor.instance().execute(() -> {
             progressBar.setMaximum(sopList.size());
@@ -343,7 +329,8 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                 continue;
             }
 
-            URLConnection urlConnection = null;
+            URL url;
+            boolean original = true;
             try {
                 String studyUID = ""; //$NON-NLS-1$
                 String seriesUID = ""; //$NON-NLS-1$
@@ -367,6 +354,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                     // for dcm4chee: it gets original DICOM files when no TransferSyntax is specified
                     String wadoTsuid = (String) dicomSeries.getTagValue(TagW.WadoTransferSyntaxUID);
                     if (StringUtil.hasText(wadoTsuid)) {
+                        original = false;
                         request.append("&transferSyntax="); //$NON-NLS-1$
                         request.append(wadoTsuid);
                         if (transcoding.getTransferSyntaxUID() != null) {
@@ -382,32 +370,47 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                     request.append(instance.getDirectDownloadFile());
                 }
                 request.append(wado.getAdditionnalParameters());
-                urlConnection = initConnection(new URL(request.toString()), wado);
+                url = new URL(request.toString());
             } catch (MalformedURLException e) {
                 LOGGER.error("Invalid URL", e); //$NON-NLS-1$
                 continue;
-            } catch (IOException e) {
-                hasError = true;
-                LOGGER.error("Cannot open URL", e); //$NON-NLS-1$
-                continue;
             }
-            LOGGER.debug("Download DICOM instance {} index {}.", urlConnection, k); //$NON-NLS-1$
-            Download ref = new Download(urlConnection);
-            tasks.add(ref);
+            LOGGER.debug("Download DICOM instance {} index {}.", url, k); //$NON-NLS-1$
+            // The connection is opened only when the download starts
+            tasks.add(new Download(url, wado, original));
         }
 
+        dicomSeries.setTag(DOWNLOAD_START_TIME, System.currentTimeMillis());
+        List<Future<Boolean>> futures = new ArrayList<>(tasks.size());
         try {
-            dicomSeries.setTag(DOWNLOAD_START_TIME, System.currentTimeMillis());
-            imageDownloader.invokeAll(tasks);
+            for (Download task : tasks) {
+                if (isCancelled()) {
+                    break;
+                }
+                // Wait for a free slot of the server before queuing the download in the shared executor
+                task.server.acquire();
+                futures.add(DownloadManager.IMAGE_EXECUTOR.submit(task));
+            }
+            for (Future<Boolean> future : futures) {
+                // A failed download must not prevent waiting for the others
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.error("Downloading", e.getCause()); //$NON-NLS-1$
+                }
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            for (int i = 0; i < futures.size(); i++) {
+                if (futures.get(i).cancel(false)) {
+                    tasks.get(i).releaseServer();
+                }
+            }
         }
-
-        imageDownloader.shutdown();
         return true;
     }
 
-    private static URLConnection initConnection(URL url, WadoParameters wadoParameters) throws IOException {
+    static URLConnection initConnection(URL url, WadoParameters wadoParameters) throws IOException {
         // If there is a proxy, it should be already configured
         URLConnection urlConnection = url.openConnection();
         // Set http login (no protection, only convert in base64)
@@ -586,16 +589,37 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
     class Download implements Callable<Boolean> {
 
-        private final URLConnection urlConnection; // download URL
+        private final URL url; // download URL
+        private final WadoParameters wado;
+        private final ServerConcurrency server;
+        // The file is not modified on the fly by the server
+        private final boolean resumable;
+        private final AtomicBoolean serverReleased = new AtomicBoolean(false);
         private Status status; // current status of download
+        private long latency = 0;
 
-        public Download(URLConnection urlConnection) {
-            this.urlConnection = urlConnection;
+        public Download(URL url, WadoParameters wado, boolean original) {
+            this.url = url;
+            this.wado = wado;
+            this.resumable = original && wado.getOverrideDicomTagIDList() == null && ResumableDownload.isResumable(url);
+            this.server = ServerConcurrency.getInstance(url, concurrentDownloads);
             this.status = Status.DOWNLOADING;
         }
 
         public String getUrl() {
-            return urlConnection.getURL().toExternalForm();
+            return url.toExternalForm();
+        }
+
+        private void releaseServer(long bytes, long latency, boolean success) {
+            if (serverReleased.compareAndSet(false, true)) {
+                server.release(bytes, latency, success);
+            }
+        }
+
+        private void releaseServer() {
+            if (serverReleased.compareAndSet(false, true)) {
+                server.release();
+            }
         }
 
         public void pause() {
@@ -631,21 +655,30 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                 buffer.append(TransferSyntax.EXPLICIT_VR_LE.getTransferSyntaxUID());
             }
 
-            final WadoParameters wado = (WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters);
             return NetworkUtil.getUrlInputStream(initConnection(new URL(buffer.toString()), wado));
         }
 
         @Override
         public Boolean call() throws Exception {
+            boolean success = false;
+            long bytes = 0;
             try {
-                process();
+                File file = process();
+                success = true;
+                bytes = file == null ? 0 : file.length();
             } catch (StreamIOException es) {
                 hasError = true; // network issue (allow to retry)
                 error();
                 LOGGER.error("Downloading", es); //$NON-NLS-1$
+                if (es instanceof HttpResponseException && ((HttpResponseException) es).isClientError()) {
+                    // Rejected request (e.g. unknown instance), not an overload of the server
+                    releaseServer();
+                }
             } catch (IOException | URISyntaxException e) {
                 error();
                 LOGGER.error("Downloading", e); //$NON-NLS-1$
+            } finally {
+                releaseServer(bytes, latency, success);
             }
             return Boolean.TRUE;
         }
@@ -662,37 +695,38 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         /**
          * Download file.
          *
-         * @return
+         * @return the downloaded file or null
          * @throws IOException
          * @throws URISyntaxException
          */
-        private boolean process() throws IOException, URISyntaxException {
+        private File process() throws IOException, URISyntaxException {
             boolean cache = true;
             File tempFile = null;
-            DicomMediaIO dicomReader = null;
-
-            try (InputStream stream = NetworkUtil.getUrlInputStream(urlConnection)) {
 
-                if (!writeInCache && getUrl().startsWith("file:")) { //$NON-NLS-1$
-                    cache = false;
-                }
-                if (cache) {
-                    tempFile = File.createTempFile("image_", ".dcm", getDicomTmpDir()); //$NON-NLS-1$ //$NON-NLS-2$
-                }
+            if (!writeInCache && getUrl().startsWith("file:")) { //$NON-NLS-1$
+                cache = false;
+            }
+            progressBar.setIndeterminate(progressBar.getMaximum() < 3);
+            if (cache && resumable && dicomSeries != null) {
+                return processResumable();
+            }
 
-                // Cannot resume with WADO because the stream is modified on the fly by the wado server. In dcm4chee,
-                // see
-                // http://www.dcm4che.org/jira/browse/DCMEE-421
-                progressBar.setIndeterminate(progressBar.getMaximum() < 3);
+            long start = System.nanoTime();
+            URLConnection urlConnection = initConnection(url, wado);
+            try (InputStream stream = NetworkUtil.getUrlInputStream(urlConnection)) {
+                latency = System.nanoTime() - start;
 
                 if (dicomSeries != null) {
                     if (cache) {
+                        // Cannot resume when the stream is modified on the fly by the wado server (transcoding). In
+                        // dcm4chee, see http://www.dcm4che.org/jira/browse/DCMEE-421
+                        tempFile = File.createTempFile("image_", ".dcm", getDicomTmpDir()); //$NON-NLS-1$ //$NON-NLS-2$
                         LOGGER.debug("Start to download DICOM instance {} to {}.", getUrl(), tempFile.getName()); //$NON-NLS-1$
                         int bytesTransferred = downloadInFileCache(stream, tempFile);
                         if (bytesTransferred == -1) {
                             LOGGER.info("End of downloading {} ", getUrl()); //$NON-NLS-1$
                         } else if (bytesTransferred >= 0) {
-                            return false;
+                            return null;
                         }
 
                         File renameFile = new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName());
@@ -702,34 +736,69 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                     } else {
                         tempFile = new File(urlConnection.getURL().toURI());
                     }
-                    // Ensure the stream is closed if image is not written in cache
-                    FileUtil.safeClose(stream);
-
-                    dicomReader = new DicomMediaIO(tempFile);
-                    if (dicomReader.isReadableDicom() && dicomSeries.size(null) == 0) {
-                        // Override the group (patient, study and series) by the dicom fields except the UID of the
-                        // group
-                        MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
-                        dicomReader.writeMetaData(patient);
-                        MediaSeriesGroup study = dicomModel.getParent(dicomSeries, DicomModel.study);
-                        dicomReader.writeMetaData(study);
-                        dicomReader.writeMetaData(dicomSeries);
-                        GuiExecutor.instance().invokeAndWait(() -> {
-                            Thumbnail thumb = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
-                            if (thumb != null) {
-                                thumb.repaint();
-                            }
-                            dicomModel.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.UDPATE_PARENT,
-                                dicomModel, null, dicomSeries));
-                        });
-                    }
+                }
+            }
+            return complete(tempFile, cache);
+        }
+
+        /**
+         * Download the original file with range requests: the partial file is kept when the download is paused or
+         * fails, and the next download continues from its end.
+         *
+         * @return the downloaded file or null
+         * @throws IOException
+         */
+        private File processResumable() throws IOException {
+            ResumableDownload download = new ResumableDownload(url, wado, getDicomTmpDir());
+            LOGGER.debug("Start to download DICOM instance {} to {}.", getUrl(), download.getFile().getName()); //$NON-NLS-1$
+            int bytesTransferred = download.download(dicomSeries);
+            latency = download.getLatency();
+            if (bytesTransferred >= 0) {
+                return null;
+            }
+            LOGGER.info("End of downloading {} ", getUrl()); //$NON-NLS-1$
+
+            // The name of the partial file is the same for each download of the URL
+            File tempFile = File.createTempFile("image_", ".dcm", getDicomTmpDir()); //$NON-NLS-1$ //$NON-NLS-2$
+            FileUtil.delete(tempFile);
+            if (!download.getFile().renameTo(tempFile)) {
+                download.delete();
+                throw new IOException("Cannot rename " + download.getFile()); //$NON-NLS-1$
+            }
+            File renameFile = new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName());
+            if (tempFile.renameTo(renameFile)) {
+                tempFile = renameFile;
+            }
+            return complete(tempFile, true);
+        }
+
+        private File complete(File tempFile, boolean cache) {
+            DicomMediaIO dicomReader = null;
+            if (tempFile != null && dicomSeries != null) {
+                dicomReader = new DicomMediaIO(tempFile);
+                if (dicomReader.isReadableDicom() && dicomSeries.size(null) == 0) {
+                    // Override the group (patient, study and series) by the dicom fields except the UID of the
+                    // group
+                    MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
+                    dicomReader.writeMetaData(patient);
+                    MediaSeriesGroup study = dicomModel.getParent(dicomSeries, DicomModel.study);
+                    dicomReader.writeMetaData(study);
+                    dicomReader.writeMetaData(dicomSeries);
+                    GuiExecutor.instance().invokeAndWait(() -> {
+                        Thumbnail thumb = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
+                        if (thumb != null) {
+                            thumb.repaint();
+                        }
+                        dicomModel.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.UDPATE_PARENT,
+                            dicomModel, null, dicomSeries));
+                    });
                 }
             }
 
             // Change status to complete if this point was reached because downloading has finished.
             if (status == Status.DOWNLOADING) {
                 status = Status.COMPLETE;
-                if (tempFile != null && dicomSeries != null && dicomReader.isReadableDicom()) {
+                if (dicomReader != null && dicomReader.isReadableDicom()) {
                     if (cache) {
                         dicomReader.getFileCache().setOriginalTempFile(tempFile);
                     }
@@ -741,11 +810,10 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
             }
             // Increment progress bar in EDT and repaint when downloaded
             incrementProgressBarValue();
-            return true;
+            return cache ? tempFile : null;
         }
 
         private int downloadInFileCache(InputStream stream, File tempFile) throws IOException {
-            final WadoParameters wado = (WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters);
             int[] overrideList = Optional.ofNullable(wado).map(WadoParameters::getOverrideDicomTagIDList).orElse(null);
 
             int bytesTransferred;
@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.wado;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.media.data.Series;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.HttpResponseException;
+import org.weasis.core.api.util.NetworkUtil;
+import org.weasis.core.api.util.StreamIOException;
+import org.weasis.core.api.util.StringUtil;
+import org.weasis.dicom.mf.WadoParameters;
+
+/**
+ * Download of a file which is not modified on the fly by the server (direct download or WADO without transcoding),
+ * resumed with an HTTP range request after an interruption.
+ * <p>
+ * The partial file is named by the URL in the download directory, so a series paused and resumed later continues
+ * from the bytes already received. The validator of the server (strong ETag or Last-Modified) and the total length
+ * are kept in a side file: the range request is conditional (If-Range) and the server sends the whole file when it
+ * has changed. The length of the completed file is checked against the total length. A failed transfer is retried
+ * with an exponential backoff, except when the request is rejected by the server (4xx).
+ * <p>
+ * The partial file is deleted and the download restarts from the beginning when it cannot be resumed: range not
+ * satisfiable (416), partial file longer than the total length or completed file with a different length.
+ */
+public class ResumableDownload {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResumableDownload.class);
+
+    private static final int MAX_RETRIES = 4;
+    private static final long INITIAL_BACKOFF = 1000L;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final String VALIDATOR = "validator"; //$NON-NLS-1$
+    private static final String LENGTH = "length"; //$NON-NLS-1$
+
+    private final URL url;
+    private final WadoParameters wado;
+    private final File partFile;
+    private final File infoFile;
+    private long latency = 0;
+
+    public ResumableDownload(URL url, WadoParameters wado, File directory) {
+        this.url = url;
+        this.wado = wado;
+        String name = "part_" + getHash(url.toExternalForm()); //$NON-NLS-1$
+        this.partFile = new File(directory, name + ".dcm"); //$NON-NLS-1$
+        this.infoFile = new File(directory, name + ".info"); //$NON-NLS-1$
+    }
+
+    private static String getHash(String val) {
+        try {
+            return StringUtil.bytesToMD5(val.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.warn("Cannot hash the URL", e); //$NON-NLS-1$
+            return Integer.toHexString(val.hashCode());
+        }
+    }
+
+    /**
+     * @return true if the URL can be resumed (HTTP only)
+     */
+    public static boolean isResumable(URL url) {
+        String protocol = url.getProtocol();
+        return "http".equalsIgnoreCase(protocol) || "https".equalsIgnoreCase(protocol); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    public File getFile() {
+        return partFile;
+    }
+
+    /**
+     * @return the time in nanoseconds before receiving the response of the last request
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Downloads the file or the remaining part of the file.
+     *
+     * @param series
+     *            the series for the progression and the interruption of the download
+     * @return -1 when the file is complete, otherwise the bytes transferred before the interruption by the series
+     *         loader (the partial file is kept)
+     * @throws StreamIOException
+     *             when the download still fails after the retries
+     */
+    public int download(Series<?> series) throws StreamIOException {
+        return download(in -> new DicomSeriesProgressMonitor(series, in, false), () -> isInterrupted(series));
+    }
+
+    /**
+     * @param monitor
+     *            wraps the stream of the response for the progression and the interruption of the download
+     * @param interrupted
+     *            true when the download must not be retried
+     * @see #download(Series)
+     */
+    int download(UnaryOperator<InputStream> monitor, BooleanSupplier interrupted) throws StreamIOException {
+        long backoff = INITIAL_BACKOFF;
+        for (int retry = 0;; retry++) {
+            try {
+                return transfer(monitor);
+            } catch (StreamIOException e) {
+                if (retry >= MAX_RETRIES || interrupted.getAsBoolean()
+                    || (e instanceof HttpResponseException && ((HttpResponseException) e).isClientError())) {
+                    throw e;
+                }
+                LOGGER.warn("Download of {} failed ({}), retry in {} ms from byte {}", url, e.getMessage(), backoff, //$NON-NLS-1$
+                    partFile.length());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e1) {
+                    Thread.currentThread().interrupt();
+                    return 0;
+                }
+                backoff *= 2;
+            }
+        }
+    }
+
+    private static boolean isInterrupted(Series<?> series) {
+        return series.getSeriesLoader() == null || series.getSeriesLoader().isStopped();
+    }
+
+    private int transfer(UnaryOperator<InputStream> monitor) throws StreamIOException {
+        Properties info = readInfo();
+        String validator = info.getProperty(VALIDATOR);
+        long offset = getResumeOffset(partFile.length(), validator, getLength(info));
+
+        long start = System.nanoTime();
+        URLConnection urlConnection;
+        try {
+            urlConnection = openConnection();
+        } catch (IOException e) {
+            throw new StreamIOException(e);
+        }
+        if (offset > 0) {
+            urlConnection.setRequestProperty("Range", "bytes=" + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            // The whole file is sent when it has changed
+            urlConnection.setRequestProperty("If-Range", validator); //$NON-NLS-1$
+        }
+        InputStream stream;
+        try {
+            stream = NetworkUtil.getUrlInputStream(urlConnection);
+        } catch (HttpResponseException e) {
+            if (offset > 0 && e.getResponseCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+                LOGGER.info("Cannot resume downloading {} from byte {}, restart from the beginning", url, offset); //$NON-NLS-1$
+                delete();
+                return transfer(monitor);
+            }
+            throw e;
+        }
+        latency = System.nanoTime() - start;
+
+        long total;
+        if (getResponseCode(urlConnection) == HttpURLConnection.HTTP_PARTIAL) {
+            String range = urlConnection.getHeaderField("Content-Range"); //$NON-NLS-1$
+            if (offset <= 0 || getRangeStart(range) != offset) {
+                FileUtil.safeClose(stream);
+                delete();
+                throw new StreamIOException("Unexpected range of " + url + ": " + range); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            total = getRangeTotal(range);
+            LOGGER.info("Resume downloading {} from byte {}", url, offset); //$NON-NLS-1$
+        } else {
+            offset = 0;
+            total = urlConnection.getContentLengthLong();
+            validator = getValidator(urlConnection);
+            writeInfo(validator, total);
+        }
+
+        try (InputStream in = monitor.apply(stream); OutputStream out = new FileOutputStream(partFile, offset > 0)) {
+            byte[] buf = new byte[FileUtil.FILE_BUFFER];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        } catch (SocketTimeoutException e) {
+            throw new StreamIOException(e);
+        } catch (InterruptedIOException e) {
+            // Paused or cancelled: keep the partial file for resuming
+            return e.bytesTransferred;
+        } catch (IOException e) {
+            throw new StreamIOException(e);
+        }
+
+        long length = partFile.length();
+        if (total >= 0 && length != total) {
+            // The next attempt restarts from the beginning
+            delete();
+            throw new StreamIOException("Incomplete file: " + length + " of " + total + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        FileUtil.delete(infoFile);
+        return -1;
+    }
+
+    /**
+     * @param partLength
+     *            the length of the partial file
+     * @param validator
+     *            the validator of the server when the partial file has been downloaded
+     * @param total
+     *            the total length of the file, or -1 when unknown
+     * @return the byte from which the download can be resumed, 0 when it must restart from the beginning
+     */
+    static long getResumeOffset(long partLength, String validator, long total) {
+        if (validator == null || partLength <= 0 || (total >= 0 && partLength >= total)) {
+            return 0;
+        }
+        return partLength;
+    }
+
+    protected URLConnection openConnection() throws IOException {
+        return LoadSeries.initConnection(url, wado);
+    }
+
+    /**
+     * Deletes the partial file and its information.
+     */
+    public void delete() {
+        FileUtil.delete(partFile);
+        FileUtil.delete(infoFile);
+    }
+
+    private Properties readInfo() {
+        Properties info = new Properties();
+        if (infoFile.canRead() && partFile.canRead()) {
+            try (InputStream in = new FileInputStream(infoFile)) {
+                info.load(in);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read {}", infoFile, e); //$NON-NLS-1$
+            }
+        }
+        return info;
+    }
+
+    private void writeInfo(String validator, long total) {
+        if (validator == null) {
+            // Cannot resume without validator
+            FileUtil.delete(infoFile);
+            return;
+        }
+        Properties info = new Properties();
+        info.setProperty(VALIDATOR, validator);
+        info.setProperty(LENGTH, Long.toString(total));
+        try (OutputStream out = new FileOutputStream(infoFile)) {
+            info.store(out, null);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write {}", infoFile, e); //$NON-NLS-1$
+        }
+    }
+
+    private static String getValidator(URLConnection urlConnection) {
+        String etag = urlConnection.getHeaderField("ETag"); //$NON-NLS-1$
+        // A weak ETag cannot be used in If-Range
+        if (StringUtil.hasText(etag) && !etag.startsWith("W/")) { //$NON-NLS-1$
+            return etag;
+        }
+        String lastModified = urlConnection.getHeaderField("Last-Modified"); //$NON-NLS-1$
+        return StringUtil.hasText(lastModified) ? lastModified : null;
+    }
+
+    private static int getResponseCode(URLConnection urlConnection) {
+        try {
+            return urlConnection instanceof HttpURLConnection ? ((HttpURLConnection) urlConnection).getResponseCode()
+                : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long getLength(Properties info) {
+        String length = info.getProperty(LENGTH);
+        if (length != null) {
+            try {
+                return Long.parseLong(length);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid length: {}", length); //$NON-NLS-1$
+            }
+        }
+        return -1L;
+    }
+
+    // Content-Range: bytes <start>-<end>/<total>
+    static long getRangeStart(String range) {
+        if (range != null && range.startsWith("bytes ")) { //$NON-NLS-1$
+            int dash = range.indexOf('-');
+            if (dash > 6) {
+                try {
+                    return Long.parseLong(range.substring(6, dash).trim());
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Invalid Content-Range: {}", range); //$NON-NLS-1$
+                }
+            }
+        }
+        return -1L;
+    }
+
+    static long getRangeTotal(String range) {
+        int slash = range == null ? -1 : range.indexOf('/');
+        if (slash > 0 && !range.endsWith("*")) { //$NON-NLS-1$
+            try {
+                return Long.parseLong(range.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid Content-Range: {}", range); //$NON-NLS-1$
+            }
+        }
+        return -1L;
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.wado;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of simultaneous downloads from a server, shared by all the series downloaded from this server.
+ * <p>
+ * The limit is adapted from the downloads completed in a window of requests: it is increased while adding a
+ * connection increases the throughput (e.g. a link with a high latency), and decreased when the latency grows without
+ * any gain of throughput (the server is saturated) or when a download fails.
+ */
+public class ServerConcurrency {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerConcurrency.class);
+
+    private static final Map<String, ServerConcurrency> SERVERS = new ConcurrentHashMap<>();
+
+    private static final int MIN_WINDOW = 4;
+    // Gain of throughput required for adding a connection
+    private static final double THROUGHPUT_GAIN = 1.1;
+    // Increase of latency considered as an overload of the server
+    private static final double LATENCY_INCREASE = 1.5;
+
+    private final String server;
+    private final int maxLimit;
+    private int limit;
+    private int inFlight = 0;
+
+    // Measures of the current window
+    private long windowStart = 0;
+    private long windowBytes = 0;
+    private long windowLatency = 0;
+    private int windowCount = 0;
+    // Measures of the previous window
+    private double lastThroughput = 0.0;
+    private double lastLatency = 0.0;
+
+    ServerConcurrency(String server, int initialLimit, int maxLimit) {
+        this.server = server;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+    }
+
+    /**
+     * @param url
+     *            the URL of the request
+     * @param initialLimit
+     *            the number of simultaneous downloads when the server is not yet known
+     * @return the limiter of the server (protocol, host and port) of the URL
+     */
+    public static ServerConcurrency getInstance(URL url, int initialLimit) {
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort(); //$NON-NLS-1$ //$NON-NLS-2$
+        return SERVERS.computeIfAbsent(key,
+            k -> new ServerConcurrency(k, initialLimit, DownloadManager.getConcurrentImages()));
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Waits until a download can be started.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        inFlight++;
+        if (windowStart == 0) {
+            windowStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Ends a download started with {@link #acquire()} without measure, when it has been cancelled or rejected by the
+     * server (e.g. 404): the limit is not changed.
+     */
+    public synchronized void release() {
+        inFlight = Math.max(0, inFlight - 1);
+        if (inFlight == 0 && windowCount == 0) {
+            windowStart = 0;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Ends a download started with {@link #acquire()}.
+     *
+     * @param bytes
+     *            the number of bytes downloaded
+     * @param latency
+     *            the time in nanoseconds before receiving the response
+     * @param success
+     *            false when the download has failed because of the network or the server (not for a request rejected
+     *            by the server, see {@link #release()})
+     */
+    public void release(long bytes, long latency, boolean success) {
+        release(bytes, latency, success, System.nanoTime());
+    }
+
+    synchronized void release(long bytes, long latency, boolean success, long now) {
+        inFlight = Math.max(0, inFlight - 1);
+        if (!success) {
+            setLimit(limit / 2);
+            resetWindow(now);
+        } else {
+            windowBytes += bytes;
+            windowLatency += latency;
+            windowCount++;
+            long duration = now - windowStart;
+            if (windowCount >= Math.max(MIN_WINDOW, limit) && duration > 0) {
+                adapt(windowBytes * 1.0E9 / duration, (double) windowLatency / windowCount);
+                resetWindow(now);
+            }
+        }
+        notifyAll();
+    }
+
+    private void adapt(double throughput, double latency) {
+        if (lastThroughput <= 0.0) {
+            // First window: probe one more connection
+            setLimit(limit + 1);
+        } else if (throughput > lastThroughput * THROUGHPUT_GAIN && latency < lastLatency * LATENCY_INCREASE) {
+            setLimit(limit + 1);
+        } else if (latency > lastLatency * LATENCY_INCREASE && throughput < lastThroughput * THROUGHPUT_GAIN) {
+            setLimit(limit - Math.max(1, limit / 4));
+        }
+        lastThroughput = throughput;
+        lastLatency = latency;
+    }
+
+    private void setLimit(int value) {
+        int val = Math.max(1, Math.min(value, maxLimit));
+        if (val != limit) {
+            LOGGER.debug("Simultaneous downloads from {}: {}", server, val); //$NON-NLS-1$
+            limit = val;
+        }
+    }
+
+    private void resetWindow(long now) {
+        windowStart = inFlight > 0 ? now : 0;
+        windowBytes = 0;
+        windowLatency = 0;
+        windowCount = 0;
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dcm4che3.data.Tag;
+import org.junit.Test;
+import org.weasis.core.api.media.data.MediaElement;
+import org.weasis.core.api.media.data.MediaReader;
+import org.weasis.dicom.codec.TagD;
+
+public class SopInstanceIndexTest {
+    private static final String STUDY = "1.2.3"; //$NON-NLS-1$
+    private static final String SERIES = "1.2.3.4"; //$NON-NLS-1$
+
+    private static MediaElement media(String sopUID, Object key) {
+        // The tags are set on the media, the reader is never used
+        MediaReader reader = (MediaReader) Proxy.newProxyInstance(SopInstanceIndexTest.class.getClassLoader(),
+            new Class<?>[] { MediaReader.class }, (proxy, method, args) -> null);
+        MediaElement media = new MediaElement(reader, key);
+        media.setTag(TagD.get(Tag.StudyInstanceUID), STUDY);
+        media.setTag(TagD.get(Tag.SeriesInstanceUID), SERIES);
+        media.setTag(TagD.get(Tag.SOPInstanceUID), sopUID);
+        return media;
+    }
+
+    @Test
+    public void testSplitSeries() {
+        SopInstanceIndex index = new SopInstanceIndex();
+        // Two split series of the same Series Instance UID
+        List<MediaElement> split1 = Arrays.asList(media("1.1", null), media("1.2", null)); //$NON-NLS-1$ //$NON-NLS-2$
+        List<MediaElement> split2 = Arrays.asList(media("1.3", null), media("1.4", null)); //$NON-NLS-1$ //$NON-NLS-2$
+        split1.forEach(index::add);
+        split2.forEach(index::add);
+        assertTrue(index.contains(STUDY, "1.1")); //$NON-NLS-1$
+        assertTrue(index.contains(STUDY, "1.4")); //$NON-NLS-1$
+        assertFalse(index.contains("1.2.4", "1.1")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertFalse(index.contains(STUDY, null));
+
+        // Removing a split series keeps the instances of the other one
+        split2.forEach(index::remove);
+        assertTrue(index.contains(STUDY, "1.1")); //$NON-NLS-1$
+        assertSame(split1.get(1), index.get(STUDY, "1.2", 0)); //$NON-NLS-1$
+        assertFalse(index.contains(STUDY, "1.3")); //$NON-NLS-1$
+        assertFalse(index.contains(STUDY, "1.4")); //$NON-NLS-1$
+
+        index.clear();
+        assertFalse(index.contains(STUDY, "1.1")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testFrames() {
+        SopInstanceIndex index = new SopInstanceIndex();
+        MediaElement frame0 = media("2.1", 0); //$NON-NLS-1$
+        MediaElement frame1 = media("2.1", 1); //$NON-NLS-1$
+        MediaElement frame2 = media("2.1", 2); //$NON-NLS-1$
+        index.add(frame0);
+        index.add(frame1);
+        index.add(frame2);
+        assertSame(frame1, index.get(STUDY, "2.1", 1)); //$NON-NLS-1$
+        assertNull(index.get(STUDY, "2.1", 3)); //$NON-NLS-1$
+
+        index.remove(frame1);
+        assertNull(index.get(STUDY, "2.1", 1)); //$NON-NLS-1$
+        assertSame(frame0, index.get(STUDY, "2.1", 0)); //$NON-NLS-1$
+        assertSame(frame2, index.get(STUDY, "2.1", 2)); //$NON-NLS-1$
+
+        // The instance is removed with its last frame
+        index.remove(frame0);
+        assertTrue(index.contains(STUDY, "2.1")); //$NON-NLS-1$
+        index.remove(frame2);
+        assertFalse(index.contains(STUDY, "2.1")); //$NON-NLS-1$
+
+        // A key which is not a frame number is the frame 0
+        MediaElement single = media("2.2", "key"); //$NON-NLS-1$ //$NON-NLS-2$
+        index.add(single);
+        assertSame(single, index.get(STUDY, "2.2", 0)); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testRemoveReindexedFrame() {
+        SopInstanceIndex index = new SopInstanceIndex();
+        MediaElement old = media("3.1", 1); //$NON-NLS-1$
+        MediaElement reloaded = media("3.1", 1); //$NON-NLS-1$
+        index.add(old);
+        index.add(reloaded);
+        assertSame(reloaded, index.get(STUDY, "3.1", 1)); //$NON-NLS-1$
+
+        // The previous media no longer owns the frame
+        index.remove(old);
+        assertSame(reloaded, index.get(STUDY, "3.1", 1)); //$NON-NLS-1$
+        assertTrue(index.contains(STUDY, "3.1")); //$NON-NLS-1$
+
+        index.remove(reloaded);
+        assertFalse(index.contains(STUDY, "3.1")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testReindexAfterMerge() {
+        SopInstanceIndex index = new SopInstanceIndex();
+        List<MediaElement> base = Arrays.asList(media("4.1", null), media("4.2", null)); //$NON-NLS-1$ //$NON-NLS-2$
+        List<MediaElement> other = Arrays.asList(media("4.3", null), media("4.4", null)); //$NON-NLS-1$ //$NON-NLS-2$
+        base.forEach(index::add);
+        other.forEach(index::add);
+
+        // Same steps as DicomModel.mergeSeries(): the merged series is removed from the model without disposing its
+        // media, which are then indexed again with the media of the base series
+        other.forEach(index::remove);
+        assertFalse(index.contains(STUDY, "4.3")); //$NON-NLS-1$
+        base.forEach(index::add);
+        other.forEach(index::add);
+
+        for (MediaElement media : base) {
+            assertSame(media, index.get(STUDY, TagD.getTagValue(media, Tag.SOPInstanceUID, String.class), 0));
+        }
+        for (MediaElement media : other) {
+            assertSame(media, index.get(STUDY, TagD.getTagValue(media, Tag.SOPInstanceUID, String.class), 0));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.wado;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.core.api.util.HttpResponseException;
+import org.weasis.core.api.util.StreamIOException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ResumableDownloadTest {
+    private static final String ETAG = "\"v1\""; //$NON-NLS-1$
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] data = new byte[10_000];
+    // Range header of each request, null when absent
+    private final List<String> ranges = new ArrayList<>();
+    private HttpServer server;
+    private URL url;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0); //$NON-NLS-1$
+        server.createContext("/file", this::handle); //$NON-NLS-1$
+        server.createContext("/missing", e -> { //$NON-NLS-1$
+            e.sendResponseHeaders(404, -1);
+            e.close();
+        });
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/file"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    // Supports a single range "bytes=<start>-" with a strong ETag in If-Range
+    private void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range"); //$NON-NLS-1$
+        ranges.add(range);
+        exchange.getResponseHeaders().set("ETag", ETAG); //$NON-NLS-1$
+        int start = 0;
+        if (range != null && ETAG.equals(exchange.getRequestHeaders().getFirst("If-Range"))) { //$NON-NLS-1$
+            start = Integer.parseInt(range.substring(6, range.indexOf('-')));
+            if (start >= data.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + data.length); //$NON-NLS-1$ //$NON-NLS-2$
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range", //$NON-NLS-1$
+                "bytes " + start + "-" + (data.length - 1) + "/" + data.length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            exchange.sendResponseHeaders(206, data.length - start);
+        } else {
+            exchange.sendResponseHeaders(200, data.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data, start, data.length - start);
+        }
+    }
+
+    private ResumableDownload newDownload(URL u) {
+        return new ResumableDownload(u, null, folder.getRoot()) {
+            @Override
+            protected URLConnection openConnection() throws IOException {
+                return u.openConnection();
+            }
+        };
+    }
+
+    private static int download(ResumableDownload download) throws StreamIOException {
+        return download.download(in -> in, () -> false);
+    }
+
+    private static void writePart(ResumableDownload download, byte[] bytes, String validator, long length)
+        throws IOException {
+        try (OutputStream out = new FileOutputStream(download.getFile())) {
+            out.write(bytes);
+        }
+        Properties info = new Properties();
+        info.setProperty("validator", validator); //$NON-NLS-1$
+        info.setProperty("length", Long.toString(length)); //$NON-NLS-1$
+        String name = download.getFile().getName();
+        File infoFile = new File(download.getFile().getParentFile(), name.replace(".dcm", ".info")); //$NON-NLS-1$ //$NON-NLS-2$
+        try (OutputStream out = new FileOutputStream(infoFile)) {
+            info.store(out, null);
+        }
+    }
+
+    private void assertComplete(ResumableDownload download) throws IOException {
+        assertArrayEquals(data, Files.readAllBytes(download.getFile().toPath()));
+        File[] files = folder.getRoot().listFiles();
+        // Only the partial file remains, its information is deleted
+        assertEquals(1, files == null ? 0 : files.length);
+    }
+
+    @Test
+    public void testDownload() throws IOException {
+        ResumableDownload download = newDownload(url);
+        assertEquals(-1, download(download));
+        assertComplete(download);
+        assertEquals(Arrays.asList((String) null), ranges);
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        ResumableDownload download = newDownload(url);
+        writePart(download, Arrays.copyOf(data, 4000), ETAG, data.length);
+        assertEquals(-1, download(download));
+        assertComplete(download);
+        assertEquals(Arrays.asList("bytes=4000-"), ranges); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testChangedFile() throws IOException {
+        ResumableDownload download = newDownload(url);
+        // The file has changed on the server: the whole file is sent
+        writePart(download, new byte[4000], "\"v0\"", data.length); //$NON-NLS-1$
+        assertEquals(-1, download(download));
+        assertComplete(download);
+        assertEquals(Arrays.asList("bytes=4000-"), ranges); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testPartFileTooLong() throws IOException {
+        ResumableDownload download = newDownload(url);
+        // Longer than the known length: restart without range request
+        writePart(download, new byte[data.length + 10], ETAG, data.length);
+        assertEquals(-1, download(download));
+        assertComplete(download);
+        assertEquals(Arrays.asList((String) null), ranges);
+    }
+
+    @Test
+    public void testRangeNotSatisfiable() throws IOException {
+        ResumableDownload download = newDownload(url);
+        // Unknown length: the server answers 416 and the download restarts from the beginning
+        writePart(download, new byte[data.length + 10], ETAG, -1);
+        assertEquals(-1, download(download));
+        assertComplete(download);
+        assertEquals(Arrays.asList("bytes=" + (data.length + 10) + "-", null), ranges); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @Test
+    public void testClientErrorNotRetried() throws IOException {
+        ResumableDownload download =
+            newDownload(new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/missing")); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            download(download);
+            fail("The download must fail"); //$NON-NLS-1$
+        } catch (HttpResponseException e) {
+            assertEquals(404, e.getResponseCode());
+        }
+        assertFalse(download.getFile().exists());
+    }
+
+    @Test
+    public void testResumeOffset() {
+        assertEquals(0, ResumableDownload.getResumeOffset(4000, null, 10_000));
+        assertEquals(0, ResumableDownload.getResumeOffset(0, ETAG, 10_000));
+        assertEquals(4000, ResumableDownload.getResumeOffset(4000, ETAG, 10_000));
+        assertEquals(4000, ResumableDownload.getResumeOffset(4000, ETAG, -1));
+        assertEquals(0, ResumableDownload.getResumeOffset(10_000, ETAG, 10_000));
+        assertEquals(0, ResumableDownload.getResumeOffset(10_010, ETAG, 10_000));
+    }
+
+    @Test
+    public void testContentRange() {
+        assertEquals(4000, ResumableDownload.getRangeStart("bytes 4000-9999/10000")); //$NON-NLS-1$
+        assertEquals(10_000, ResumableDownload.getRangeTotal("bytes 4000-9999/10000")); //$NON-NLS-1$
+        assertEquals(-1, ResumableDownload.getRangeTotal("bytes 4000-9999/*")); //$NON-NLS-1$
+        assertEquals(-1, ResumableDownload.getRangeStart(null));
+        assertEquals(-1, ResumableDownload.getRangeTotal(null));
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.wado;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ServerConcurrencyTest {
+    // Long windows, so the time spent by the test itself is negligible
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static void runWindow(ServerConcurrency server, long bytes, long latency, long now)
+        throws InterruptedException {
+        int n = server.getLimit();
+        for (int i = 0; i < n; i++) {
+            server.acquire();
+        }
+        for (int i = 0; i < n; i++) {
+            server.release(bytes / n, latency, true, now);
+        }
+        assertEquals(0, server.getInFlight());
+    }
+
+    @Test
+    public void testAdditiveIncrease() throws InterruptedException {
+        ServerConcurrency server = new ServerConcurrency("test", 4, 16); //$NON-NLS-1$
+        long now = System.nanoTime() + WINDOW;
+
+        // First window: probe one more connection
+        runWindow(server, 40_000, LATENCY, now);
+        assertEquals(5, server.getLimit());
+
+        // More throughput with the same latency
+        runWindow(server, 100_000, LATENCY, now);
+        assertEquals(6, server.getLimit());
+
+        // Higher latency without gain of throughput: the server is saturated
+        runWindow(server, 100_000, 3 * LATENCY, now);
+        assertEquals(5, server.getLimit());
+
+        // Stable throughput and latency
+        runWindow(server, 100_000, 3 * LATENCY, now);
+        assertEquals(5, server.getLimit());
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() throws InterruptedException {
+        ServerConcurrency server = new ServerConcurrency("test", 8, 16); //$NON-NLS-1$
+        long now = System.nanoTime();
+
+        server.acquire();
+        server.acquire();
+        server.release(0, 0, false, now);
+        assertEquals(4, server.getLimit());
+        assertEquals(1, server.getInFlight());
+        server.release(0, 0, false, now);
+        assertEquals(2, server.getLimit());
+
+        for (int i = 0; i < 3; i++) {
+            server.acquire();
+            server.release(0, 0, false, now);
+        }
+        assertEquals(1, server.getLimit());
+        assertEquals(0, server.getInFlight());
+    }
+
+    @Test
+    public void testRejectedRequest() throws InterruptedException {
+        ServerConcurrency server = new ServerConcurrency("test", 8, 16); //$NON-NLS-1$
+
+        // A request rejected by the server (e.g. 404) does not change the limit
+        for (int i = 0; i < 8; i++) {
+            server.acquire();
+        }
+        for (int i = 0; i < 8; i++) {
+            server.release();
+        }
+        assertEquals(8, server.getLimit());
+        assertEquals(0, server.getInFlight());
+    }
+
+    @Test
+    public void testLimits() throws InterruptedException {
+        ServerConcurrency server = new ServerConcurrency("test", 20, 5); //$NON-NLS-1$
+        assertEquals(5, server.getLimit());
+
+        // Cannot exceed the maximum
+        runWindow(server, 50_000, LATENCY, System.nanoTime() + WINDOW);
+        assertEquals(5, server.getLimit());
+
+        server = new ServerConcurrency("test", 0, 5); //$NON-NLS-1$
+        assertEquals(1, server.getLimit());
+    }
+}
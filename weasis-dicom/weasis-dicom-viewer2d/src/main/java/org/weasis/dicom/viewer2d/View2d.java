@@ -27,6 +27,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.beans.PropertyChangeEvent;
 import java.io.File;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
@@ -152,6 +153,12 @@ public class View2d extends DefaultView2d<DicomImageElement> {
     public static final ImageIcon KO_ICON = new ImageIcon(View2d.class.getResource("/icon/22x22/dcm-KO.png")); //$NON-NLS-1$
     public static final ImageIcon PR_ICON = new ImageIcon(View2d.class.getResource("/icon/22x22/dcm-PR.png")); //$NON-NLS-1$
 
+    /**
+     * When the image is displayed smaller than its size, apply the display operations (LUT, pseudo-color, shutter,
+     * overlay...) on the image resampled to the view instead of the full resolution image.
+     */
+    public static final String P_VIEWPORT_FIRST = "weasis.dicom.viewport.first"; //$NON-NLS-1$
+
     private final Dimension oldSize;
     private final ContextMenuHandler contextMenuHandler = new ContextMenuHandler();
 
@@ -161,6 +168,11 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         super(eventManager);
 
         SimpleOpManager manager = imageLayer.getDisplayOpManager();
+        // Optional resampling of the source to the view, see isViewportFirstRendering()
+        AffineTransformOp viewport = new AffineTransformOp();
+        viewport.setName(AffineTransformOp.VIEWPORT_OP_NAME);
+        viewport.setEnabled(false);
+        manager.addImageOperationAction(viewport);
         manager.addImageOperationAction(new WindowAndPresetsOp());
         manager.addImageOperationAction(new FilterOp());
         manager.addImageOperationAction(new PseudoColorOp());
@@ -179,6 +191,11 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         getViewButtons().add(koStarButton);
     }
 
+    @Override
+    protected boolean isViewportFirstRendering() {
+        return BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_VIEWPORT_FIRST, true);
+    }
+
     @Override
     public void registerDefaultListeners() {
         super.registerDefaultListeners();
@@ -343,17 +360,26 @@ public class View2d extends DefaultView2d<DicomImageElement> {
                                         if (v instanceof View2d
                                             && fruid.equals(TagD.getTagValue(s, Tag.FrameOfReferenceUID))) {
                                             if (v != container.getSelectedImagePane()) {
-                                                DicomImageElement imgToUpdate = v.getImage();
+                                                DicomImageElement imgToUpdate = ((View2d) v).getStackImage();
                                                 if (imgToUpdate != null) {
                                                     GeometryOfSlice geometry = imgToUpdate.getDispSliceGeometry();
                                                     if (geometry != null) {
                                                         Vector3d vn = geometry.getNormal();
                                                         // vn.absolute();
                                                         double location = p3.x * vn.x + p3.y * vn.y + p3.z * vn.z;
-                                                        DicomImageElement img = s.getNearestImage(location, 0,
+                                                        Filter<DicomImageElement> filter =
                                                             (Filter<DicomImageElement>) actionsInView
-                                                                .get(ActionW.FILTERED_SERIES.cmd()),
-                                                            v.getCurrentSortComparator());
+                                                                .get(ActionW.FILTERED_SERIES.cmd());
+                                                        DicomImageElement img;
+                                                        if (s instanceof DicomSeries) {
+                                                            // Keep the phase of a 4D series
+                                                            LocalTime time = DicomSeries.getImageTime(imgToUpdate);
+                                                            img = ((DicomSeries) s).getNearestImage(location, time,
+                                                                filter, v.getCurrentSortComparator());
+                                                        } else {
+                                                            img = s.getNearestImage(location, 0, filter,
+                                                                v.getCurrentSortComparator());
+                                                        }
                                                         if (img != null) {
                                                             ((View2d) v).setImage(img);
                                                         }
@@ -493,7 +519,7 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         imageLayer.setPreprocessing(opManager);
         if (opManager != null || spatialTransformation) {
             // Reset preprocessing cache
-            imageLayer.getDisplayOpManager().setFirstNode(imageLayer.getSourceRenderedImage());
+            imageLayer.getDisplayOpManager().setFirstNode(imageLayer.getDisplaySourceImage());
         }
 
         if (pr != null) {
@@ -647,6 +673,9 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         if (newImg) {
             updatePrButtonState(img);
             updateKOselectedState(img);
+            if (series instanceof DicomSeries) {
+                DicomSeries.updatePreloading((DicomSeries) series, img);
+            }
         }
     }
 
@@ -873,6 +902,14 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         return eventManager.getAction(actionKey.get(), MouseActionAdapter.class).orElse(null);
     }
 
+    /**
+     * Returns the image of the series giving the position of the view in the stack. It is the displayed image, except
+     * for a view displaying a plane resampled from the series.
+     */
+    public DicomImageElement getStackImage() {
+        return getImage();
+    }
+
     public void computeCrosshair(Point3d p3) {
         DicomImageElement image = this.getImage();
         if (image != null) {
@@ -11,10 +11,10 @@
 package org.weasis.dicom.viewer2d.mip;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 
 import org.dcm4che3.data.Attributes;
@@ -35,6 +35,8 @@ import org.weasis.core.api.gui.util.SliderCineListener;
 import org.weasis.core.api.image.op.MaxCollectionZprojection;
 import org.weasis.core.api.image.op.MeanCollectionZprojection;
 import org.weasis.core.api.image.op.MinCollectionZprojection;
+import org.weasis.core.api.image.op.SlidingZprojection;
+import org.weasis.core.api.image.op.SlidingZprojection.Projection;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.SeriesComparator;
@@ -64,14 +66,13 @@ public class SeriesBuilder {
         final MediaSeries<DicomImageElement> series, List<DicomImageElement> dicoms, Type mipType, Integer extend,
         boolean fullSeries) {
 
-        PlanarImage curImage;
         if (series != null) {
 
             SeriesComparator sort = (SeriesComparator) view.getActionValue(ActionW.SORTSTACK.cmd());
             Boolean reverse = (Boolean) view.getActionValue(ActionW.INVERSESTACK.cmd());
             Comparator sortFilter = (reverse != null && reverse) ? sort.getReversOrderComparator() : sort;
             Filter filter = (Filter) view.getActionValue(ActionW.FILTERED_SERIES.cmd());
-            Iterable<DicomImageElement> medias = series.copyOfMedias(filter, sortFilter);
+            List<DicomImageElement> medias = series.copyOfMedias(filter, sortFilter);
 
             int curImg = extend - 1;
             ActionState sequence = view.getEventManager().getAction(ActionW.SCROLL_SERIES);
@@ -106,138 +107,157 @@ public class SeriesBuilder {
             cpTags.setString(Tag.ImageType, VR.CS, new String[] { "DERIVED", "SECONDARY", "PROJECTION IMAGE" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
             String seriesUID = UIDUtils.createUID();
 
+            // For the full series, the window slides along the stack and each image is read only once
+            SlidingZprojection projection =
+                fullSeries ? new SlidingZprojection(medias, 2 * extend + 1, getProjection(mipType), taskMonitor) : null;
+
+            buildImages(medias, minImg, maxImg, extend, mipType, projection, taskMonitor,
+                (index, sources, image) -> addImage(index, sources, image, img, cpTags, seriesUID, dicoms, minImg,
+                    taskMonitor));
+        }
+    }
+
+    /**
+     * Computes the projection of each position of the stack from minImg to maxImg and passes it to the handler. The
+     * sliding projection is always disposed, even when the handler fails or the task is canceled.
+     */
+    static void buildImages(List<? extends ImageElement> medias, int minImg, int maxImg, int extend, Type mipType,
+        SlidingZprojection projection, TaskMonitor taskMonitor, ProjectionHandler handler) {
+        try {
             for (int index = minImg; index <= maxImg; index++) {
-                Iterator<DicomImageElement> iter = medias.iterator();
+                int startIndex = Math.max(0, index - extend);
+                int stopIndex = Math.min(index + extend, medias.size() - 1);
                 final List<ImageElement> sources = new ArrayList<>();
-                int startIndex = index - extend;
-                if (startIndex < 0) {
-                    startIndex = 0;
+                if (startIndex <= stopIndex) {
+                    sources.addAll(medias.subList(startIndex, stopIndex + 1));
                 }
-                int stopIndex = index + extend;
-                int k = 0;
-                while (iter.hasNext()) {
-                    DicomImageElement dcm = iter.next();
-                    if (k >= startIndex) {
-                        sources.add(dcm);
-                    }
 
-                    if (k >= stopIndex) {
-                        break;
-                    }
-                    k++;
-                }
-
-                if (sources.size() > 1) {
-                    if (fullSeries) {
-                        taskMonitor.setShowProgression(false);
+                PlanarImage curImage;
+                if (projection != null) {
+                    curImage = projection.next();
+                    if (sources.size() <= 1) {
+                        curImage = null;
                     }
+                } else if (sources.size() > 1) {
                     curImage = addCollectionOperation(mipType, sources, taskMonitor);
                 } else {
                     curImage = null;
                 }
 
-                if (fullSeries) {
-                    taskMonitor.setShowProgression(true);
+                if (curImage != null && !handler.apply(index, sources, curImage)) {
+                    return;
                 }
+            }
+        } finally {
+            if (projection != null) {
+                projection.dispose();
+            }
+        }
+    }
 
-                final DicomImageElement dicom;
-                if (curImage != null) {
-
-                    DicomImageElement imgRef = (DicomImageElement) sources.get(sources.size() / 2);
-                    FileRawImage raw = null;
-                    try {
-                        File mipDir =
-                            AppProperties.buildAccessibleTempDirectory(AppProperties.FILE_CACHE_DIR.getName(), "mip"); //$NON-NLS-1$
-                        raw = new FileRawImage(File.createTempFile("mip_", ".wcv", mipDir));//$NON-NLS-1$ //$NON-NLS-2$
-                        if(!raw.write(curImage)) {
-                            raw = null;
-                        }
-                    } catch (Exception e) {
-                        if (raw != null) {
-                            FileUtil.delete(raw.getFile());
-                        }
-                        if (taskMonitor.isAborting()) {
-                            throw new TaskInterruptionException("Rebuilding MIP series has been canceled!"); //$NON-NLS-1$
-                        }
-                        LOGGER.error("Writing MIP", e); //$NON-NLS-1$
-                    }
-                    if (raw == null) {
-                        return;
-                    }
-                    RawImageIO rawIO = new RawImageIO(raw, null);
-                    rawIO.setBaseAttributes(cpTags);
-
-                    // Tags with same values for all the Series
-                    rawIO.setTag(TagD.get(Tag.TransferSyntaxUID), UID.ImplicitVRLittleEndian);
-                    rawIO.setTag(TagD.get(Tag.Columns), curImage.width());
-                    rawIO.setTag(TagD.get(Tag.Rows), curImage.height());
-                    rawIO.setTag(TagD.get(Tag.BitsAllocated), imgRef.getBitsAllocated());
-                    rawIO.setTag(TagD.get(Tag.BitsStored), imgRef.getBitsStored());
-
-                    rawIO.setTag(TagD.get(Tag.SliceThickness),
-                        getThickness(sources.get(0), sources.get(sources.size() - 1)));
-                    double[] loc = (double[]) imgRef.getTagValue(TagW.SlicePosition);
-                    if (loc != null) {
-                        rawIO.setTag(TagW.SlicePosition, loc);
-                        rawIO.setTag(TagD.get(Tag.SliceLocation), loc[0] + loc[1] + loc[2]);
-                    }
+    /**
+     * Writes a projection and adds it as a new image of the MIP series.
+     *
+     * @return false when the image cannot be written
+     */
+    private static boolean addImage(int index, List<ImageElement> sources, PlanarImage image, DicomImageElement img,
+        Attributes cpTags, String seriesUID, List<DicomImageElement> dicoms, int minImg, TaskMonitor taskMonitor) {
+        DicomImageElement imgRef = (DicomImageElement) sources.get(sources.size() / 2);
+        FileRawImage raw = null;
+        try {
+            File mipDir =
+                AppProperties.buildAccessibleTempDirectory(AppProperties.FILE_CACHE_DIR.getName(), "mip"); //$NON-NLS-1$
+            raw = new FileRawImage(File.createTempFile("mip_", ".wcv", mipDir));//$NON-NLS-1$ //$NON-NLS-2$
+            if(!raw.write(image)) {
+                raw = null;
+            }
+        } catch (Exception e) {
+            if (raw != null) {
+                FileUtil.delete(raw.getFile());
+            }
+            if (taskMonitor.isAborting()) {
+                throw new TaskInterruptionException("Rebuilding MIP series has been canceled!"); //$NON-NLS-1$
+            }
+            LOGGER.error("Writing MIP", e); //$NON-NLS-1$
+        }
+        if (raw == null) {
+            return false;
+        }
+        RawImageIO rawIO = new RawImageIO(raw, null);
+        rawIO.setBaseAttributes(cpTags);
+
+        // Tags with same values for all the Series
+        rawIO.setTag(TagD.get(Tag.TransferSyntaxUID), UID.ImplicitVRLittleEndian);
+        rawIO.setTag(TagD.get(Tag.Columns), image.width());
+        rawIO.setTag(TagD.get(Tag.Rows), image.height());
+        rawIO.setTag(TagD.get(Tag.BitsAllocated), imgRef.getBitsAllocated());
+        rawIO.setTag(TagD.get(Tag.BitsStored), imgRef.getBitsStored());
+
+        rawIO.setTag(TagD.get(Tag.SliceThickness), getThickness(sources.get(0), sources.get(sources.size() - 1)));
+        double[] loc = (double[]) imgRef.getTagValue(TagW.SlicePosition);
+        if (loc != null) {
+            rawIO.setTag(TagW.SlicePosition, loc);
+            rawIO.setTag(TagD.get(Tag.SliceLocation), loc[0] + loc[1] + loc[2]);
+        }
 
-                    rawIO.setTag(TagD.get(Tag.SeriesInstanceUID), seriesUID);
-
-                    // Mandatory tags
-                    TagW[] mtagList =
-                        TagD.getTagFromIDs(Tag.PatientID, Tag.PatientName, Tag.PatientBirthDate, Tag.StudyInstanceUID,
-                            Tag.StudyID, Tag.SOPClassUID, Tag.StudyDate, Tag.StudyTime, Tag.AccessionNumber);
-                    rawIO.copyTags(mtagList, img, true);
-                    rawIO.setTag(TagW.PatientPseudoUID, img.getTagValue(TagW.PatientPseudoUID));
-
-                    TagW[] tagList = TagD.getTagFromIDs(Tag.PhotometricInterpretation, Tag.PixelRepresentation,
-                        Tag.Units, Tag.SamplesPerPixel, Tag.Modality);
-                    rawIO.copyTags(tagList, img, true);
-                    rawIO.setTag(TagW.MonoChrome, img.getTagValue(TagW.MonoChrome));
-
-                    TagW[] tagList2 = { TagW.ModalityLUTData, TagW.ModalityLUTType, TagW.ModalityLUTExplanation,
-                        TagW.VOILUTsData, TagW.VOILUTsExplanation };
-                    rawIO.copyTags(tagList2, img, false);
-
-                    tagList2 = TagD.getTagFromIDs(Tag.ImageOrientationPatient, Tag.ImagePositionPatient,
-                        Tag.RescaleSlope, Tag.RescaleIntercept, Tag.RescaleType, Tag.PixelPaddingValue,
-                        Tag.PixelPaddingRangeLimit, Tag.WindowWidth, Tag.WindowCenter, Tag.WindowCenterWidthExplanation,
-                        Tag.VOILUTFunction, Tag.PixelSpacing, Tag.ImagerPixelSpacing, Tag.NominalScannedPixelSpacing,
-                        Tag.PixelSpacingCalibrationDescription, Tag.PixelAspectRatio);
-                    rawIO.copyTags(tagList2, imgRef, false);
-
-                    // Image specific tags
-                    rawIO.setTag(TagD.get(Tag.SOPInstanceUID), UIDUtils.createUID());
-                    rawIO.setTag(TagD.get(Tag.InstanceNumber), index + 1);
-
-                    dicom = new DicomImageElement(rawIO, 0) {
-                        @Override
-                        public boolean saveToFile(File output) {
-                            RawImageIO reader = (RawImageIO) getMediaReader();
-                            return FileUtil.nioCopyFile(reader.getDicomFile(), output);
-                        }
-                    };
-
-                    dicoms.add(dicom);
-
-                    if (taskMonitor.isAborting()) {
-                        throw new TaskInterruptionException("Rebuilding MIP series has been canceled!"); //$NON-NLS-1$
-                    }
-                    final int progress = index - minImg;
-                    GuiExecutor.instance().execute(() -> {
-                        taskMonitor.setProgress(progress);
-                        StringBuilder buf = new StringBuilder(Messages.getString("SeriesBuilder.image")); //$NON-NLS-1$
-                        buf.append(StringUtil.COLON_AND_SPACE);
-                        buf.append(progress);
-                        buf.append("/"); //$NON-NLS-1$
-                        buf.append(taskMonitor.getMaximum());
-                        taskMonitor.setNote(buf.toString());
-                    });
-                }
+        rawIO.setTag(TagD.get(Tag.SeriesInstanceUID), seriesUID);
+
+        // Mandatory tags
+        TagW[] mtagList = TagD.getTagFromIDs(Tag.PatientID, Tag.PatientName, Tag.PatientBirthDate, Tag.StudyInstanceUID,
+            Tag.StudyID, Tag.SOPClassUID, Tag.StudyDate, Tag.StudyTime, Tag.AccessionNumber);
+        rawIO.copyTags(mtagList, img, true);
+        rawIO.setTag(TagW.PatientPseudoUID, img.getTagValue(TagW.PatientPseudoUID));
+
+        TagW[] tagList = TagD.getTagFromIDs(Tag.PhotometricInterpretation, Tag.PixelRepresentation, Tag.Units,
+            Tag.SamplesPerPixel, Tag.Modality);
+        rawIO.copyTags(tagList, img, true);
+        rawIO.setTag(TagW.MonoChrome, img.getTagValue(TagW.MonoChrome));
+
+        TagW[] tagList2 = { TagW.ModalityLUTData, TagW.ModalityLUTType, TagW.ModalityLUTExplanation, TagW.VOILUTsData,
+            TagW.VOILUTsExplanation };
+        rawIO.copyTags(tagList2, img, false);
+
+        tagList2 = TagD.getTagFromIDs(Tag.ImageOrientationPatient, Tag.ImagePositionPatient, Tag.RescaleSlope,
+            Tag.RescaleIntercept, Tag.RescaleType, Tag.PixelPaddingValue, Tag.PixelPaddingRangeLimit, Tag.WindowWidth,
+            Tag.WindowCenter, Tag.WindowCenterWidthExplanation, Tag.VOILUTFunction, Tag.PixelSpacing,
+            Tag.ImagerPixelSpacing, Tag.NominalScannedPixelSpacing, Tag.PixelSpacingCalibrationDescription,
+            Tag.PixelAspectRatio);
+        rawIO.copyTags(tagList2, imgRef, false);
+
+        // Image specific tags
+        rawIO.setTag(TagD.get(Tag.SOPInstanceUID), UIDUtils.createUID());
+        rawIO.setTag(TagD.get(Tag.InstanceNumber), index + 1);
+
+        DicomImageElement dicom = new DicomImageElement(rawIO, 0) {
+            @Override
+            public boolean saveToFile(File output) {
+                RawImageIO reader = (RawImageIO) getMediaReader();
+                return FileUtil.nioCopyFile(reader.getDicomFile(), output);
+            }
 
+            @Override
+            public boolean saveToStream(OutputStream output) {
+                RawImageIO reader = (RawImageIO) getMediaReader();
+                return copyFile(reader.getDicomFile(), output);
             }
+        };
+
+        dicoms.add(dicom);
+
+        if (taskMonitor.isAborting()) {
+            throw new TaskInterruptionException("Rebuilding MIP series has been canceled!"); //$NON-NLS-1$
         }
+        final int progress = index - minImg;
+        GuiExecutor.instance().execute(() -> {
+            taskMonitor.setProgress(progress);
+            StringBuilder buf = new StringBuilder(Messages.getString("SeriesBuilder.image")); //$NON-NLS-1$
+            buf.append(StringUtil.COLON_AND_SPACE);
+            buf.append(progress);
+            buf.append("/"); //$NON-NLS-1$
+            buf.append(taskMonitor.getMaximum());
+            taskMonitor.setNote(buf.toString());
+        });
+        return true;
     }
 
     static double getThickness(ImageElement firstDcm, ImageElement lastDcm) {
@@ -261,6 +281,25 @@ public class SeriesBuilder {
         return 1.0;
     }
 
+    private static Projection getProjection(Type mipType) {
+        if (Type.MIN.equals(mipType)) {
+            return Projection.MIN;
+        }
+        if (Type.MEAN.equals(mipType)) {
+            return Projection.MEAN;
+        }
+        return Projection.MAX;
+    }
+
+    @FunctionalInterface
+    interface ProjectionHandler {
+
+        /**
+         * @return false to stop building the images
+         */
+        boolean apply(int index, List<ImageElement> sources, PlanarImage image);
+    }
+
     public static PlanarImage addCollectionOperation(Type mipType, List<ImageElement> sources,
         final TaskMonitor taskMonitor) {
         if (Type.MIN.equals(mipType)) {
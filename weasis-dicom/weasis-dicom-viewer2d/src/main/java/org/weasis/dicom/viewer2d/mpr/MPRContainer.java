@@ -281,6 +281,7 @@ public class MPRContainer extends ImageViewerPlugin<DicomImageElement> implement
             process = null;
             t.interrupt();
         }
+        MprVolume.releaseVolumes(this);
         MPRFactory.closeSeriesViewer(this);
         super.close();
     }
@@ -10,29 +10,61 @@
  *******************************************************************************/
 package org.weasis.dicom.viewer2d.mpr;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.beans.PropertyChangeEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JPopupMenu;
 import javax.swing.JProgressBar;
+import javax.vecmath.Point3d;
+import javax.vecmath.Tuple3d;
+import javax.vecmath.Vector3d;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.ActionState;
 import org.weasis.core.api.gui.util.ActionW;
+import org.weasis.core.api.gui.util.GuiExecutor;
+import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.WindowOp;
+import org.weasis.core.api.media.data.MediaSeries;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.ui.editor.image.CrosshairListener;
 import org.weasis.core.ui.editor.image.ImageViewerEventManager;
+import org.weasis.core.ui.editor.image.ImageViewerPlugin;
 import org.weasis.core.ui.editor.image.ViewCanvas;
+import org.weasis.core.ui.model.AbstractGraphicModel;
+import org.weasis.core.ui.model.layer.GraphicLayer;
 import org.weasis.core.ui.model.layer.LayerAnnotation;
+import org.weasis.core.ui.model.layer.LayerType;
 import org.weasis.dicom.codec.DicomImageElement;
 import org.weasis.dicom.codec.SortSeriesStack;
+import org.weasis.dicom.codec.geometry.GeometryOfSlice;
 import org.weasis.dicom.viewer2d.View2d;
+import org.weasis.opencv.data.PlanarImage;
 
+/**
+ * A view of the MPR container. The crosshair of a view can be rotated (Alt + Left or Right arrow, Alt + Down arrow
+ * resets the angle): the other views display then the planes of their orthogonal images rotated by the same angle
+ * around the normal of this view, resampled from the volume of the series.
+ */
 public class MprView extends View2d {
     private static final Logger LOGGER = LoggerFactory.getLogger(MprView.class);
 
+    private static final double ROTATION_STEP = 5.0;
+    private static final ExecutorService RESLICER = ThreadUtil.buildNewSingleThreadExecutor("MPR Reslice"); //$NON-NLS-1$
+
     public enum SliceOrientation {
         AXIAL, CORONAL, SAGITTAL
     }
@@ -40,6 +72,18 @@ public class MprView extends View2d {
     private SliceOrientation sliceOrientation;
     private JProgressBar progressBar;
 
+    private volatile MprVolume volume;
+    private Point3d crosshairPoint;
+    // Rotation of the crosshair of this view in degrees
+    private double crosshairAngle;
+    // Rotation axis and angle (radians) of the oblique plane, null when the orthogonal images are displayed
+    private Vector3d obliqueAxis;
+    private double obliqueAngle;
+    private DicomImageElement orthogonalImage;
+    private DicomImageElement obliqueImage;
+    private File obliqueFile;
+    private final AtomicInteger obliqueRequest = new AtomicInteger();
+
     public MprView(ImageViewerEventManager<DicomImageElement> eventManager) {
         super(eventManager);
         this.sliceOrientation = SliceOrientation.AXIAL;
@@ -74,9 +118,257 @@ public class MprView extends View2d {
         this.sliceOrientation = sliceOrientation == null ? SliceOrientation.AXIAL : sliceOrientation;
     }
 
+    public MprVolume getVolume() {
+        return volume;
+    }
+
+    public void setVolume(MprVolume volume) {
+        this.volume = volume;
+    }
+
+    @Override
+    public void setSeries(MediaSeries<DicomImageElement> series, DicomImageElement selectedDicom) {
+        crosshairAngle = 0.0;
+        obliqueAxis = null;
+        obliqueRequest.incrementAndGet();
+        orthogonalImage = null;
+        super.setSeries(series, selectedDicom);
+        disposeObliqueImage();
+    }
+
     @Override
     protected void setImage(DicomImageElement img) {
+        if (img != null && img == obliqueImage) {
+            super.setImage(img);
+            return;
+        }
+        orthogonalImage = img;
+        Point3d p3 = crosshairPoint;
+        if (obliqueAxis != null && img != null && p3 != null && volume != null) {
+            // Keep the oblique plane displayed, it is resampled at the position of the new orthogonal image
+            GeometryOfSlice geometry = img.getDispSliceGeometry();
+            if (geometry != null) {
+                Vector3d n = geometry.getNormal();
+                Vector3d d = new Vector3d(geometry.getTLHC());
+                d.sub(p3);
+                Point3d center = new Point3d(p3);
+                center.scaleAdd(d.dot(n), n, center);
+                updateObliquePlane(center);
+                return;
+            }
+        }
+        super.setImage(img);
+        if (obliqueImage != null && obliqueAxis == null) {
+            disposeObliqueImage();
+        }
+    }
+
+    @Override
+    public DicomImageElement getStackImage() {
+        DicomImageElement img = orthogonalImage;
+        return img == null ? getImage() : img;
+    }
+
+    /**
+     * Rotates the crosshair of this view. The other views of the container display the planes of their orthogonal
+     * images rotated around the normal of this view at the crosshair position.
+     *
+     * @param delta
+     *            the angle to add in degrees
+     */
+    public void rotateCrosshair(double delta) {
+        ImageViewerPlugin<DicomImageElement> container = eventManager.getSelectedView2dContainer();
+        Point3d p3 = crosshairPoint;
+        if (volume == null || p3 == null || !(container instanceof MPRContainer)) {
+            return;
+        }
+        // The rotation is around the normal of the orthogonal image of this view
+        if (obliqueAxis != null) {
+            obliqueAxis = null;
+            obliqueRequest.incrementAndGet();
+            if (orthogonalImage != null) {
+                setImage(orthogonalImage);
+            }
+        }
+        DicomImageElement image = getImage();
+        GeometryOfSlice geometry = image == null ? null : image.getDispSliceGeometry();
+        if (geometry == null) {
+            return;
+        }
+
+        crosshairAngle = (crosshairAngle + delta) % 360.0;
+        boolean rotated = MathUtil.isDifferentFromZero(crosshairAngle);
+        for (ViewCanvas<DicomImageElement> v : container.getImagePanels()) {
+            if (v instanceof MprView && v != this) {
+                MprView view = (MprView) v;
+                view.crosshairAngle = 0.0;
+                view.setObliqueRotation(rotated ? geometry.getNormal() : null, Math.toRadians(crosshairAngle));
+            }
+        }
+
+        // Propagate the crosshair at the same position for updating the other views
+        ActionState cross = eventManager.getAction(ActionW.CROSSHAIR);
+        Point2D p = geometry.getImagePosition(p3);
+        if (cross instanceof CrosshairListener && p != null) {
+            ((CrosshairListener) cross).setPoint(p);
+        }
+        repaint();
+    }
+
+    private void setObliqueRotation(Vector3d axis, double angle) {
+        obliqueRequest.incrementAndGet();
+        this.obliqueAxis = axis == null ? null : new Vector3d(axis);
+        this.obliqueAngle = angle;
+        if (axis == null && obliqueImage != null) {
+            DicomImageElement img = orthogonalImage;
+            if (img != null) {
+                setImage(img);
+            } else {
+                disposeObliqueImage();
+            }
+        }
+    }
+
+    private void updateObliquePlane(Point3d center) {
+        final MprVolume vol = volume;
+        final DicomImageElement ref = orthogonalImage;
+        final Vector3d axis = obliqueAxis;
+        final double angle = obliqueAngle;
+        if (vol == null || ref == null || axis == null) {
+            return;
+        }
+        final int request = obliqueRequest.incrementAndGet();
+        RESLICER.execute(() -> {
+            if (request != obliqueRequest.get()) {
+                // A more recent plane has been requested
+                return;
+            }
+            File file = null;
+            try {
+                file = File.createTempFile("oblique_", ".wcv", SeriesBuilder.MPR_CACHE_DIR); //$NON-NLS-1$ //$NON-NLS-2$
+                DicomImageElement img = SeriesBuilder.buildObliqueImage(vol, ref, center, axis, angle, file);
+                final File imgFile = file;
+                file = null;
+                GuiExecutor.instance().execute(() -> {
+                    if (img != null && request == obliqueRequest.get()) {
+                        showObliqueImage(img, imgFile);
+                    } else {
+                        disposeObliqueImage(img, imgFile);
+                    }
+                });
+            } catch (Exception e) {
+                LOGGER.error("Cannot resample the oblique plane", e); //$NON-NLS-1$
+            } finally {
+                if (file != null) {
+                    FileUtil.delete(file);
+                }
+            }
+        });
+    }
+
+    private void showObliqueImage(DicomImageElement img, File file) {
+        DicomImageElement oldImage = obliqueImage;
+        File oldFile = obliqueFile;
+        obliqueImage = img;
+        obliqueFile = file;
         super.setImage(img);
+        disposeObliqueImage(oldImage, oldFile);
+        Point3d p3 = crosshairPoint;
+        if (p3 != null) {
+            super.computeCrosshair(p3);
+        }
+        repaint();
+    }
+
+    private void disposeObliqueImage() {
+        DicomImageElement img = obliqueImage;
+        File file = obliqueFile;
+        obliqueImage = null;
+        obliqueFile = null;
+        disposeObliqueImage(img, file);
+    }
+
+    private static void disposeObliqueImage(DicomImageElement img, File file) {
+        if (img != null) {
+            img.removeImageFromCache();
+            img.dispose();
+        }
+        if (file != null) {
+            FileUtil.delete(file);
+        }
+    }
+
+    @Override
+    public void computeCrosshair(Point3d p3) {
+        crosshairPoint = p3 == null ? null : new Point3d(p3);
+        // The plane of the view where the crosshair is moved already contains the point
+        if (p3 != null && obliqueAxis != null && eventManager.getSelectedViewPane() != this) {
+            updateObliquePlane(p3);
+        }
+        if (p3 != null && MathUtil.isDifferentFromZero(crosshairAngle)) {
+            computeRotatedCrosshair(p3, Math.toRadians(crosshairAngle));
+        } else {
+            super.computeCrosshair(p3);
+        }
+    }
+
+    private void computeRotatedCrosshair(Point3d p3, double angle) {
+        DicomImageElement image = this.getImage();
+        if (image != null) {
+            graphicManager.deleteByLayerType(LayerType.CROSSLINES);
+            GraphicLayer layer = AbstractGraphicModel.getOrBuildLayer(this, LayerType.CROSSLINES);
+            GeometryOfSlice sliceGeometry = image.getDispSliceGeometry();
+            if (sliceGeometry != null && sliceOrientation != null) {
+                Point2D p = sliceGeometry.getImagePosition(p3);
+                if (p == null) {
+                    return;
+                }
+                Tuple3d dimensions = sliceGeometry.getDimensions();
+                double length = Math.hypot(dimensions.x, dimensions.y);
+                double cos = Math.cos(angle);
+                double sin = Math.sin(angle);
+                boolean axial = SliceOrientation.AXIAL.equals(sliceOrientation);
+                boolean sagittal = SliceOrientation.SAGITTAL.equals(sliceOrientation);
+
+                // The column and the row directions rotated around the normal of the slice
+                List<Point2D.Double> pts = new ArrayList<>();
+                pts.add(new Point2D.Double(p.getX() + length * sin, p.getY() - length * cos));
+                pts.add(new Point2D.Double(p.getX() - length * sin, p.getY() + length * cos));
+                addCrosshairLine(layer, pts, sagittal ? Color.GREEN : Color.BLUE, p);
+
+                List<Point2D.Double> pts2 = new ArrayList<>();
+                pts2.add(new Point2D.Double(p.getX() - length * cos, p.getY() - length * sin));
+                pts2.add(new Point2D.Double(p.getX() + length * cos, p.getY() + length * sin));
+                addCrosshairLine(layer, pts2, axial ? Color.GREEN : Color.RED, p);
+
+                PlanarImage dispImg = image.getImage();
+                if (dispImg != null) {
+                    Rectangle2D rect = new Rectangle2D.Double(0, 0, dispImg.width() * image.getRescaleX(),
+                        dispImg.height() * image.getRescaleY());
+                    addRectangle(layer, rect, axial ? Color.RED : sagittal ? Color.BLUE : Color.GREEN);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        if (e.isAltDown() && e.getKeyCode() == KeyEvent.VK_LEFT) {
+            rotateCrosshair(-ROTATION_STEP);
+        } else if (e.isAltDown() && e.getKeyCode() == KeyEvent.VK_RIGHT) {
+            rotateCrosshair(ROTATION_STEP);
+        } else if (e.isAltDown() && e.getKeyCode() == KeyEvent.VK_DOWN) {
+            rotateCrosshair(-crosshairAngle);
+        } else {
+            super.keyPressed(e);
+        }
+    }
+
+    @Override
+    public void disposeView() {
+        obliqueRequest.incrementAndGet();
+        super.disposeView();
+        disposeObliqueImage();
     }
 
     @Override
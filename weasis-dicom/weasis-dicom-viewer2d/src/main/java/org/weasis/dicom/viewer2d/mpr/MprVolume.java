@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.viewer2d.mpr;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.vecmath.Matrix3d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import org.weasis.core.api.gui.util.Filter;
+import org.weasis.core.api.media.data.MediaSeries;
+import org.weasis.dicom.codec.DicomImageElement;
+import org.weasis.dicom.codec.geometry.GeometryOfSlice;
+import org.weasis.opencv.data.FileVolume;
+import org.weasis.opencv.data.ImageCV;
+
+/**
+ * The voxels of a series sorted by slice position, shared by all the reconstructions of this series.
+ * <p>
+ * The orthogonal planes are extracted from the volume, and any oblique or curved plane defined in the patient
+ * coordinates can be resampled with a trilinear interpolation.
+ * <p>
+ * A volume is shared between the containers displaying the same series with the same filter. Each container is
+ * registered as an owner and the volume is disposed when the last owner releases it. A volume built while the series
+ * was still loading is not shared anymore when the series has more images.
+ */
+public class MprVolume {
+
+    // Guarded by VOLUMES
+    private static final List<MprVolume> VOLUMES = new ArrayList<>();
+
+    private final Set<Object> owners = new HashSet<>();
+    private MediaSeries<DicomImageElement> series;
+    private final FileVolume volume;
+    private final Filter<DicomImageElement> filter;
+    private final double sliceSpace;
+    private final Point3d origin;
+    // Patient coordinates to voxel coordinates
+    private final Matrix3d toVoxel;
+    private volatile boolean disposed = false;
+
+    /**
+     * @param volume
+     *            the voxels, the slice 0 is the first image sorted by slice position
+     * @param filter
+     *            the filter applied to the series for building the volume
+     * @param first
+     *            the geometry with square pixels of the first slice
+     * @param last
+     *            the geometry with square pixels of the last slice
+     * @param sliceSpace
+     *            the space between the slices
+     */
+    public MprVolume(FileVolume volume, Filter<DicomImageElement> filter, GeometryOfSlice first,
+        GeometryOfSlice last, double sliceSpace) {
+        this.volume = Objects.requireNonNull(volume);
+        this.filter = filter;
+        this.sliceSpace = sliceSpace;
+        this.origin = first.getPosition(new Point2D.Double(0, 0));
+
+        Vector3d x = new Vector3d(first.getPosition(new Point2D.Double(1, 0)));
+        x.sub(origin);
+        Vector3d y = new Vector3d(first.getPosition(new Point2D.Double(0, 1)));
+        y.sub(origin);
+        Vector3d z;
+        if (volume.getDepth() > 1 && last != null) {
+            // Follows the real stack direction (e.g. with a gantry tilt)
+            z = new Vector3d(last.getTLHC());
+            z.sub(first.getTLHC());
+            z.scale(1.0 / (volume.getDepth() - 1));
+        } else {
+            z = new Vector3d(first.getNormal());
+            z.scale(sliceSpace);
+        }
+        Matrix3d m = new Matrix3d();
+        m.setColumn(0, x);
+        m.setColumn(1, y);
+        m.setColumn(2, z);
+        m.invert();
+        this.toVoxel = m;
+    }
+
+    /**
+     * @param series
+     *            the series of the volume
+     * @param filter
+     *            the filter applied to the series
+     * @param owner
+     *            the owner registered when the volume exists, usually the container
+     * @return the volume or null when it has not been built with all the images of the series
+     */
+    public static MprVolume getVolume(MediaSeries<DicomImageElement> series, Filter<DicomImageElement> filter,
+        Object owner) {
+        if (series == null) {
+            return null;
+        }
+        int size = series.size(filter);
+        synchronized (VOLUMES) {
+            for (MprVolume v : VOLUMES) {
+                if (v.series == series && Objects.equals(v.filter, filter) && v.volume.getDepth() == size) {
+                    v.owners.add(Objects.requireNonNull(owner));
+                    return v;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers a new volume of the series. When the same volume has been registered in the meantime (e.g. by another
+     * container), the new one is disposed and the registered one is returned.
+     *
+     * @return the registered volume
+     */
+    public static MprVolume putVolume(MediaSeries<DicomImageElement> series, MprVolume volume, Object owner) {
+        Objects.requireNonNull(series);
+        Objects.requireNonNull(owner);
+        List<MprVolume> unused = new ArrayList<>();
+        MprVolume result;
+        synchronized (VOLUMES) {
+            result = getVolume(series, volume.filter, owner);
+            if (result == null) {
+                // The owner does not use anymore the volumes of the series built with fewer images
+                for (Iterator<MprVolume> it = VOLUMES.iterator(); it.hasNext();) {
+                    MprVolume v = it.next();
+                    if (v.series == series && Objects.equals(v.filter, volume.filter) && v.owners.remove(owner)
+                        && v.owners.isEmpty()) {
+                        it.remove();
+                        unused.add(v);
+                    }
+                }
+                volume.series = series;
+                volume.owners.add(owner);
+                VOLUMES.add(volume);
+                result = volume;
+            } else if (result != volume) {
+                unused.add(volume);
+            }
+        }
+        unused.forEach(MprVolume::dispose);
+        return result;
+    }
+
+    /**
+     * Releases all the volumes of an owner. A volume is disposed when it has no more owner.
+     *
+     * @param owner
+     *            the owner, usually the container
+     */
+    public static void releaseVolumes(Object owner) {
+        List<MprVolume> unused = new ArrayList<>();
+        synchronized (VOLUMES) {
+            for (Iterator<MprVolume> it = VOLUMES.iterator(); it.hasNext();) {
+                MprVolume v = it.next();
+                if (v.owners.remove(owner) && v.owners.isEmpty()) {
+                    it.remove();
+                    unused.add(v);
+                }
+            }
+        }
+        unused.forEach(MprVolume::dispose);
+    }
+
+    public FileVolume getVolume() {
+        return volume;
+    }
+
+    public double getSliceSpace() {
+        return sliceSpace;
+    }
+
+    public double[] toVoxel(Point3d p) {
+        Vector3d v = new Vector3d(p);
+        v.sub(origin);
+        toVoxel.transform(v);
+        return new double[] { v.x, v.y, v.z };
+    }
+
+    private double[] toVoxelStep(Vector3d direction, double length) {
+        Vector3d v = new Vector3d(direction);
+        v.normalize();
+        v.scale(length);
+        toVoxel.transform(v);
+        return new double[] { v.x, v.y, v.z };
+    }
+
+    /**
+     * Resamples an oblique plane. The pixel (i, j) of the plane is at <code>center + (i - width / 2) * row *
+     * pixelSpacing + (j - height / 2) * column * pixelSpacing</code>.
+     *
+     * @param center
+     *            the center of the plane in the patient coordinates
+     * @param row
+     *            the direction of the rows of the plane
+     * @param column
+     *            the direction of the columns of the plane
+     * @param pixelSpacing
+     *            the size of the pixels of the plane in mm
+     * @param width
+     *            the width of the plane
+     * @param height
+     *            the height of the plane
+     * @return the plane image
+     */
+    public ImageCV getObliquePlane(Point3d center, Vector3d row, Vector3d column, double pixelSpacing, int width,
+        int height) {
+        ReslicePlane plane = getObliqueSampling(center, row, column, pixelSpacing, width, height);
+        return volume.reslice(plane.origins, plane.step, plane.nbRows);
+    }
+
+    ReslicePlane getObliqueSampling(Point3d center, Vector3d row, Vector3d column, double pixelSpacing, int width,
+        int height) {
+        double[] c = toVoxel(center);
+        double[] rowStep = toVoxelStep(row, pixelSpacing);
+        double[] colStep = toVoxelStep(column, pixelSpacing);
+        double[][] origins = new double[width][];
+        for (int i = 0; i < width; i++) {
+            double u = i - width / 2.0;
+            double v = -height / 2.0;
+            origins[i] = new double[] { c[0] + u * rowStep[0] + v * colStep[0], c[1] + u * rowStep[1] + v * colStep[1],
+                c[2] + u * rowStep[2] + v * colStep[2] };
+        }
+        return new ReslicePlane(origins, colStep, height);
+    }
+
+    /**
+     * Resamples a curved plane: the columns follow a path at a regular interval and the rows are along a direction
+     * (usually the normal of the plane where the path has been drawn).
+     *
+     * @param path
+     *            the points of the path in the patient coordinates
+     * @param column
+     *            the direction of the columns of the plane
+     * @param pixelSpacing
+     *            the size of the pixels of the plane in mm
+     * @param height
+     *            the height of the plane centered on the path
+     * @return the plane image or null if the path has less than two points
+     */
+    public ImageCV getCurvedPlane(List<Point3d> path, Vector3d column, double pixelSpacing, int height) {
+        ReslicePlane plane = getCurvedSampling(path, column, pixelSpacing, height);
+        return plane == null ? null : volume.reslice(plane.origins, plane.step, plane.nbRows);
+    }
+
+    ReslicePlane getCurvedSampling(List<Point3d> path, Vector3d column, double pixelSpacing, int height) {
+        if (path == null || path.size() < 2 || pixelSpacing <= 0) {
+            return null;
+        }
+        double length = 0;
+        for (int i = 1; i < path.size(); i++) {
+            length += path.get(i).distance(path.get(i - 1));
+        }
+        int width = Math.max(1, (int) Math.floor(length / pixelSpacing) + 1);
+        double[] colStep = toVoxelStep(column, pixelSpacing);
+        double offset = -height / 2.0;
+
+        double[][] origins = new double[width][];
+        int segment = 1;
+        double segmentStart = 0;
+        for (int i = 0; i < width; i++) {
+            double dist = i * pixelSpacing;
+            double segLength = path.get(segment).distance(path.get(segment - 1));
+            while (segment < path.size() - 1 && dist > segmentStart + segLength) {
+                segmentStart += segLength;
+                segment++;
+                segLength = path.get(segment).distance(path.get(segment - 1));
+            }
+            Point3d p = new Point3d();
+            double t = segLength > 0 ? Math.min(1.0, (dist - segmentStart) / segLength) : 0.0;
+            p.interpolate(path.get(segment - 1), path.get(segment), t);
+            double[] c = toVoxel(p);
+            origins[i] = new double[] { c[0] + offset * colStep[0], c[1] + offset * colStep[1],
+                c[2] + offset * colStep[2] };
+        }
+        return new ReslicePlane(origins, colStep, height);
+    }
+
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    public void dispose() {
+        disposed = true;
+        volume.dispose();
+    }
+
+    /**
+     * The voxel positions of a resampled surface, see {@link FileVolume#reslice(double[][], double[], int)}.
+     */
+    static final class ReslicePlane {
+        final double[][] origins;
+        final double[] step;
+        final int nbRows;
+
+        ReslicePlane(double[][] origins, double[] step, int nbRows) {
+            this.origins = origins;
+            this.step = step;
+            this.nbRows = nbRows;
+        }
+    }
+}
@@ -90,6 +90,10 @@ public class RawImageIO implements DcmMediaReader {
 
         DicomOutputStream out = null;
         try {
+            if (imageCV instanceof VolumePlane) {
+                // The pixel data are referenced from the file of the plane
+                ((VolumePlane) imageCV).writeFile();
+            }
             File file = imageCV.getFile();
             BulkData bdl = new BulkData(file.toURI().toString(), FileRawImage.HEADER_LENGTH, (int) file.length(), false);
             dcm.setValue(Tag.PixelData, VR.OW, bdl);
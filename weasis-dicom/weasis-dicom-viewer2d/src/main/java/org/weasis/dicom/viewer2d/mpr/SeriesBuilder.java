@@ -15,11 +15,14 @@ import java.awt.Dimension;
 import java.awt.geom.Point2D;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.imageio.IIOException;
 import javax.swing.JOptionPane;
@@ -44,6 +47,8 @@ import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.gui.util.Filter;
 import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.gui.util.MathUtil;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageLoader.Priority;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
 import org.weasis.core.api.media.data.TagW;
@@ -60,6 +65,7 @@ import org.weasis.dicom.explorer.DicomModel;
 import org.weasis.dicom.viewer2d.Messages;
 import org.weasis.dicom.viewer2d.mpr.MprView.SliceOrientation;
 import org.weasis.opencv.data.FileRawImage;
+import org.weasis.opencv.data.FileVolume;
 import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageProcessor;
@@ -71,6 +77,23 @@ public class SeriesBuilder {
     public static final File MPR_CACHE_DIR =
         AppProperties.buildAccessibleTempDirectory(AppProperties.FILE_CACHE_DIR.getName(), "mpr"); //$NON-NLS-1$
 
+    private static final int[] COPIED_ATTRS = { Tag.SpecificCharacterSet, Tag.PatientID, Tag.PatientName,
+        Tag.PatientBirthDate, Tag.PatientBirthTime, Tag.PatientSex, Tag.IssuerOfPatientID,
+        Tag.IssuerOfAccessionNumberSequence, Tag.PatientWeight, Tag.PatientAge, Tag.PatientSize, Tag.PatientState,
+        Tag.PatientComments,
+
+        Tag.StudyID, Tag.StudyDate, Tag.StudyTime, Tag.StudyDescription, Tag.StudyComments, Tag.AccessionNumber,
+        Tag.ModalitiesInStudy,
+
+        Tag.Modality, Tag.SeriesDate, Tag.SeriesTime, Tag.RetrieveAETitle, Tag.ReferringPhysicianName,
+        Tag.InstitutionName, Tag.InstitutionalDepartmentName, Tag.StationName, Tag.Manufacturer,
+        Tag.ManufacturerModelName, Tag.SeriesNumber, Tag.KVP, Tag.Laterality, Tag.BodyPartExamined,
+        Tag.ModalityLUTSequence, Tag.VOILUTSequence };
+
+    static {
+        Arrays.sort(COPIED_ATTRS);
+    }
+
     private SeriesBuilder() {
     }
 
@@ -82,7 +105,6 @@ public class SeriesBuilder {
             SliceOrientation type1 = view.getSliceOrientation();
             if (type1 != null) {
 
-                String seriesID = (String) series.getTagValue(TagW.SubseriesInstanceUID);
                 Filter filter = (Filter) view.getActionValue(ActionW.FILTERED_SERIES.cmd());
 
                 // Get image stack sort from Reference Coordinates System
@@ -183,7 +205,9 @@ public class SeriesBuilder {
                             mainView.zoom(0.0);
                             mainView.center();
 
+                            final int size = series.size(filter);
                             final boolean[] needBuild = new boolean[2];
+                            final List<VolumePlane> existingPlanes = new ArrayList<>();
                             MediaSeriesGroup study = null;
                             DataExplorerModel model = (DataExplorerModel) series.getTagValue(TagW.ExplorerModel);
                             TreeModel treeModel = null;
@@ -192,10 +216,19 @@ public class SeriesBuilder {
                                 study = treeModel.getParent(series, DicomModel.study);
                                 if (study != null) {
                                     for (int i = 0; i < 2; i++) {
-                                        final MediaSeriesGroup group =
+                                        MediaSeriesGroup node =
                                             treeModel.getHierarchyNode(study, recParams[i].seriesUID);
+                                        List<VolumePlane> planes = getPlanes(node);
+                                        if (!planes.isEmpty() && planes.get(0).getDepth() != size
+                                            && treeModel instanceof DicomModel) {
+                                            // Built while the series was loading, the images are missing slices
+                                            ((DicomModel) treeModel).removeSeries(node);
+                                            node = null;
+                                        }
+                                        final MediaSeriesGroup group = node;
                                         needBuild[i] = group == null;
                                         if (!needBuild[i]) {
+                                            existingPlanes.addAll(planes);
                                             final MprView mprView = recView[i];
                                             GuiExecutor.instance().execute(() -> {
                                                 mprView.setSeries((MediaSeries<DicomImageElement>) group);
@@ -213,11 +246,17 @@ public class SeriesBuilder {
                                 }
                             }
 
-                            final int size = series.size(filter);
+                            /*
+                             * The volume is built once and shared by all the reconstructions of the series. It is also
+                             * required when the reconstructions exist, for reslicing the oblique planes.
+                             */
+                            MprVolume volume = MprVolume.getVolume(series, filter, mprContainer);
+                            final boolean buildVolume = volume == null;
+
                             final JProgressBar[] bar = new JProgressBar[2];
                             GuiExecutor.instance().invokeAndWait(() -> {
                                 for (int i = 0; i < 2; i++) {
-                                    if (needBuild[i]) {
+                                    if (needBuild[i] || buildVolume) {
                                         bar[i] = new JProgressBar(0, size);
                                         Dimension dim = new Dimension(recView[i].getWidth() / 2, 30);
                                         bar[i].setSize(dim);
@@ -236,24 +275,46 @@ public class SeriesBuilder {
                                 SortSeriesStack.slicePosition);
                             final Attributes attributes = ((DcmMediaReader) img.getMediaReader()).getDicomObject();
 
+                            if (buildVolume) {
+                                volume = buildVolume(series, filter, recView, thread, abort, size);
+                                if (volume == null || thread.isInterrupted()) {
+                                    if (volume != null) {
+                                        volume.dispose();
+                                    }
+                                    return;
+                                }
+                                volume = MprVolume.putVolume(series, volume, mprContainer);
+                            }
+                            // The planes not extracted yet are read from the new volume
+                            for (VolumePlane plane : existingPlanes) {
+                                plane.setVolume(volume);
+                            }
+                            final MprVolume vol = volume;
+                            GuiExecutor.instance().execute(() -> {
+                                mainView.setVolume(vol);
+                                for (int i = 0; i < 2; i++) {
+                                    recView[i].setVolume(vol);
+                                    if (!needBuild[i]) {
+                                        recView[i].setProgressBar(null);
+                                        recView[i].repaint();
+                                    }
+                                }
+                            });
+
                             for (int i = 0; i < 2; i++) {
                                 if (needBuild[i]) {
                                     final MprView mprView = recView[i];
                                     final ViewParameter viewParams = recParams[i];
 
-                                    Iterable<DicomImageElement> medias = series.copyOfMedias(filter,
-                                        viewParams.reverseSeriesOrder
-                                            ? SortSeriesStack.slicePosition.getReversOrderComparator()
-                                            : SortSeriesStack.slicePosition);
                                     double origPixSize = img.getPixelSize();
 
                                     FileRawImage[] secSeries = new FileRawImage[i == 0 ? height : width];
                                     /*
-                                     * Write the new image by tacking the lines (from first to last) of all the images
-                                     * of the original series stack
+                                     * The new images are made of the lines (from first to last) of all the images of
+                                     * the original series stack, they are extracted from the volume when displayed.
                                      */
-                                    double sPixSize = writeBlock(secSeries, series, medias, viewParams, mprView, thread,
-                                        abort, seriesID, size);
+                                    buildPlanes(secSeries, volume, viewParams);
+                                    double sPixSize = volume.getSliceSpace();
 
                                     if (thread.isInterrupted()) {
                                         return;
@@ -305,23 +366,10 @@ public class SeriesBuilder {
         DicomImageElement img, ViewParameter params, double origPixSize, double sPixSize, GeometryOfSlice geometry,
         final MprView view, final Attributes attributes) throws Exception {
 
-        int bitsAllocated = img.getBitsAllocated();
-        int bitsStored = img.getBitsStored();
         double[] pixSpacing = new double[] { sPixSize, origPixSize };
 
-        final JProgressBar bar = view.getProgressBar();
-
         if (params.rotateOutputImg) {
-            if (bar != null) {
-                GuiExecutor.instance().execute(() -> {
-                    bar.setMaximum(newSeries.length);
-                    bar.setValue(0);
-                    // Force to reset the progress bar (substance)
-                    bar.updateUI();
-                    view.repaint();
-                });
-            }
-
+            // The planes have been rotated when extracted from the volume
             pixSpacing = new double[] { origPixSize, sPixSize };
 
             int tmp = dim.width;
@@ -330,86 +378,14 @@ public class SeriesBuilder {
 
         }
 
-        final int[] COPIED_ATTRS = { Tag.SpecificCharacterSet, Tag.PatientID, Tag.PatientName, Tag.PatientBirthDate,
-            Tag.PatientBirthTime, Tag.PatientSex, Tag.IssuerOfPatientID, Tag.IssuerOfAccessionNumberSequence,
-            Tag.PatientWeight, Tag.PatientAge, Tag.PatientSize, Tag.PatientState, Tag.PatientComments,
-
-            Tag.StudyID, Tag.StudyDate, Tag.StudyTime, Tag.StudyDescription, Tag.StudyComments, Tag.AccessionNumber,
-            Tag.ModalitiesInStudy,
-
-            Tag.Modality, Tag.SeriesDate, Tag.SeriesTime, Tag.RetrieveAETitle, Tag.ReferringPhysicianName,
-            Tag.InstitutionName, Tag.InstitutionalDepartmentName, Tag.StationName, Tag.Manufacturer,
-            Tag.ManufacturerModelName, Tag.SeriesNumber, Tag.KVP, Tag.Laterality, Tag.BodyPartExamined,
-            Tag.ModalityLUTSequence, Tag.VOILUTSequence };
-
-        Arrays.sort(COPIED_ATTRS);
-        final Attributes cpTags = new Attributes(attributes, COPIED_ATTRS);
-        cpTags.setString(Tag.SeriesDescription, VR.LO, attributes.getString(Tag.SeriesDescription, "") + " [MPR]"); //$NON-NLS-1$ //$NON-NLS-2$
-        cpTags.setString(Tag.ImageType, VR.CS, new String[] { "DERIVED", "SECONDARY", "MPR" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        cpTags.setString(Tag.FrameOfReferenceUID, VR.UI, params.frameOfReferenceUID);
+        final Attributes cpTags = getBaseAttributes(attributes, params.frameOfReferenceUID);
 
         int last = newSeries.length;
         List<DicomImageElement> dcms = new ArrayList<>();
 
         for (int i = 0; i < newSeries.length; i++) {
-            if (params.rotateOutputImg) {
-                try {
-                    newSeries[i].write(ImageProcessor.getRotatedImage(newSeries[i].read(), Core.ROTATE_90_CLOCKWISE));
-                } catch (Exception e) {
-                    FileUtil.delete(newSeries[i].getFile());
-                    throw e;
-                }
-                
-                if (bar != null) {
-                    GuiExecutor.instance().execute(() -> {
-                        bar.setValue(bar.getValue() + 1);
-                        view.repaint();
-                    });
-                }
-            }
-            RawImageIO rawIO = new RawImageIO(newSeries[i], null);
-            rawIO.setBaseAttributes(cpTags);
-
-            // Tags with same values for all the Series
-            rawIO.setTag(TagD.get(Tag.TransferSyntaxUID), UID.ImplicitVRLittleEndian);
-            rawIO.setTag(TagD.get(Tag.Columns), dim.width);
-            rawIO.setTag(TagD.get(Tag.Rows), dim.height);
-            rawIO.setTag(TagD.get(Tag.SliceThickness), origPixSize);
-            rawIO.setTag(TagD.get(Tag.PixelSpacing), pixSpacing);
-            rawIO.setTag(TagD.get(Tag.SeriesInstanceUID), params.seriesUID);
-            rawIO.setTag(TagD.get(Tag.ImageOrientationPatient), params.imgOrientation);
-
-            rawIO.setTag(TagD.get(Tag.BitsAllocated), bitsAllocated);
-            rawIO.setTag(TagD.get(Tag.BitsStored), bitsStored);
-
-            // Mandatory tags
-            TagW[] mtagList = TagD.getTagFromIDs(Tag.PatientID, Tag.PatientName, Tag.PatientBirthDate,
-                Tag.StudyInstanceUID, Tag.StudyID, Tag.SOPClassUID, Tag.StudyDate, Tag.StudyTime, Tag.AccessionNumber);
-            rawIO.copyTags(mtagList, img, true);
-            rawIO.setTag(TagW.PatientPseudoUID, img.getTagValue(TagW.PatientPseudoUID));
-
-            TagW[] tagList = TagD.getTagFromIDs(Tag.PhotometricInterpretation, Tag.PixelRepresentation, Tag.Units,
-                Tag.SamplesPerPixel, Tag.Modality);
-            rawIO.copyTags(tagList, img, true);
-            rawIO.setTag(TagW.MonoChrome, img.getTagValue(TagW.MonoChrome));
-
-            TagW[] tagList2 = { TagW.ModalityLUTData, TagW.ModalityLUTType, TagW.ModalityLUTExplanation,
-                TagW.VOILUTsData, TagW.VOILUTsExplanation };
-            rawIO.copyTags(tagList2, img, false);
-
-            tagList2 = TagD.getTagFromIDs(Tag.RescaleSlope, Tag.RescaleIntercept, Tag.RescaleType,
-                Tag.PixelPaddingValue, Tag.PixelPaddingRangeLimit, Tag.WindowWidth, Tag.WindowCenter,
-                Tag.WindowCenterWidthExplanation, Tag.VOILUTFunction, Tag.PixelSpacingCalibrationDescription);
-            rawIO.copyTags(tagList2, img, false);
-
-            // Clone array, because values are adapted according to the min and max pixel values.
-            TagW[] tagList3 = TagD.getTagFromIDs(Tag.WindowWidth, Tag.WindowCenter);
-            for (int j = 0; j < tagList3.length; j++) {
-                double[] val = (double[]) img.getTagValue(tagList3[j]);
-                if (val != null) {
-                    img.setTag(tagList3[j], Arrays.copyOf(val, val.length));
-                }
-            }
+            RawImageIO rawIO = buildRawImageIO(newSeries[i], cpTags, img, dim.width, dim.height, pixSpacing,
+                origPixSize, params.seriesUID, params.imgOrientation);
 
             // Image specific tags
             int index = i;
@@ -429,27 +405,161 @@ public class SeriesBuilder {
             if (loc != null) {
                 rawIO.setTag(TagD.get(Tag.SliceLocation), loc[0] + loc[1] + loc[2]);
             }
-            DicomImageElement dcm = new DicomImageElement(rawIO, 0) {
-                @Override
-                public boolean saveToFile(File output) {
-                    RawImageIO reader = (RawImageIO) getMediaReader();
-                    return FileUtil.nioCopyFile(reader.getDicomFile(), output);
-                }
-            };
-            dcms.add(dcm);
+            dcms.add(buildDicomImage(rawIO));
         }
         return new DicomSeries(params.seriesUID, dcms, DicomModel.series.getTagView());
     }
 
-    private static double writeBlock(FileRawImage[] newSeries, MediaSeries<DicomImageElement> series,
-        Iterable<DicomImageElement> medias, ViewParameter params, final MprView view, Thread thread,
-        final boolean[] abort, String seriesID, int dstHeight) throws IOException {
-        ImageCV[] builImgs = new ImageCV[newSeries.length];
-        
-        // TODO should return the more frequent space!
-        final JProgressBar bar = view.getProgressBar();
+    private static Attributes getBaseAttributes(Attributes attributes, String frameOfReferenceUID) {
+        Attributes cpTags = new Attributes(attributes, COPIED_ATTRS);
+        String description = attributes.getString(Tag.SeriesDescription, ""); //$NON-NLS-1$
+        if (!description.endsWith(" [MPR]")) { //$NON-NLS-1$
+            description += " [MPR]"; //$NON-NLS-1$
+        }
+        cpTags.setString(Tag.SeriesDescription, VR.LO, description);
+        cpTags.setString(Tag.ImageType, VR.CS, new String[] { "DERIVED", "SECONDARY", "MPR" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        cpTags.setString(Tag.FrameOfReferenceUID, VR.UI, frameOfReferenceUID);
+        return cpTags;
+    }
+
+    private static RawImageIO buildRawImageIO(FileRawImage file, Attributes cpTags, DicomImageElement img, int width,
+        int height, double[] pixSpacing, double sliceThickness, String seriesUID, double[] orientation) {
+        RawImageIO rawIO = new RawImageIO(file, null);
+        rawIO.setBaseAttributes(cpTags);
+
+        // Tags with same values for all the Series
+        rawIO.setTag(TagD.get(Tag.TransferSyntaxUID), UID.ImplicitVRLittleEndian);
+        rawIO.setTag(TagD.get(Tag.Columns), width);
+        rawIO.setTag(TagD.get(Tag.Rows), height);
+        rawIO.setTag(TagD.get(Tag.SliceThickness), sliceThickness);
+        rawIO.setTag(TagD.get(Tag.PixelSpacing), pixSpacing);
+        rawIO.setTag(TagD.get(Tag.SeriesInstanceUID), seriesUID);
+        rawIO.setTag(TagD.get(Tag.ImageOrientationPatient), orientation);
+
+        rawIO.setTag(TagD.get(Tag.BitsAllocated), img.getBitsAllocated());
+        rawIO.setTag(TagD.get(Tag.BitsStored), img.getBitsStored());
+
+        // Mandatory tags
+        TagW[] mtagList = TagD.getTagFromIDs(Tag.PatientID, Tag.PatientName, Tag.PatientBirthDate,
+            Tag.StudyInstanceUID, Tag.StudyID, Tag.SOPClassUID, Tag.StudyDate, Tag.StudyTime, Tag.AccessionNumber);
+        rawIO.copyTags(mtagList, img, true);
+        rawIO.setTag(TagW.PatientPseudoUID, img.getTagValue(TagW.PatientPseudoUID));
+
+        TagW[] tagList = TagD.getTagFromIDs(Tag.PhotometricInterpretation, Tag.PixelRepresentation, Tag.Units,
+            Tag.SamplesPerPixel, Tag.Modality);
+        rawIO.copyTags(tagList, img, true);
+        rawIO.setTag(TagW.MonoChrome, img.getTagValue(TagW.MonoChrome));
+
+        TagW[] tagList2 = { TagW.ModalityLUTData, TagW.ModalityLUTType, TagW.ModalityLUTExplanation,
+            TagW.VOILUTsData, TagW.VOILUTsExplanation };
+        rawIO.copyTags(tagList2, img, false);
+
+        tagList2 = TagD.getTagFromIDs(Tag.RescaleSlope, Tag.RescaleIntercept, Tag.RescaleType,
+            Tag.PixelPaddingValue, Tag.PixelPaddingRangeLimit, Tag.WindowWidth, Tag.WindowCenter,
+            Tag.WindowCenterWidthExplanation, Tag.VOILUTFunction, Tag.PixelSpacingCalibrationDescription);
+        rawIO.copyTags(tagList2, img, false);
+
+        // Clone array, because values are adapted according to the min and max pixel values.
+        TagW[] tagList3 = TagD.getTagFromIDs(Tag.WindowWidth, Tag.WindowCenter);
+        for (int j = 0; j < tagList3.length; j++) {
+            double[] val = (double[]) img.getTagValue(tagList3[j]);
+            if (val != null) {
+                img.setTag(tagList3[j], Arrays.copyOf(val, val.length));
+            }
+        }
+        return rawIO;
+    }
+
+    private static DicomImageElement buildDicomImage(RawImageIO rawIO) {
+        return new DicomImageElement(rawIO, 0) {
+            @Override
+            public boolean saveToFile(File output) {
+                RawImageIO reader = (RawImageIO) getMediaReader();
+                return FileUtil.nioCopyFile(reader.getDicomFile(), output);
+            }
+
+            @Override
+            public boolean saveToStream(OutputStream output) {
+                RawImageIO reader = (RawImageIO) getMediaReader();
+                return copyFile(reader.getDicomFile(), output);
+            }
+        };
+    }
+
+    /**
+     * Builds the image of an oblique plane resampled from the volume. The plane is the plane of the reference image
+     * rotated around an axis, it keeps the size and the pixel spacing of the reference image.
+     *
+     * @param volume
+     *            the volume of the series
+     * @param ref
+     *            the reference image, usually the orthogonal image of the view
+     * @param center
+     *            a point of the rotation axis in the patient coordinates
+     * @param axis
+     *            the direction of the rotation axis
+     * @param angle
+     *            the rotation angle in radians
+     * @param file
+     *            the file where the plane is written
+     * @return the image or null when the reference image has no geometry
+     */
+    static DicomImageElement buildObliqueImage(MprVolume volume, DicomImageElement ref, Point3d center, Vector3d axis,
+        double angle, File file) throws IOException {
+        GeometryOfSlice geometry = ref.getDispSliceGeometry();
+        if (geometry == null || !(ref.getMediaReader() instanceof DcmMediaReader)) {
+            return null;
+        }
+        Vector3d row = new Vector3d();
+        Vector3d col = new Vector3d();
+        rotate(geometry.getRow(), new Vector3d(axis), angle, row);
+        rotate(geometry.getColumn(), new Vector3d(axis), angle, col);
+        Vector3d tlhc = new Vector3d(geometry.getTLHC());
+        tlhc.sub(center);
+        Vector3d rotated = new Vector3d();
+        rotate(tlhc, new Vector3d(axis), angle, rotated);
+        Point3d position = new Point3d(center);
+        position.add(rotated);
+
+        // The pixels of the display geometry are square
+        double pixelSize = geometry.getVoxelSpacing().x;
+        int width = (int) Math.round(geometry.getDimensions().y);
+        int height = (int) Math.round(geometry.getDimensions().x);
+        Point3d planeCenter = new Point3d(position);
+        planeCenter.scaleAdd(width / 2.0 * pixelSize, row, planeCenter);
+        planeCenter.scaleAdd(height / 2.0 * pixelSize, col, planeCenter);
+
+        ImageCV plane = volume.getObliquePlane(planeCenter, row, col, pixelSize, width, height);
         try {
+            FileRawImage raw = new FileRawImage(file);
+            if (!raw.write(plane)) {
+                throw new IIOException("Cannot write " + file); //$NON-NLS-1$
+            }
+            Attributes attributes = ((DcmMediaReader) ref.getMediaReader()).getDicomObject();
+            String frUID = TagD.getTagValue(ref, Tag.FrameOfReferenceUID, String.class);
+            RawImageIO rawIO = buildRawImageIO(raw, getBaseAttributes(attributes, frUID), ref, width, height,
+                new double[] { pixelSize, pixelSize }, pixelSize, TagD.getTagValue(ref, Tag.SeriesInstanceUID,
+                    String.class),
+                new double[] { row.x, row.y, row.z, col.x, col.y, col.z });
+            rawIO.setTag(TagD.get(Tag.SOPInstanceUID), UIDUtils.createUID());
+            rawIO.setTag(TagD.get(Tag.InstanceNumber), TagD.getTagValue(ref, Tag.InstanceNumber));
+            rawIO.setTag(TagD.get(Tag.ImagePositionPatient), new double[] { position.x, position.y, position.z });
+            DicomMediaUtils.computeSlicePositionVector(rawIO);
+            return buildDicomImage(rawIO);
+        } finally {
+            plane.release();
+        }
+    }
+
+    private static MprVolume buildVolume(MediaSeries<DicomImageElement> series, Filter<DicomImageElement> filter,
+        final MprView[] views, Thread thread, final boolean[] abort, int depth) throws IOException {
+        List<DicomImageElement> medias = series.copyOfMedias(filter, SortSeriesStack.slicePosition);
+        FileVolume volume = null;
+        List<Future<Boolean>> tasks = new ArrayList<>();
+        boolean complete = false;
 
+        try {
+            // TODO should return the more frequent space!
             double epsilon = 1e-3;
             double lastPos = 0.0;
             double lastSpace = 0.0;
@@ -457,85 +567,189 @@ public class SeriesBuilder {
             Iterator<DicomImageElement> iter = medias.iterator();
             while (iter.hasNext()) {
                 if (thread.isInterrupted()) {
-                    return lastSpace;
+                    return null;
                 }
                 DicomImageElement dcm = iter.next();
                 double[] sp = (double[]) dcm.getTagValue(TagW.SlicePosition);
                 boolean validSp = sp != null && sp.length == 3;
                 if (!validSp && !abort[1]) {
-                    confirmMessage(view, Messages.getString("SeriesBuilder.space_missing"), abort); //$NON-NLS-1$
+                    confirmMessage(views[0], Messages.getString("SeriesBuilder.space_missing"), abort); //$NON-NLS-1$
                 } else if (validSp) {
                     double pos = sp[0] + sp[1] + sp[2];
                     if (index > 0) {
                         double space = Math.abs(pos - lastPos);
                         if (!abort[1]
                             && (MathUtil.isEqualToZero(space) || (index > 1 && lastSpace - space > epsilon))) {
-                            confirmMessage(view, Messages.getString("SeriesBuilder.space"), abort); //$NON-NLS-1$
+                            confirmMessage(views[0], Messages.getString("SeriesBuilder.space"), abort); //$NON-NLS-1$
                         }
                         lastSpace = space;
                     }
                     lastPos = pos;
                     index++;
-                    if (bar != null) {
-                        GuiExecutor.instance().execute(() -> {
-                            bar.setValue(bar.getValue() + 1);
-                            view.repaint();
-                        });
-                    }
-                }
-                
-                // TODO do not open more than 512 files (Limitation to open 1024 in the same time on Ubuntu)
-                PlanarImage image = dcm.getImage(null, false);
-                if (image == null) {
-                    abort[0] = true;
-                    throw new IIOException("Cannot read an image!"); //$NON-NLS-1$
-                }
-                if (MathUtil.isDifferent(dcm.getRescaleX(), dcm.getRescaleY())) {
-                    Dimension dim = new Dimension((int) (Math.abs(dcm.getRescaleX()) * image.width()),
-                        (int) (Math.abs(dcm.getRescaleY()) * image.height()));
-                    image = ImageProcessor.scale(image.toImageCV(), dim, Imgproc.INTER_LINEAR);
                 }
 
-                writeRasterInRaw(image, newSeries, builImgs, params, dstHeight, index);
+                final int slice = Math.max(0, index - 1);
+                if (volume == null) {
+                    // The first image gives the size of the volume, the next ones are decoded in parallel
+                    ImageCV img = readSlice(dcm);
+                    File file = File.createTempFile("volume_", ".raw", MPR_CACHE_DIR); //$NON-NLS-1$ //$NON-NLS-2$
+                    volume = new FileVolume(file, img.width(), img.height(), depth, img.type());
+                    writeSlice(volume, img, slice);
+                    incrementProgressBar(views);
+                } else {
+                    final FileVolume vol = volume;
+                    tasks.add(ImageElement.IMAGE_LOADER.submit(() -> {
+                        writeSlice(vol, readSlice(dcm), slice);
+                        incrementProgressBar(views);
+                        return Boolean.TRUE;
+                    }, Priority.NEIGHBOR, null, vol));
+                }
             }
-            
 
-            return lastSpace;
-        } finally {
-            for (int i = 0; i < newSeries.length; i++) {
-                if (newSeries[i] != null) {
-                    if (abort[0]) {
-                        newSeries[i].getFile().delete();
-                    } else {
-                        newSeries[i].write(builImgs[i]);
+            for (Future<Boolean> task : tasks) {
+                if (thread.isInterrupted()) {
+                    return null;
+                }
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ExecutionException e) {
+                    abort[0] = true;
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
                     }
-                    builImgs[i].release();
+                    throw new IIOException("Cannot read an image!", cause); //$NON-NLS-1$
                 }
             }
+
+            if (volume == null) {
+                return null;
+            }
+            complete = true;
+            return new MprVolume(volume, filter, medias.get(0).getDispSliceGeometry(),
+                medias.get(medias.size() - 1).getDispSliceGeometry(), lastSpace);
+        } finally {
+            if (volume != null && !complete) {
+                ImageElement.IMAGE_LOADER.cancel(volume);
+                volume.dispose();
+            }
         }
     }
 
-    private static void writeRasterInRaw(PlanarImage image, FileRawImage[] newSeries, ImageCV[] builImgs,
-        ViewParameter params, int dstHeight, int imgIndex) throws IOException {
-        ImageCV img = ImageProcessor.getRotatedImage(image.toMat(), params.rotateCvType);
-        if (newSeries != null && img != null && img.height() == newSeries.length) {
-
-            if (newSeries[0] == null) {
-                File dir = new File(MPR_CACHE_DIR, params.seriesUID);
-                dir.mkdirs();
-                for (int i = 0; i < newSeries.length; i++) {
-                    newSeries[i] = new FileRawImage(new File(dir, "mpr_" + (i + 1) + ".wcv"));//$NON-NLS-1$ //$NON-NLS-2$
-                    builImgs[i] = new ImageCV(dstHeight, img.width(), img.type());
-                }
-            }
+    private static ImageCV readSlice(DicomImageElement dcm) throws IOException {
+        PlanarImage image = dcm.getImage(null, false);
+        if (image == null) {
+            throw new IIOException("Cannot read an image!"); //$NON-NLS-1$
+        }
+        if (MathUtil.isDifferent(dcm.getRescaleX(), dcm.getRescaleY())) {
+            Dimension dim = new Dimension((int) (Math.abs(dcm.getRescaleX()) * image.width()),
+                (int) (Math.abs(dcm.getRescaleY()) * image.height()));
+            image = ImageProcessor.scale(image.toImageCV(), dim, Imgproc.INTER_LINEAR);
+        }
+        return image.toImageCV();
+    }
+
+    private static void writeSlice(FileVolume volume, ImageCV img, int slice) {
+        if (slice < volume.getDepth() && img.width() == volume.getWidth() && img.height() == volume.getHeight()
+            && img.type() == volume.getType()) {
+            volume.setSlice(slice, img);
+        }
+    }
 
-            for (int j = 0; j < newSeries.length; j++) {
-                img.row(j).copyTo(builImgs[j].row(imgIndex - 1));
+    /**
+     * Builds the planes of a reconstruction, which are extracted from the volume only when they are read.
+     */
+    private static void buildPlanes(FileRawImage[] newSeries, MprVolume volume, ViewParameter params)
+        throws IOException {
+        File dir = new File(MPR_CACHE_DIR, params.seriesUID);
+        dir.mkdirs();
+        FileVolume vol = volume.getVolume();
+        boolean columns = params.rotateCvType == Core.ROTATE_90_COUNTERCLOCKWISE
+            || params.rotateCvType == Core.ROTATE_90_CLOCKWISE;
+        if (newSeries.length != (columns ? vol.getWidth() : vol.getHeight())) {
+            throw new IIOException("The size of the images does not match the volume"); //$NON-NLS-1$
+        }
+        for (int i = 0; i < newSeries.length; i++) {
+            File file = new File(dir, "mpr_" + (i + 1) + ".wcv");//$NON-NLS-1$ //$NON-NLS-2$
+            // A file of a previous reconstruction with the same UID would be read instead of the volume
+            FileUtil.delete(file);
+            newSeries[i] = new VolumePlane(file, volume, params, i);
+        }
+    }
+
+    /**
+     * Extracts a plane of a reconstruction. The plane <i>i</i> is made of the line <i>i</i> of the slices rotated
+     * according to the parameters, the first row being the first slice of the stack.
+     */
+    static ImageCV extractPlane(FileVolume volume, ViewParameter params, int i) {
+        int w = volume.getWidth();
+        int h = volume.getHeight();
+        ImageCV plane;
+        int flip = -2;
+        switch (params.rotateCvType) {
+            case Core.ROTATE_90_COUNTERCLOCKWISE:
+                plane = volume.getColumnPlane(w - 1 - i);
+                break;
+            case Core.ROTATE_90_CLOCKWISE:
+                plane = volume.getColumnPlane(i);
+                flip = 1;
+                break;
+            case Core.ROTATE_180:
+                plane = volume.getRowPlane(h - 1 - i);
+                flip = 1;
+                break;
+            default:
+                plane = volume.getRowPlane(i);
+                break;
+        }
+        if (params.reverseSeriesOrder) {
+            // Flip the stack direction, and combined with a horizontal flip
+            flip = flip == 1 ? -1 : 0;
+        }
+        if (flip != -2) {
+            Core.flip(plane, plane, flip);
+        }
+        if (params.rotateOutputImg) {
+            ImageCV dst = ImageProcessor.getRotatedImage(plane, Core.ROTATE_90_CLOCKWISE);
+            plane.release();
+            return dst;
+        }
+        return plane;
+    }
+
+    /**
+     * @return the planes of a reconstruction which are extracted from a volume
+     */
+    private static List<VolumePlane> getPlanes(MediaSeriesGroup group) {
+        List<VolumePlane> planes = new ArrayList<>();
+        if (group instanceof MediaSeries) {
+            for (Object media : ((MediaSeries<?>) group).copyOfMedias(null, null)) {
+                if (media instanceof DicomImageElement) {
+                    Object reader = ((DicomImageElement) media).getMediaReader();
+                    if (reader instanceof RawImageIO && ((RawImageIO) reader).imageCV instanceof VolumePlane) {
+                        planes.add((VolumePlane) ((RawImageIO) reader).imageCV);
+                    }
+                }
             }
         }
+        return planes;
+    }
 
+    private static void incrementProgressBar(final MprView[] views) {
+        GuiExecutor.instance().execute(() -> {
+            for (MprView view : views) {
+                JProgressBar bar = view.getProgressBar();
+                if (bar != null) {
+                    bar.setValue(bar.getValue() + 1);
+                    view.repaint();
+                }
+            }
+        });
     }
-    
+
     private static void rotate(Vector3d vSrc, Vector3d axis, double angle, Vector3d vDst) {
         axis.normalize();
         vDst.x = axis.x * (axis.x * vSrc.x + axis.y * vSrc.y + axis.z * vSrc.z) * (1 - Math.cos(angle))
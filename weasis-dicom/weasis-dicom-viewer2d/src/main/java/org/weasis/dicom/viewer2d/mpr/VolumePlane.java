@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.viewer2d.mpr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import javax.imageio.IIOException;
+
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.dicom.viewer2d.mpr.SeriesBuilder.ViewParameter;
+import org.weasis.opencv.data.FileRawImage;
+import org.weasis.opencv.data.ImageCV;
+
+/**
+ * An image of a reconstruction extracted from the volume when it is read for the first time, and then read from its
+ * file. The planes which are never displayed or exported are never extracted.
+ */
+final class VolumePlane extends FileRawImage {
+
+    private final ViewParameter params;
+    private final int index;
+    private final int depth;
+    private volatile MprVolume volume;
+
+    VolumePlane(File file, MprVolume volume, ViewParameter params, int index) {
+        super(file);
+        this.volume = Objects.requireNonNull(volume);
+        this.params = Objects.requireNonNull(params);
+        this.index = index;
+        this.depth = volume.getVolume().getDepth();
+    }
+
+    /**
+     * @return the number of slices of the volume
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Replaces the volume when it has been released and built again (e.g. when the MPR is opened again).
+     */
+    void setVolume(MprVolume volume) {
+        if (volume != null && volume.getVolume().getDepth() == depth) {
+            this.volume = volume;
+        }
+    }
+
+    @Override
+    public synchronized ImageCV read() throws IOException {
+        File file = getFile();
+        if (file.exists()) {
+            return super.read();
+        }
+        MprVolume v = volume;
+        if (v.isDisposed()) {
+            throw new IIOException("The volume has been released: " + file); //$NON-NLS-1$
+        }
+        ImageCV plane = SeriesBuilder.extractPlane(v.getVolume(), params, index);
+        if (!write(plane)) {
+            plane.release();
+            FileUtil.delete(file);
+            throw new IIOException("Cannot write " + file); //$NON-NLS-1$
+        }
+        return plane;
+    }
+
+    /**
+     * Writes the file of the plane when it has not been extracted yet, e.g. before exporting the image.
+     */
+    synchronized void writeFile() throws IOException {
+        if (!getFile().exists()) {
+            read().release();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.viewer2d.mip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.weasis.core.api.gui.task.TaskInterruptionException;
+import org.weasis.core.api.image.op.SlidingZprojection;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.dicom.viewer2d.mip.MipView.Type;
+import org.weasis.opencv.data.PlanarImage;
+
+public class SeriesBuilderTest {
+    // Stack of 5 images, each projection has 1 image on both sides
+    private static final int EXTEND = 1;
+    private static final List<ImageElement> MEDIAS = Collections.nCopies(5, null);
+
+    /**
+     * A projection which returns the same image without reading the sources.
+     */
+    static class TestProjection extends SlidingZprojection {
+        final PlanarImage image = (PlanarImage) Proxy.newProxyInstance(SeriesBuilderTest.class.getClassLoader(),
+            new Class<?>[] { PlanarImage.class }, (proxy, method, args) -> null);
+        int disposed = 0;
+
+        TestProjection() {
+            super(MEDIAS, 2 * EXTEND + 1, Projection.MAX, null);
+        }
+
+        @Override
+        public PlanarImage next() {
+            return image;
+        }
+
+        @Override
+        public void dispose() {
+            disposed++;
+        }
+    }
+
+    private static void build(TestProjection projection, SeriesBuilder.ProjectionHandler handler) {
+        SeriesBuilder.buildImages(MEDIAS, EXTEND, MEDIAS.size() - EXTEND - 1, EXTEND, Type.MAX, projection, null,
+            handler);
+    }
+
+    @Test
+    public void testAllImages() {
+        TestProjection projection = new TestProjection();
+        List<Integer> indexes = new ArrayList<>();
+        build(projection, (index, sources, image) -> {
+            assertEquals(2 * EXTEND + 1, sources.size());
+            indexes.add(index);
+            return true;
+        });
+        assertEquals(Arrays.asList(1, 2, 3), indexes);
+        assertEquals(1, projection.disposed);
+    }
+
+    @Test
+    public void testImageNotWritten() {
+        TestProjection projection = new TestProjection();
+        List<Integer> indexes = new ArrayList<>();
+        build(projection, (index, sources, image) -> {
+            indexes.add(index);
+            return false;
+        });
+        assertEquals(Collections.singletonList(1), indexes);
+        assertEquals(1, projection.disposed);
+    }
+
+    @Test
+    public void testBuildFailure() {
+        TestProjection projection = new TestProjection();
+        try {
+            build(projection, (index, sources, image) -> {
+                if (index == 2) {
+                    throw new IllegalStateException("Cannot write the image"); //$NON-NLS-1$
+                }
+                return true;
+            });
+            fail("The build must fail"); //$NON-NLS-1$
+        } catch (IllegalStateException e) {
+            assertEquals(1, projection.disposed);
+        }
+    }
+
+    @Test
+    public void testBuildCanceled() {
+        TestProjection projection = new TestProjection();
+        try {
+            build(projection, (index, sources, image) -> {
+                throw new TaskInterruptionException("Rebuilding MIP series has been canceled!"); //$NON-NLS-1$
+            });
+            fail("The build must be canceled"); //$NON-NLS-1$
+        } catch (TaskInterruptionException e) {
+            assertEquals(1, projection.disposed);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.viewer2d.mpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.CvType;
+import org.weasis.dicom.codec.geometry.GeometryOfSlice;
+import org.weasis.dicom.viewer2d.mpr.MprVolume.ReslicePlane;
+import org.weasis.opencv.data.FileVolume;
+
+public class MprVolumeTest {
+    private static final int SIZE = 8;
+    // Pixel spacing and slice spacing of the reference volume
+    private static final double PIXEL = 2.0;
+    private static final double SPACE = 3.0;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MprVolume volume;
+
+    /**
+     * The reference volume: the value of a voxel is a linear function of its position, so the trilinear
+     * interpolation gives the exact value at any position.
+     */
+    private static double reference(double x, double y, double z) {
+        return 100.0 + 10.0 * x + 20.0 * y + 30.0 * z;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        File file = folder.newFile("volume.raw"); //$NON-NLS-1$
+        ByteBuffer buf = ByteBuffer.allocate(SIZE * SIZE * SIZE * 2).order(ByteOrder.nativeOrder());
+        for (int z = 0; z < SIZE; z++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    buf.putShort((short) reference(x, y, z));
+                }
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { //$NON-NLS-1$
+            raf.write(buf.array());
+        }
+        // The volume maps the existing voxels of the file
+        FileVolume voxels = new FileVolume(file, SIZE, SIZE, SIZE, CvType.CV_16UC1);
+
+        double[] dim = { SIZE, SIZE, 1 };
+        double[] spacing = { PIXEL, PIXEL, SPACE };
+        GeometryOfSlice first = new GeometryOfSlice(new double[] { 1, 0, 0 }, new double[] { 0, 1, 0 },
+            new double[] { 0, 0, 0 }, spacing, SPACE, dim);
+        GeometryOfSlice last = new GeometryOfSlice(new double[] { 1, 0, 0 }, new double[] { 0, 1, 0 },
+            new double[] { 0, 0, (SIZE - 1) * SPACE }, spacing, SPACE, dim);
+        volume = new MprVolume(voxels, null, first, last, SPACE);
+    }
+
+    @After
+    public void tearDown() {
+        volume.dispose();
+    }
+
+    @Test
+    public void testToVoxel() {
+        double[] v = volume.toVoxel(new Point3d(PIXEL * 3, PIXEL * 5, SPACE * 2));
+        assertEquals(3.0, v[0], 1e-9);
+        assertEquals(5.0, v[1], 1e-9);
+        assertEquals(2.0, v[2], 1e-9);
+    }
+
+    @Test
+    public void testObliquePlane() {
+        double a = Math.toRadians(30);
+        double b = Math.toRadians(20);
+        Vector3d row = new Vector3d(Math.cos(a), Math.sin(a), 0);
+        Vector3d column = new Vector3d(-Math.sin(a) * Math.sin(b), Math.cos(a) * Math.sin(b), Math.cos(b));
+        Point3d center = new Point3d(3.5 * PIXEL, 3.5 * PIXEL, 3.5 * SPACE);
+        int width = 12;
+        int height = 10;
+        double pixelSpacing = 1.5;
+
+        ReslicePlane plane = volume.getObliqueSampling(center, row, column, pixelSpacing, width, height);
+        float[] data = volume.getVolume().sample(plane.origins, plane.step, plane.nbRows);
+        assertEquals(width * height, data.length);
+
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                Point3d p = new Point3d(center);
+                p.scaleAdd((i - width / 2.0) * pixelSpacing, row, p);
+                p.scaleAdd((j - height / 2.0) * pixelSpacing, column, p);
+                double x = p.x / PIXEL;
+                double y = p.y / PIXEL;
+                double z = p.z / SPACE;
+                boolean inside = x >= 0 && y >= 0 && z >= 0 && x <= SIZE - 1 && y <= SIZE - 1 && z <= SIZE - 1;
+                double expected = inside ? reference(x, y, z) : 0.0;
+                assertEquals("pixel " + i + "," + j, expected, data[j * width + i], 1e-2); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+    }
+
+    @Test
+    public void testCurvedPlane() {
+        // A straight path gives the same samples as the oblique plane along this path
+        Vector3d column = new Vector3d(0, 0, 1);
+        Point3d start = new Point3d(PIXEL, PIXEL, 3.5 * SPACE);
+        Point3d middle = new Point3d(4 * PIXEL, PIXEL, 3.5 * SPACE);
+        Point3d end = new Point3d(6 * PIXEL, PIXEL, 3.5 * SPACE);
+        int height = 6;
+
+        ReslicePlane curved = volume.getCurvedSampling(Arrays.asList(start, middle, end), column, PIXEL, height);
+        assertEquals(6, curved.origins.length);
+        float[] data = volume.getVolume().sample(curved.origins, curved.step, curved.nbRows);
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < curved.origins.length; i++) {
+                double z = 3.5 + (j - height / 2.0) * PIXEL / SPACE;
+                assertEquals(reference(1 + i, 1, z), data[j * curved.origins.length + i], 1e-2);
+            }
+        }
+
+        assertNull(volume.getCurvedSampling(Arrays.asList(start), column, PIXEL, height));
+    }
+}
@@ -117,6 +117,38 @@ public class ImageElementIO implements MediaReader {
         return null;
     }
 
+    /**
+     * Reads the image with a source sub-sampling, which lets the reader skip a part of the data (e.g. the JPEG 2000
+     * reader decodes only the required resolution level).
+     */
+    @Override
+    public PlanarImage getReducedImageFragment(MediaElement media, int size) throws Exception {
+        FileCache cache = Objects.requireNonNull(media).getFileCache();
+        File file = cache.getTransformedFile() == null ? cache.getOriginalFile().orElse(null) : null;
+        ImageReader reader = file == null ? null : getDefaultReader(mimeType);
+        if (reader == null) {
+            return getImageFragment(media);
+        }
+
+        RenderedImage bi = null;
+        try (ImageInputStream stream = new FileImageInputStream(new RandomAccessFile(file, "r"))) { //$NON-NLS-1$
+            reader.setInput(stream, true, true);
+            int factor = ImageElement.getReductionFactor(reader.getWidth(0), reader.getHeight(0), size, 8);
+            if (factor > 1) {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                bi = reader.read(0, param);
+            }
+        } finally {
+            reader.dispose();
+        }
+        if (bi == null) {
+            return getImageFragment(media);
+        }
+        // Do not set the size tags, they are the size of the image at full resolution
+        return ImageConversion.toMat(ImageFiler.getReadableImage(bi));
+    }
+
     private PlanarImage readImage(File file, boolean createTiledLayout) throws Exception {
         if (file.getPath().endsWith(".wcv")) { //$NON-NLS-1$
             return new FileRawImage(file).read();
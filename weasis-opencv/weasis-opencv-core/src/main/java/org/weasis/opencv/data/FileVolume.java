@@ -0,0 +1,436 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.opencv.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * A stack of images of the same size and type stored in a memory-mapped file, so the voxels are kept off-heap and
+ * paged by the operating system instead of being held in native memory.
+ * <p>
+ * The slices can be written concurrently. A plane orthogonal to the slices can be read by copying the same row or
+ * column of each slice, which allows building the reconstructions without keeping all of them in memory. Any other
+ * surface can be resampled with {@link #reslice(double[][], double[], int)}.
+ */
+public class FileVolume {
+
+    private final File file;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int type;
+    private final int rowBytes;
+    private final int sliceBytes;
+    private final int slicesPerChunk;
+    private MappedByteBuffer[] chunks;
+
+    public FileVolume(File file, int width, int height, int depth, int type) throws IOException {
+        this.file = Objects.requireNonNull(file);
+        if (width < 1 || height < 1 || depth < 1) {
+            throw new IllegalArgumentException("Invalid volume size"); //$NON-NLS-1$
+        }
+        long slice = (long) width * height * CvType.ELEM_SIZE(type);
+        if (slice > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The size of a slice cannot exceed 2 GB"); //$NON-NLS-1$
+        }
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.type = type;
+        this.rowBytes = width * CvType.ELEM_SIZE(type);
+        this.sliceBytes = (int) slice;
+        // A mapping cannot exceed 2 GB, a slice is never split between two mappings
+        this.slicesPerChunk = Math.max(1, Integer.MAX_VALUE / sliceBytes);
+
+        int nbChunks = (depth + slicesPerChunk - 1) / slicesPerChunk;
+        this.chunks = new MappedByteBuffer[nbChunks];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { //$NON-NLS-1$
+            raf.setLength((long) sliceBytes * depth);
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < nbChunks; i++) {
+                int nbSlices = Math.min(slicesPerChunk, depth - i * slicesPerChunk);
+                chunks[i] = channel.map(MapMode.READ_WRITE, (long) i * slicesPerChunk * sliceBytes,
+                    (long) nbSlices * sliceBytes);
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Writes a slice of the volume. Can be called concurrently for different slices.
+     *
+     * @param z
+     *            the index of the slice
+     * @param img
+     *            an image with the size and the type of the volume
+     */
+    public void setSlice(int z, Mat img) {
+        Objects.requireNonNull(img);
+        if (img.width() != width || img.height() != height || img.type() != type) {
+            throw new IllegalArgumentException("The image does not match the volume"); //$NON-NLS-1$
+        }
+        Mat src = img.isContinuous() ? img : img.clone();
+        ByteBuffer buf = getBuffer(z, 0, sliceBytes);
+        switch (CvType.depth(type)) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                byte[] b = new byte[sliceBytes];
+                src.get(0, 0, b);
+                buf.put(b);
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                short[] s = new short[sliceBytes / 2];
+                src.get(0, 0, s);
+                buf.asShortBuffer().put(s);
+                break;
+            case CvType.CV_32S:
+                int[] i = new int[sliceBytes / 4];
+                src.get(0, 0, i);
+                buf.asIntBuffer().put(i);
+                break;
+            case CvType.CV_32F:
+                float[] f = new float[sliceBytes / 4];
+                src.get(0, 0, f);
+                buf.asFloatBuffer().put(f);
+                break;
+            default:
+                double[] d = new double[sliceBytes / 8];
+                src.get(0, 0, d);
+                buf.asDoubleBuffer().put(d);
+                break;
+        }
+        if (src != img) {
+            src.release();
+        }
+    }
+
+    /**
+     * Builds the plane made of the same row of all the slices: the row <i>z</i> of the result is the row <i>y</i> of
+     * the slice <i>z</i>.
+     *
+     * @param y
+     *            the index of the row in the slices
+     * @return an image of <code>width</code> x <code>depth</code>
+     */
+    public ImageCV getRowPlane(int y) {
+        if (y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("Row " + y); //$NON-NLS-1$
+        }
+        ImageCV plane = new ImageCV(depth, width, type);
+        int offset = y * rowBytes;
+        switch (CvType.depth(type)) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                byte[] b = new byte[rowBytes * depth];
+                for (int z = 0; z < depth; z++) {
+                    getBuffer(z, offset, rowBytes).get(b, z * rowBytes, rowBytes);
+                }
+                plane.put(0, 0, b);
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                int len = rowBytes / 2;
+                short[] s = new short[len * depth];
+                for (int z = 0; z < depth; z++) {
+                    getBuffer(z, offset, rowBytes).asShortBuffer().get(s, z * len, len);
+                }
+                plane.put(0, 0, s);
+                break;
+            case CvType.CV_32S:
+                len = rowBytes / 4;
+                int[] i = new int[len * depth];
+                for (int z = 0; z < depth; z++) {
+                    getBuffer(z, offset, rowBytes).asIntBuffer().get(i, z * len, len);
+                }
+                plane.put(0, 0, i);
+                break;
+            case CvType.CV_32F:
+                len = rowBytes / 4;
+                float[] f = new float[len * depth];
+                for (int z = 0; z < depth; z++) {
+                    getBuffer(z, offset, rowBytes).asFloatBuffer().get(f, z * len, len);
+                }
+                plane.put(0, 0, f);
+                break;
+            default:
+                len = rowBytes / 8;
+                double[] d = new double[len * depth];
+                for (int z = 0; z < depth; z++) {
+                    getBuffer(z, offset, rowBytes).asDoubleBuffer().get(d, z * len, len);
+                }
+                plane.put(0, 0, d);
+                break;
+        }
+        return plane;
+    }
+
+    /**
+     * Builds the plane made of the same column of all the slices: the row <i>z</i> of the result is the column <i>x</i>
+     * of the slice <i>z</i> from top to bottom.
+     *
+     * @param x
+     *            the index of the column in the slices
+     * @return an image of <code>height</code> x <code>depth</code>
+     */
+    public ImageCV getColumnPlane(int x) {
+        if (x < 0 || x >= width) {
+            throw new IndexOutOfBoundsException("Column " + x); //$NON-NLS-1$
+        }
+        int elemSize = CvType.ELEM_SIZE(type);
+        byte[] pixel = new byte[elemSize];
+        byte[] b = new byte[height * elemSize * depth];
+        int k = 0;
+        for (int z = 0; z < depth; z++) {
+            ByteBuffer buf = getBuffer(z, 0, sliceBytes);
+            for (int y = 0; y < height; y++) {
+                buf.position(y * rowBytes + x * elemSize);
+                buf.get(pixel);
+                System.arraycopy(pixel, 0, b, k, elemSize);
+                k += elemSize;
+            }
+        }
+        ImageCV plane = new ImageCV(depth, height, type);
+        putRawBytes(plane, b);
+        return plane;
+    }
+
+    private void putRawBytes(Mat img, byte[] b) {
+        ByteBuffer buf = ByteBuffer.wrap(b).order(ByteOrder.nativeOrder());
+        switch (CvType.depth(type)) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                img.put(0, 0, b);
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                short[] s = new short[b.length / 2];
+                buf.asShortBuffer().get(s);
+                img.put(0, 0, s);
+                break;
+            case CvType.CV_32S:
+                int[] i = new int[b.length / 4];
+                buf.asIntBuffer().get(i);
+                img.put(0, 0, i);
+                break;
+            case CvType.CV_32F:
+                float[] f = new float[b.length / 4];
+                buf.asFloatBuffer().get(f);
+                img.put(0, 0, f);
+                break;
+            default:
+                double[] d = new double[b.length / 8];
+                buf.asDoubleBuffer().get(d);
+                img.put(0, 0, d);
+                break;
+        }
+    }
+
+    /**
+     * Samples a surface of the volume with a trilinear interpolation. The column <i>i</i> of the result starts at the
+     * voxel position <code>origins[i]</code> and each row moves by <code>step</code>. An oblique plane has origins
+     * along a line, a curved plane has origins along a path. The samples outside of the volume are set to 0.
+     * <p>
+     * The result is computed in parallel on horizontal bands. Only single channel volumes are supported.
+     *
+     * @param origins
+     *            the position (x, y, z) in voxels of the first sample of each column
+     * @param step
+     *            the displacement (x, y, z) in voxels between two rows
+     * @param nbRows
+     *            the number of rows of the result
+     * @return the image of the volume type
+     */
+    public ImageCV reslice(double[][] origins, double[] step, int nbRows) {
+        float[] data = sample(origins, step, nbRows);
+        Mat values = new Mat(nbRows, origins.length, CvType.CV_32FC1);
+        values.put(0, 0, data);
+        ImageCV dstImg = new ImageCV();
+        values.convertTo(dstImg, type);
+        values.release();
+        return dstImg;
+    }
+
+    /**
+     * Samples a surface of the volume like {@link #reslice(double[][], double[], int)} but returns the interpolated
+     * values row by row without converting them to the volume type.
+     *
+     * @return the <code>origins.length</code> x <code>nbRows</code> values
+     */
+    public float[] sample(double[][] origins, double[] step, int nbRows) {
+        Objects.requireNonNull(origins);
+        Objects.requireNonNull(step);
+        if (CvType.channels(type) != 1) {
+            throw new IllegalStateException("Only single channel volumes can be resliced"); //$NON-NLS-1$
+        }
+        int nbCols = origins.length;
+        VoxelReader reader = getVoxelReader();
+        float[] data = new float[nbCols * nbRows];
+        int bandHeight = 32;
+        int nbBands = (nbRows + bandHeight - 1) / bandHeight;
+        IntStream.range(0, nbBands).parallel().forEach(band -> {
+            int end = Math.min(nbRows, (band + 1) * bandHeight);
+            for (int j = band * bandHeight; j < end; j++) {
+                int line = j * nbCols;
+                for (int i = 0; i < nbCols; i++) {
+                    double[] o = origins[i];
+                    data[line + i] =
+                        (float) interpolate(reader, o[0] + j * step[0], o[1] + j * step[1], o[2] + j * step[2]);
+                }
+            }
+        });
+        return data;
+    }
+
+    private double interpolate(VoxelReader reader, double x, double y, double z) {
+        if (x < 0 || y < 0 || z < 0 || x > width - 1 || y > height - 1 || z > depth - 1) {
+            return 0.0;
+        }
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int z0 = (int) z;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        int z1 = Math.min(z0 + 1, depth - 1);
+        double dx = x - x0;
+        double dy = y - y0;
+        double dz = z - z0;
+
+        double c00 = lerp(reader.get(z0, y0 * width + x0), reader.get(z0, y0 * width + x1), dx);
+        double c10 = lerp(reader.get(z0, y1 * width + x0), reader.get(z0, y1 * width + x1), dx);
+        double c01 = lerp(reader.get(z1, y0 * width + x0), reader.get(z1, y0 * width + x1), dx);
+        double c11 = lerp(reader.get(z1, y1 * width + x0), reader.get(z1, y1 * width + x1), dx);
+        return lerp(lerp(c00, c10, dy), lerp(c01, c11, dy), dz);
+    }
+
+    private static double lerp(double a, double b, double t) {
+        return a + (b - a) * t;
+    }
+
+    @FunctionalInterface
+    private interface VoxelReader {
+        double get(int z, int index);
+    }
+
+    private VoxelReader getVoxelReader() {
+        MappedByteBuffer[] mapped = chunks;
+        if (mapped == null) {
+            throw new IllegalStateException("The volume has been disposed"); //$NON-NLS-1$
+        }
+        int sliceLength = width * height;
+        int spc = slicesPerChunk;
+        int nb = mapped.length;
+        switch (CvType.depth(type)) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                boolean unsigned8 = CvType.depth(type) == CvType.CV_8U;
+                ByteBuffer[] b = new ByteBuffer[nb];
+                for (int k = 0; k < nb; k++) {
+                    b[k] = mapped[k].duplicate();
+                }
+                return (z, i) -> {
+                    byte v = b[z / spc].get((z % spc) * sliceLength + i);
+                    return unsigned8 ? v & 0xFF : v;
+                };
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                boolean unsigned16 = CvType.depth(type) == CvType.CV_16U;
+                ShortBuffer[] s = new ShortBuffer[nb];
+                for (int k = 0; k < nb; k++) {
+                    s[k] = mapped[k].duplicate().order(ByteOrder.nativeOrder()).asShortBuffer();
+                }
+                return (z, i) -> {
+                    short v = s[z / spc].get((z % spc) * sliceLength + i);
+                    return unsigned16 ? v & 0xFFFF : v;
+                };
+            case CvType.CV_32S:
+                IntBuffer[] in = new IntBuffer[nb];
+                for (int k = 0; k < nb; k++) {
+                    in[k] = mapped[k].duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+                }
+                return (z, i) -> in[z / spc].get((z % spc) * sliceLength + i);
+            case CvType.CV_32F:
+                FloatBuffer[] f = new FloatBuffer[nb];
+                for (int k = 0; k < nb; k++) {
+                    f[k] = mapped[k].duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+                }
+                return (z, i) -> f[z / spc].get((z % spc) * sliceLength + i);
+            default:
+                DoubleBuffer[] d = new DoubleBuffer[nb];
+                for (int k = 0; k < nb; k++) {
+                    d[k] = mapped[k].duplicate().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+                }
+                return (z, i) -> d[z / spc].get((z % spc) * sliceLength + i);
+        }
+    }
+
+    private ByteBuffer getBuffer(int z, int offset, int length) {
+        if (z < 0 || z >= depth) {
+            throw new IndexOutOfBoundsException("Slice " + z); //$NON-NLS-1$
+        }
+        MappedByteBuffer[] mapped = chunks;
+        if (mapped == null) {
+            throw new IllegalStateException("The volume has been disposed"); //$NON-NLS-1$
+        }
+        // Each caller gets its own position, the data are shared
+        ByteBuffer buf = mapped[z / slicesPerChunk].duplicate();
+        int pos = (z % slicesPerChunk) * sliceBytes + offset;
+        buf.limit(pos + length);
+        buf.position(pos);
+        return buf.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Releases the mapping and deletes the file. The mapping is only unmapped when garbage collected, so the file may
+     * be deleted only at exit on some platforms.
+     */
+    public void dispose() {
+        chunks = null;
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
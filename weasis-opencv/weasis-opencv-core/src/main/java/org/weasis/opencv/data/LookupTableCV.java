@@ -14,7 +14,10 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferShort;
 import java.awt.image.DataBufferUShort;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.IntStream;
 
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
@@ -22,6 +25,10 @@ import org.weasis.opencv.op.ImageConversion;
 
 public class LookupTableCV {
 
+    // Minimum number of pixels for splitting the lookup in several bands of rows processed concurrently
+    private static final int PARALLEL_MIN_PIXELS = 512 * 512;
+    private static final int BAND_MIN_ROWS = 64;
+
     private final int[] offsets;
     private final DataBuffer data;
 
@@ -142,6 +149,64 @@ public class LookupTableCV {
         return data.getElem(band, value - offsets[band]);
     }
 
+    /**
+     * Builds a single table equivalent to applying successively the lookup tables. The entries of the new table are
+     * the same as the first table, the values outside the range of the next tables are clamped.
+     *
+     * @param luts
+     *            the tables in the order of application (null values are ignored)
+     * @return the composed table, null when there is no table or when a table has more than one band
+     */
+    public static LookupTableCV compose(LookupTableCV... luts) {
+        List<LookupTableCV> list = new ArrayList<>();
+        for (LookupTableCV lut : luts) {
+            if (lut != null) {
+                if (lut.getNumBands() != 1) {
+                    return null;
+                }
+                list.add(lut);
+            }
+        }
+        if (list.isEmpty()) {
+            return null;
+        }
+        if (list.size() == 1) {
+            return list.get(0);
+        }
+
+        LookupTableCV first = list.get(0);
+        LookupTableCV last = list.get(list.size() - 1);
+        int size = first.getNumEntries();
+        int[] values = new int[size];
+        DataBuffer firstData = first.getData();
+        for (int i = 0; i < size; i++) {
+            values[i] = firstData.getElem(i);
+        }
+        for (int k = 1; k < list.size(); k++) {
+            LookupTableCV lut = list.get(k);
+            DataBuffer data = lut.getData();
+            int offset = lut.getOffset();
+            int max = lut.getNumEntries() - 1;
+            for (int i = 0; i < size; i++) {
+                int index = values[i] - offset;
+                values[i] = data.getElem(index < 0 ? 0 : index > max ? max : index);
+            }
+        }
+
+        if (last.getDataType() == DataBuffer.TYPE_BYTE) {
+            byte[] table = new byte[size];
+            for (int i = 0; i < size; i++) {
+                table[i] = (byte) values[i];
+            }
+            return new LookupTableCV(table, first.getOffset());
+        }
+        short[] table = new short[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = (short) values[i];
+        }
+        return new LookupTableCV(table, first.getOffset(), last.getDataType() == DataBuffer.TYPE_USHORT);
+    }
+
     public ImageCV lookup(Mat src) {
         // Validate source.
         Objects.requireNonNull(src);
@@ -152,6 +217,10 @@ public class LookupTableCV {
         int channels = CvType.channels(cvType);
         int srcDataType = ImageConversion.convertToDataType(cvType);
 
+        if (channels == 1 && getNumBands() == 1) {
+            return lookupSingleBand(src, width, height, srcDataType);
+        }
+
         byte[] bSrcData = null;
         short[] sSrcData = null;
         if (CvType.depth(cvType) == CvType.CV_8U || CvType.depth(cvType) == CvType.CV_8S) {
@@ -227,6 +296,85 @@ public class LookupTableCV {
         return null;
     }
 
+    /**
+     * Applies a single band table on a single channel image. For large images, the rows are split into bands which are
+     * read, transformed and written concurrently, so only the buffer of one band is required per thread.
+     */
+    private ImageCV lookupSingleBand(Mat src, int width, int height, int srcDataType) {
+        int depth = CvType.depth(src.type());
+        if (depth != CvType.CV_8U && depth != CvType.CV_8S && depth != CvType.CV_16U && depth != CvType.CV_16S) {
+            throw new IllegalArgumentException("Not suported dataType for LUT transformation:" + src.toString());
+        }
+        int lkpDataType = getDataType();
+        int dstType;
+        if (lkpDataType == DataBuffer.TYPE_BYTE) {
+            dstType = CvType.CV_8UC1;
+        } else if (lkpDataType == DataBuffer.TYPE_USHORT) {
+            dstType = CvType.CV_16UC1;
+        } else if (lkpDataType == DataBuffer.TYPE_SHORT) {
+            dstType = CvType.CV_16SC1;
+        } else {
+            return null;
+        }
+
+        ImageCV dst = new ImageCV(height, width, dstType);
+        int nbBands = 1;
+        if ((long) width * height >= PARALLEL_MIN_PIXELS) {
+            nbBands = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), height / BAND_MIN_ROWS));
+        }
+        int rowsPerBand = (height + nbBands - 1) / nbBands;
+        IntStream bands = IntStream.range(0, nbBands);
+        if (nbBands > 1) {
+            bands = bands.parallel();
+        }
+        bands.forEach(b -> {
+            int startRow = b * rowsPerBand;
+            int rows = Math.min(rowsPerBand, height - startRow);
+            if (rows > 0) {
+                lookupRows(src, dst, startRow, rows * width, srcDataType, lkpDataType);
+            }
+        });
+        return dst;
+    }
+
+    private void lookupRows(Mat src, Mat dst, int startRow, int length, int srcDataType, int lkpDataType) {
+        int[] tblOffsets = new int[] { getOffset() };
+        boolean srcByte = srcDataType == DataBuffer.TYPE_BYTE;
+        byte[] bSrcData = null;
+        short[] sSrcData = null;
+        if (srcByte) {
+            bSrcData = new byte[length];
+            src.get(startRow, 0, bSrcData);
+        } else {
+            sSrcData = new short[length];
+            src.get(startRow, 0, sSrcData);
+        }
+
+        if (lkpDataType == DataBuffer.TYPE_BYTE) {
+            byte[][] bTblData = getByteData();
+            byte[] bDstData = srcByte ? bSrcData : new byte[length];
+            if (srcByte) {
+                lookup(bSrcData, bDstData, tblOffsets, bTblData);
+            } else if (srcDataType == DataBuffer.TYPE_USHORT) {
+                lookupU(sSrcData, bDstData, tblOffsets, bTblData);
+            } else {
+                lookup(sSrcData, bDstData, tblOffsets, bTblData);
+            }
+            dst.put(startRow, 0, bDstData);
+        } else {
+            short[][] sTblData = getShortData();
+            short[] sDstData = srcByte ? new short[length] : sSrcData;
+            if (srcByte) {
+                lookup(bSrcData, sDstData, tblOffsets, sTblData);
+            } else if (srcDataType == DataBuffer.TYPE_USHORT) {
+                lookupU(sSrcData, sDstData, tblOffsets, sTblData);
+            } else {
+                lookup(sSrcData, sDstData, tblOffsets, sTblData);
+            }
+            dst.put(startRow, 0, sDstData);
+        }
+    }
+
     // byte to byte
     private void lookup(byte[] srcData, byte[] dstData, int[] tblOffsets, byte[][] tblData) {
         int bOffset = tblData.length;
@@ -57,6 +57,20 @@ public class ImageConversion {
      * @return BufferedImage
      */
     public static BufferedImage toBufferedImage(Mat matrix) {
+        return toBufferedImage(matrix, null);
+    }
+
+    /**
+     * Converts/writes a Mat into a BufferedImage. When the image to reuse has the same size and the same data layout,
+     * its raster is overwritten instead of allocating a new one.
+     * 
+     * @param matrix
+     * @param reuse
+     *            the image to recycle, can be null
+     * 
+     * @return BufferedImage (reuse or a new image)
+     */
+    public static BufferedImage toBufferedImage(Mat matrix, BufferedImage reuse) {
         if (matrix == null) {
             return null;
         }
@@ -67,11 +81,16 @@ public class ImageConversion {
         int elemSize = CvType.ELEM_SIZE(type);
         int channels = CvType.channels(type);
         int bpp = (elemSize * 8) / channels;
+        int dataType = convertToDataType(type);
+
+        if (isCompatible(reuse, cols, rows, channels, bpp, dataType)) {
+            copyData(matrix, reuse.getRaster().getDataBuffer());
+            return reuse;
+        }
 
         ColorSpace cs;
         WritableRaster raster;
         ComponentColorModel colorModel;
-        int dataType = convertToDataType(type);
 
         switch (channels) {
             case 1:
@@ -91,8 +110,27 @@ public class ImageConversion {
                     "No implementation to handle " + matrix.channels() + " channels");
         }
 
-        DataBuffer buf = raster.getDataBuffer();
+        copyData(matrix, raster.getDataBuffer());
+        return new BufferedImage(colorModel, raster, false, null);
+
+    }
+
+    private static boolean isCompatible(BufferedImage img, int cols, int rows, int channels, int bpp, int dataType) {
+        if (img == null || img.getWidth() != cols || img.getHeight() != rows) {
+            return false;
+        }
+        WritableRaster raster = img.getRaster();
+        ColorModel cm = img.getColorModel();
+        if (raster.getNumBands() != channels || raster.getDataBuffer().getDataType() != dataType
+            || !(cm instanceof ComponentColorModel) || cm.getComponentSize(0) != bpp) {
+            return false;
+        }
+        // Only the layouts built by toBufferedImage() can be overwritten
+        return raster.getMinX() == 0 && raster.getMinY() == 0 && raster.getSampleModelTranslateX() == 0
+            && raster.getSampleModelTranslateY() == 0 && raster.getDataBuffer().getNumBanks() == 1;
+    }
 
+    private static void copyData(Mat matrix, DataBuffer buf) {
         if (buf instanceof DataBufferByte) {
             matrix.get(0, 0, ((DataBufferByte) buf).getData());
         } else if (buf instanceof DataBufferUShort) {
@@ -106,15 +144,17 @@ public class ImageConversion {
         } else if (buf instanceof DataBufferDouble) {
             matrix.get(0, 0, ((DataBufferDouble) buf).getData());
         }
-        return new BufferedImage(colorModel, raster, false, null);
-
     }
 
     public static BufferedImage toBufferedImage(PlanarImage matrix) {
+        return toBufferedImage(matrix, null);
+    }
+
+    public static BufferedImage toBufferedImage(PlanarImage matrix, BufferedImage reuse) {
         if (matrix == null) {
             return null;
         }
-        return toBufferedImage(matrix.toMat());
+        return toBufferedImage(matrix.toMat(), reuse);
     }
 
     public static int convertToDataType(int cvType) {
@@ -602,11 +602,23 @@ public class ImageProcessor {
     }
 
     public static ImageCV readImageWithCvException(File file) {
+        return readImageWithCvException(file, Imgcodecs.IMREAD_COLOR);
+    }
+
+    /**
+     * @param file
+     *            the image file
+     * @param flags
+     *            the flags of Imgcodecs.imread (e.g. IMREAD_REDUCED_COLOR_4 for decoding a JPEG at a quarter of its
+     *            size)
+     * @return the image or null if the file cannot be read
+     */
+    public static ImageCV readImageWithCvException(File file, int flags) {
         if (!file.canRead()) {
             return null;
         }
 
-        Mat img = Imgcodecs.imread(file.getPath());
+        Mat img = Imgcodecs.imread(file.getPath(), flags);
         if (img.width() < 1 || img.height() < 1) {
             throw new CvException("OpenCV cannot read " + file.getPath());
         }